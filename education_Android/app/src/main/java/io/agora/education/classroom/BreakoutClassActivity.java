@@ -23,7 +23,6 @@ import org.jetbrains.annotations.Nullable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 
 import butterknife.BindView;
@@ -33,12 +32,12 @@ import io.agora.base.network.RetrofitManager;
 import io.agora.education.EduApplication;
 import io.agora.education.R;
 import io.agora.education.api.EduCallback;
+import io.agora.education.api.board.data.EduBoardInfo;
 import io.agora.education.api.message.EduChatMsg;
 import io.agora.education.api.message.EduChatMsgType;
 import io.agora.education.api.message.EduMsg;
 import io.agora.education.api.room.EduRoom;
 import io.agora.education.api.room.data.EduRoomInfo;
-import io.agora.education.api.room.data.EduRoomState;
 import io.agora.education.api.room.data.EduRoomStatus;
 import io.agora.education.api.room.data.RoomCreateOptions;
 import io.agora.education.api.room.data.EduRoomChangeType;
@@ -56,26 +55,27 @@ import io.agora.education.api.user.data.EduUserInfo;
 import io.agora.education.api.user.data.EduUserRole;
 import io.agora.education.api.user.data.EduUserStateChangeType;
 import io.agora.education.classroom.adapter.ClassVideoAdapter;
-import io.agora.education.classroom.bean.board.BoardBean;
-import io.agora.education.classroom.bean.board.BoardInfo;
-import io.agora.education.classroom.bean.board.BoardState;
 import io.agora.education.classroom.bean.channel.Room;
 import io.agora.education.classroom.bean.msg.ChannelMsg;
 import io.agora.education.classroom.bean.record.RecordBean;
 import io.agora.education.classroom.bean.record.RecordMsg;
 import io.agora.education.classroom.fragment.UserListFragment;
+import io.agora.education.classroom.state.ClassUiState;
 import io.agora.education.service.CommonService;
 import io.agora.education.service.bean.ResponseBody;
 import io.agora.education.service.bean.request.AllocateGroupReq;
 import io.agora.education.service.bean.response.EduRoomInfoRes;
+import io.agora.rtc.IRtcEngineEventHandler;
+import io.agora.rte.RteEngineImpl;
+import io.agora.rte.listener.RteSpeakerReportListener;
 
 import static io.agora.education.EduApplication.getAppId;
 import static io.agora.education.api.BuildConfig.API_BASE_URL;
-import static io.agora.education.classroom.bean.board.BoardBean.BOARD;
 import static io.agora.education.classroom.bean.record.RecordBean.RECORD;
 import static io.agora.education.classroom.bean.record.RecordState.END;
 
-public class BreakoutClassActivity extends BaseClassActivity implements TabLayout.OnTabSelectedListener {
+public class BreakoutClassActivity extends BaseClassActivity implements TabLayout.OnTabSelectedListener,
+        RteSpeakerReportListener {
     private static final String TAG = "BreakoutClassActivity";
 
     @BindView(R.id.layout_placeholder)
@@ -193,6 +193,10 @@ public class BreakoutClassActivity extends BaseClassActivity implements TabLayou
             }
         });
         rcv_videos.setAdapter(classVideoAdapter);
+        setupVideoGallery(rcv_videos, classVideoAdapter);
+        RteEngineImpl.INSTANCE.setSpeakerReportListener(this);
+        /**说话者的音量用于画廊模式中把正在说话的人换到当前页*/
+        RteEngineImpl.INSTANCE.enableAudioVolumeIndication(500, 3, false);
         layout_tab.addOnTabSelectedListener(this);
         userListFragment = new UserListFragment();
         getSupportFragmentManager().beginTransaction()
@@ -242,6 +246,14 @@ public class BreakoutClassActivity extends BaseClassActivity implements TabLayou
         super.renderStream(room, eduStreamInfo, viewGroup);
     }
 
+    @Override
+    public void subscribeListVideo(EduRoom room, EduStreamInfo eduStreamInfo, boolean subscribe) {
+        if (eduStreamInfo.getPublisher().getRole().equals(EduUserRole.STUDENT)) {
+            room = subEduRoom;
+        }
+        super.subscribeListVideo(room, eduStreamInfo, subscribe);
+    }
+
     /**
      * 获取当前所在 超级小班 的 小班级 中的所有学生的流
      */
@@ -272,28 +284,38 @@ public class BreakoutClassActivity extends BaseClassActivity implements TabLayou
         return list;
     }
 
-    private void showVideoList(List<EduStreamInfo> list) {
-        runOnUiThread(() -> {
-            for (int i = 0; i < list.size(); i++) {
-                EduStreamInfo streamInfo = list.get(i);
-                if (streamInfo.getPublisher().getRole().equals(EduUserRole.TEACHER)) {
-                    /*隐藏老师的占位布局*/
-                    layout_placeholder.setVisibility(View.GONE);
-                    if (i != 0) {
-                        Collections.swap(list, 0, i);
-                    }
-                    classVideoAdapter.setNewList(list);
-                    return;
+    @Override
+    protected void render(@NonNull ClassUiState state) {
+        super.render(state);
+        if (state.changed(ClassUiState.STREAMS)) {
+            showVideoList(state.getStreams());
+        }
+    }
+
+    /**
+     * 在主线程调用，老师的流放在第一位
+     */
+    private void showVideoList(List<EduStreamInfo> streams) {
+        List<EduStreamInfo> list = new ArrayList<>(streams);
+        for (int i = 0; i < list.size(); i++) {
+            EduStreamInfo streamInfo = list.get(i);
+            if (streamInfo.getPublisher().getRole().equals(EduUserRole.TEACHER)) {
+                /*隐藏老师的占位布局*/
+                layout_placeholder.setVisibility(View.GONE);
+                if (i != 0) {
+                    Collections.swap(list, 0, i);
                 }
+                classVideoAdapter.setNewList(list);
+                return;
             }
-            /*显示老师的占位布局*/
-            if (teacherPlaceholderView == null) {
-                teacherPlaceholderView = LayoutInflater.from(this).inflate(R.layout.layout_video_small_class,
-                        layout_placeholder);
-            }
-            layout_placeholder.setVisibility(View.VISIBLE);
-            classVideoAdapter.setNewList(list);
-        });
+        }
+        /*显示老师的占位布局*/
+        if (teacherPlaceholderView == null) {
+            teacherPlaceholderView = LayoutInflater.from(this).inflate(R.layout.layout_video_small_class,
+                    layout_placeholder);
+        }
+        layout_placeholder.setVisibility(View.VISIBLE);
+        classVideoAdapter.setNewList(list);
     }
 
     @OnClick(R.id.iv_float)
@@ -305,6 +327,7 @@ public class BreakoutClassActivity extends BaseClassActivity implements TabLayou
 
     @Override
     protected void onDestroy() {
+        RteEngineImpl.INSTANCE.setSpeakerReportListener(null);
         if (getMyMediaRoom() != null) {
             getMyMediaRoom().leave();
             subEduRoom = null;
@@ -312,6 +335,22 @@ public class BreakoutClassActivity extends BaseClassActivity implements TabLayou
         super.onDestroy();
     }
 
+    @Override
+    public void onAudioVolumeIndicationOfLocalSpeaker(@Nullable IRtcEngineEventHandler.AudioVolumeInfo[] speakers, int totalVolume) {
+    }
+
+    @Override
+    public void onAudioVolumeIndicationOfRemoteSpeaker(@Nullable IRtcEngineEventHandler.AudioVolumeInfo[] speakers, int totalVolume) {
+        if (speakers == null) {
+            return;
+        }
+        runOnUiThread(() -> {
+            for (IRtcEngineEventHandler.AudioVolumeInfo speaker : speakers) {
+                videoGallery.onSpeakerVolume(speaker.uid, speaker.volume);
+            }
+        });
+    }
+
     @Override
     public void onTabSelected(TabLayout.Tab tab) {
         FragmentTransaction transaction = getSupportFragmentManager().beginTransaction();
@@ -338,13 +377,12 @@ public class BreakoutClassActivity extends BaseClassActivity implements TabLayou
     public void onRemoteUsersInitialized(@NotNull List<? extends EduUserInfo> users, @NotNull EduRoom classRoom) {
         if (classRoom.equals(subEduRoom)) {
             /**判断大班级中的roomProperties中是否有白板信息，如果没有，发起请求,等待RTM通知*/
-            if (mainBoardBean == null) {
+            if (mainBoardInfo == null) {
                 Log.e(TAG, "请求大房间的白板信息");
                 requestBoardInfo((getMainEduRoom().getLocalUser().getUserInfo()).getUserToken(),
                         getAppId(), classRoom.getRoomInfo().getRoomUuid());
             } else {
-                BoardInfo info = mainBoardBean.getInfo();
-                BoardState state = mainBoardBean.getState();
+                EduBoardInfo info = mainBoardInfo;
                 runOnUiThread(() -> {
                     whiteboardFragment.initBoardWithRoomToken(info.getBoardId(),
                             info.getBoardToken(), getLocalUserInfo().getUserUuid());
@@ -358,18 +396,15 @@ public class BreakoutClassActivity extends BaseClassActivity implements TabLayou
 //                    }
                 });
             }
-            title_view.setTitle(String.format(Locale.getDefault(), "%s", getMediaRoomName()));
+            stateDispatcher.setUsers(getCurFullUser());
         } else {
-            EduRoomStatus roomStatus = getMainEduRoom().getRoomStatus();
-            title_view.setTimeState(roomStatus.getCourseState() == EduRoomState.START,
-                    System.currentTimeMillis() - roomStatus.getStartTime());
-            chatRoomFragment.setMuteAll(!roomStatus.isStudentChatAllowed());
+            stateDispatcher.setRoomStatus(getMainEduRoom().getRoomStatus());
             /**处理roomProperties*/
             Map<String, Object> roomProperties = classRoom.getRoomProperties();
-            String boardJson = getProperty(roomProperties, BOARD);
-            if (!TextUtils.isEmpty(boardJson)) {
-                Log.e(TAG, "大班级的白板信息已存在->" + boardJson);
-                mainBoardBean = new Gson().fromJson(boardJson, BoardBean.class);
+            EduBoardInfo boardInfo = classRoom.getBoard().getCurrentBoardInfo();
+            if (boardInfo != null) {
+                Log.e(TAG, "大班级的白板信息已存在->" + boardInfo);
+                mainBoardInfo = boardInfo;
             }
         }
     }
@@ -379,7 +414,6 @@ public class BreakoutClassActivity extends BaseClassActivity implements TabLayou
         super.onRemoteUsersJoined(users, classRoom);
         if (classRoom.equals(subEduRoom)) {
             userListFragment.setUserList(getCurAllStudentStream());
-            title_view.setTitle(String.format(Locale.getDefault(), "%s", getMediaRoomName()));
         }
     }
 
@@ -388,7 +422,6 @@ public class BreakoutClassActivity extends BaseClassActivity implements TabLayou
         super.onRemoteUserLeft(userEvent, classRoom);
         if (classRoom.equals(subEduRoom)) {
             userListFragment.setUserList(getCurAllStudentStream());
-            title_view.setTitle(String.format(Locale.getDefault(), "%s", getMediaRoomName()));
         }
     }
 
@@ -440,7 +473,7 @@ public class BreakoutClassActivity extends BaseClassActivity implements TabLayou
                 .getRoomInfo().getRoomUuid());
         boolean isGroupMsg = classRoom.equals(subEduRoom);
         if (isTeacherMsgToMain || isTeacherMsgToSub || isGroupMsg) {
-            chatRoomFragment.addMessage(chatMsg);
+            stateDispatcher.addChatMessage(chatMsg);
             Log.e(TAG, "成功添加一条聊天消息");
         }
     }
@@ -455,66 +488,21 @@ public class BreakoutClassActivity extends BaseClassActivity implements TabLayou
     @Override
     public void onRemoteStreamsInitialized(@NotNull List<? extends
             EduStreamInfo> streams, @NotNull EduRoom classRoom) {
+        /**屏幕分享和视频列表在render中处理；小组房间还没有加入成功时getCurFullStream只包含大房间的流*/
         super.onRemoteStreamsInitialized(streams, classRoom);
         if (classRoom.equals(subEduRoom)) {
             userListFragment.setLocalUserUuid(classRoom.getLocalUser().getUserInfo().getUserUuid());
             userListFragment.setUserList(getCurAllStudentStream());
-            showVideoList(getCurFullStream());
-        } else {
-            boolean notify = false;
-            for (EduStreamInfo streamInfo : streams) {
-                EduBaseUserInfo publisher = streamInfo.getPublisher();
-                if (publisher.getRole().equals(EduUserRole.TEACHER)) {
-                    switch (streamInfo.getVideoSourceType()) {
-                        case CAMERA:
-                            notify = true;
-                            break;
-                        case SCREEN:
-                            /*老师打开了屏幕分享，此时把这个流渲染出来*/
-                            runOnUiThread(() -> {
-                                layout_whiteboard.setVisibility(View.GONE);
-                                layout_share_video.setVisibility(View.VISIBLE);
-                                layout_share_video.removeAllViews();
-                                renderStream(getMainEduRoom(), streamInfo, layout_share_video);
-                            });
-                            break;
-                        default:
-                            break;
-                    }
-                }
-            }
-            if (notify) {
-                /*此时小组房间可能还没有加入成功，所以只刷新大房间的流*/
-                List<EduStreamInfo> list = getMainEduRoom().getFullStreamList();
-                showVideoList(list);
-            }
         }
     }
 
     @Override
     public void onRemoteStreamsAdded
             (@NotNull List<EduStreamEvent> streamEvents, @NotNull EduRoom classRoom) {
-        /**老师的屏幕分享流在super方法中处理*/
+        /**屏幕分享和视频列表在render中处理*/
         super.onRemoteStreamsAdded(streamEvents, classRoom);
-        /**处理摄像头流*/
-        boolean notify = false;
-        for (EduStreamEvent streamEvent : streamEvents) {
-            EduStreamInfo streamInfo = streamEvent.getModifiedStream();
-            switch (streamInfo.getVideoSourceType()) {
-                case CAMERA:
-                    notify = true;
-                    break;
-                default:
-                    break;
-            }
-        }
-        /**有远端Camera流添加，刷新视频列表*/
-        if (notify) {
-            Log.e(TAG, "有远端Camera流添加，刷新视频列表");
-            showVideoList(getCurFullStream());
-        }
         if (classRoom.equals(subEduRoom)) {
-            userListFragment.setUserList(getCurAllStudentStream());
+            userListFragment.onStreamsAdded(streamEvents);
         }
     }
 
@@ -522,52 +510,20 @@ public class BreakoutClassActivity extends BaseClassActivity implements TabLayou
     public void onRemoteStreamUpdated(@NotNull EduStreamEvent
                                               streamEvent, @NotNull EduStreamStateChangeType type,
                                       @NotNull EduRoom classRoom) {
-        /**老师的屏幕分享流在super方法中处理*/
+        /**屏幕分享和视频列表在render中处理*/
         super.onRemoteStreamUpdated(streamEvent, type, classRoom);
-        /**处理摄像头流*/
-        boolean notify = false;
-        EduStreamInfo streamInfo = streamEvent.getModifiedStream();
-        switch (streamInfo.getVideoSourceType()) {
-            case CAMERA:
-                notify = true;
-                break;
-            default:
-                break;
-        }
-        /**有远端Camera流添加，刷新视频列表*/
-        if (notify) {
-            Log.e(TAG, "有远端Camera流被修改，刷新视频列表");
-            showVideoList(getCurFullStream());
-        }
         if (classRoom.equals(subEduRoom)) {
-            userListFragment.setUserList(getCurAllStudentStream());
+            userListFragment.onStreamUpdated(streamEvent.getModifiedStream());
         }
     }
 
     @Override
     public void onRemoteStreamsRemoved
             (@NotNull List<EduStreamEvent> streamEvents, @NotNull EduRoom classRoom) {
-        /**老师的屏幕分享流在super方法中处理*/
+        /**屏幕分享和视频列表在render中处理*/
         super.onRemoteStreamsRemoved(streamEvents, classRoom);
-        /**处理摄像头流*/
-        boolean notify = false;
-        for (EduStreamEvent streamEvent : streamEvents) {
-            EduStreamInfo streamInfo = streamEvent.getModifiedStream();
-            switch (streamInfo.getVideoSourceType()) {
-                case CAMERA:
-                    notify = true;
-                    break;
-                default:
-                    break;
-            }
-        }
-        /**有远端Camera流被移除，刷新视频列表*/
-        if (notify) {
-            Log.e(TAG, "有远端Camera流被移除，刷新视频列表");
-            showVideoList(getCurFullStream());
-        }
         if (classRoom.equals(subEduRoom)) {
-            userListFragment.setUserList(getCurAllStudentStream());
+            userListFragment.onStreamsRemoved(streamEvents);
         }
     }
 
@@ -581,15 +537,11 @@ public class BreakoutClassActivity extends BaseClassActivity implements TabLayou
                 case CourseState:
                     Log.e(TAG, "班级:" + getMainEduRoom().getRoomInfo().getRoomUuid() + "内的课堂状态->"
                             + roomStatus.getCourseState());
-                    title_view.setTimeState(roomStatus.getCourseState() == EduRoomState.START,
-                            System.currentTimeMillis() - roomStatus.getStartTime());
-                    break;
-                case AllStudentsChat:
-                    chatRoomFragment.setMuteAll(!roomStatus.isStudentChatAllowed());
                     break;
                 default:
                     break;
             }
+            stateDispatcher.setRoomStatus(roomStatus);
         }
     }
 
@@ -599,17 +551,17 @@ public class BreakoutClassActivity extends BaseClassActivity implements TabLayou
         if (!classRoom.equals(subEduRoom)) {
             Log.e(TAG, "收到大房间的roomProperty改变的数据");
             Map<String, Object> roomProperties = classRoom.getRoomProperties();
-            String boardJson = getProperty(roomProperties, BOARD);
-            if (!TextUtils.isEmpty(boardJson) && mainBoardBean == null) {
-                Log.e(TAG, "首次获取到大房间的白板信息->" + boardJson);
+            EduBoardInfo boardInfo = classRoom.getBoard().getCurrentBoardInfo();
+            if (boardInfo != null && mainBoardInfo == null) {
+                Log.e(TAG, "首次获取到大房间的白板信息->" + boardInfo);
                 /**首次获取到白板信息*/
-                mainBoardBean = new Gson().fromJson(boardJson, BoardBean.class);
+                mainBoardInfo = boardInfo;
                 runOnUiThread(() -> {
-                    whiteboardFragment.initBoardWithRoomToken(mainBoardBean.getInfo().getBoardId(),
-                            mainBoardBean.getInfo().getBoardToken(), getLocalUserInfo().getUserUuid());
-//                    boolean follow = whiteBoardIsFollowMode(mainBoardBean.getState());
+                    whiteboardFragment.initBoardWithRoomToken(boardInfo.getBoardId(),
+                            boardInfo.getBoardToken(), getLocalUserInfo().getUserUuid());
+//                    boolean follow = boardInfo.getFollow();
 //                    whiteboardFragment.disableCameraTransform(follow);
-//                    boolean granted = whiteBoardIsGranted((mainBoardBean.getState()));
+//                    boolean granted = boardInfo.getGrantUsers().contains(getLocalUserInfo().getUserUuid());
 //                    whiteboardFragment.disableDeviceInputs(!granted);
 //                    if (follow) {
 //                        layout_whiteboard.setVisibility(View.VISIBLE);
@@ -627,7 +579,7 @@ public class BreakoutClassActivity extends BaseClassActivity implements TabLayou
                                 getLocalUserInfo(), getString(R.string.replay_link),
                                 EduChatMsgType.Text.getValue());
                         recordMsg.isMe = true;
-                        chatRoomFragment.addMessage(recordMsg);
+                        stateDispatcher.addChatMessage(recordMsg);
                     }
                 }
             }
@@ -645,10 +597,8 @@ public class BreakoutClassActivity extends BaseClassActivity implements TabLayou
     @Override
     public void onNetworkQualityChanged(@NotNull NetworkQuality quality, @NotNull EduUserInfo
             user, @NotNull EduRoom classRoom) {
+        /**super方法中只处理小组房间中本地用户的网络质量*/
         super.onNetworkQualityChanged(quality, user, classRoom);
-        if (classRoom.equals(subEduRoom)) {
-            title_view.setNetworkQuality(quality);
-        }
     }
 
     @Override
@@ -662,7 +612,6 @@ public class BreakoutClassActivity extends BaseClassActivity implements TabLayou
                                            userEvent, @NotNull EduUserStateChangeType type) {
         super.onLocalUserUpdated(userEvent, type);
         /**更新用户信息*/
-        showVideoList(getCurFullStream());
         userListFragment.updateLocalStream(getLocalCameraStream());
     }
 
@@ -675,7 +624,6 @@ public class BreakoutClassActivity extends BaseClassActivity implements TabLayou
     @Override
     public void onLocalStreamAdded(@NotNull EduStreamEvent streamEvent) {
         super.onLocalStreamAdded(streamEvent);
-        showVideoList(getCurFullStream());
         userListFragment.updateLocalStream(getLocalCameraStream());
     }
 
@@ -683,7 +631,6 @@ public class BreakoutClassActivity extends BaseClassActivity implements TabLayou
     public void onLocalStreamUpdated(@NotNull EduStreamEvent
                                              streamEvent, @NotNull EduStreamStateChangeType type) {
         super.onLocalStreamUpdated(streamEvent, type);
-        showVideoList(getCurFullStream());
         userListFragment.updateLocalStream(getLocalCameraStream());
     }
 
@@ -20,7 +20,6 @@ import org.jetbrains.annotations.NotNull;
 
 import java.util.Collections;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 
 import butterknife.BindView;
@@ -48,6 +47,7 @@ import io.agora.education.api.user.data.EduUserRole;
 import io.agora.education.api.user.data.EduUserStateChangeType;
 import io.agora.education.classroom.bean.channel.Room;
 import io.agora.education.classroom.bean.msg.PeerMsg;
+import io.agora.education.classroom.state.ClassUiState;
 import io.agora.education.classroom.widget.RtcVideoView;
 import io.agora.rtc.Constants;
 import io.agora.rte.RteEngineImpl;
@@ -93,8 +93,6 @@ public class LargeClassActivity extends BaseClassActivity implements TabLayout.O
      */
     private EduBaseUserInfo curLinkedUser;
 
-    private int unReadCount = 0;
-
     @Override
     protected int getLayoutResId() {
         Configuration configuration = getResources().getConfiguration();
@@ -163,6 +161,8 @@ public class LargeClassActivity extends BaseClassActivity implements TabLayout.O
             layout_tab.getTabAt(1).setCustomView(R.layout.layout_largeclass_chatroom);
             layout_unRead = findViewById(R.id.layout_unRead);
             textView_unRead = findViewById(R.id.textView_unRead);
+            /*未读数由聊天室按帧合并后回调*/
+            chatRoomFragment.setOnUnreadChangedListener(this::showUnReadCount);
         }
 
         // disable operation in large class
@@ -390,21 +390,10 @@ public class LargeClassActivity extends BaseClassActivity implements TabLayout.O
         });
     }
 
-    private boolean chatRoomShowing() {
-        return layout_chat_room.getVisibility() == View.VISIBLE;
-    }
-
-    private void updateUnReadCount(boolean gone) {
-        if (gone) {
-            unReadCount = 0;
-        } else {
-            unReadCount++;
-            if (textView_unRead != null) {
-                textView_unRead.setText(String.valueOf(unReadCount));
-            }
-        }
+    private void showUnReadCount(int count) {
         if (textView_unRead != null) {
-            textView_unRead.setVisibility(gone ? View.GONE : View.VISIBLE);
+            textView_unRead.setText(String.valueOf(count));
+            textView_unRead.setVisibility(count == 0 ? View.GONE : View.VISIBLE);
         }
     }
 
@@ -441,7 +430,7 @@ public class LargeClassActivity extends BaseClassActivity implements TabLayout.O
         layout_materials.setVisibility(showMaterials ? View.VISIBLE : View.GONE);
         layout_chat_room.setVisibility(showMaterials ? View.GONE : View.VISIBLE);
         if (!showMaterials) {
-            updateUnReadCount(true);
+            chatRoomFragment.clearUnread();
         }
     }
 
@@ -456,29 +445,33 @@ public class LargeClassActivity extends BaseClassActivity implements TabLayout.O
     }
 
 
+    @Override
+    protected void render(@NonNull ClassUiState state) {
+        super.render(state);
+        if (state.changed(ClassUiState.TEACHER_CAMERA)) {
+            renderTeacherCamera(video_teacher, state.getTeacherCameraStream());
+            /**刷新学生的流的显示层级*/
+            refreshStudentVideoZOrder();
+        }
+        if (state.changed(ClassUiState.USERS)) {
+            /**老师不在的时候不能举手*/
+            resetHandState();
+        }
+    }
+
     @Override
     public void onRemoteUsersInitialized(@NotNull List<? extends EduUserInfo> users, @NotNull EduRoom classRoom) {
         super.onRemoteUsersInitialized(users, classRoom);
-        title_view.setTitle(String.format(Locale.getDefault(), "%s", getMediaRoomName()));
-        /**老师不在的时候不能举手*/
-        resetHandState();
     }
 
     @Override
     public void onRemoteUsersJoined(@NotNull List<? extends EduUserInfo> users, @NotNull EduRoom classRoom) {
         super.onRemoteUsersJoined(users, classRoom);
-        title_view.setTitle(String.format(Locale.getDefault(), "%s", getMediaRoomName()));
-        /**老师不在的时候不能举手*/
-        resetHandState();
-
     }
 
     @Override
     public void onRemoteUserLeft(@NotNull EduUserEvent userEvent, @NotNull EduRoom classRoom) {
         super.onRemoteUserLeft(userEvent, classRoom);
-        title_view.setTitle(String.format(Locale.getDefault(), "%s", getMediaRoomName()));
-        /**老师不在的时候不能举手*/
-        resetHandState();
     }
 
     @Override
@@ -492,12 +485,6 @@ public class LargeClassActivity extends BaseClassActivity implements TabLayout.O
         super.onRoomMessageReceived(message, classRoom);
     }
 
-    @Override
-    public void onRoomChatMessageReceived(@NotNull EduChatMsg eduChatMsg, @NotNull EduRoom classRoom) {
-        super.onRoomChatMessageReceived(eduChatMsg, classRoom);
-        runOnUiThread(() -> updateUnReadCount(chatRoomShowing()));
-    }
-
     @Override
     public void onRemoteStreamsInitialized(@NotNull List<? extends EduStreamInfo> streams, @NotNull EduRoom classRoom) {
         super.onRemoteStreamsInitialized(streams, classRoom);
@@ -508,27 +495,10 @@ public class LargeClassActivity extends BaseClassActivity implements TabLayout.O
                 break;
             }
         }
-        /**大班课场景下，远端流可能包括老师和远端学生连麦的流*/
+        /**大班课场景下，远端流可能包括老师和远端学生连麦的流；老师的流在render中处理*/
         for (EduStreamInfo streamInfo : streams) {
             EduBaseUserInfo publisher = streamInfo.getPublisher();
-            if (publisher.getRole().equals(EduUserRole.TEACHER)) {
-                switch (streamInfo.getVideoSourceType()) {
-                    case CAMERA:
-                        video_teacher.setName(publisher.getUserName());
-                        renderStream(getMainEduRoom(), streamInfo, video_teacher.getVideoLayout());
-                        video_teacher.muteVideo(!streamInfo.getHasVideo());
-                        video_teacher.muteAudio(!streamInfo.getHasAudio());
-                        break;
-                    case SCREEN:
-                        layout_whiteboard.setVisibility(View.GONE);
-                        layout_share_video.setVisibility(View.VISIBLE);
-                        layout_share_video.removeAllViews();
-                        renderStream(getMainEduRoom(), streamInfo, layout_share_video);
-                        break;
-                    default:
-                        break;
-                }
-            } else {
+            if (!publisher.getRole().equals(EduUserRole.TEACHER)) {
                 Log.e(TAG, "发现有远端连麦流,立即渲染");
                 renderStudentStream(streamInfo, video_student.getVideoLayout());
                 curLinkedUser = streamInfo.getPublisher();
@@ -544,24 +514,8 @@ public class LargeClassActivity extends BaseClassActivity implements TabLayout.O
         for (EduStreamEvent streamEvent : streamEvents) {
             EduStreamInfo streamInfo = streamEvent.getModifiedStream();
             EduBaseUserInfo userInfo = streamInfo.getPublisher();
-            if (userInfo.getRole().equals(EduUserRole.TEACHER)) {
-                switch (streamInfo.getVideoSourceType()) {
-                    case CAMERA:
-                        /**老师的远端流*/
-                        video_teacher.setName(userInfo.getUserName());
-                        renderStream(getMainEduRoom(), streamInfo, video_teacher.getVideoLayout());
-//                        RteEngineImpl.INSTANCE.publish(getMediaRoomUuid());
-//                        new Handler(getMainLooper()).postDelayed(() ->
-//                                RteEngineImpl.INSTANCE.unpublish(getMediaRoomUuid()), 300);
-                        video_teacher.muteVideo(!streamInfo.getHasVideo());
-                        video_teacher.muteAudio(!streamInfo.getHasAudio());
-                        /**刷新学生的流的显示层级*/
-                        refreshStudentVideoZOrder();
-                        break;
-                    default:
-                        break;
-                }
-            } else {
+            /**老师的流在render中处理*/
+            if (!userInfo.getRole().equals(EduUserRole.TEACHER)) {
                 /**远端用户连麦时的流*/
                 renderStudentStream(streamInfo, video_student.getVideoLayout());
                 curLinkedUser = streamInfo.getPublisher();
@@ -578,20 +532,8 @@ public class LargeClassActivity extends BaseClassActivity implements TabLayout.O
         /**屏幕分享流暂时只有新建和移除，不会有修改行为，所以此处的流都是Camera类型的*/
         EduStreamInfo streamInfo = streamEvent.getModifiedStream();
         EduBaseUserInfo userInfo = streamInfo.getPublisher();
-        if (userInfo.getRole().equals(EduUserRole.TEACHER)) {
-            switch (streamInfo.getVideoSourceType()) {
-                case CAMERA:
-                    video_teacher.setName(userInfo.getUserName());
-                    renderStream(getMainEduRoom(), streamInfo, video_teacher.getVideoLayout());
-                    video_teacher.muteVideo(!streamInfo.getHasVideo());
-                    video_teacher.muteAudio(!streamInfo.getHasAudio());
-                    /**刷新学生的流的显示层级*/
-                    refreshStudentVideoZOrder();
-                    break;
-                default:
-                    break;
-            }
-        } else {
+        /**老师的流在render中处理*/
+        if (!userInfo.getRole().equals(EduUserRole.TEACHER)) {
             renderStudentStream(streamInfo, video_student.getVideoLayout());
             curLinkedUser = streamInfo.getPublisher();
             resetHandState();
@@ -605,18 +547,8 @@ public class LargeClassActivity extends BaseClassActivity implements TabLayout.O
         for (EduStreamEvent streamEvent : streamEvents) {
             EduStreamInfo streamInfo = streamEvent.getModifiedStream();
             EduBaseUserInfo userInfo = streamInfo.getPublisher();
-            if (userInfo.getRole().equals(EduUserRole.TEACHER)) {
-                switch (streamInfo.getVideoSourceType()) {
-                    case CAMERA:
-                        video_teacher.setName(streamInfo.getPublisher().getUserName());
-                        renderStream(getMainEduRoom(), streamInfo, null);
-                        video_teacher.muteVideo(!streamInfo.getHasVideo());
-                        video_teacher.muteAudio(!streamInfo.getHasAudio());
-                        break;
-                    default:
-                        break;
-                }
-            } else {
+            /**老师的流在render中处理*/
+            if (!userInfo.getRole().equals(EduUserRole.TEACHER)) {
                 renderStudentStream(streamInfo, null);
                 if (curLinkedUser != null && curLinkedUser.equals(streamInfo.getPublisher())) {
                     curLinkedUser = null;
@@ -631,18 +563,6 @@ public class LargeClassActivity extends BaseClassActivity implements TabLayout.O
         super.onRoomStatusChanged(event, operatorUser, classRoom);
     }
 
-    @Override
-    public void onRoomPropertyChanged(@NotNull EduRoom classRoom, @Nullable Map<String, Object> cause) {
-        super.onRoomPropertyChanged(classRoom, cause);
-        /*处理可能收到的录制的消息*/
-        runOnUiThread(() -> {
-            if (revRecordMsg) {
-                revRecordMsg = false;
-                updateUnReadCount(chatRoomShowing());
-            }
-        });
-    }
-
     @Override
     public void onRemoteUserPropertyUpdated(@NotNull EduUserInfo userInfos, @NotNull EduRoom classRoom,
                                             @Nullable Map<String, Object> cause) {
@@ -652,7 +572,6 @@ public class LargeClassActivity extends BaseClassActivity implements TabLayout.O
     public void onNetworkQualityChanged(@NotNull NetworkQuality quality, @NotNull EduUserInfo user,
                                         @NotNull EduRoom classRoom) {
         super.onNetworkQualityChanged(quality, user, classRoom);
-        title_view.setNetworkQuality(quality);
     }
 
     @Override
@@ -3,11 +3,12 @@ package io.agora.education.classroom;
 import android.util.Log;
 import android.view.View;
 
+import androidx.annotation.NonNull;
+
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 
 import butterknife.BindView;
@@ -28,6 +29,7 @@ import io.agora.education.api.user.data.EduUserEvent;
 import io.agora.education.api.user.data.EduUserInfo;
 import io.agora.education.api.user.data.EduUserStateChangeType;
 import io.agora.education.classroom.bean.channel.Room;
+import io.agora.education.classroom.state.ClassUiState;
 import io.agora.education.classroom.widget.RtcVideoView;
 
 
@@ -84,11 +86,21 @@ public class OneToOneClassActivity extends BaseClassActivity {
         layout_im.setVisibility(isSelected ? View.VISIBLE : View.GONE);
     }
 
+    @Override
+    protected void render(@NonNull ClassUiState state) {
+        super.render(state);
+        if (state.changed(ClassUiState.TEACHER_CAMERA)) {
+            /**一对一场景下，远端流就是老师的流*/
+            renderTeacherCamera(video_teacher, state.getTeacherCameraStream());
+        }
+        if (state.changed(ClassUiState.USERS)) {
+            video_student.setName(getLocalUserInfo().getUserName());
+        }
+    }
+
     @Override
     public void onRemoteUsersInitialized(@NotNull List<? extends EduUserInfo> users, @NotNull EduRoom classRoom) {
         super.onRemoteUsersInitialized(users, classRoom);
-        video_student.setName(getLocalUserInfo().getUserName());
-        title_view.setTitle(String.format(Locale.getDefault(), "%s", getMediaRoomName()));
 //        runOnUiThread(() -> {
 //            /**一对一，默认学生可以针对白板进行输入*/
 //            whiteboardFragment.disableCameraTransform(false);
@@ -99,13 +111,11 @@ public class OneToOneClassActivity extends BaseClassActivity {
     @Override
     public void onRemoteUsersJoined(@NotNull List<? extends EduUserInfo> users, @NotNull EduRoom classRoom) {
         super.onRemoteUsersJoined(users, classRoom);
-        title_view.setTitle(String.format(Locale.getDefault(), "%s", getMediaRoomName()));
     }
 
     @Override
     public void onRemoteUserLeft(@NotNull EduUserEvent userEvent, @NotNull EduRoom classRoom) {
         super.onRemoteUserLeft(userEvent, classRoom);
-        title_view.setTitle(String.format(Locale.getDefault(), "%s", getMediaRoomName()));
     }
 
     @Override
@@ -160,102 +170,23 @@ public class OneToOneClassActivity extends BaseClassActivity {
 //            video_teacher.muteVideo(!streamInfo.getHasVideo());
 //            video_teacher.muteAudio(!streamInfo.getHasAudio());
 //        }
-        for (EduStreamInfo streamInfo : streams) {
-            /**一对一场景下，远端流就是老师的流*/
-            switch (streamInfo.getVideoSourceType()) {
-                case CAMERA:
-                    video_teacher.setName(streamInfo.getPublisher().getUserName());
-                    renderStream(getMainEduRoom(), streamInfo, video_teacher.getVideoLayout());
-                    video_teacher.muteVideo(!streamInfo.getHasVideo());
-                    video_teacher.muteAudio(!streamInfo.getHasAudio());
-                    break;
-                case SCREEN:
-                    /**有屏幕分享的流进入，说明是老师打开了屏幕分享，此时把这个流渲染出来*/
-                    runOnUiThread(() -> {
-                        layout_whiteboard.setVisibility(View.GONE);
-                        layout_share_video.setVisibility(View.VISIBLE);
-                        layout_share_video.removeAllViews();
-                        renderStream(getMainEduRoom(), streamInfo, layout_share_video);
-                    });
-                    break;
-                default:
-                    break;
-            }
-        }
+        /**一对一场景下，远端流就是老师的流，在render中处理*/
     }
 
     @Override
     public void onRemoteStreamsAdded(@NotNull List<EduStreamEvent> streamEvents, @NotNull EduRoom classRoom) {
         super.onRemoteStreamsAdded(streamEvents, classRoom);
-        for (EduStreamEvent streamEvent : streamEvents) {
-            EduStreamInfo streamInfo = streamEvent.getModifiedStream();
-            /**一对一场景下，远端流就是老师的流*/
-            switch (streamInfo.getVideoSourceType()) {
-                case CAMERA:
-                    video_teacher.setName(streamInfo.getPublisher().getUserName());
-                    renderStream(getMainEduRoom(), streamInfo, video_teacher.getVideoLayout());
-                    video_teacher.muteVideo(!streamInfo.getHasVideo());
-                    video_teacher.muteAudio(!streamInfo.getHasAudio());
-                    break;
-//                case SCREEN:
-//                    /**有屏幕分享的流进入，说明是老师打开了屏幕分享，此时把这个流渲染出来*/
-//                    runOnUiThread(() -> {
-//                        layout_whiteboard.setVisibility(View.GONE);
-//                        layout_share_video.setVisibility(View.VISIBLE);
-//                        layout_share_video.removeAllViews();
-//                        renderStream(getMainEduRoom(), streamInfo, layout_share_video);
-//                    });
-//                    break;
-                default:
-                    break;
-            }
-        }
     }
 
     @Override
     public void onRemoteStreamUpdated(@NotNull EduStreamEvent streamEvent, @NotNull EduStreamStateChangeType type,
                                       @NotNull EduRoom classRoom) {
         super.onRemoteStreamUpdated(streamEvent, type, classRoom);
-        EduStreamInfo streamInfo = streamEvent.getModifiedStream();
-        switch (streamInfo.getVideoSourceType()) {
-            case CAMERA:
-                /**一对一场景下，远端流就是老师的流*/
-                video_teacher.setName(streamInfo.getPublisher().getUserName());
-                renderStream(getMainEduRoom(), streamInfo, video_teacher.getVideoLayout());
-                video_teacher.muteVideo(!streamInfo.getHasVideo());
-                video_teacher.muteAudio(!streamInfo.getHasAudio());
-                break;
-            default:
-                break;
-        }
     }
 
     @Override
     public void onRemoteStreamsRemoved(@NotNull List<EduStreamEvent> streamEvents, @NotNull EduRoom classRoom) {
         super.onRemoteStreamsRemoved(streamEvents, classRoom);
-        /**一对一场景下，远端流就是老师的流*/
-        for (EduStreamEvent streamEvent : streamEvents) {
-            EduStreamInfo streamInfo = streamEvent.getModifiedStream();
-            switch (streamInfo.getVideoSourceType()) {
-                case CAMERA:
-                    video_teacher.setName(streamInfo.getPublisher().getUserName());
-                    renderStream(getMainEduRoom(), streamInfo, null);
-                    video_teacher.muteVideo(!streamInfo.getHasVideo());
-                    video_teacher.muteAudio(!streamInfo.getHasAudio());
-                    break;
-//                case SCREEN:
-//                    /**老师关闭了屏幕分享，移除屏幕分享的布局*/
-//                    runOnUiThread(() -> {
-//                        layout_whiteboard.setVisibility(View.VISIBLE);
-//                        layout_share_video.setVisibility(View.GONE);
-//                        layout_share_video.removeAllViews();
-//                        renderStream(getMainEduRoom(), streamInfo, null);
-//                    });
-//                    break;
-                default:
-                    break;
-            }
-        }
     }
 
     @Override
@@ -283,7 +214,6 @@ public class OneToOneClassActivity extends BaseClassActivity {
     public void onNetworkQualityChanged(@NotNull NetworkQuality quality, @NotNull EduUserInfo user,
                                         @NotNull EduRoom classRoom) {
         super.onNetworkQualityChanged(quality, user, classRoom);
-        title_view.setNetworkQuality(quality);
     }
 
     @Override
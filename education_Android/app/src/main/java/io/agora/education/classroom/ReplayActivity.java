@@ -5,6 +5,7 @@ import android.os.Bundle;
 import android.text.TextUtils;
 import android.util.Log;
 import android.view.View;
+import android.webkit.URLUtil;
 
 import com.google.android.exoplayer2.ui.PlayerView;
 
@@ -14,6 +15,8 @@ import io.agora.education.BuildConfig;
 import io.agora.education.R;
 import io.agora.education.base.BaseActivity;
 import io.agora.education.classroom.fragment.ReplayBoardFragment;
+import io.agora.education.classroom.widget.player.ReplayDownloader;
+import io.agora.education.util.NetUtils;
 
 
 public class ReplayActivity extends BaseActivity {
@@ -34,6 +37,25 @@ public class ReplayActivity extends BaseActivity {
     private long startTime, endTime;
     private String boardId, boardToken;
     private boolean isInit;
+    /**
+     * 离线包的查找已经完成(url已替换为本地地址或确定没有离线包)，播放器在此之后才创建
+     */
+    private boolean bundleResolved;
+    private boolean playerStarted;
+    /**
+     * 没有离线包，播放结束后再在后台下载，避免与在线播放争抢带宽
+     */
+    private boolean downloadWhenEnded;
+
+    /**
+     * 录制返回的相对路径需要拼接回放地址
+     */
+    public static String resolveUrl(String url) {
+        if (!url.startsWith("http")) {
+            url = BuildConfig.REPLAY_BASE_URL.concat("/").concat(url);
+        }
+        return url;
+    }
 
     @Override
     protected int getLayoutResId() {
@@ -43,16 +65,54 @@ public class ReplayActivity extends BaseActivity {
     @Override
     protected void initData() {
         Intent intent = getIntent();
-        url = intent.getStringExtra(WHITEBOARD_URL);
-        if (!url.startsWith("http")) {
-            url = BuildConfig.REPLAY_BASE_URL.concat("/").concat(url);
-        }
+        url = resolveUrl(intent.getStringExtra(WHITEBOARD_URL));
         Log.e(TAG, "回放链接:" + url);
         roomId = intent.getStringExtra(WHITEBOARD_ROOM_ID);
         startTime = intent.getLongExtra(WHITEBOARD_START_TIME, 0);
         endTime = intent.getLongExtra(WHITEBOARD_END_TIME, 0);
         boardId = intent.getStringExtra(WHITEBOARD_ID);
         boardToken = intent.getStringExtra(WHITEBOARD_TOKEN);
+        useBundle();
+    }
+
+    /**
+     * 在后台查找离线包，已有时播放本地文件；否则在线播放，播放结束后再下载供下次观看使用
+     */
+    private void useBundle() {
+        if (!URLUtil.isNetworkUrl(url)) {
+            bundleResolved = true;
+            return;
+        }
+        ReplayDownloader.get(this).findBundle(url, bundle -> {
+            if (isDestroyed()) {
+                return;
+            }
+            if (bundle != null) {
+                Log.i(TAG, "离线回放:" + bundle);
+                url = bundle.getLocalUrl();
+            } else {
+                downloadWhenEnded = true;
+            }
+            bundleResolved = true;
+            startPlayer();
+        });
+    }
+
+    private void startPlayer() {
+        if (isInit && bundleResolved && !playerStarted) {
+            replayBoardFragment.setPlayer(video_view, url);
+            playerStarted = true;
+        }
+    }
+
+    /**
+     * 回放播放结束时由{@link ReplayBoardFragment}调用，在不计流量的网络下开始下载离线包
+     */
+    public void onReplayEnded() {
+        if (downloadWhenEnded && NetUtils.isConnected(this) && !NetUtils.isMetered(this)) {
+            downloadWhenEnded = false;
+            ReplayDownloader.get(this).download(url, roomId, boardId, boardToken, startTime, endTime);
+        }
     }
 
     @Override
@@ -76,8 +136,8 @@ public class ReplayActivity extends BaseActivity {
         super.onResumeFragments();
         if (!isInit) {
             replayBoardFragment.initReplayWithRoomToken(boardId, boardToken);
-            replayBoardFragment.setPlayer(video_view, url);
             isInit = true;
+            startPlayer();
         }
     }
 
@@ -18,9 +18,9 @@ import com.herewhite.sdk.domain.GlobalState;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 
 import butterknife.BindView;
@@ -46,6 +46,7 @@ import io.agora.education.classroom.adapter.ClassVideoAdapter;
 import io.agora.education.classroom.bean.board.BoardState;
 import io.agora.education.classroom.bean.channel.Room;
 import io.agora.education.classroom.fragment.UserListFragment;
+import io.agora.education.classroom.state.ClassUiState;
 import io.agora.rtc.IRtcEngineEventHandler;
 import io.agora.rtc.RtcChannel;
 import io.agora.rte.RteEngineImpl;
@@ -109,6 +110,7 @@ public class SmallClassActivity extends BaseClassActivity implements TabLayout.O
             }
         });
         rcv_videos.setAdapter(classVideoAdapter);
+        setupVideoGallery(rcv_videos, classVideoAdapter);
         layout_tab.addOnTabSelectedListener(this);
         userListFragment = new UserListFragment();
         getSupportFragmentManager().beginTransaction()
@@ -119,6 +121,8 @@ public class SmallClassActivity extends BaseClassActivity implements TabLayout.O
         RteEngineImpl.INSTANCE.setMediaDeviceListener(this);
         RteEngineImpl.INSTANCE.setAudioMixingListener(this);
         RteEngineImpl.INSTANCE.setSpeakerReportListener(this);
+        /**说话者的音量用于画廊模式中把正在说话的人换到当前页*/
+        RteEngineImpl.INSTANCE.enableAudioVolumeIndication(500, 3, false);
         findViewById(R.id.send1).setOnClickListener((v) -> {
 
         });
@@ -189,6 +193,14 @@ public class SmallClassActivity extends BaseClassActivity implements TabLayout.O
     @Override
     public void onAudioVolumeIndicationOfRemoteSpeaker(@Nullable IRtcEngineEventHandler.AudioVolumeInfo[] speakers, int totalVolume) {
         Log.e(TAG, "onAudioVolumeIndicationOfRemoteSpeaker->totalVolume:" + totalVolume);
+        if (speakers == null) {
+            return;
+        }
+        runOnUiThread(() -> {
+            for (IRtcEngineEventHandler.AudioVolumeInfo speaker : speakers) {
+                videoGallery.onSpeakerVolume(speaker.uid, speaker.volume);
+            }
+        });
     }
 
     @Override
@@ -206,19 +218,16 @@ public class SmallClassActivity extends BaseClassActivity implements TabLayout.O
         /*测试回调*/
         RteEngineImpl.INSTANCE.setStatisticsReportListener(classRoom.getRoomInfo().getRoomUuid(), this);
         super.onRemoteUsersInitialized(users, classRoom);
-        title_view.setTitle(String.format(Locale.getDefault(), "%s", getMediaRoomName()));
     }
 
     @Override
     public void onRemoteUsersJoined(@NotNull List<? extends EduUserInfo> users, @NotNull EduRoom classRoom) {
         super.onRemoteUsersJoined(users, classRoom);
-        title_view.setTitle(String.format(Locale.getDefault(), "%s", getMediaRoomName()));
     }
 
     @Override
     public void onRemoteUserLeft(@NotNull EduUserEvent userEvent, @NotNull EduRoom classRoom) {
         super.onRemoteUserLeft(userEvent, classRoom);
-        title_view.setTitle(String.format(Locale.getDefault(), "%s", getMediaRoomName()));
     }
 
     @Override
@@ -249,89 +258,29 @@ public class SmallClassActivity extends BaseClassActivity implements TabLayout.O
 
     @Override
     public void onRemoteStreamsInitialized(@NotNull List<? extends EduStreamInfo> streams, @NotNull EduRoom classRoom) {
+        /**屏幕分享和视频列表在render中处理*/
         super.onRemoteStreamsInitialized(streams, classRoom);
-        for (EduStreamInfo streamInfo : streams) {
-            switch (streamInfo.getVideoSourceType()) {
-                case SCREEN:
-                    runOnUiThread(() -> {
-                        layout_whiteboard.setVisibility(View.GONE);
-                        layout_share_video.setVisibility(View.VISIBLE);
-                        layout_share_video.removeAllViews();
-                        renderStream(getMainEduRoom(), streamInfo, layout_share_video);
-                    });
-                    break;
-                default:
-                    break;
-            }
-        }
         userListFragment.setLocalUserUuid(classRoom.getLocalUser().getUserInfo().getUserUuid());
         userListFragment.setUserList(getCurFullStream());
-        showVideoList(getCurFullStream());
     }
 
     @Override
     public void onRemoteStreamsAdded(@NotNull List<EduStreamEvent> streamEvents, @NotNull EduRoom classRoom) {
         super.onRemoteStreamsAdded(streamEvents, classRoom);
-        boolean notify = false;
-        for (EduStreamEvent streamEvent : streamEvents) {
-            EduStreamInfo streamInfo = streamEvent.getModifiedStream();
-            switch (streamInfo.getVideoSourceType()) {
-                case CAMERA:
-                    notify = true;
-                    break;
-                default:
-                    break;
-            }
-        }
-        /**有远端Camera流添加，刷新视频列表*/
-        if (notify) {
-            Log.e(TAG, "有远端Camera流添加，刷新视频列表");
-            showVideoList(getCurFullStream());
-        }
-        userListFragment.setUserList(getCurFullStream());
+        userListFragment.onStreamsAdded(streamEvents);
     }
 
     @Override
     public void onRemoteStreamUpdated(@NotNull EduStreamEvent streamEvent,
                                       @NotNull EduStreamStateChangeType type, @NotNull EduRoom classRoom) {
         super.onRemoteStreamUpdated(streamEvent, type, classRoom);
-        boolean notify = false;
-        EduStreamInfo streamInfo = streamEvent.getModifiedStream();
-        switch (streamInfo.getVideoSourceType()) {
-            case CAMERA:
-                notify = true;
-                break;
-            default:
-                break;
-        }
-        /**有远端Camera流添加，刷新视频列表*/
-        if (notify) {
-            Log.e(TAG, "有远端Camera流被修改，刷新视频列表");
-            showVideoList(getCurFullStream());
-        }
-        userListFragment.setUserList(getCurFullStream());
+        userListFragment.onStreamUpdated(streamEvent.getModifiedStream());
     }
 
     @Override
     public void onRemoteStreamsRemoved(@NotNull List<EduStreamEvent> streamEvents, @NotNull EduRoom classRoom) {
         super.onRemoteStreamsRemoved(streamEvents, classRoom);
-        boolean notify = false;
-        for (EduStreamEvent streamEvent : streamEvents) {
-            EduStreamInfo streamInfo = streamEvent.getModifiedStream();
-            switch (streamInfo.getVideoSourceType()) {
-                case CAMERA:
-                    notify = true;
-                    break;
-                default:
-                    break;
-            }
-        }
-        /**有远端Camera流被移除，刷新视频列表*/
-        if (notify) {
-            Log.e(TAG, "有远端Camera流被移除，刷新视频列表");
-            showVideoList(getCurFullStream());
-        }
-        userListFragment.setUserList(getCurFullStream());
+        userListFragment.onStreamsRemoved(streamEvents);
     }
 
     @Override
@@ -366,7 +315,6 @@ public class SmallClassActivity extends BaseClassActivity implements TabLayout.O
     public void onNetworkQualityChanged(@NotNull NetworkQuality quality, @NotNull EduUserInfo user,
                                         @NotNull EduRoom classRoom) {
         super.onNetworkQualityChanged(quality, user, classRoom);
-        title_view.setNetworkQuality(quality);
     }
 
     @Override
@@ -378,9 +326,7 @@ public class SmallClassActivity extends BaseClassActivity implements TabLayout.O
     public void onLocalUserUpdated(@NotNull EduUserEvent userEvent, @NotNull EduUserStateChangeType type) {
         super.onLocalUserUpdated(userEvent, type);
         /**更新用户信息*/
-        showVideoList(getCurFullStream());
         userListFragment.updateLocalStream(getLocalCameraStream());
-        userListFragment.setUserList(getCurFullStream());
     }
 
     @Override
@@ -391,17 +337,13 @@ public class SmallClassActivity extends BaseClassActivity implements TabLayout.O
     @Override
     public void onLocalStreamAdded(@NotNull EduStreamEvent streamEvent) {
         super.onLocalStreamAdded(streamEvent);
-        showVideoList(getCurFullStream());
         userListFragment.updateLocalStream(getLocalCameraStream());
-        userListFragment.setUserList(getCurFullStream());
     }
 
     @Override
     public void onLocalStreamUpdated(@NotNull EduStreamEvent streamEvent, @NotNull EduStreamStateChangeType type) {
         super.onLocalStreamUpdated(streamEvent, type);
-        showVideoList(getCurFullStream());
         userListFragment.updateLocalStream(getLocalCameraStream());
-        userListFragment.setUserList(getCurFullStream());
     }
 
     @Override
@@ -424,27 +366,37 @@ public class SmallClassActivity extends BaseClassActivity implements TabLayout.O
         userListFragment.setGrantedUuids(grantedUuids);
     }
 
-    private void showVideoList(List<EduStreamInfo> list) {
-        runOnUiThread(() -> {
-            for (int i = 0; i < list.size(); i++) {
-                EduStreamInfo streamInfo = list.get(i);
-                if (streamInfo.getPublisher().getRole().equals(EduUserRole.TEACHER)) {
-                    /*隐藏老师的占位布局*/
-                    layout_placeholder.setVisibility(View.GONE);
-                    if (i != 0) {
-                        Collections.swap(list, 0, i);
-                    }
-                    classVideoAdapter.setNewList(list);
-                    return;
+    @Override
+    protected void render(@NonNull ClassUiState state) {
+        super.render(state);
+        if (state.changed(ClassUiState.STREAMS)) {
+            showVideoList(state.getStreams());
+        }
+    }
+
+    /**
+     * 在主线程调用，老师的流放在第一位
+     */
+    private void showVideoList(List<EduStreamInfo> streams) {
+        List<EduStreamInfo> list = new ArrayList<>(streams);
+        for (int i = 0; i < list.size(); i++) {
+            EduStreamInfo streamInfo = list.get(i);
+            if (streamInfo.getPublisher().getRole().equals(EduUserRole.TEACHER)) {
+                /*隐藏老师的占位布局*/
+                layout_placeholder.setVisibility(View.GONE);
+                if (i != 0) {
+                    Collections.swap(list, 0, i);
                 }
+                classVideoAdapter.setNewList(list);
+                return;
             }
-            /*显示老师的占位布局*/
-            if (teacherPlaceholderView == null) {
-                teacherPlaceholderView = LayoutInflater.from(this).inflate(R.layout.layout_video_small_class,
-                        layout_placeholder);
-            }
-            layout_placeholder.setVisibility(View.VISIBLE);
-            classVideoAdapter.setNewList(list);
-        });
+        }
+        /*显示老师的占位布局*/
+        if (teacherPlaceholderView == null) {
+            teacherPlaceholderView = LayoutInflater.from(this).inflate(R.layout.layout_video_small_class,
+                    layout_placeholder);
+        }
+        layout_placeholder.setVisibility(View.VISIBLE);
+        classVideoAdapter.setNewList(list);
     }
 }
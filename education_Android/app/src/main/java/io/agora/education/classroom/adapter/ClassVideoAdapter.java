@@ -1,19 +1,19 @@
 package io.agora.education.classroom.adapter;
 
-import android.app.Activity;
 import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.AsyncListDiffer;
 import androidx.recyclerview.widget.DiffUtil;
-
-import com.chad.library.adapter.base.BaseQuickAdapter;
-import com.chad.library.adapter.base.viewholder.BaseViewHolder;
+import androidx.recyclerview.widget.RecyclerView;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 import io.agora.education.R;
 import io.agora.education.api.stream.data.EduStreamInfo;
@@ -21,102 +21,213 @@ import io.agora.education.api.stream.data.VideoSourceType;
 import io.agora.education.classroom.BaseClassActivity;
 import io.agora.education.classroom.widget.RtcVideoView;
 
-public class ClassVideoAdapter extends BaseQuickAdapter<EduStreamInfo, ClassVideoAdapter.ViewHolder> {
+/**
+ * 视频列表
+ * 列表差异在后台线程计算({@link AsyncListDiffer})，同一个流(streamUuid相同)始终使用同一个id；
+ * 流的音视频开关或名字变化时只做局部刷新，只有条目绑定到另一个流时才重新设置渲染。
+ * 设置了{@link VideoGallery}时只有当前页的条目渲染视频，其他条目显示占位布局；长按条目置顶该用户
+ */
+public class ClassVideoAdapter extends RecyclerView.Adapter<ClassVideoAdapter.ViewHolder> {
+    /**
+     * 局部刷新的内容
+     */
+    private static final int PAYLOAD_MEDIA = 1;
+    private static final int PAYLOAD_NAME = 1 << 1;
+    private static final int PAYLOAD_LIVE = 1 << 2;
+
+    private static final DiffUtil.ItemCallback<Tile> DIFF_CALLBACK = new DiffUtil.ItemCallback<Tile>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Tile oldItem, @NonNull Tile newItem) {
+            return oldItem.streamInfo.getStreamUuid().equals(newItem.streamInfo.getStreamUuid());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Tile oldItem, @NonNull Tile newItem) {
+            return changesOf(oldItem, newItem) == 0;
+        }
+
+        @Nullable
+        @Override
+        public Object getChangePayload(@NonNull Tile oldItem, @NonNull Tile newItem) {
+            return changesOf(oldItem, newItem);
+        }
+    };
+
+    /**
+     * 列表中的一个条目：流的快照和它是否在当前页
+     */
+    private static class Tile {
+        final EduStreamInfo streamInfo;
+        final boolean live;
+
+        Tile(EduStreamInfo streamInfo, boolean live) {
+            this.streamInfo = streamInfo;
+            this.live = live;
+        }
+    }
+
+    private final AsyncListDiffer<Tile> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
+    private VideoGallery gallery;
+    /**
+     * streamUuid对应的稳定id，只在主线程访问
+     */
+    private final Map<String, Long> itemIds = new HashMap<>();
+    private long nextItemId;
 
     public ClassVideoAdapter() {
-        super(0);
-        setDiffCallback(new DiffUtil.ItemCallback<EduStreamInfo>() {
-            @Override
-            public boolean areItemsTheSame(@NonNull EduStreamInfo oldItem, @NonNull EduStreamInfo newItem) {
-                return oldItem.getHasVideo() == newItem.getHasVideo()
-                        && oldItem.getHasAudio() == newItem.getHasAudio()
-                        && oldItem.getStreamUuid().equals(newItem.getStreamUuid())
-                        && oldItem.getStreamName().equals(newItem.getStreamName())
-                        && oldItem.getPublisher().equals(newItem.getPublisher())
-                        && oldItem.getVideoSourceType().equals(newItem.getVideoSourceType());
-            }
+        setHasStableIds(true);
+    }
 
-            @Override
-            public boolean areContentsTheSame(@NonNull EduStreamInfo oldItem, @NonNull EduStreamInfo newItem) {
-                return oldItem.getHasVideo() == newItem.getHasVideo()
-                        && oldItem.getHasAudio() == newItem.getHasAudio()
-                        && oldItem.getStreamUuid().equals(newItem.getStreamUuid())
-                        && oldItem.getStreamName().equals(newItem.getStreamName())
-                        && oldItem.getPublisher().equals(newItem.getPublisher())
-                        && oldItem.getVideoSourceType().equals(newItem.getVideoSourceType());
-            }
+    /**
+     * 使用画廊模式，之后由gallery决定列表的顺序和活动的条目
+     */
+    public void setGallery(@Nullable VideoGallery gallery) {
+        if (this.gallery != null) {
+            this.gallery.setListener(null);
+        }
+        this.gallery = gallery;
+        if (gallery != null) {
+            gallery.setListener(this::submit);
+        }
+    }
 
-            @Nullable
-            @Override
-            public Object getChangePayload(@NonNull EduStreamInfo oldItem, @NonNull EduStreamInfo newItem) {
-                if (oldItem.getHasVideo() == newItem.getHasVideo()
-                        && oldItem.getHasAudio() == newItem.getHasAudio()
-                        && oldItem.getStreamUuid().equals(newItem.getStreamUuid())
-                        && oldItem.getStreamName().equals(newItem.getStreamName())
-                        && oldItem.getPublisher().equals(newItem.getPublisher())
-                        && oldItem.getVideoSourceType().equals(newItem.getVideoSourceType())) {
-                    return true;
-                } else {
-                    return null;
-                }
-            }
-        });
+    private static int changesOf(Tile oldTile, Tile newTile) {
+        EduStreamInfo oldItem = oldTile.streamInfo;
+        EduStreamInfo newItem = newTile.streamInfo;
+        int changes = 0;
+        if (oldTile.live != newTile.live) {
+            changes |= PAYLOAD_LIVE;
+        }
+        if (oldItem.getHasVideo() != newItem.getHasVideo() || oldItem.getHasAudio() != newItem.getHasAudio()) {
+            changes |= PAYLOAD_MEDIA;
+        }
+        if (!Objects.equals(oldItem.getPublisher().getUserName(), newItem.getPublisher().getUserName())) {
+            changes |= PAYLOAD_NAME;
+        }
+        return changes;
     }
 
     @NonNull
     @Override
-    protected ViewHolder onCreateDefViewHolder(@NonNull ViewGroup parent, int viewType) {
-        RtcVideoView item = new RtcVideoView(getContext());
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        RtcVideoView item = new RtcVideoView(parent.getContext());
         item.init(R.layout.layout_video_small_class, false);
-        int width = getContext().getResources().getDimensionPixelSize(R.dimen.dp_95);
+        int width = parent.getResources().getDimensionPixelSize(R.dimen.dp_95);
         int height = parent.getHeight() - parent.getPaddingTop() - parent.getPaddingBottom();
         item.setLayoutParams(new ViewGroup.LayoutParams(width, height));
-        return new ViewHolder(item);
+        ViewHolder viewHolder = new ViewHolder(item);
+        item.setOnLongClickListener(v -> {
+            int position = viewHolder.getAdapterPosition();
+            if (gallery == null || position == RecyclerView.NO_POSITION) {
+                return false;
+            }
+            gallery.togglePin(getItem(position).getPublisher().getUserUuid());
+            return true;
+        });
+        return viewHolder;
     }
 
     @Override
-    protected void convert(@NonNull ViewHolder viewHolder, EduStreamInfo item, @NonNull List<?> payloads) {
-        super.convert(viewHolder, item, payloads);
-        if (payloads.size() > 0) {
-            viewHolder.convert(item);
+    public void onBindViewHolder(@NonNull ViewHolder viewHolder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(viewHolder, position);
+            return;
+        }
+        int changes = 0;
+        for (Object payload : payloads) {
+            changes |= (int) payload;
         }
+        viewHolder.update(differ.getCurrentList().get(position), changes);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder viewHolder, int position) {
+        viewHolder.update(differ.getCurrentList().get(position), PAYLOAD_MEDIA | PAYLOAD_NAME | PAYLOAD_LIVE);
     }
 
     @Override
-    protected void convert(@NonNull ViewHolder viewHolder, EduStreamInfo item) {
-        viewHolder.convert(item);
-        BaseClassActivity activity = ((BaseClassActivity) viewHolder.view.getContext());
-        activity.renderStream(activity.getMainEduRoom(), item, viewHolder.view.getVideoLayout());
+    public long getItemId(int position) {
+        String streamUuid = getItem(position).getStreamUuid();
+        Long id = itemIds.get(streamUuid);
+        if (id == null) {
+            id = nextItemId++;
+            itemIds.put(streamUuid, id);
+        }
+        return id;
+    }
+
+    @Override
+    public int getItemCount() {
+        return differ.getCurrentList().size();
+    }
+
+    public EduStreamInfo getItem(int position) {
+        return differ.getCurrentList().get(position).streamInfo;
     }
 
+    /**
+     * 在主线程调用，差异在后台计算完成后再刷新列表
+     */
     public void setNewList(@Nullable List<EduStreamInfo> data) {
-        ((Activity) getContext()).runOnUiThread(() -> {
-            List<EduStreamInfo> list = new ArrayList<>();
-            list.addAll(data);
-            /**过滤掉非Camera的流*/
-            Iterator<EduStreamInfo> streamInfoIterator = list.iterator();
-            while (streamInfoIterator.hasNext()) {
-                if (!streamInfoIterator.next().getVideoSourceType().equals(VideoSourceType.CAMERA)) {
-                    streamInfoIterator.remove();
+        List<EduStreamInfo> list = new ArrayList<>();
+        if (data != null) {
+            for (EduStreamInfo streamInfo : data) {
+                /**过滤掉非Camera的流；SDK会原地修改流信息，这里保存快照才能和上一次比较*/
+                if (streamInfo.getVideoSourceType().equals(VideoSourceType.CAMERA)) {
+                    list.add(streamInfo.copy());
                 }
             }
-            setDiffNewData(list);
-            notifyDataSetChanged();
-        });
+        }
+        if (gallery != null) {
+            gallery.setStreams(list);
+        } else {
+            submit(list, null);
+        }
+    }
+
+    /**
+     * @param liveStreams 需要渲染视频的流，为null时全部渲染
+     */
+    private void submit(List<EduStreamInfo> streams, @Nullable Set<String> liveStreams) {
+        List<Tile> tiles = new ArrayList<>(streams.size());
+        for (EduStreamInfo streamInfo : streams) {
+            tiles.add(new Tile(streamInfo, liveStreams == null || liveStreams.contains(streamInfo.getStreamUuid())));
+        }
+        differ.submitList(tiles);
     }
 
-    static class ViewHolder extends BaseViewHolder {
+    static class ViewHolder extends RecyclerView.ViewHolder {
         private RtcVideoView view;
+        /**
+         * 当前渲染的流
+         */
+        private String streamUuid;
 
         ViewHolder(RtcVideoView view) {
             super(view);
             this.view = view;
         }
 
-        void convert(EduStreamInfo item) {
-            view.muteVideo(!item.getHasVideo());
-            view.muteAudio(!item.getHasAudio());
-            view.setName(item.getPublisher().getUserName());
+        void update(Tile tile, int changes) {
+            EduStreamInfo item = tile.streamInfo;
+            if ((changes & PAYLOAD_LIVE) != 0) {
+                if (!tile.live) {
+                    /*不在当前页的流由VideoGallery取消订阅并解除渲染，这里只显示占位布局*/
+                    streamUuid = null;
+                } else if (!item.getStreamUuid().equals(streamUuid)) {
+                    /*同一个流的条目重新绑定时不再重建渲染*/
+                    streamUuid = item.getStreamUuid();
+                    BaseClassActivity activity = ((BaseClassActivity) view.getContext());
+                    activity.renderStream(activity.getMainEduRoom(), item, view.getVideoLayout());
+                }
+            }
+            if ((changes & (PAYLOAD_MEDIA | PAYLOAD_LIVE)) != 0) {
+                view.muteVideo(!tile.live || !item.getHasVideo());
+                view.muteAudio(!item.getHasAudio());
+            }
+            if ((changes & PAYLOAD_NAME) != 0) {
+                view.setName(item.getPublisher().getUserName());
+            }
         }
     }
 
@@ -1,39 +1,87 @@
 package io.agora.education.classroom.adapter;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.view.View;
 import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 
 import com.chad.library.adapter.base.BaseQuickAdapter;
 import com.chad.library.adapter.base.viewholder.BaseViewHolder;
-import com.google.gson.Gson;
-import com.google.gson.stream.JsonReader;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import butterknife.BindView;
 import butterknife.ButterKnife;
 import io.agora.education.R;
 import io.agora.education.api.stream.data.EduStreamInfo;
-import io.agora.education.api.user.EduUser;
+import io.agora.education.api.stream.data.VideoSourceType;
 import io.agora.education.api.user.data.EduBaseUserInfo;
-import io.agora.education.api.user.data.EduUserInfo;
-import io.agora.education.classroom.bean.channel.User;
+import io.agora.education.api.user.data.EduUserRole;
 
+/**
+ * 学生列表，每个学生对应一条摄像头流
+ * 维护userUuid到位置的索引，流的增删改和授权变化只刷新对应的条目；
+ * 全量列表在后台线程计算差异，期间收到的增量修改在差异应用之后再执行。所有方法都在主线程调用
+ */
 public class UserListAdapter extends BaseQuickAdapter<EduStreamInfo, UserListAdapter.ViewHolder> {
+    /**
+     * 局部刷新的内容
+     */
+    private static final int PAYLOAD_STREAM = 1;
+    private static final int PAYLOAD_GRANT = 1 << 1;
 
+    private static final ExecutorService DIFF_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "UserListDiff");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
     private String localUserUuid;
-    //    private EduStreamInfo localCameraStream;
-//    private int localUserIndex;
-    private List<String> grantedUuids = new ArrayList<>();
+    private Set<String> grantedUuids = new HashSet<>();
+    /**
+     * userUuid -> 在列表中的位置
+     */
+    private final Map<String, Integer> positions = new HashMap<>();
+    /**
+     * 每次提交全量列表加一，只应用最后一次提交的差异
+     */
+    private int generation;
+    private boolean diffing;
+    private final List<Runnable> pendingOps = new ArrayList<>();
+
+    public UserListAdapter() {
+        super(R.layout.item_user_list);
+        addChildClickViewIds(R.id.iv_btn_mute_audio, R.id.iv_btn_mute_video);
+    }
 
     public void setGrantedUuids(List<String> grantedUuids) {
-        if (grantedUuids != null && this.grantedUuids.equals(grantedUuids)) {
-            this.grantedUuids = grantedUuids;
-            notifyDataSetChanged();
+        Set<String> granted = grantedUuids == null ? new HashSet<>() : new HashSet<>(grantedUuids);
+        if (granted.equals(this.grantedUuids)) {
+            return;
+        }
+        Set<String> changed = new HashSet<>(granted);
+        changed.addAll(this.grantedUuids);
+        for (String uuid : granted) {
+            if (this.grantedUuids.contains(uuid)) {
+                changed.remove(uuid);
+            }
+        }
+        this.grantedUuids = granted;
+        for (String uuid : changed) {
+            notifyUserChanged(uuid, PAYLOAD_GRANT);
         }
     }
 
@@ -41,39 +89,164 @@ public class UserListAdapter extends BaseQuickAdapter<EduStreamInfo, UserListAda
         this.localUserUuid = localUserUuid;
     }
 
-    public void refreshStreamStatus(@NonNull EduStreamInfo streamInfo) {
-        List<EduStreamInfo> list = getData();
-        for (int i = 0; i < list.size(); i++) {
-            EduStreamInfo element = list.get(i);
-            if (element.same(streamInfo)) {
-                list.set(i, streamInfo);
-                notifyItemChanged(i);
-                break;
+    /**
+     * 学生的流被添加或修改，不在列表中时添加(本地用户在第一位，其他人在末尾)
+     */
+    public void upsertStream(@NonNull EduStreamInfo streamInfo) {
+        if (diffing) {
+            pendingOps.add(() -> upsertStream(streamInfo));
+            return;
+        }
+        EduStreamInfo snapshot = streamInfo.copy();
+        String uuid = snapshot.getPublisher().getUserUuid();
+        Integer position = positions.get(uuid);
+        if (position != null) {
+            getData().set(position, snapshot);
+            notifyItemChanged(position + getHeaderLayoutCount(), PAYLOAD_STREAM);
+        } else if (uuid.equals(localUserUuid)) {
+            getData().add(0, snapshot);
+            reindex(0);
+            notifyItemInserted(getHeaderLayoutCount());
+        } else {
+            getData().add(snapshot);
+            positions.put(uuid, getData().size() - 1);
+            notifyItemInserted(getData().size() - 1 + getHeaderLayoutCount());
+        }
+    }
+
+    public void removeUser(@NonNull String userUuid) {
+        if (diffing) {
+            pendingOps.add(() -> removeUser(userUuid));
+            return;
+        }
+        Integer position = positions.remove(userUuid);
+        if (position == null) {
+            return;
+        }
+        getData().remove((int) position);
+        reindex(position);
+        notifyItemRemoved(position + getHeaderLayoutCount());
+    }
+
+    /**
+     * 列表中只显示学生的摄像头流
+     */
+    public static boolean accept(@NonNull EduStreamInfo streamInfo) {
+        return streamInfo.getPublisher().getRole().equals(EduUserRole.STUDENT) &&
+                streamInfo.getVideoSourceType().equals(VideoSourceType.CAMERA);
+    }
+
+    /**
+     * 提交房间内的全部流，在后台过滤、排序(本地用户在第一位)并计算与当前列表的差异
+     */
+    public void submitList(@NonNull List<EduStreamInfo> streams) {
+        int gen = ++generation;
+        diffing = true;
+        List<EduStreamInfo> oldList = new ArrayList<>(getData());
+        String localUuid = localUserUuid;
+        DIFF_EXECUTOR.execute(() -> {
+            List<EduStreamInfo> newList = new ArrayList<>(streams.size());
+            for (EduStreamInfo streamInfo : streams) {
+                if (!accept(streamInfo)) {
+                    continue;
+                }
+                if (streamInfo.getPublisher().getUserUuid().equals(localUuid)) {
+                    newList.add(0, streamInfo.copy());
+                } else {
+                    newList.add(streamInfo.copy());
+                }
             }
+            DiffUtil.DiffResult result = DiffUtil.calculateDiff(new DiffCallback(oldList, newList));
+            handler.post(() -> {
+                if (gen != generation) {
+                    return;
+                }
+                getData().clear();
+                getData().addAll(newList);
+                positions.clear();
+                reindex(0);
+                result.dispatchUpdatesTo(this);
+                diffing = false;
+                List<Runnable> ops = new ArrayList<>(pendingOps);
+                pendingOps.clear();
+                for (Runnable op : ops) {
+                    op.run();
+                }
+            });
+        });
+    }
+
+    private void reindex(int from) {
+        List<EduStreamInfo> list = getData();
+        for (int i = from; i < list.size(); i++) {
+            positions.put(list.get(i).getPublisher().getUserUuid(), i);
         }
     }
 
-    public UserListAdapter() {
-        super(R.layout.item_user_list);
-        addChildClickViewIds(R.id.iv_btn_mute_audio, R.id.iv_btn_mute_video);
+    private void notifyUserChanged(String userUuid, int payload) {
+        Integer position = positions.get(userUuid);
+        if (position != null) {
+            notifyItemChanged(position + getHeaderLayoutCount(), payload);
+        }
+    }
+
+    @Override
+    protected void convert(@NonNull ViewHolder viewHolder, EduStreamInfo streamInfo, @NonNull List<?> payloads) {
+        int changes = 0;
+        for (Object payload : payloads) {
+            if (payload instanceof Integer) {
+                changes |= (int) payload;
+            }
+        }
+        viewHolder.update(streamInfo, changes, grantedUuids);
     }
 
     @Override
     protected void convert(@NonNull ViewHolder viewHolder, EduStreamInfo streamInfo) {
         EduBaseUserInfo userInfo = streamInfo.getPublisher();
         viewHolder.tv_name.setText(userInfo.getUserName());
-        viewHolder.iv_btn_grant_board.setSelected(grantedUuids.contains(userInfo.getUserUuid()));
-        viewHolder.iv_btn_mute_audio.setSelected(streamInfo.getHasAudio());
-        viewHolder.iv_btn_mute_video.setSelected(streamInfo.getHasVideo());
+        viewHolder.update(streamInfo, PAYLOAD_STREAM | PAYLOAD_GRANT, grantedUuids);
         boolean isLocal = userInfo.getUserUuid().equals(localUserUuid);
         viewHolder.iv_btn_mute_audio.setEnabled(isLocal);
         viewHolder.iv_btn_mute_video.setEnabled(isLocal);
-        if (!isLocal) {
-            viewHolder.iv_btn_mute_audio.setAlpha(0.5f);
-            viewHolder.iv_btn_mute_video.setAlpha(0.5f);
-        }
+        viewHolder.iv_btn_mute_audio.setAlpha(isLocal ? 1f : 0.5f);
+        viewHolder.iv_btn_mute_video.setAlpha(isLocal ? 1f : 0.5f);
     }
 
+    private static class DiffCallback extends DiffUtil.Callback {
+        private final List<EduStreamInfo> oldList;
+        private final List<EduStreamInfo> newList;
+
+        DiffCallback(List<EduStreamInfo> oldList, List<EduStreamInfo> newList) {
+            this.oldList = oldList;
+            this.newList = newList;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldList.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newList.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldList.get(oldItemPosition).getPublisher().getUserUuid()
+                    .equals(newList.get(newItemPosition).getPublisher().getUserUuid());
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            EduStreamInfo oldItem = oldList.get(oldItemPosition);
+            EduStreamInfo newItem = newList.get(newItemPosition);
+            return oldItem.getHasAudio() == newItem.getHasAudio()
+                    && oldItem.getHasVideo() == newItem.getHasVideo()
+                    && Objects.equals(oldItem.getPublisher().getUserName(), newItem.getPublisher().getUserName());
+        }
+    }
 
     static class ViewHolder extends BaseViewHolder {
         @BindView(R.id.tv_name)
@@ -89,6 +262,16 @@ public class UserListAdapter extends BaseQuickAdapter<EduStreamInfo, UserListAda
             super(itemView);
             ButterKnife.bind(this, itemView);
         }
+
+        void update(EduStreamInfo streamInfo, int changes, Set<String> grantedUuids) {
+            if ((changes & PAYLOAD_STREAM) != 0) {
+                iv_btn_mute_audio.setSelected(streamInfo.getHasAudio());
+                iv_btn_mute_video.setSelected(streamInfo.getHasVideo());
+            }
+            if ((changes & PAYLOAD_GRANT) != 0) {
+                iv_btn_grant_board.setSelected(grantedUuids.contains(streamInfo.getPublisher().getUserUuid()));
+            }
+        }
     }
 
 }
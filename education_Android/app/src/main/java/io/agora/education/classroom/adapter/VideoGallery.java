@@ -0,0 +1,238 @@
+package io.agora.education.classroom.adapter;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import io.agora.education.api.stream.data.EduStreamInfo;
+
+/**
+ * 视频列表的画廊模式
+ * 列表按pageSize个条目分页，同一时间只有当前页的视频是活动的：渲染画面并订阅视频；其他条目只显示名字和占位图，并取消订阅视频。
+ * 排序：置顶的用户在最前面，其余保持原顺序；正在说话的人不在当前页时临时换到当前页的最后一个位置。
+ * 所有方法都在主线程调用
+ */
+public class VideoGallery {
+    /**
+     * 同时渲染视频的条目上限
+     */
+    public static final int MAX_PAGE_SIZE = 6;
+    /**
+     * 音量超过该值视为在说话
+     */
+    private static final int SPEAKING_VOLUME = 30;
+    /**
+     * 说话者安静这么久之后不再占用当前页的位置
+     */
+    private static final long SPEAKER_HOLD_MS = 3000;
+
+    public interface Subscriber {
+        /**
+         * 流进入或离开当前页时调用，订阅或取消订阅它的视频
+         */
+        void subscribeVideo(@NonNull EduStreamInfo streamInfo, boolean subscribe);
+    }
+
+    public interface Listener {
+        /**
+         * 排序或当前页变化时调用
+         *
+         * @param streams     排序后的全部流
+         * @param liveStreams 当前页中流的streamUuid
+         */
+        void onArranged(@NonNull List<EduStreamInfo> streams, @NonNull Set<String> liveStreams);
+    }
+
+    private final int pageSize;
+    private final Subscriber subscriber;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private Listener listener;
+
+    private List<EduStreamInfo> streams = new ArrayList<>();
+    private final Set<String> pinnedUsers = new LinkedHashSet<>();
+    private int page;
+    private String speakerStreamUuid;
+    private long speakerTime;
+    /**
+     * 已经取消订阅视频的流；SDK默认订阅所有远端流
+     */
+    private final Set<String> unsubscribed = new HashSet<>();
+    private final Runnable speakerTimeout = this::arrange;
+
+    public VideoGallery(@NonNull Subscriber subscriber) {
+        this(MAX_PAGE_SIZE, subscriber);
+    }
+
+    /**
+     * @param pageSize 每页的条目数，不超过{@link #MAX_PAGE_SIZE}
+     */
+    public VideoGallery(int pageSize, @NonNull Subscriber subscriber) {
+        this.pageSize = Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+        this.subscriber = subscriber;
+    }
+
+    void setListener(@Nullable Listener listener) {
+        this.listener = listener;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public int getPageCount() {
+        return Math.max(1, (streams.size() + pageSize - 1) / pageSize);
+    }
+
+    /**
+     * 列表中的位置所在的页
+     */
+    public int pageOf(int position) {
+        return Math.max(0, position) / pageSize;
+    }
+
+    /**
+     * 当前页第一个条目在列表中的位置
+     */
+    public int firstPositionOf(int page) {
+        return page * pageSize;
+    }
+
+    public void setPage(int page) {
+        page = Math.max(0, Math.min(page, getPageCount() - 1));
+        if (page != this.page) {
+            this.page = page;
+            arrange();
+        }
+    }
+
+    public boolean isPinned(@NonNull String userUuid) {
+        return pinnedUsers.contains(userUuid);
+    }
+
+    /**
+     * 置顶或取消置顶一个用户，置顶的用户排在最前面
+     */
+    public void togglePin(@NonNull String userUuid) {
+        if (!pinnedUsers.remove(userUuid)) {
+            pinnedUsers.add(userUuid);
+        }
+        arrange();
+    }
+
+    /**
+     * 远端用户的音量，uid为流的streamUuid对应的RTC uid
+     */
+    public void onSpeakerVolume(int uid, int volume) {
+        if (uid == 0 || volume < SPEAKING_VOLUME) {
+            return;
+        }
+        for (EduStreamInfo streamInfo : streams) {
+            if (uidOf(streamInfo) == uid) {
+                boolean changed = !streamInfo.getStreamUuid().equals(speakerStreamUuid);
+                speakerStreamUuid = streamInfo.getStreamUuid();
+                speakerTime = SystemClock.elapsedRealtime();
+                handler.removeCallbacks(speakerTimeout);
+                handler.postDelayed(speakerTimeout, SPEAKER_HOLD_MS);
+                if (changed) {
+                    arrange();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * 设置全部流(已排好的原始顺序)
+     */
+    public void setStreams(@NonNull List<EduStreamInfo> streams) {
+        this.streams = new ArrayList<>(streams);
+        arrange();
+    }
+
+    public void release() {
+        handler.removeCallbacks(speakerTimeout);
+        listener = null;
+    }
+
+    private void arrange() {
+        List<EduStreamInfo> ordered = new ArrayList<>(streams.size());
+        for (EduStreamInfo streamInfo : streams) {
+            if (pinnedUsers.contains(streamInfo.getPublisher().getUserUuid())) {
+                ordered.add(streamInfo);
+            }
+        }
+        int pinnedCount = ordered.size();
+        for (EduStreamInfo streamInfo : streams) {
+            if (!pinnedUsers.contains(streamInfo.getPublisher().getUserUuid())) {
+                ordered.add(streamInfo);
+            }
+        }
+        page = Math.min(page, getPageCount() - 1);
+        int from = firstPositionOf(page);
+        int to = Math.min(ordered.size(), from + pageSize);
+
+        if (speakerStreamUuid != null && SystemClock.elapsedRealtime() - speakerTime >= SPEAKER_HOLD_MS) {
+            speakerStreamUuid = null;
+        }
+        /*说话者换到当前页的最后一个位置，该位置是置顶用户时不替换*/
+        if (speakerStreamUuid != null && to > from && to - 1 >= pinnedCount) {
+            for (int i = 0; i < ordered.size(); i++) {
+                if (ordered.get(i).getStreamUuid().equals(speakerStreamUuid)) {
+                    if (i < from || i >= to) {
+                        Collections.swap(ordered, i, to - 1);
+                    }
+                    break;
+                }
+            }
+        }
+
+        Set<String> live = new HashSet<>();
+        for (int i = from; i < to; i++) {
+            live.add(ordered.get(i).getStreamUuid());
+        }
+        Set<String> present = new HashSet<>();
+        for (EduStreamInfo streamInfo : ordered) {
+            String streamUuid = streamInfo.getStreamUuid();
+            present.add(streamUuid);
+            if (live.contains(streamUuid)) {
+                if (unsubscribed.remove(streamUuid)) {
+                    subscriber.subscribeVideo(streamInfo, true);
+                }
+            } else if (unsubscribed.add(streamUuid)) {
+                subscriber.subscribeVideo(streamInfo, false);
+            }
+        }
+        /*已经离开的流，再次出现时按新流处理*/
+        for (Iterator<String> iterator = unsubscribed.iterator(); iterator.hasNext(); ) {
+            if (!present.contains(iterator.next())) {
+                iterator.remove();
+            }
+        }
+        if (listener != null) {
+            listener.onArranged(ordered, live);
+        }
+    }
+
+    private static int uidOf(EduStreamInfo streamInfo) {
+        try {
+            return (int) (Long.parseLong(streamInfo.getStreamUuid()) & 0xffffffffL);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
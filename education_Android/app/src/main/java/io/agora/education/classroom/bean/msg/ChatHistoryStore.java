@@ -0,0 +1,240 @@
+package io.agora.education.classroom.bean.msg;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import io.agora.education.api.user.data.EduUserInfo;
+import io.agora.education.api.user.data.EduUserRole;
+import io.agora.education.classroom.bean.record.RecordMsg;
+
+/**
+ * 移出聊天列表的历史消息，按页写入磁盘
+ * 每次移出的消息保存为一页，加载时从最近移出的一页开始；读写都在同一个后台线程中按顺序执行。
+ * 每个实例使用cacheDir/chat下的一个随机目录，进程崩溃时来不及release的目录在下次创建实例时删除
+ */
+public class ChatHistoryStore {
+    private static final String TAG = "ChatHistoryStore";
+    private static final String DIR = "chat";
+    /**
+     * 本进程中还在使用的目录名，不在其中的目录都是之前的进程遗留的
+     */
+    private static final Set<String> sOpenDirs = new HashSet<>();
+
+    public interface Callback {
+        /**
+         * 在主线程回调，读取失败时为空列表
+         */
+        void onLoaded(@NonNull List<ChannelMsg.ChatMsg> msgs);
+    }
+
+    /**
+     * 磁盘上保存的消息，只保留显示需要的字段
+     */
+    private static class Entry {
+        String userUuid;
+        String userName;
+        int userRole;
+        String message;
+        int type;
+        boolean isMe;
+        boolean showRole;
+        String role;
+        /**
+         * 录制消息所属的房间，非录制消息为null
+         */
+        String recordRoomUuid;
+    }
+
+    private final File dir;
+    private final Gson gson = new Gson();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, TAG);
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * 已写入的页序号，栈顶为最近移出的一页
+     */
+    private final Deque<Integer> pages = new ArrayDeque<>();
+    private int nextPage;
+
+    public ChatHistoryStore(@NonNull Context context) {
+        File root = new File(context.getCacheDir(), DIR);
+        dir = new File(root, UUID.randomUUID().toString());
+        synchronized (sOpenDirs) {
+            sOpenDirs.add(dir.getName());
+        }
+        executor.execute(() -> pruneStale(root));
+    }
+
+    /**
+     * 删除不属于本进程中任何实例的目录
+     */
+    private static void pruneStale(File root) {
+        File[] dirs = root.listFiles();
+        if (dirs == null) {
+            return;
+        }
+        for (File stale : dirs) {
+            synchronized (sOpenDirs) {
+                if (sOpenDirs.contains(stale.getName())) {
+                    continue;
+                }
+            }
+            delete(stale);
+        }
+    }
+
+    private static void delete(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    public synchronized boolean hasMore() {
+        return !pages.isEmpty();
+    }
+
+    /**
+     * 保存一页移出列表的消息(按时间顺序)
+     */
+    public void push(@NonNull List<ChannelMsg.ChatMsg> msgs) {
+        if (msgs.isEmpty()) {
+            return;
+        }
+        List<Entry> entries = new ArrayList<>(msgs.size());
+        for (ChannelMsg.ChatMsg msg : msgs) {
+            entries.add(toEntry(msg));
+        }
+        int page;
+        synchronized (this) {
+            page = nextPage++;
+            pages.push(page);
+        }
+        executor.execute(() -> {
+            dir.mkdirs();
+            try (Writer writer = new FileWriter(fileOf(page))) {
+                gson.toJson(entries, writer);
+            } catch (Exception e) {
+                Log.w(TAG, "write page " + page + " failed", e);
+            }
+        });
+    }
+
+    /**
+     * 取出最近移出的一页，没有时回调空列表
+     */
+    public void pop(@NonNull Callback callback) {
+        Integer page;
+        synchronized (this) {
+            page = pages.poll();
+        }
+        if (page == null) {
+            callback.onLoaded(Collections.emptyList());
+            return;
+        }
+        executor.execute(() -> {
+            List<ChannelMsg.ChatMsg> msgs = new ArrayList<>();
+            File file = fileOf(page);
+            try (Reader reader = new FileReader(file)) {
+                List<Entry> entries = gson.fromJson(reader, new TypeToken<List<Entry>>() {
+                }.getType());
+                if (entries != null) {
+                    for (Entry entry : entries) {
+                        msgs.add(fromEntry(entry));
+                    }
+                }
+            } catch (Exception e) {
+                Log.w(TAG, "read page " + page + " failed", e);
+            }
+            file.delete();
+            handler.post(() -> callback.onLoaded(msgs));
+        });
+    }
+
+    /**
+     * 删除全部历史，之后不能再使用
+     */
+    public void release() {
+        synchronized (this) {
+            pages.clear();
+        }
+        executor.execute(() -> {
+            delete(dir);
+            synchronized (sOpenDirs) {
+                sOpenDirs.remove(dir.getName());
+            }
+        });
+        executor.shutdown();
+    }
+
+    private File fileOf(int page) {
+        return new File(dir, page + ".json");
+    }
+
+    private static Entry toEntry(ChannelMsg.ChatMsg msg) {
+        Entry entry = new Entry();
+        EduUserInfo user = msg.getFromUser();
+        entry.userUuid = user.getUserUuid();
+        entry.userName = user.getUserName();
+        entry.userRole = user.getRole().getValue();
+        entry.message = msg.getMessage();
+        entry.type = msg.getType();
+        entry.isMe = msg.isMe;
+        entry.showRole = msg.showRole;
+        entry.role = msg.role;
+        if (msg instanceof RecordMsg) {
+            entry.recordRoomUuid = ((RecordMsg) msg).getRoomUuid();
+        }
+        return entry;
+    }
+
+    private static ChannelMsg.ChatMsg fromEntry(Entry entry) {
+        EduUserRole role = EduUserRole.EduRoleTypeInvalid;
+        for (EduUserRole value : EduUserRole.values()) {
+            if (value.getValue() == entry.userRole) {
+                role = value;
+                break;
+            }
+        }
+        EduUserInfo user = new EduUserInfo(entry.userUuid, entry.userName, role, null);
+        ChannelMsg.ChatMsg msg;
+        if (entry.recordRoomUuid != null) {
+            msg = new RecordMsg(entry.recordRoomUuid, user, entry.message, entry.type);
+        } else {
+            msg = new ChannelMsg.ChatMsg(user, entry.message, entry.type, entry.showRole, entry.role);
+        }
+        msg.isMe = entry.isMe;
+        msg.showRole = entry.showRole;
+        msg.role = entry.role;
+        return msg;
+    }
+}
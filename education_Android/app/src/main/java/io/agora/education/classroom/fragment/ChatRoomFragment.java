@@ -1,11 +1,15 @@
 package io.agora.education.classroom.fragment;
 
 import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
 import android.text.TextUtils;
+import android.view.Choreographer;
 import android.view.KeyEvent;
 import android.view.View;
 import android.widget.EditText;
 
+import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
@@ -19,27 +23,41 @@ import java.util.List;
 
 import butterknife.BindView;
 import io.agora.base.ToastManager;
-import io.agora.base.network.RetrofitManager;
 import io.agora.education.BuildConfig;
-import io.agora.education.EduApplication;
 import io.agora.education.R;
 import io.agora.education.api.EduCallback;
 import io.agora.education.api.message.EduChatMsg;
 import io.agora.education.api.message.EduChatMsgType;
-import io.agora.education.base.BaseCallback;
+import io.agora.education.api.record.data.EduRecordDetail;
+import io.agora.education.api.room.EduRoom;
 import io.agora.education.base.BaseFragment;
 import io.agora.education.classroom.BaseClassActivity;
 import io.agora.education.classroom.ReplayActivity;
 import io.agora.education.classroom.adapter.MessageListAdapter;
 import io.agora.education.classroom.bean.msg.ChannelMsg;
+import io.agora.education.classroom.bean.msg.ChatHistoryStore;
 import io.agora.education.classroom.bean.record.RecordMsg;
-import io.agora.education.service.RecordService;
-import io.agora.education.service.bean.response.RecordRes;
-
-import static io.agora.education.api.BuildConfig.API_BASE_URL;
+import io.agora.education.classroom.widget.player.ReplayCache;
 
+/**
+ * 聊天室
+ * 收到的消息先进入队列，每帧统一插入列表一次；列表中最多保留{@link #MAX_WINDOW}条消息，
+ * 更早的消息移入{@link ChatHistoryStore}，滑到顶部时再按页加载回来
+ */
 public class ChatRoomFragment extends BaseFragment implements OnItemChildClickListener, View.OnKeyListener {
     public static final String TAG = ChatRoomFragment.class.getSimpleName();
+    private static final int MAX_WINDOW = 200;
+    /**
+     * 超出上限这么多条之后才移出，避免每条新消息都写一次磁盘
+     */
+    private static final int TRIM_STEP = 50;
+
+    public interface OnUnreadChangedListener {
+        /**
+         * 在主线程回调
+         */
+        void onUnreadChanged(int count);
+    }
 
     @BindView(R.id.rcv_msg)
     protected RecyclerView rcv_msg;
@@ -50,6 +68,21 @@ public class ChatRoomFragment extends BaseFragment implements OnItemChildClickLi
     private boolean isMuteAll = false;
     private boolean isMuteLocal;
 
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    /**
+     * 等待下一帧插入列表的消息，受自身保护
+     */
+    private final List<ChannelMsg.ChatMsg> pendingMsgs = new ArrayList<>();
+    private boolean flushScheduled;
+    private final Choreographer.FrameCallback flushCallback = frameTimeNanos -> flush();
+    private ChatHistoryStore historyStore;
+    private boolean loadingHistory;
+    /**
+     * 聊天列表不可见或没有停在底部时收到的消息数
+     */
+    private int unreadCount;
+    private OnUnreadChangedListener unreadListener;
+
     @Override
     protected int getLayoutResId() {
         return R.layout.fragment_chatroom;
@@ -59,6 +92,7 @@ public class ChatRoomFragment extends BaseFragment implements OnItemChildClickLi
     protected void initData() {
         adapter = new MessageListAdapter();
         adapter.setOnItemChildClickListener(this);
+        historyStore = new ChatHistoryStore(context);
     }
 
     @Override
@@ -67,6 +101,17 @@ public class ChatRoomFragment extends BaseFragment implements OnItemChildClickLi
         layoutManager.setStackFromEnd(true);
         rcv_msg.setLayoutManager(layoutManager);
         rcv_msg.setAdapter(adapter);
+        rcv_msg.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (!recyclerView.canScrollVertically(-1)) {
+                    loadHistory();
+                }
+                if (!recyclerView.canScrollVertically(1)) {
+                    clearUnread();
+                }
+            }
+        });
         edit_send_msg.setOnKeyListener(this);
         setEditTextEnable(!(this.isMuteAll));
     }
@@ -94,16 +139,129 @@ public class ChatRoomFragment extends BaseFragment implements OnItemChildClickLi
         });
     }
 
+    public void setOnUnreadChangedListener(@Nullable OnUnreadChangedListener listener) {
+        this.unreadListener = listener;
+    }
+
+    public int getUnreadCount() {
+        return unreadCount;
+    }
+
+    /**
+     * 用户看到了最新消息(切换到聊天页或滑到底部)，在主线程调用
+     */
+    public void clearUnread() {
+        setUnreadCount(0);
+    }
+
+    /**
+     * 可以在任意线程调用，消息在下一帧插入列表
+     */
     public void addMessage(ChannelMsg.ChatMsg chatMsg) {
-        runOnUiThread(() -> {
+        synchronized (pendingMsgs) {
+            pendingMsgs.add(chatMsg);
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        handler.post(() -> Choreographer.getInstance().postFrameCallback(flushCallback));
+    }
+
+    /**
+     * 在主线程调用，消息立即插入列表(已经在帧回调中时不必再等下一帧)
+     */
+    public void addMessages(List<ChannelMsg.ChatMsg> chatMsgs) {
+        synchronized (pendingMsgs) {
+            pendingMsgs.addAll(chatMsgs);
+        }
+        flush();
+    }
+
+    private void flush() {
+        List<ChannelMsg.ChatMsg> msgs;
+        synchronized (pendingMsgs) {
+            msgs = new ArrayList<>(pendingMsgs);
+            pendingMsgs.clear();
+            flushScheduled = false;
+        }
+        if (msgs.isEmpty() || adapter == null) {
+            return;
+        }
+        boolean showing = rcv_msg != null && rcv_msg.isShown();
+        boolean atBottom = rcv_msg == null || !rcv_msg.canScrollVertically(1);
+        boolean sentByMe = false;
+        int received = 0;
+        for (ChannelMsg.ChatMsg msg : msgs) {
+            if (msg.isMe) {
+                sentByMe = true;
+            } else {
+                received++;
+            }
+        }
+        /*一次范围插入，只绑定新增的条目*/
+        adapter.addData(msgs);
+        if (atBottom || sentByMe) {
+            trimWindow();
             if (rcv_msg != null) {
-                adapter.addData(chatMsg);
-                rcv_msg.scrollToPosition(adapter.getItemPosition(chatMsg));
-                adapter.notifyDataSetChanged();
+                rcv_msg.scrollToPosition(adapter.getItemCount() - 1);
+            }
+        }
+        if (showing && (atBottom || sentByMe)) {
+            clearUnread();
+        } else if (received > 0) {
+            setUnreadCount(unreadCount + received);
+        }
+    }
+
+    /**
+     * 只在停留在底部时移出最早的消息，用户向上翻看时不改变列表
+     */
+    private void trimWindow() {
+        List<ChannelMsg.ChatMsg> data = adapter.getData();
+        int excess = data.size() - MAX_WINDOW;
+        if (excess < TRIM_STEP) {
+            return;
+        }
+        List<ChannelMsg.ChatMsg> head = data.subList(0, excess);
+        historyStore.push(new ArrayList<>(head));
+        head.clear();
+        adapter.notifyItemRangeRemoved(adapter.getHeaderLayoutCount(), excess);
+    }
+
+    private void loadHistory() {
+        if (loadingHistory || historyStore == null || !historyStore.hasMore()) {
+            return;
+        }
+        loadingHistory = true;
+        historyStore.pop(msgs -> {
+            loadingHistory = false;
+            if (!msgs.isEmpty() && adapter != null) {
+                adapter.addData(0, msgs);
             }
         });
     }
 
+    private void setUnreadCount(int count) {
+        if (unreadCount == count) {
+            return;
+        }
+        unreadCount = count;
+        if (unreadListener != null) {
+            unreadListener.onUnreadChanged(count);
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        Choreographer.getInstance().removeFrameCallback(flushCallback);
+        handler.removeCallbacksAndMessages(null);
+        if (historyStore != null) {
+            historyStore.release();
+        }
+    }
+
     @Override
     public void onItemChildClick(BaseQuickAdapter adapter, View view, int position) {
         if (view.getId() == R.id.tv_content) {
@@ -111,64 +269,42 @@ public class ChatRoomFragment extends BaseFragment implements OnItemChildClickLi
             if (object instanceof RecordMsg) {
                 RecordMsg msg = (RecordMsg) object;
                 if (context instanceof BaseClassActivity) {
-                    fetchRecordList(EduApplication.getAppId(), msg.getRoomUuid(), nextId,
-                            new EduCallback<RecordRes.RecordDetail>() {
-                                @Override
-                                public void onSuccess(@Nullable RecordRes.RecordDetail recordDetail) {
-                                    if (recordDetail.isFinished()) {
-                                        String url = recordDetail.url;
-                                        if (!TextUtils.isEmpty(url)) {
-                                            Intent intent = new Intent(context, ReplayActivity.class);
-                                            intent.putExtra(ReplayActivity.WHITEBOARD_ROOM_ID, recordDetail.roomUuid);
-                                            intent.putExtra(ReplayActivity.WHITEBOARD_START_TIME, recordDetail.startTime);
-                                            intent.putExtra(ReplayActivity.WHITEBOARD_END_TIME, recordDetail.endTime);
-                                            intent.putExtra(ReplayActivity.WHITEBOARD_URL, url);
-                                            intent.putExtra(ReplayActivity.WHITEBOARD_ID, recordDetail.boardId);
-                                            intent.putExtra(ReplayActivity.WHITEBOARD_TOKEN, recordDetail.boardToken);
-                                            startActivity(intent);
-                                        }
-                                    } else {
-                                        ToastManager.showShort(R.string.wait_record);
-                                    }
+                    EduRoom room = ((BaseClassActivity) context).getMainEduRoom();
+                    if (room == null || !msg.getRoomUuid().equals(room.getRoomInfo().getRoomUuid())) {
+                        return;
+                    }
+                    /*录制列表按房间缓存，收到录制状态变化时才重新拉取*/
+                    room.getRecord().getLatestRecord(new EduCallback<EduRecordDetail>() {
+                        @Override
+                        public void onSuccess(@Nullable EduRecordDetail recordDetail) {
+                            if (recordDetail != null && recordDetail.isFinished()) {
+                                String url = recordDetail.getUrl();
+                                if (!TextUtils.isEmpty(url)) {
+                                    /*回放页面创建播放器之前先开始缓存视频开头，播放器读到这部分时等待预取而不是重复下载*/
+                                    ReplayCache.get(context).prefetch(ReplayActivity.resolveUrl(url));
+                                    Intent intent = new Intent(context, ReplayActivity.class);
+                                    intent.putExtra(ReplayActivity.WHITEBOARD_ROOM_ID, recordDetail.getRoomUuid());
+                                    intent.putExtra(ReplayActivity.WHITEBOARD_START_TIME, recordDetail.getStartTime());
+                                    intent.putExtra(ReplayActivity.WHITEBOARD_END_TIME, recordDetail.getEndTime());
+                                    intent.putExtra(ReplayActivity.WHITEBOARD_URL, url);
+                                    intent.putExtra(ReplayActivity.WHITEBOARD_ID, recordDetail.getBoardId());
+                                    intent.putExtra(ReplayActivity.WHITEBOARD_TOKEN, recordDetail.getBoardToken());
+                                    startActivity(intent);
                                 }
+                            } else {
+                                ToastManager.showShort(R.string.wait_record);
+                            }
+                        }
 
-                                @Override
-                                public void onFailure(int code, @Nullable String reason) {
-                                }
-                            });
+                        @Override
+                        public void onFailure(int code, @Nullable String reason) {
+                        }
+                    });
                 }
             }
         }
     }
 
-    private int nextId = 0, total = 0;
-    private List<RecordRes.RecordDetail> recordDetails = new ArrayList<>();
-
-    private void fetchRecordList(String appId, String roomId, int next, EduCallback<RecordRes.RecordDetail> callback) {
-        RetrofitManager.instance().getService(API_BASE_URL, RecordService.class)
-                .record(appId, roomId, next)
-                .enqueue(new BaseCallback<>(data -> {
-                    total = data.total;
-                    nextId = data.nextId;
-                    recordDetails.addAll(data.list);
-                    if (recordDetails.size() < total) {
-                        fetchRecordList(appId, roomId, nextId, callback);
-                    } else {
-                        nextId = total = 0;
-                        long max = 0;
-                        RecordRes.RecordDetail recordDetail = null;
-                        for (RecordRes.RecordDetail detail : recordDetails) {
-                            if (detail.startTime > max) {
-                                max = detail.startTime;
-                                recordDetail = detail;
-                            }
-                        }
-                        recordDetails.clear();
-                        callback.onSuccess(recordDetail);
-                    }
-                }));
-    }
-
     @Override
     public boolean onKey(View view, int keyCode, KeyEvent event) {
         if (!edit_send_msg.isEnabled()) {
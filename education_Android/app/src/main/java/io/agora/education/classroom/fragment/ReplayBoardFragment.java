@@ -98,6 +98,9 @@ public class ReplayBoardFragment extends BaseFragment implements ReplayEventList
     @Override
     public void onPhaseChanged(PlayerPhase playerPhase) {
         replay_control_view.onPhaseChanged(playerPhase);
+        if (playerPhase == PlayerPhase.ended && context instanceof ReplayActivity) {
+            runOnUiThread(() -> ((ReplayActivity) context).onReplayEnded());
+        }
     }
 
     @Override
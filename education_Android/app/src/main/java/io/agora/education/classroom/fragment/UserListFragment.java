@@ -1,6 +1,5 @@
 package io.agora.education.classroom.fragment;
 
-import android.text.TextUtils;
 import android.view.View;
 
 import androidx.recyclerview.widget.LinearLayoutManager;
@@ -10,17 +9,12 @@ import com.chad.library.adapter.base.BaseQuickAdapter;
 import com.chad.library.adapter.base.listener.OnItemChildClickListener;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 
 import butterknife.BindView;
 import io.agora.education.R;
+import io.agora.education.api.stream.data.EduStreamEvent;
 import io.agora.education.api.stream.data.EduStreamInfo;
-import io.agora.education.api.stream.data.VideoSourceType;
-import io.agora.education.api.user.data.EduBaseUserInfo;
-import io.agora.education.api.user.data.EduUserInfo;
-import io.agora.education.api.user.data.EduUserRole;
 import io.agora.education.base.BaseFragment;
 import io.agora.education.classroom.BaseClassActivity;
 import io.agora.education.classroom.adapter.UserListAdapter;
@@ -43,6 +37,9 @@ public class UserListFragment extends BaseFragment implements OnItemChildClickLi
         if (context instanceof BaseClassActivity) {
             adapter = new UserListAdapter();
             adapter.setOnItemChildClickListener(this);
+            if (localUserUuid != null) {
+                adapter.setLocalUserUuid(localUserUuid);
+            }
         }
     }
 
@@ -53,51 +50,84 @@ public class UserListFragment extends BaseFragment implements OnItemChildClickLi
         rcv_users.setAdapter(adapter);
     }
 
+    /**
+     * 全量刷新，差异在后台计算；只在加入房间和人员进出时使用，流的增删改使用下面的增量方法
+     */
     public void setUserList(List<EduStreamInfo> userList) {
-        getActivity().runOnUiThread(() -> {
-            /**过滤掉非学生和非摄像头流的user*/
-            List<EduStreamInfo> students = new ArrayList<>(userList.size());
-            for (EduStreamInfo streamInfo : userList) {
-                EduBaseUserInfo userInfo = streamInfo.getPublisher();
-                if (userInfo.getRole().equals(EduUserRole.STUDENT) &&
-                        streamInfo.getVideoSourceType().equals(VideoSourceType.CAMERA)) {
-                    students.add(streamInfo);
-                }
+        List<EduStreamInfo> streams = new ArrayList<>(userList);
+        runOnUiThread(() -> {
+            if (adapter != null) {
+                adapter.submitList(streams);
             }
-            /**本地用户始终在第一位*/
-            if (!TextUtils.isEmpty(localUserUuid)) {
-                for (int i = 0; i < students.size(); i++) {
-                    EduStreamInfo streamInfo = students.get(i);
-                    if (streamInfo.getPublisher().getUserUuid().equals(localUserUuid)) {
-                        if (i != 0) {
-                            Collections.swap(students, 0, i);
-                        }
+        });
+    }
+
+    public void onStreamsAdded(List<EduStreamEvent> streamEvents) {
+        List<EduStreamInfo> streams = studentStreamsOf(streamEvents);
+        if (!streams.isEmpty()) {
+            runOnUiThread(() -> {
+                if (adapter != null) {
+                    for (EduStreamInfo streamInfo : streams) {
+                        adapter.upsertStream(streamInfo);
                     }
                 }
+            });
+        }
+    }
+
+    public void onStreamUpdated(EduStreamInfo streamInfo) {
+        if (streamInfo != null && UserListAdapter.accept(streamInfo)) {
+            runOnUiThread(() -> {
+                if (adapter != null) {
+                    adapter.upsertStream(streamInfo);
+                }
+            });
+        }
+    }
+
+    public void onStreamsRemoved(List<EduStreamEvent> streamEvents) {
+        List<EduStreamInfo> streams = studentStreamsOf(streamEvents);
+        if (!streams.isEmpty()) {
+            runOnUiThread(() -> {
+                if (adapter != null) {
+                    for (EduStreamInfo streamInfo : streams) {
+                        adapter.removeUser(streamInfo.getPublisher().getUserUuid());
+                    }
+                }
+            });
+        }
+    }
+
+    private List<EduStreamInfo> studentStreamsOf(List<EduStreamEvent> streamEvents) {
+        List<EduStreamInfo> streams = new ArrayList<>(streamEvents.size());
+        for (EduStreamEvent streamEvent : streamEvents) {
+            EduStreamInfo streamInfo = streamEvent.getModifiedStream();
+            if (UserListAdapter.accept(streamInfo)) {
+                streams.add(streamInfo);
             }
-            adapter.setNewData(students);
-        });
+        }
+        return streams;
     }
 
     public void setGrantedUuids(List<String> grantedUuids) {
-        adapter.setGrantedUuids(grantedUuids);
+        runOnUiThread(() -> {
+            if (adapter != null) {
+                adapter.setGrantedUuids(grantedUuids);
+            }
+        });
     }
 
     public void setLocalUserUuid(String userUuid) {
         localUserUuid = userUuid;
-        adapter.setLocalUserUuid(userUuid);
+        runOnUiThread(() -> {
+            if (adapter != null) {
+                adapter.setLocalUserUuid(userUuid);
+            }
+        });
     }
 
     public void updateLocalStream(EduStreamInfo streamInfo) {
-        getActivity().runOnUiThread(() -> {
-            if (rcv_users.isComputingLayout()) {
-                rcv_users.postDelayed(() -> {
-                    adapter.refreshStreamStatus(streamInfo);
-                }, 300);
-            } else {
-                rcv_users.post(() -> adapter.refreshStreamStatus(streamInfo));
-            }
-        });
+        onStreamUpdated(streamInfo);
     }
 
     @Override
@@ -36,6 +36,8 @@ import io.agora.education.classroom.widget.whiteboard.ApplianceView;
 import io.agora.education.classroom.widget.whiteboard.ColorPicker;
 import io.agora.education.classroom.widget.whiteboard.PageControlView;
 import io.agora.education.util.ColorUtil;
+import io.agora.whiteboard.netless.annotation.BoardStateField;
+import io.agora.whiteboard.netless.cache.ScenePrefetcher;
 import io.agora.whiteboard.netless.listener.BoardEventListener;
 import io.agora.whiteboard.netless.manager.BoardManager;
 
@@ -56,6 +58,7 @@ public class WhiteBoardFragment extends BaseFragment implements RadioGroup.OnChe
 
     private WhiteSdk whiteSdk;
     private BoardManager boardManager = new BoardManager();
+    private ScenePrefetcher prefetcher;
     private String curLocalUuid, curLocalToken, localUserUuid;
     private final double miniScale = 0.1d;
     private final double maxScale = 10d;
@@ -85,6 +88,10 @@ public class WhiteBoardFragment extends BaseFragment implements RadioGroup.OnChe
         WhiteSdkConfiguration configuration = new WhiteSdkConfiguration(getString(R.string.whiteboard_app_id), true);
         whiteSdk = new WhiteSdk(white_board_view, context, configuration);
         boardManager.setListener(this);
+        /*翻页前预取相邻场景的PPT图片*/
+        prefetcher = new ScenePrefetcher(context);
+        prefetcher.attach(white_board_view);
+        boardManager.setScenePrefetcher(prefetcher);
     }
 
     @Override
@@ -174,6 +181,10 @@ public class WhiteBoardFragment extends BaseFragment implements RadioGroup.OnChe
 
     public void releaseBoard() {
         boardManager.disconnect();
+        if (prefetcher != null) {
+            prefetcher.release();
+            prefetcher = null;
+        }
     }
 
     @OnTouch(R.id.white_board_view)
@@ -245,21 +256,17 @@ public class WhiteBoardFragment extends BaseFragment implements RadioGroup.OnChe
     }
 
     @Override
-    public void onGlobalStateChanged(GlobalState state) {
-        if (listener != null) {
-            listener.onGlobalStateChanged(state);
+    public void onRoomStateChanged(int changed, GlobalState globalState, MemberState memberState,
+                                   SceneState sceneState) {
+        if ((changed & BoardStateField.GLOBAL) != 0 && listener != null) {
+            listener.onGlobalStateChanged(globalState);
+        }
+        if ((changed & BoardStateField.SCENE) != 0) {
+            page_control_view.setPageIndex(sceneState.getIndex(), sceneState.getScenes().length);
+        }
+        if ((changed & BoardStateField.MEMBER) != 0) {
+            appliance_view.check(appliance_view.getApplianceId(memberState.getCurrentApplianceName()));
         }
-    }
-
-    @Override
-    public void onSceneStateChanged(SceneState state) {
-        Log.e(TAG, "onSceneStateChanged");
-        page_control_view.setPageIndex(state.getIndex(), state.getScenes().length);
-    }
-
-    @Override
-    public void onMemberStateChanged(MemberState state) {
-        appliance_view.check(appliance_view.getApplianceId(state.getCurrentApplianceName()));
     }
 
     @Override
@@ -0,0 +1,231 @@
+package io.agora.education.classroom.state;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import io.agora.education.api.room.data.EduRoomState;
+import io.agora.education.api.room.data.EduRoomStatus;
+import io.agora.education.api.statistics.NetworkQuality;
+import io.agora.education.api.stream.data.EduStreamInfo;
+import io.agora.education.api.stream.data.VideoSourceType;
+import io.agora.education.api.user.data.EduUserInfo;
+import io.agora.education.api.user.data.EduUserRole;
+import io.agora.education.classroom.bean.msg.ChannelMsg;
+
+/**
+ * 教室事件的分发
+ * SDK回调(任意线程)只提交事件，事件在后台线程中归并到当前的状态里；每帧最多在主线程发布一次{@link ClassUiState}，
+ * 同一帧内的多次变化只刷新一次界面，界面不再直接响应SDK回调
+ */
+public class ClassStateDispatcher {
+    private static final String TAG = "ClassStateDispatcher";
+
+    public interface Renderer {
+        /**
+         * 在主线程调用
+         */
+        void render(@NonNull ClassUiState state);
+    }
+
+    private final HandlerThread thread = new HandlerThread(TAG);
+    private final Handler worker;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Renderer renderer;
+    private final Choreographer.FrameCallback frameCallback = frameTimeNanos -> publish();
+
+    /**
+     * 当前状态，在后台线程修改，发布时在主线程读取，均受this保护
+     */
+    private List<EduStreamInfo> streams = Collections.emptyList();
+    private EduStreamInfo teacherCameraStream;
+    private EduStreamInfo screenShareStream;
+    private List<EduUserInfo> users = Collections.emptyList();
+    private final List<ChannelMsg.ChatMsg> chatMsgs = new ArrayList<>();
+    private boolean studentChatAllowed = true;
+    private boolean localChatAllowed = true;
+    private EduRoomState courseState;
+    private long startTime;
+    private NetworkQuality networkQuality = NetworkQuality.UNKNOWN;
+    /**
+     * 上一次发布之后变化的部分
+     */
+    private int changes;
+    private boolean scheduled;
+    private boolean released;
+
+    public ClassStateDispatcher(@NonNull Renderer renderer) {
+        this.renderer = renderer;
+        thread.start();
+        worker = new Handler(thread.getLooper());
+    }
+
+    /**
+     * 房间内的全部流，SDK会原地修改流信息，快照在调用线程生成
+     */
+    public void setStreams(@Nullable List<EduStreamInfo> streams) {
+        List<EduStreamInfo> snapshot = new ArrayList<>(streams == null ? 0 : streams.size());
+        if (streams != null) {
+            for (EduStreamInfo streamInfo : streams) {
+                snapshot.add(streamInfo.copy());
+            }
+        }
+        worker.post(() -> {
+            EduStreamInfo teacherCamera = null;
+            EduStreamInfo screenShare = null;
+            for (EduStreamInfo copy : snapshot) {
+                if (copy.getPublisher().getRole().equals(EduUserRole.TEACHER)) {
+                    if (copy.getVideoSourceType().equals(VideoSourceType.CAMERA)) {
+                        teacherCamera = copy;
+                    } else if (copy.getVideoSourceType().equals(VideoSourceType.SCREEN)) {
+                        screenShare = copy;
+                    }
+                }
+            }
+            int changed = ClassUiState.STREAMS;
+            synchronized (this) {
+                if (!sameTeacherCamera(teacherCameraStream, teacherCamera)) {
+                    changed |= ClassUiState.TEACHER_CAMERA;
+                }
+                if (!Objects.equals(streamUuidOf(screenShareStream), streamUuidOf(screenShare))) {
+                    changed |= ClassUiState.SCREEN_SHARE;
+                }
+                this.streams = Collections.unmodifiableList(snapshot);
+                teacherCameraStream = teacherCamera;
+                screenShareStream = screenShare;
+            }
+            changed(changed);
+        });
+    }
+
+    public void setUsers(@Nullable List<EduUserInfo> users) {
+        List<EduUserInfo> list = users == null ? new ArrayList<>() : new ArrayList<>(users);
+        worker.post(() -> {
+            synchronized (this) {
+                this.users = Collections.unmodifiableList(list);
+            }
+            changed(ClassUiState.USERS);
+        });
+    }
+
+    public void addChatMessage(@NonNull ChannelMsg.ChatMsg chatMsg) {
+        worker.post(() -> {
+            synchronized (this) {
+                chatMsgs.add(chatMsg);
+            }
+            changed(ClassUiState.CHAT);
+        });
+    }
+
+    /**
+     * 房间状态是可变对象，在调用线程读取
+     */
+    public void setRoomStatus(@NonNull EduRoomStatus roomStatus) {
+        EduRoomState state = roomStatus.getCourseState();
+        long time = roomStatus.getStartTime();
+        boolean chatAllowed = roomStatus.isStudentChatAllowed();
+        worker.post(() -> {
+            int changed = 0;
+            synchronized (this) {
+                if (state != courseState || time != startTime) {
+                    courseState = state;
+                    startTime = time;
+                    changed |= ClassUiState.COURSE_STATE;
+                }
+                if (chatAllowed != studentChatAllowed) {
+                    studentChatAllowed = chatAllowed;
+                    changed |= ClassUiState.CHAT_PERMISSION;
+                }
+            }
+            changed(changed);
+        });
+    }
+
+    public void setLocalChatAllowed(boolean chatAllowed) {
+        worker.post(() -> {
+            boolean changed;
+            synchronized (this) {
+                changed = chatAllowed != localChatAllowed;
+                localChatAllowed = chatAllowed;
+            }
+            changed(changed ? ClassUiState.CHAT_PERMISSION : 0);
+        });
+    }
+
+    public void setNetworkQuality(@NonNull NetworkQuality quality) {
+        worker.post(() -> {
+            boolean changed;
+            synchronized (this) {
+                changed = quality != networkQuality;
+                networkQuality = quality;
+            }
+            changed(changed ? ClassUiState.NETWORK : 0);
+        });
+    }
+
+    /**
+     * 停止发布，之后提交的事件都被忽略
+     */
+    public void release() {
+        synchronized (this) {
+            released = true;
+        }
+        handler.removeCallbacksAndMessages(null);
+        Choreographer.getInstance().removeFrameCallback(frameCallback);
+        thread.quitSafely();
+    }
+
+    private void changed(int parts) {
+        if (parts == 0) {
+            return;
+        }
+        synchronized (this) {
+            changes |= parts;
+            if (scheduled || released) {
+                return;
+            }
+            scheduled = true;
+        }
+        handler.post(() -> Choreographer.getInstance().postFrameCallback(frameCallback));
+    }
+
+    private void publish() {
+        ClassUiState state;
+        synchronized (this) {
+            scheduled = false;
+            if (changes == 0 || released) {
+                return;
+            }
+            state = new ClassUiState(changes, streams, teacherCameraStream, screenShareStream, users,
+                    Collections.unmodifiableList(new ArrayList<>(chatMsgs)), studentChatAllowed, localChatAllowed,
+                    courseState, startTime, networkQuality);
+            changes = 0;
+            chatMsgs.clear();
+        }
+        renderer.render(state);
+    }
+
+    private static boolean sameTeacherCamera(@Nullable EduStreamInfo oldStream, @Nullable EduStreamInfo newStream) {
+        if (oldStream == null || newStream == null) {
+            return oldStream == newStream;
+        }
+        return oldStream.getStreamUuid().equals(newStream.getStreamUuid())
+                && oldStream.getHasVideo() == newStream.getHasVideo()
+                && oldStream.getHasAudio() == newStream.getHasAudio()
+                && Objects.equals(oldStream.getPublisher().getUserName(), newStream.getPublisher().getUserName());
+    }
+
+    @Nullable
+    private static String streamUuidOf(@Nullable EduStreamInfo streamInfo) {
+        return streamInfo == null ? null : streamInfo.getStreamUuid();
+    }
+}
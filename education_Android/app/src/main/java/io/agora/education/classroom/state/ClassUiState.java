@@ -0,0 +1,140 @@
+package io.agora.education.classroom.state;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.List;
+
+import io.agora.education.api.room.data.EduRoomState;
+import io.agora.education.api.statistics.NetworkQuality;
+import io.agora.education.api.stream.data.EduStreamInfo;
+import io.agora.education.api.user.data.EduUserInfo;
+import io.agora.education.classroom.bean.msg.ChannelMsg;
+
+/**
+ * 教室界面的状态，由{@link ClassStateDispatcher}每帧最多发布一次，发布后不再修改
+ * {@link #changed(int)}表示与上一次发布的状态相比有哪些部分变化了，界面只需刷新这些部分
+ */
+public final class ClassUiState {
+    /**
+     * 房间内的流
+     */
+    public static final int STREAMS = 1;
+    /**
+     * 老师的摄像头流(流本身、音视频开关或名字)
+     */
+    public static final int TEACHER_CAMERA = 1 << 1;
+    /**
+     * 老师的屏幕分享开始或结束
+     */
+    public static final int SCREEN_SHARE = 1 << 2;
+    /**
+     * 房间内的用户
+     */
+    public static final int USERS = 1 << 3;
+    /**
+     * 有新的聊天消息
+     */
+    public static final int CHAT = 1 << 4;
+    /**
+     * 全体禁言或本地用户禁言
+     */
+    public static final int CHAT_PERMISSION = 1 << 5;
+    /**
+     * 上课状态
+     */
+    public static final int COURSE_STATE = 1 << 6;
+    /**
+     * 本地用户的网络质量
+     */
+    public static final int NETWORK = 1 << 7;
+
+    private final int changes;
+    private final List<EduStreamInfo> streams;
+    private final EduStreamInfo teacherCameraStream;
+    private final EduStreamInfo screenShareStream;
+    private final List<EduUserInfo> users;
+    private final List<ChannelMsg.ChatMsg> newChatMsgs;
+    private final boolean studentChatAllowed;
+    private final boolean localChatAllowed;
+    private final EduRoomState courseState;
+    private final long startTime;
+    private final NetworkQuality networkQuality;
+
+    ClassUiState(int changes, List<EduStreamInfo> streams, EduStreamInfo teacherCameraStream,
+                 EduStreamInfo screenShareStream, List<EduUserInfo> users, List<ChannelMsg.ChatMsg> newChatMsgs,
+                 boolean studentChatAllowed, boolean localChatAllowed, EduRoomState courseState, long startTime,
+                 NetworkQuality networkQuality) {
+        this.changes = changes;
+        this.streams = streams;
+        this.teacherCameraStream = teacherCameraStream;
+        this.screenShareStream = screenShareStream;
+        this.users = users;
+        this.newChatMsgs = newChatMsgs;
+        this.studentChatAllowed = studentChatAllowed;
+        this.localChatAllowed = localChatAllowed;
+        this.courseState = courseState;
+        this.startTime = startTime;
+        this.networkQuality = networkQuality;
+    }
+
+    public boolean changed(int part) {
+        return (changes & part) != 0;
+    }
+
+    /**
+     * 流的快照，不会被SDK修改
+     */
+    @NonNull
+    public List<EduStreamInfo> getStreams() {
+        return streams;
+    }
+
+    @Nullable
+    public EduStreamInfo getTeacherCameraStream() {
+        return teacherCameraStream;
+    }
+
+    @Nullable
+    public EduStreamInfo getScreenShareStream() {
+        return screenShareStream;
+    }
+
+    @NonNull
+    public List<EduUserInfo> getUsers() {
+        return users;
+    }
+
+    /**
+     * 上一次发布之后收到的消息
+     */
+    @NonNull
+    public List<ChannelMsg.ChatMsg> getNewChatMsgs() {
+        return newChatMsgs;
+    }
+
+    public boolean isStudentChatAllowed() {
+        return studentChatAllowed;
+    }
+
+    public boolean isLocalChatAllowed() {
+        return localChatAllowed;
+    }
+
+    /**
+     * 还没有收到房间状态时为null
+     */
+    @Nullable
+    public EduRoomState getCourseState() {
+        return courseState;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    @NonNull
+    public NetworkQuality getNetworkQuality() {
+        return networkQuality;
+    }
+}
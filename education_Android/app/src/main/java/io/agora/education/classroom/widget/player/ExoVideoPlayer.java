@@ -2,12 +2,14 @@ package io.agora.education.classroom.widget.player;
 
 import android.content.Context;
 import android.net.Uri;
+import android.util.Log;
 import android.webkit.URLUtil;
 
 import androidx.annotation.NonNull;
 
 import com.google.android.exoplayer2.ExoPlayer;
 import com.google.android.exoplayer2.ExoPlayerFactory;
+import com.google.android.exoplayer2.PlaybackParameters;
 import com.google.android.exoplayer2.Player;
 import com.google.android.exoplayer2.source.ExtractorMediaSource;
 import com.google.android.exoplayer2.source.MediaSource;
@@ -23,14 +25,21 @@ import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
 import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory;
 import com.google.android.exoplayer2.util.Util;
 
-import io.agora.timeline.Timeline;
+import io.agora.timeline.SyncableTimeline;
 import io.agora.timeline.TimelineState;
 
-public class ExoVideoPlayer implements Timeline {
+public class ExoVideoPlayer implements SyncableTimeline {
+    private static final String TAG = "ExoVideoPlayer";
+
+    private Context mContext;
+    /**
+     * url不是网络或本地文件地址时为null，此时各操作不做任何事，状态始终为{@link TimelineState#STATE_IDLE}
+     */
     private ExoPlayer mPlayer;
 
     ExoVideoPlayer(@NonNull PlayerView playerView, String url) {
-        if (URLUtil.isNetworkUrl(url)) {
+        mContext = playerView.getContext().getApplicationContext();
+        if (URLUtil.isNetworkUrl(url) || URLUtil.isFileUrl(url)) {
             initVideoPlayer(playerView.getContext());
             initVideoSource(playerView.getContext(), url);
             playerView.setPlayer(mPlayer);
@@ -45,7 +54,10 @@ public class ExoVideoPlayer implements Timeline {
     }
 
     private void initVideoSource(Context context, String url) {
-        DataSource.Factory dataSourceFactory = new DefaultDataSourceFactory(context, Util.getUserAgent(context, context.getPackageName()));
+        /*离线包直接读本地文件，不经过缓存*/
+        DataSource.Factory dataSourceFactory = URLUtil.isFileUrl(url)
+                ? new DefaultDataSourceFactory(context, Util.getUserAgent(context, context.getPackageName()))
+                : ReplayCache.get(context).dataSourceFactory();
         Uri uri = Uri.parse(url);
         MediaSource source;
         if (url.endsWith(".m3u8")) {
@@ -57,35 +69,66 @@ public class ExoVideoPlayer implements Timeline {
         mPlayer.prepare(source);
     }
 
+    boolean isAvailable() {
+        return mPlayer != null;
+    }
+
     public void release() {
         if (mPlayer != null) {
             mPlayer.release();
+            mPlayer = null;
+            Log.i(TAG, "replay cache: " + ReplayCache.get(mContext));
         }
     }
 
     @Override
     public void start() {
-        mPlayer.setPlayWhenReady(true);
+        if (mPlayer != null) {
+            mPlayer.setPlayWhenReady(true);
+        }
     }
 
     @Override
     public void pause() {
-        mPlayer.setPlayWhenReady(false);
+        if (mPlayer != null) {
+            mPlayer.setPlayWhenReady(false);
+        }
     }
 
     @Override
     public void seekTo(long positionMs) {
-        mPlayer.seekTo(positionMs);
+        if (mPlayer != null) {
+            mPlayer.seekTo(positionMs);
+        }
     }
 
     @Override
     public void stop() {
-        mPlayer.stop();
+        if (mPlayer != null) {
+            mPlayer.stop();
+        }
+    }
+
+    @Override
+    public long getPosition() {
+        return mPlayer == null ? 0 : mPlayer.getCurrentPosition();
+    }
+
+    @Override
+    public boolean setRate(float rate) {
+        if (mPlayer == null) {
+            return false;
+        }
+        mPlayer.setPlaybackParameters(new PlaybackParameters(rate, 1f));
+        return true;
     }
 
     @TimelineState
     @Override
     public int getState() {
+        if (mPlayer == null) {
+            return TimelineState.STATE_IDLE;
+        }
         switch (mPlayer.getPlaybackState()) {
             case Player.STATE_IDLE:
                 return TimelineState.STATE_IDLE;
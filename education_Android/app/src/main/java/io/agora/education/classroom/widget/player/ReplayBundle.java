@@ -0,0 +1,56 @@
+package io.agora.education.classroom.widget.player;
+
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+
+import io.agora.education.classroom.bean.JsonBean;
+
+/**
+ * 离线回放包的描述信息，保存在包目录下的{@link #MANIFEST}中
+ * 媒体文件下载完成前{@link #complete}为false，此时不能用于播放
+ */
+public class ReplayBundle extends JsonBean {
+    static final String MANIFEST = "bundle.json";
+
+    public String url;
+    public String roomId;
+    public String boardId;
+    public String boardToken;
+    public long startTime;
+    public long endTime;
+    /**
+     * 包目录下的媒体文件名：mp4文件或改写为本地分片路径的m3u8
+     */
+    public String mediaFile;
+    public boolean complete;
+    public long bytes;
+    public long lastAccess;
+
+    transient File dir;
+
+    @NonNull
+    public File getDir() {
+        return dir;
+    }
+
+    @NonNull
+    public File getMediaFile() {
+        return new File(dir, mediaFile);
+    }
+
+    /**
+     * 播放器使用的本地地址
+     */
+    @NonNull
+    public String getLocalUrl() {
+        return Uri.fromFile(getMediaFile()).toString();
+    }
+
+    @Override
+    public String toString() {
+        return url + " -> " + dir + ", complete:" + complete + ", bytes:" + bytes;
+    }
+}
@@ -0,0 +1,245 @@
+package io.agora.education.classroom.widget.player;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSourceInputStream;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory;
+import com.google.android.exoplayer2.upstream.FileDataSource;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSink;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer2.upstream.cache.CacheUtil;
+import com.google.android.exoplayer2.upstream.cache.LeastRecentlyUsedCacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+import com.google.android.exoplayer2.util.Util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 回放视频的磁盘缓存(LRU，有大小上限)和预取
+ * 所有回放共用一个{@link SimpleCache}，重复观看和seek不再重复下载；
+ * 预取只缓存开头的一部分(HLS的前几个分片或mp4的前几MB)，打开回放时可以立即开始播放；
+ * 播放器和预取都以{@link CacheDataSource#FLAG_BLOCK_ON_CACHE}读写缓存，播放器遇到正在预取的部分时等待预取完成后读缓存，
+ * 不会绕过缓存再从网络下载一遍；
+ * 统计从缓存读取(命中)和从网络读取(未命中)的字节数
+ */
+public class ReplayCache {
+    private static final String TAG = "ReplayCache";
+    private static final String CACHE_DIR = "replay";
+    private static final long MAX_CACHE_SIZE = 300 * 1024 * 1024;
+    private static final int PREFETCH_SEGMENTS = 3;
+    private static final long PREFETCH_BYTES = 2 * 1024 * 1024;
+    private static final int BUFFER_LEN = 128 * 1024;
+
+    private static ReplayCache instance;
+
+    private final SimpleCache cache;
+    private final DataSource.Factory upstreamFactory;
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "ReplayPrefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * 已经预取过(或正在预取)的链接
+     */
+    private final Set<String> prefetched = new LinkedHashSet<>();
+    private final AtomicLong hitBytes = new AtomicLong();
+    private final AtomicLong missBytes = new AtomicLong();
+
+    public static synchronized ReplayCache get(@NonNull Context context) {
+        if (instance == null) {
+            instance = new ReplayCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ReplayCache(Context context) {
+        cache = new SimpleCache(new File(context.getCacheDir(), CACHE_DIR),
+                new LeastRecentlyUsedCacheEvictor(MAX_CACHE_SIZE));
+        upstreamFactory = new DefaultDataSourceFactory(context,
+                Util.getUserAgent(context, context.getPackageName()));
+    }
+
+    @NonNull
+    public SimpleCache getCache() {
+        return cache;
+    }
+
+    /**
+     * 播放器使用的数据源：优先读缓存，未命中时从网络读取并写入缓存
+     */
+    @NonNull
+    public DataSource.Factory dataSourceFactory() {
+        return () -> new CacheDataSource(cache,
+                new MeteredDataSource(upstreamFactory.createDataSource(), missBytes),
+                new MeteredDataSource(new FileDataSource(), hitBytes),
+                new CacheDataSink(cache, CacheDataSource.DEFAULT_MAX_CACHE_FILE_SIZE),
+                CacheDataSource.FLAG_BLOCK_ON_CACHE | CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR, null);
+    }
+
+    /**
+     * 在后台缓存回放的开头部分，同一链接只预取一次
+     */
+    public void prefetch(@NonNull String url) {
+        synchronized (prefetched) {
+            if (!prefetched.add(url)) {
+                return;
+            }
+        }
+        prefetchExecutor.execute(() -> {
+            try {
+                Uri uri = Uri.parse(url);
+                if (url.endsWith(".m3u8")) {
+                    for (Uri segment : firstSegments(uri, PREFETCH_SEGMENTS)) {
+                        cache(new DataSpec(segment));
+                    }
+                } else {
+                    cache(new DataSpec(uri, 0, PREFETCH_BYTES, null));
+                }
+                Log.i(TAG, "prefetched " + url);
+            } catch (Exception e) {
+                Log.w(TAG, "prefetch failed: " + url, e);
+                synchronized (prefetched) {
+                    prefetched.remove(url);
+                }
+            }
+        });
+    }
+
+    private void cache(DataSpec dataSpec) throws IOException, InterruptedException {
+        CacheUtil.cache(dataSpec, cache, blockingDataSource(), new byte[BUFFER_LEN], null, 0, null, null, false);
+    }
+
+    /**
+     * 预取使用的数据源，与播放器同时访问同一部分时等待对方，不重复下载
+     */
+    private CacheDataSource blockingDataSource() {
+        return new CacheDataSource(cache, upstreamFactory.createDataSource(), CacheDataSource.FLAG_BLOCK_ON_CACHE);
+    }
+
+    /**
+     * 读取(并缓存)播放列表，返回前{@param count}个分片；主播放列表取第一个子播放列表
+     */
+    private List<Uri> firstSegments(Uri playlistUri, int count) throws IOException, InterruptedException {
+        List<Uri> segments = new ArrayList<>();
+        boolean master = false;
+        Uri variant = null;
+        for (String line : readPlaylist(playlistUri)) {
+            if (line.startsWith("#EXT-X-STREAM-INF")) {
+                master = true;
+            } else if (!line.isEmpty() && !line.startsWith("#")) {
+                Uri uri = resolve(playlistUri, line);
+                if (master) {
+                    variant = uri;
+                    break;
+                }
+                segments.add(uri);
+                if (segments.size() >= count) {
+                    break;
+                }
+            }
+        }
+        return variant != null ? firstSegments(variant, count) : segments;
+    }
+
+    private List<String> readPlaylist(Uri uri) throws IOException, InterruptedException {
+        DataSpec dataSpec = new DataSpec(uri);
+        cache(dataSpec);
+        /*预取不计入命中统计*/
+        DataSource source = blockingDataSource();
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new DataSourceInputStream(source, dataSpec)))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line.trim());
+            }
+        }
+        return lines;
+    }
+
+    static Uri resolve(Uri base, String path) {
+        if (path.startsWith("http://") || path.startsWith("https://")) {
+            return Uri.parse(path);
+        }
+        String baseString = base.toString();
+        return Uri.parse(baseString.substring(0, baseString.lastIndexOf('/') + 1) + path);
+    }
+
+    public long getHitBytes() {
+        return hitBytes.get();
+    }
+
+    public long getMissBytes() {
+        return missBytes.get();
+    }
+
+    /**
+     * 按字节计算的命中率
+     */
+    public float getHitRatio() {
+        long hit = hitBytes.get();
+        long total = hit + missBytes.get();
+        return total == 0 ? 0 : (float) hit / total;
+    }
+
+    @Override
+    public String toString() {
+        return "hit:" + hitBytes.get() + ", miss:" + missBytes.get() + ", ratio:" + getHitRatio() +
+                ", cached:" + cache.getCacheSpace();
+    }
+
+    /**
+     * 统计读取字节数的数据源
+     */
+    private static class MeteredDataSource implements DataSource {
+        private final DataSource source;
+        private final AtomicLong counter;
+
+        MeteredDataSource(DataSource source, AtomicLong counter) {
+            this.source = source;
+            this.counter = counter;
+        }
+
+        @Override
+        public long open(DataSpec dataSpec) throws IOException {
+            return source.open(dataSpec);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int readLength) throws IOException {
+            int read = source.read(buffer, offset, readLength);
+            if (read != C.RESULT_END_OF_INPUT) {
+                counter.addAndGet(read);
+            }
+            return read;
+        }
+
+        @Override
+        public Uri getUri() {
+            return source.getUri();
+        }
+
+        @Override
+        public void close() throws IOException {
+            source.close();
+        }
+    }
+}
@@ -24,6 +24,7 @@ import io.agora.timeline.SimpleTimeline;
 import io.agora.timeline.SimpleTimelineManager;
 import io.agora.timeline.TimelineListener;
 import io.agora.timeline.TimelineState;
+import io.agora.timeline.TimelineSynchronizer;
 import io.agora.whiteboard.netless.listener.ReplayEventListener;
 import io.agora.whiteboard.netless.manager.ReplayManager;
 
@@ -44,6 +45,8 @@ public class ReplayControlView extends RelativeLayout implements ReplayEventList
     private SimpleTimeline timeline;
     private SimpleTimelineManager mManager;
     private ExoVideoPlayer videoPlayer;
+    /**以视频为主时钟，对齐进度条和白板*/
+    private TimelineSynchronizer synchronizer;
     private ReplayManager replayManager;
 
     private Handler mHandler;
@@ -78,10 +81,20 @@ public class ReplayControlView extends RelativeLayout implements ReplayEventList
         videoPlayer = new ExoVideoPlayer(videoView, url);
         mManager.addTimeline(videoPlayer);
 
+        /**没有可用的视频时不启动同步，进度只由timeline自己推进*/
+        if (videoPlayer.isAvailable()) {
+            synchronizer = new TimelineSynchronizer(videoPlayer);
+            synchronizer.addFollower(timeline);
+            synchronizer.start();
+        }
+
         tv_total_time.setText(TimeUtil.stringForTimeHMS(timeline.getDuration() / 1000, "%02d:%02d:%02d"));
     }
 
     public void release() {
+        if (synchronizer != null) {
+            synchronizer.stop();
+        }
         if (videoPlayer != null) {
             videoPlayer.release();
         }
@@ -97,6 +110,14 @@ public class ReplayControlView extends RelativeLayout implements ReplayEventList
                     }
                     break;
                 case TimelineState.STATE_BUFFERING:
+                    /*缓冲期间的命令会在恢复时应用*/
+                    if (mManager != null) {
+                        if (mManager.getTargetState() == TimelineState.STATE_START) {
+                            mManager.pause();
+                        } else {
+                            mManager.start();
+                        }
+                    }
                     break;
                 case TimelineState.STATE_START:
                     if (mManager != null) {
@@ -140,7 +161,11 @@ public class ReplayControlView extends RelativeLayout implements ReplayEventList
         // whiteboard preload
         replayManager.play();
         if (mManager != null) {
-            mManager.addTimeline(new WhiteboardPlayer(replayBoard));
+            WhiteboardPlayer whiteboardPlayer = new WhiteboardPlayer(replayBoard);
+            mManager.addTimeline(whiteboardPlayer);
+            if (synchronizer != null) {
+                synchronizer.addFollower(whiteboardPlayer);
+            }
         }
     }
 
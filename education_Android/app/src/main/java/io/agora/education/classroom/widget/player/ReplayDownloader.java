@@ -0,0 +1,470 @@
+package io.agora.education.classroom.widget.player;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import io.agora.education.classroom.bean.JsonBean;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * 把回放下载为本地离线包，重复观看时不再消耗流量
+ * 每个回放一个目录：mp4整个下载，HLS逐个下载分片并生成指向本地分片的m3u8；
+ * 白板回放的房间信息和时间范围记录在包的描述文件中。
+ * 下载在后台单线程进行，未完成的文件以.part保存，再次下载同一回放时通过Range请求续传；
+ * 所有离线包的总大小受配额限制，超出时先删除最久未观看的包
+ */
+public class ReplayDownloader {
+    private static final String TAG = "ReplayDownloader";
+    private static final String DIR = "replays";
+    private static final String PART = ".part";
+    private static final String HLS_FILE = "index.m3u8";
+    private static final String MP4_FILE = "video.mp4";
+    private static final long DEFAULT_QUOTA = 1024L * 1024 * 1024;
+    /**
+     * 下载后至少保留的可用空间
+     */
+    private static final long MIN_FREE_SPACE = 100L * 1024 * 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Pattern URI_ATTR = Pattern.compile("URI=\"([^\"]+)\"");
+
+    public interface Listener {
+        /**
+         * 每下载完一个文件回调一次，在下载线程调用
+         */
+        void onProgress(ReplayBundle bundle);
+
+        void onComplete(ReplayBundle bundle);
+
+        void onFailure(ReplayBundle bundle, Exception e);
+    }
+
+    public interface BundleCallback {
+        /**
+         * 在主线程回调
+         *
+         * @param bundle 已下载完成的离线包，没有时为null
+         */
+        void onResult(@Nullable ReplayBundle bundle);
+    }
+
+    private static ReplayDownloader instance;
+
+    private final File root;
+    private final OkHttpClient client = new OkHttpClient();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "ReplayDownload");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * 查找离线包要读写描述文件，不能在主线程进行；下载可能长时间占用executor，查找使用单独的线程
+     */
+    private final ExecutorService lookupExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "ReplayLookup");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    /**
+     * 等待或正在下载的链接，取消时移除
+     */
+    private final Set<String> running = new HashSet<>();
+    private volatile long quota = DEFAULT_QUOTA;
+    private volatile Listener listener;
+
+    public static synchronized ReplayDownloader get(@NonNull Context context) {
+        if (instance == null) {
+            instance = new ReplayDownloader(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ReplayDownloader(Context context) {
+        root = new File(context.getFilesDir(), DIR);
+    }
+
+    /**
+     * @param quota 所有离线包的总大小上限(字节)
+     */
+    public void setQuota(long quota) {
+        this.quota = quota;
+    }
+
+    public void setListener(@Nullable Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return 已下载完成的离线包，没有时返回null；同时记录观看时间供淘汰使用。会读写文件，不要在主线程调用
+     */
+    @Nullable
+    public ReplayBundle findBundle(@NonNull String url) {
+        ReplayBundle bundle = readManifest(dirOf(url));
+        if (bundle == null || !bundle.complete || !bundle.getMediaFile().exists()) {
+            return null;
+        }
+        bundle.lastAccess = System.currentTimeMillis();
+        try {
+            writeManifest(bundle);
+        } catch (IOException e) {
+            Log.w(TAG, "update bundle failed: " + bundle, e);
+        }
+        return bundle;
+    }
+
+    /**
+     * 在后台线程执行{@link #findBundle(String)}，结果在主线程回调
+     */
+    public void findBundle(@NonNull String url, @NonNull BundleCallback callback) {
+        lookupExecutor.execute(() -> {
+            ReplayBundle bundle = findBundle(url);
+            handler.post(() -> callback.onResult(bundle));
+        });
+    }
+
+    public boolean isDownloading(@NonNull String url) {
+        synchronized (running) {
+            return running.contains(url);
+        }
+    }
+
+    /**
+     * 在后台下载回放，已下载完成或正在下载时忽略；之前中断的下载从断点继续
+     */
+    public void download(@NonNull String url, String roomId, String boardId, String boardToken,
+                         long startTime, long endTime) {
+        synchronized (running) {
+            if (!running.add(url)) {
+                return;
+            }
+        }
+        executor.execute(() -> {
+            if (!isDownloading(url)) {
+                return;
+            }
+            File dir = dirOf(url);
+            ReplayBundle bundle = readManifest(dir);
+            if (bundle == null) {
+                bundle = new ReplayBundle();
+                bundle.url = url;
+                bundle.dir = dir;
+            }
+            if (bundle.complete) {
+                finish(url);
+                return;
+            }
+            bundle.roomId = roomId;
+            bundle.boardId = boardId;
+            bundle.boardToken = boardToken;
+            bundle.startTime = startTime;
+            bundle.endTime = endTime;
+            bundle.lastAccess = System.currentTimeMillis();
+            try {
+                if (!dir.isDirectory() && !dir.mkdirs()) {
+                    throw new IOException("mkdirs failed: " + dir);
+                }
+                writeManifest(bundle);
+                if (url.endsWith(".m3u8")) {
+                    downloadHls(bundle);
+                } else {
+                    fetch(bundle, Uri.parse(url), MP4_FILE);
+                    bundle.mediaFile = MP4_FILE;
+                }
+                bundle.complete = true;
+                bundle.bytes = sizeOf(dir);
+                writeManifest(bundle);
+                Log.i(TAG, "downloaded " + bundle);
+                Listener listener = this.listener;
+                if (listener != null) {
+                    listener.onComplete(bundle);
+                }
+            } catch (Exception e) {
+                Log.w(TAG, "download failed: " + url, e);
+                Listener listener = this.listener;
+                if (listener != null) {
+                    listener.onFailure(bundle, e);
+                }
+            } finally {
+                finish(url);
+            }
+        });
+    }
+
+    /**
+     * 停止下载，已下载的部分保留，下次下载时续传
+     */
+    public void cancel(@NonNull String url) {
+        finish(url);
+    }
+
+    /**
+     * 删除离线包(包括未完成的部分)
+     */
+    public void delete(@NonNull String url) {
+        cancel(url);
+        executor.execute(() -> deleteRecursively(dirOf(url)));
+    }
+
+    /**
+     * 所有离线包占用的空间(字节)
+     */
+    public long getTotalBytes() {
+        return sizeOf(root);
+    }
+
+    private void finish(String url) {
+        synchronized (running) {
+            running.remove(url);
+        }
+    }
+
+    /**
+     * 下载播放列表引用的分片和密钥(主播放列表取第一个子播放列表)，再生成引用本地文件的播放列表
+     */
+    private void downloadHls(ReplayBundle bundle) throws IOException {
+        Uri playlistUri = Uri.parse(bundle.url);
+        List<String> lines = fetchLines(playlistUri);
+        for (int i = 0; i < lines.size() - 1; i++) {
+            if (lines.get(i).startsWith("#EXT-X-STREAM-INF")) {
+                playlistUri = ReplayCache.resolve(playlistUri, lines.get(i + 1));
+                lines = fetchLines(playlistUri);
+                break;
+            }
+        }
+        StringBuilder local = new StringBuilder();
+        int segmentIndex = 0, keyIndex = 0;
+        for (String line : lines) {
+            if (line.startsWith("#EXT-X-KEY") || line.startsWith("#EXT-X-MAP")) {
+                Matcher matcher = URI_ATTR.matcher(line);
+                if (matcher.find()) {
+                    String name = "key" + keyIndex++;
+                    fetch(bundle, ReplayCache.resolve(playlistUri, matcher.group(1)), name);
+                    line = line.substring(0, matcher.start(1)) + name + line.substring(matcher.end(1));
+                }
+            } else if (!line.isEmpty() && !line.startsWith("#")) {
+                String name = "seg" + segmentIndex++ + extensionOf(line);
+                fetch(bundle, ReplayCache.resolve(playlistUri, line), name);
+                line = name;
+            }
+            local.append(line).append('\n');
+        }
+        writeAtomically(new File(bundle.dir, HLS_FILE), local.toString());
+        bundle.mediaFile = HLS_FILE;
+    }
+
+    private List<String> fetchLines(Uri uri) throws IOException {
+        Request request = new Request.Builder().url(uri.toString()).build();
+        try (Response response = client.newCall(request).execute()) {
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null) {
+                throw new IOException("HTTP " + response.code() + ": " + uri);
+            }
+            List<String> lines = new ArrayList<>();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(body.byteStream(), UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line.trim());
+            }
+            return lines;
+        }
+    }
+
+    /**
+     * 下载单个文件：已存在时跳过，存在.part时用Range续传，完成后重命名
+     */
+    private void fetch(ReplayBundle bundle, Uri uri, String name) throws IOException {
+        File target = new File(bundle.dir, name);
+        if (target.exists()) {
+            return;
+        }
+        File part = new File(bundle.dir, name + PART);
+        long offset = part.length();
+        Request.Builder builder = new Request.Builder().url(uri.toString());
+        if (offset > 0) {
+            builder.header("Range", "bytes=" + offset + "-");
+        }
+        try (Response response = client.newCall(builder.build()).execute()) {
+            ResponseBody body = response.body();
+            boolean append;
+            if (response.code() == 206) {
+                append = true;
+            } else if (response.code() == 416 && offset > 0) {
+                /*.part已经是完整文件*/
+                rename(part, target);
+                return;
+            } else if (response.isSuccessful()) {
+                append = false;
+            } else {
+                throw new IOException("HTTP " + response.code() + ": " + uri);
+            }
+            if (body == null) {
+                throw new IOException("empty body: " + uri);
+            }
+            ensureSpace(bundle, Math.max(0, body.contentLength()));
+            copy(bundle, body.byteStream(), part, append);
+        }
+        rename(part, target);
+        bundle.bytes = sizeOf(bundle.dir);
+        Listener listener = this.listener;
+        if (listener != null) {
+            listener.onProgress(bundle);
+        }
+    }
+
+    private void copy(ReplayBundle bundle, InputStream in, File part, boolean append) throws IOException {
+        byte[] buffer = new byte[32 * 1024];
+        try (OutputStream out = new FileOutputStream(part, append)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                if (!isDownloading(bundle.url)) {
+                    throw new InterruptedIOException("canceled: " + bundle.url);
+                }
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * 保证写入{@param needed}字节后不超过配额，不够时按最后观看时间淘汰其他离线包
+     */
+    private void ensureSpace(ReplayBundle current, long needed) throws IOException {
+        if (root.getUsableSpace() - needed < MIN_FREE_SPACE) {
+            throw new IOException("insufficient storage for " + current.url);
+        }
+        long total = sizeOf(root);
+        if (total + needed <= quota) {
+            return;
+        }
+        List<ReplayBundle> candidates = new ArrayList<>();
+        File[] dirs = root.listFiles();
+        if (dirs != null) {
+            for (File dir : dirs) {
+                ReplayBundle bundle = readManifest(dir);
+                if (bundle != null && !dir.equals(current.dir) && !isDownloading(bundle.url)) {
+                    candidates.add(bundle);
+                }
+            }
+        }
+        Collections.sort(candidates, (o1, o2) -> Long.compare(o1.lastAccess, o2.lastAccess));
+        for (ReplayBundle bundle : candidates) {
+            if (total + needed <= quota) {
+                break;
+            }
+            long size = sizeOf(bundle.dir);
+            deleteRecursively(bundle.dir);
+            total -= size;
+            Log.i(TAG, "evicted " + bundle);
+        }
+        if (total + needed > quota) {
+            throw new IOException("storage quota exceeded: " + (total + needed) + " > " + quota);
+        }
+    }
+
+    private File dirOf(String url) {
+        return new File(root, UUID.nameUUIDFromBytes(url.getBytes(UTF_8)).toString());
+    }
+
+    @Nullable
+    private synchronized ReplayBundle readManifest(File dir) {
+        File file = new File(dir, ReplayBundle.MANIFEST);
+        if (!file.exists()) {
+            return null;
+        }
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] bytes = new byte[(int) file.length()];
+            int offset = 0, read;
+            while (offset < bytes.length && (read = in.read(bytes, offset, bytes.length - offset)) != -1) {
+                offset += read;
+            }
+            ReplayBundle bundle = JsonBean.fromJson(new String(bytes, 0, offset, UTF_8), ReplayBundle.class);
+            if (bundle != null) {
+                bundle.dir = dir;
+            }
+            return bundle;
+        } catch (Exception e) {
+            Log.w(TAG, "read bundle failed: " + dir, e);
+            return null;
+        }
+    }
+
+    private synchronized void writeManifest(ReplayBundle bundle) throws IOException {
+        writeAtomically(new File(bundle.dir, ReplayBundle.MANIFEST), bundle.toJsonString());
+    }
+
+    private static void writeAtomically(File file, String content) throws IOException {
+        File tmp = new File(file.getPath() + PART);
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            out.write(content.getBytes(UTF_8));
+        }
+        rename(tmp, file);
+    }
+
+    private static void rename(File from, File to) throws IOException {
+        if (!from.renameTo(to)) {
+            throw new IOException("rename failed: " + from);
+        }
+    }
+
+    private static String extensionOf(String path) {
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        int dot = path.lastIndexOf('.');
+        return dot > path.lastIndexOf('/') ? path.substring(dot) : ".ts";
+    }
+
+    private static long sizeOf(File file) {
+        if (file.isFile()) {
+            return file.length();
+        }
+        long size = 0;
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                size += sizeOf(child);
+            }
+        }
+        return size;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -1,10 +1,12 @@
 package io.agora.education.classroom.widget.player;
 
-import io.agora.timeline.Timeline;
+import com.herewhite.sdk.domain.PlayerTimeInfo;
+
+import io.agora.timeline.SyncableTimeline;
 import io.agora.timeline.TimelineState;
 import io.agora.whiteboard.netless.manager.ReplayManager;
 
-public class WhiteboardPlayer implements Timeline {
+public class WhiteboardPlayer implements SyncableTimeline {
     private ReplayManager mPlayer;
 
     WhiteboardPlayer(ReplayManager player) {
@@ -31,6 +33,20 @@ public class WhiteboardPlayer implements Timeline {
         mPlayer.stop();
     }
 
+    @Override
+    public long getPosition() {
+        PlayerTimeInfo info = mPlayer.getPlayerTimeInfo();
+        return info != null ? info.getScheduleTime() : 0;
+    }
+
+    /**
+     * 白板回放不调整速率，偏差通过seek纠正
+     */
+    @Override
+    public boolean setRate(float rate) {
+        return false;
+    }
+
     @TimelineState
     @Override
     public int getState() {
@@ -54,4 +54,16 @@ public class NetUtils {
         return info.getType() == ConnectivityManager.TYPE_MOBILE;
     }
 
+    /**
+     * check is metered (mobile data, hotspot...)
+     */
+    public static boolean isMetered(Context context) {
+        ConnectivityManager cm = (ConnectivityManager) context
+                .getSystemService(Context.CONNECTIVITY_SERVICE);
+
+        if (cm == null)
+            return true;
+        return cm.isActiveNetworkMetered();
+    }
+
 }
@@ -9,7 +9,11 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.FrameLayout;
 
-import com.google.gson.Gson;
+import androidx.annotation.CallSuper;
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
 import com.herewhite.sdk.domain.GlobalState;
 
 import org.jetbrains.annotations.NotNull;
@@ -26,6 +30,7 @@ import io.agora.education.EduApplication;
 import io.agora.education.R;
 import io.agora.education.RoomEntry;
 import io.agora.education.api.EduCallback;
+import io.agora.education.api.board.data.EduBoardInfo;
 import io.agora.education.api.logger.DebugItem;
 import io.agora.education.api.manager.listener.EduManagerEventListener;
 import io.agora.education.api.message.EduActionMessage;
@@ -35,7 +40,6 @@ import io.agora.education.api.message.EduMsg;
 import io.agora.education.api.room.EduRoom;
 import io.agora.education.api.room.data.EduRoomInfo;
 import io.agora.education.api.room.data.EduRoomState;
-import io.agora.education.api.room.data.EduRoomStatus;
 import io.agora.education.api.room.data.RoomCreateOptions;
 import io.agora.education.api.room.data.RoomJoinOptions;
 import io.agora.education.api.room.data.RoomMediaOptions;
@@ -48,7 +52,9 @@ import io.agora.education.api.stream.data.EduStreamEvent;
 import io.agora.education.api.stream.data.EduStreamInfo;
 import io.agora.education.api.stream.data.EduStreamStateChangeType;
 import io.agora.education.api.stream.data.LocalStreamInitOptions;
+import io.agora.education.api.stream.data.StreamSubscribeOptions;
 import io.agora.education.api.stream.data.VideoSourceType;
+import io.agora.education.api.stream.data.VideoStreamType;
 import io.agora.education.api.user.EduStudent;
 import io.agora.education.api.user.EduUser;
 import io.agora.education.api.user.data.EduUserEvent;
@@ -57,9 +63,10 @@ import io.agora.education.api.user.data.EduUserRole;
 import io.agora.education.api.user.data.EduUserStateChangeType;
 import io.agora.education.api.user.listener.EduUserEventListener;
 import io.agora.education.base.BaseActivity;
+import io.agora.education.classroom.adapter.ClassVideoAdapter;
+import io.agora.education.classroom.adapter.VideoGallery;
 import io.agora.education.classroom.bean.board.BoardBean;
 import io.agora.education.classroom.bean.board.BoardFollowMode;
-import io.agora.education.classroom.bean.board.BoardInfo;
 import io.agora.education.classroom.bean.board.BoardState;
 import io.agora.education.classroom.bean.channel.Room;
 import io.agora.education.classroom.bean.channel.User;
@@ -68,17 +75,20 @@ import io.agora.education.classroom.bean.record.RecordBean;
 import io.agora.education.classroom.bean.record.RecordMsg;
 import io.agora.education.classroom.fragment.ChatRoomFragment;
 import io.agora.education.classroom.fragment.WhiteBoardFragment;
+import io.agora.education.classroom.state.ClassStateDispatcher;
+import io.agora.education.classroom.state.ClassUiState;
+import io.agora.education.classroom.widget.RtcVideoView;
 import io.agora.education.classroom.widget.TitleView;
 import io.agora.education.service.BoardService;
 import io.agora.education.service.bean.ResponseBody;
 import io.agora.education.widget.ConfirmDialog;
+import kotlin.Unit;
 
 import static io.agora.education.EduApplication.getAppId;
 import static io.agora.education.EduApplication.getManager;
 import static io.agora.education.MainActivity.CODE;
 import static io.agora.education.MainActivity.REASON;
 import static io.agora.education.api.BuildConfig.API_BASE_URL;
-import static io.agora.education.classroom.bean.board.BoardBean.BOARD;
 import static io.agora.education.classroom.bean.record.RecordBean.RECORD;
 import static io.agora.education.classroom.bean.record.RecordState.END;
 
@@ -103,8 +113,14 @@ public abstract class BaseClassActivity extends BaseActivity implements EduRoomE
     private volatile boolean isJoining = false, joinSuccess = false;
     private EduRoom mainEduRoom;
     private EduStreamInfo localCameraStream, localScreenStream;
-    protected BoardBean mainBoardBean;
+    protected EduBoardInfo mainBoardInfo;
     protected RecordBean mainRecordBean;
+    protected VideoGallery videoGallery;
+    /**
+     * SDK回调只向它提交事件，界面在{@link #render(ClassUiState)}中按状态刷新
+     */
+    protected final ClassStateDispatcher stateDispatcher = new ClassStateDispatcher(this::render);
+    private EduStreamInfo renderedScreenShare, renderedTeacherCamera;
     protected volatile boolean revRecordMsg = false;
 
 
@@ -344,6 +360,10 @@ public abstract class BaseClassActivity extends BaseActivity implements EduRoomE
         title_view.setTimeState(false, 0);
         /**退出activity之前释放eduRoom资源*/
         mainEduRoom = null;
+        stateDispatcher.release();
+        if (videoGallery != null) {
+            videoGallery.release();
+        }
         whiteboardFragment.releaseBoard();
         getManager().setEduManagerEventListener(null);
         getManager().release();
@@ -412,6 +432,140 @@ public abstract class BaseClassActivity extends BaseActivity implements EduRoomE
                 room.getRoomInfo().getRoomUuid(), viewGroup));
     }
 
+    /**
+     * 视频列表使用画廊模式，每页的条目数为一屏能显示的条目数(不超过{@link VideoGallery#MAX_PAGE_SIZE})；
+     * 列表停止滚动时对齐到最近一页的第一个条目，该页成为当前页
+     */
+    protected void setupVideoGallery(RecyclerView recyclerView, ClassVideoAdapter adapter) {
+        int pageSize = getResources().getDisplayMetrics().widthPixels
+                / getResources().getDimensionPixelSize(R.dimen.dp_95);
+        videoGallery = new VideoGallery(pageSize, (streamInfo, subscribe) -> {
+            subscribeListVideo(getMainEduRoom(), streamInfo, subscribe);
+            if (!subscribe) {
+                renderStream(getMainEduRoom(), streamInfo, null);
+            }
+        });
+        adapter.setGallery(videoGallery);
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(@NotNull RecyclerView recyclerView, int newState) {
+                if (newState != RecyclerView.SCROLL_STATE_IDLE
+                        || !(recyclerView.getLayoutManager() instanceof LinearLayoutManager)) {
+                    return;
+                }
+                LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+                int first = layoutManager.findFirstVisibleItemPosition();
+                View firstView = layoutManager.findViewByPosition(first);
+                if (firstView == null || firstView.getWidth() == 0) {
+                    return;
+                }
+                /*第一个条目被滚出的部分折算成位置，取最近的一页*/
+                int left = layoutManager.getDecoratedLeft(firstView) - recyclerView.getPaddingLeft();
+                int width = layoutManager.getDecoratedMeasuredWidth(firstView);
+                float position = first - (float) left / width;
+                videoGallery.setPage(Math.round(position / videoGallery.getPageSize()));
+                int target = videoGallery.firstPositionOf(videoGallery.getPage());
+                View targetView = layoutManager.findViewByPosition(target);
+                int dx = targetView != null
+                        ? layoutManager.getDecoratedLeft(targetView) - recyclerView.getPaddingLeft()
+                        : (target - first) * width + left;
+                /*滚动到末尾时最后一页无法对齐到开头，不再继续滚动*/
+                if (dx < 0 || (dx > 0 && recyclerView.canScrollHorizontally(1))) {
+                    recyclerView.smoothScrollBy(dx, 0);
+                }
+            }
+        });
+    }
+
+    /**
+     * 订阅或取消订阅列表中远端流的视频，音频始终保持订阅；本地流不处理
+     */
+    public void subscribeListVideo(EduRoom room, EduStreamInfo eduStreamInfo, boolean subscribe) {
+        EduUser localUser = room.getLocalUser();
+        if (eduStreamInfo.getPublisher().getUserUuid().equals(localUser.getUserInfo().getUserUuid())) {
+            return;
+        }
+        StreamSubscribeOptions options = new StreamSubscribeOptions(true, subscribe, VideoStreamType.HIGH);
+        EduCallback<Unit> callback = new EduCallback<Unit>() {
+            @Override
+            public void onSuccess(@Nullable Unit res) {
+            }
+
+            @Override
+            public void onFailure(int code, @Nullable String reason) {
+                Log.e(TAG, "subscribeListVideo->" + eduStreamInfo.getStreamUuid() + ", subscribe:" + subscribe
+                        + ", code:" + code + ", reason:" + reason);
+            }
+        };
+        if (subscribe) {
+            localUser.subscribeStream(eduStreamInfo, options, callback);
+        } else {
+            localUser.unSubscribeStream(eduStreamInfo, options, callback);
+        }
+    }
+
+    /**
+     * 根据教室状态刷新界面，在主线程每帧最多调用一次；子类重写时先调用super
+     */
+    @CallSuper
+    protected void render(@NonNull ClassUiState state) {
+        if (state.changed(ClassUiState.SCREEN_SHARE)) {
+            renderScreenShare(state.getScreenShareStream());
+        }
+        if (state.changed(ClassUiState.USERS)) {
+            title_view.setTitle(getMediaRoomName());
+        }
+        if (state.changed(ClassUiState.COURSE_STATE) && state.getCourseState() != null) {
+            title_view.setTimeState(state.getCourseState() == EduRoomState.START,
+                    System.currentTimeMillis() - state.getStartTime());
+        }
+        if (state.changed(ClassUiState.CHAT_PERMISSION)) {
+            chatRoomFragment.setMuteAll(!state.isStudentChatAllowed());
+            chatRoomFragment.setMuteLocal(!state.isLocalChatAllowed());
+        }
+        if (state.changed(ClassUiState.CHAT)) {
+            chatRoomFragment.addMessages(state.getNewChatMsgs());
+        }
+        if (state.changed(ClassUiState.NETWORK)) {
+            title_view.setNetworkQuality(state.getNetworkQuality());
+        }
+    }
+
+    /**
+     * 老师打开屏幕分享时把流渲染到白板的位置，关闭时恢复白板
+     */
+    private void renderScreenShare(@Nullable EduStreamInfo streamInfo) {
+        if (streamInfo != null) {
+            layout_whiteboard.setVisibility(View.GONE);
+            layout_share_video.setVisibility(View.VISIBLE);
+            layout_share_video.removeAllViews();
+            renderStream(getMainEduRoom(), streamInfo, layout_share_video);
+        } else if (renderedScreenShare != null) {
+            layout_whiteboard.setVisibility(View.VISIBLE);
+            layout_share_video.setVisibility(View.GONE);
+            layout_share_video.removeAllViews();
+            renderStream(getMainEduRoom(), renderedScreenShare, null);
+        }
+        renderedScreenShare = streamInfo;
+    }
+
+    /**
+     * 把老师的摄像头流渲染到view中，流不存在时解除上一次的渲染
+     */
+    protected void renderTeacherCamera(RtcVideoView view, @Nullable EduStreamInfo streamInfo) {
+        if (streamInfo != null) {
+            view.setName(streamInfo.getPublisher().getUserName());
+            renderStream(getMainEduRoom(), streamInfo, view.getVideoLayout());
+            view.muteVideo(!streamInfo.getHasVideo());
+            view.muteAudio(!streamInfo.getHasAudio());
+        } else if (renderedTeacherCamera != null) {
+            renderStream(getMainEduRoom(), renderedTeacherCamera, null);
+            view.muteVideo(true);
+            view.muteAudio(true);
+        }
+        renderedTeacherCamera = streamInfo;
+    }
+
     protected String getProperty(Map<String, Object> properties, String key) {
         if (properties != null) {
             for (Map.Entry<String, Object> property : properties.entrySet()) {
@@ -465,21 +619,18 @@ public abstract class BaseClassActivity extends BaseActivity implements EduRoomE
 
     @Override
     public void onRemoteUsersInitialized(@NotNull List<? extends EduUserInfo> users, @NotNull EduRoom classRoom) {
-        EduRoomStatus roomStatus = getMyMediaRoom().getRoomStatus();
-        title_view.setTimeState(roomStatus.getCourseState() == EduRoomState.START,
-                System.currentTimeMillis() - roomStatus.getStartTime());
-        chatRoomFragment.setMuteAll(!roomStatus.isStudentChatAllowed());
+        stateDispatcher.setRoomStatus(getMyMediaRoom().getRoomStatus());
+        stateDispatcher.setUsers(getCurFullUser());
         /**处理roomProperties*/
         Map<String, Object> roomProperties = classRoom.getRoomProperties();
         /**判断roomProperties中是否有白板属性信息，如果没有，发起请求,等待RTM通知*/
-        String boardJson = getProperty(roomProperties, BOARD);
-        if (TextUtils.isEmpty(boardJson)) {
+        EduBoardInfo info = classRoom.getBoard().getCurrentBoardInfo();
+        if (info == null) {
             requestBoardInfo((getMainEduRoom().getLocalUser().getUserInfo()).getUserToken(),
                     getAppId(), classRoom.getRoomInfo().getRoomUuid());
         } else {
-            mainBoardBean = new Gson().fromJson(boardJson, BoardBean.class);
-            BoardInfo info = mainBoardBean.getInfo();
-            Log.e(TAG, "白板信息已存在->" + boardJson);
+            mainBoardInfo = info;
+            Log.e(TAG, "白板信息已存在->" + info);
             runOnUiThread(() -> {
                 whiteboardFragment.initBoardWithRoomToken(info.getBoardId(),
                         info.getBoardToken(), getLocalUserInfo().getUserUuid());
@@ -502,17 +653,26 @@ public abstract class BaseClassActivity extends BaseActivity implements EduRoomE
     @Override
     public void onRemoteUsersJoined(@NotNull List<? extends EduUserInfo> users, @NotNull EduRoom classRoom) {
         Log.e(TAG, "收到远端用户加入的回调");
+        if (classRoom.equals(getMyMediaRoom())) {
+            stateDispatcher.setUsers(getCurFullUser());
+        }
     }
 
     @Override
     public void onRemoteUserLeft(@NotNull EduUserEvent userEvent, @NotNull EduRoom classRoom) {
         Log.e(TAG, "收到远端用户离开的回调");
+        if (classRoom.equals(getMyMediaRoom())) {
+            stateDispatcher.setUsers(getCurFullUser());
+        }
     }
 
     @Override
     public void onRemoteUserUpdated(@NotNull EduUserEvent userEvent, @NotNull EduUserStateChangeType type,
                                     @NotNull EduRoom classRoom) {
         Log.e(TAG, "收到远端用户修改的回调");
+        if (classRoom.equals(getMyMediaRoom())) {
+            stateDispatcher.setUsers(getCurFullUser());
+        }
     }
 
     @Override
@@ -526,97 +686,53 @@ public abstract class BaseClassActivity extends BaseActivity implements EduRoomE
         ChannelMsg.ChatMsg chatMsg = new ChannelMsg.ChatMsg(eduChatMsg.getFromUser(),
                 eduChatMsg.getMessage(), eduChatMsg.getType());
         chatMsg.isMe = chatMsg.getFromUser().equals(classRoom.getLocalUser().getUserInfo());
-        chatRoomFragment.addMessage(chatMsg);
+        stateDispatcher.addChatMessage(chatMsg);
         Log.e(TAG, "成功添加一条聊天消息");
     }
 
     @Override
     public void onRemoteStreamsInitialized(@NotNull List<? extends EduStreamInfo> streams, @NotNull EduRoom classRoom) {
         Log.e(TAG, "onRemoteStreamsInitialized");
+        stateDispatcher.setStreams(getCurFullStream());
     }
 
     @Override
     public void onRemoteStreamsAdded(@NotNull List<EduStreamEvent> streamEvents, @NotNull EduRoom classRoom) {
         Log.e(TAG, "收到添加远端流的回调");
-        for (EduStreamEvent streamEvent : streamEvents) {
-            EduStreamInfo streamInfo = streamEvent.getModifiedStream();
-            if (streamInfo.getPublisher().getRole() == EduUserRole.TEACHER
-                    && streamInfo.getVideoSourceType().equals(VideoSourceType.SCREEN)) {
-                /**老师打开了屏幕分享，此时把这个流渲染出来*/
-                runOnUiThread(() -> {
-                    layout_whiteboard.setVisibility(View.GONE);
-                    layout_share_video.setVisibility(View.VISIBLE);
-                    layout_share_video.removeAllViews();
-                    renderStream(getMainEduRoom(), streamInfo, layout_share_video);
-                });
-                break;
-            }
-        }
+        /**老师的屏幕分享在render中处理*/
+        stateDispatcher.setStreams(getCurFullStream());
     }
 
     @Override
     public void onRemoteStreamUpdated(@NotNull EduStreamEvent streamEvent,
                                       @NotNull EduStreamStateChangeType type, @NotNull EduRoom classRoom) {
         Log.e(TAG, "收到修改远端流的回调");
-        EduStreamInfo streamInfo = streamEvent.getModifiedStream();
-        if (streamInfo.getPublisher().getRole() == EduUserRole.TEACHER
-                && streamInfo.getVideoSourceType().equals(VideoSourceType.SCREEN)) {
-            runOnUiThread(() -> {
-                layout_whiteboard.setVisibility(View.GONE);
-                layout_share_video.setVisibility(View.VISIBLE);
-                layout_share_video.removeAllViews();
-                renderStream(getMainEduRoom(), streamInfo, layout_share_video);
-            });
-        }
+        stateDispatcher.setStreams(getCurFullStream());
     }
 
     @Override
     public void onRemoteStreamsRemoved(@NotNull List<EduStreamEvent> streamEvents, @NotNull EduRoom classRoom) {
         Log.e(TAG, "收到移除远端流的回调");
-        for (EduStreamEvent streamEvent : streamEvents) {
-            EduStreamInfo streamInfo = streamEvent.getModifiedStream();
-            if (streamInfo.getPublisher().getRole() == EduUserRole.TEACHER
-                    && streamInfo.getVideoSourceType().equals(VideoSourceType.SCREEN)) {
-                /**老师关闭了屏幕分享，移除屏幕分享的布局*/
-                runOnUiThread(() -> {
-                    layout_whiteboard.setVisibility(View.VISIBLE);
-                    layout_share_video.setVisibility(View.GONE);
-                    layout_share_video.removeAllViews();
-                    renderStream(getMainEduRoom(), streamInfo, null);
-                });
-                break;
-            }
-        }
+        stateDispatcher.setStreams(getCurFullStream());
     }
 
     @Override
     public void onRoomStatusChanged(@NotNull EduRoomChangeType event, @NotNull EduUserInfo operatorUser, @NotNull EduRoom classRoom) {
-        EduRoomStatus roomStatus = classRoom.getRoomStatus();
-        switch (event) {
-            case CourseState:
-                title_view.setTimeState(roomStatus.getCourseState() == EduRoomState.START,
-                        System.currentTimeMillis() - roomStatus.getStartTime());
-                break;
-            case AllStudentsChat:
-                chatRoomFragment.setMuteAll(!roomStatus.isStudentChatAllowed());
-                break;
-            default:
-                break;
-        }
+        stateDispatcher.setRoomStatus(classRoom.getRoomStatus());
     }
 
     @Override
     public void onRoomPropertyChanged(@NotNull EduRoom classRoom, @Nullable Map<String, Object> cause) {
         Log.e(TAG, "收到roomProperty改变的数据");
         Map<String, Object> roomProperties = classRoom.getRoomProperties();
-        String boardJson = getProperty(roomProperties, BOARD);
-        if (mainBoardBean == null) {
-            Log.e(TAG, "首次获取到白板信息->" + boardJson);
+        EduBoardInfo boardInfo = classRoom.getBoard().getCurrentBoardInfo();
+        if (mainBoardInfo == null && boardInfo != null) {
+            Log.e(TAG, "首次获取到白板信息->" + boardInfo);
             /**首次获取到白板信息*/
-            mainBoardBean = new Gson().fromJson(boardJson, BoardBean.class);
+            mainBoardInfo = boardInfo;
             runOnUiThread(() -> {
-                whiteboardFragment.initBoardWithRoomToken(mainBoardBean.getInfo().getBoardId(),
-                        mainBoardBean.getInfo().getBoardToken(), getLocalUserInfo().getUserUuid());
+                whiteboardFragment.initBoardWithRoomToken(boardInfo.getBoardId(),
+                        boardInfo.getBoardToken(), getLocalUserInfo().getUserUuid());
 //                boolean follow = whiteBoardIsFollowMode(state);
 //                if (follow) {
 //                    layout_whiteboard.setVisibility(View.VISIBLE);
@@ -641,7 +757,7 @@ public abstract class BaseClassActivity extends BaseActivity implements EduRoomE
                     RecordMsg recordMsg = new RecordMsg(getMediaRoomUuid(), getLocalUserInfo(),
                             getString(R.string.replay_link), EduChatMsgType.Text.getValue());
                     recordMsg.isMe = true;
-                    chatRoomFragment.addMessage(recordMsg);
+                    stateDispatcher.addChatMessage(recordMsg);
                 }
             }
         }
@@ -655,6 +771,9 @@ public abstract class BaseClassActivity extends BaseActivity implements EduRoomE
     @Override
     public void onNetworkQualityChanged(@NotNull NetworkQuality quality, @NotNull EduUserInfo user, @NotNull EduRoom classRoom) {
 //        Log.e(TAG, "onNetworkQualityChanged->" + quality.getValue());
+        if (classRoom.equals(getMyMediaRoom()) && user.equals(classRoom.getLocalUser().getUserInfo())) {
+            stateDispatcher.setNetworkQuality(quality);
+        }
     }
 
     @Override
@@ -666,7 +785,8 @@ public abstract class BaseClassActivity extends BaseActivity implements EduRoomE
     public void onLocalUserUpdated(@NotNull EduUserEvent userEvent, @NotNull EduUserStateChangeType type) {
         /**更新用户信息*/
         EduUserInfo userInfo = userEvent.getModifiedUser();
-        chatRoomFragment.setMuteLocal(!userInfo.isChatAllowed());
+        stateDispatcher.setLocalChatAllowed(!Boolean.FALSE.equals(userInfo.isChatAllowed()));
+        stateDispatcher.setStreams(getCurFullStream());
     }
 
     @Override
@@ -688,6 +808,7 @@ public abstract class BaseClassActivity extends BaseActivity implements EduRoomE
             default:
                 break;
         }
+        stateDispatcher.setStreams(getCurFullStream());
     }
 
     @Override
@@ -703,6 +824,7 @@ public abstract class BaseClassActivity extends BaseActivity implements EduRoomE
             default:
                 break;
         }
+        stateDispatcher.setStreams(getCurFullStream());
     }
 
     @Override
@@ -718,6 +840,7 @@ public abstract class BaseClassActivity extends BaseActivity implements EduRoomE
             default:
                 break;
         }
+        stateDispatcher.setStreams(getCurFullStream());
     }
 
     /**
@@ -19,4 +19,7 @@ abstract class EduBoard {
     abstract fun revokePermission(user: EduUserInfo, callback: EduCallback<Unit>)
 
     abstract fun getBoardInfo(callback: EduCallback<EduBoardInfo>)
+
+    /**房间属性中的白板信息，只在白板属性变化时重新解析；没有时返回null*/
+    abstract fun getCurrentBoardInfo(): EduBoardInfo?
 }
@@ -2,5 +2,11 @@ package io.agora.education.api.board.data
 
 data class EduBoardInfo(
         val boardId: String,
-        val boardToken: String
+        val boardToken: String,
+        /**是否开启白板跟随*/
+        val follow: Boolean = false,
+        /**得到白板授权的用户uuid*/
+        val grantUsers: List<String> = listOf(),
+        /**房间属性中的白板信息每变化一次加一*/
+        val version: Int = 0
 )
@@ -1,5 +1,6 @@
 package io.agora.education.api.board.listener
 
+import io.agora.education.api.board.data.EduBoardInfo
 import io.agora.education.api.user.data.EduUserInfo
 
 interface EduBoardEventListener {
@@ -8,4 +9,7 @@ interface EduBoardEventListener {
     fun onPermissionGranted(student: EduUserInfo)
 
     fun onPermissionRevoked(student: EduUserInfo)
+
+    /**房间属性中的白板信息发生变化(首次获取到也会回调)*/
+    fun onBoardInfoChanged(info: EduBoardInfo)
 }
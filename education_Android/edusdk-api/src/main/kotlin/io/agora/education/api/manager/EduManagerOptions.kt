@@ -14,4 +14,6 @@ data class EduManagerOptions(
     var customerCertificate: String? = null
     var logLevel: LogLevel = LogLevel.NONE
     var logFileDir: String? = null
+    /**文件日志使用二进制格式，体积更小，需用BinaryLogDecoder还原为文本*/
+    var binaryLog: Boolean = false
 }
@@ -1,7 +1,9 @@
 package io.agora.education.api.record
 
 import io.agora.education.api.EduCallback
+import io.agora.education.api.record.data.EduRecordDetail
 import io.agora.education.api.record.data.EduRecordInfo
+import io.agora.education.api.record.data.EduRecordPage
 import io.agora.education.api.record.listener.EduRecordEventListener
 
 abstract class EduRecord {
@@ -13,4 +15,15 @@ abstract class EduRecord {
     abstract fun startRecord(callback: EduCallback<Unit>)
 
     abstract fun stopRecord(callback: EduCallback<Unit>)
+
+    /**当前房间最近(startTime最大)的一次录制，不论状态；没有录制时返回null
+     * 结果按房间缓存(内存+磁盘)，收到录制状态变化时失效*/
+    abstract fun getLatestRecord(callback: EduCallback<EduRecordDetail?>)
+
+    /**当前房间最近一次已完成(可以回放)的录制，没有时返回null*/
+    abstract fun getLatestFinishedRecord(callback: EduCallback<EduRecordDetail?>)
+
+    /**分页查询当前房间的录制列表
+     * @param nextId 第一页传0，之后传上一页返回的nextId*/
+    abstract fun getRecordList(nextId: Int, callback: EduCallback<EduRecordPage>)
 }
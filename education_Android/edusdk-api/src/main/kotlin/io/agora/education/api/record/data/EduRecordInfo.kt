@@ -15,3 +15,26 @@ data class EduRecordInfo(
         var recordState: RecordState,
         var recordingTime: Long
 )
+
+data class EduRecordDetail(
+        var roomUuid: String,
+        var recordId: String,
+        /**录制用户id*/
+        var recordUuid: String?,
+        var boardId: String?,
+        var boardToken: String?,
+        var recordState: RecordState,
+        var startTime: Long,
+        var endTime: Long,
+        var url: String?
+) {
+    fun isFinished(): Boolean {
+        return recordState == RecordState.FINISHED
+    }
+}
+
+data class EduRecordPage(
+        var list: MutableList<EduRecordDetail>,
+        var total: Int,
+        var nextId: Int
+)
@@ -7,6 +7,7 @@ import io.agora.education.api.room.data.EduRoomInfo
 import io.agora.education.api.room.data.EduRoomStatus
 import io.agora.education.api.room.data.RoomJoinOptions
 import io.agora.education.api.room.listener.EduRoomEventListener
+import io.agora.education.api.statistics.NetworkQualitySummary
 import io.agora.education.api.stream.data.EduStreamInfo
 import io.agora.education.api.user.EduStudent
 import io.agora.education.api.user.EduTeacher
@@ -50,6 +51,9 @@ abstract class EduRoom(roomInfo: EduRoomInfo, roomStatus: EduRoomStatus) {
 
     abstract fun getFullUserList(): MutableList<EduUserInfo>
 
+    /**房间内本地和远端用户网络质量的汇总(最差值/中位数)*/
+    abstract fun getNetworkQualitySummary(): NetworkQualitySummary
+
     abstract fun clearData()
 
     abstract fun leave()
@@ -45,6 +45,7 @@ interface EduRoomEventListener {
      * 对应EduUser中的updateUserProperty*/
     fun onRemoteUserPropertyUpdated(userInfo: EduUserInfo, classRoom: EduRoom, cause: MutableMap<String, Any>?)
 
+    /**本地或远端用户(平滑后的)网络质量等级发生改变时回调，质量未变化时不回调*/
     fun onNetworkQualityChanged(quality: NetworkQuality, user: EduUserInfo, classRoom: EduRoom)
 
     fun onConnectionStateChanged(state: ConnectionState, classRoom: EduRoom)
@@ -0,0 +1,13 @@
+package io.agora.education.api.statistics
+
+/**房间内网络质量的汇总信息
+ * @param local 本地用户(平滑后)的网络质量
+ * @param worst 房间内(包括本地和远端用户)最差的网络质量
+ * @param median 房间内网络质量的中位数
+ * @param userCount 参与统计的用户数(不包括质量未知和长时间未上报的用户)*/
+data class NetworkQualitySummary(
+        val local: NetworkQuality,
+        val worst: NetworkQuality,
+        val median: NetworkQuality,
+        val userCount: Int
+)
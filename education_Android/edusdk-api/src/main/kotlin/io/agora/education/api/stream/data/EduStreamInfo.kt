@@ -52,8 +52,9 @@ open class EduStreamInfo(
         return var1
     }
 
+    /**快照：publisher也复制一份，之后流或发布者的信息变化不会影响快照，可以和新的数据比较*/
     fun copy(): EduStreamInfo {
-        return EduStreamInfo(streamUuid, streamName, videoSourceType, hasVideo, hasAudio, publisher)
+        return EduStreamInfo(streamUuid, streamName, videoSourceType, hasVideo, hasAudio, publisher.copy())
     }
 }
 
@@ -1,20 +1,41 @@
 package io.agora.education.impl.board
 
+import com.google.gson.Gson
 import io.agora.Constants
+import io.agora.Constants.Companion.AgoraLog
 import io.agora.base.callback.ThrowableCallback
+import io.agora.base.network.BusinessException
 import io.agora.base.network.RetrofitManager
 import io.agora.education.api.BuildConfig.API_BASE_URL
 import io.agora.education.api.EduCallback
 import io.agora.education.api.board.EduBoard
 import io.agora.education.api.board.data.EduBoardInfo
+import io.agora.education.api.statistics.AgoraError
 import io.agora.education.api.user.data.EduUserInfo
 import io.agora.education.impl.ResponseBody
 import io.agora.education.impl.board.data.request.BoardRoomStateReq
 import io.agora.education.impl.board.data.request.BoardUserStateReq
+import io.agora.education.impl.board.data.response.BoardPropertyRes
 import io.agora.education.impl.board.data.response.BoardRoomRes
 import io.agora.education.impl.board.network.BoardService
+import io.agora.education.impl.room.EduRoomImpl
+
+/**白板信息来自房间属性的board字段，解析结果缓存在本地，只有该字段变化时才重新解析*/
+class EduBoardImpl internal constructor(
+        private val eduRoom: EduRoomImpl
+) : EduBoard() {
+    private val TAG = EduBoardImpl::class.java.simpleName
+
+    companion object {
+        /**房间属性中白板信息的key*/
+        const val BOARD = "board"
+    }
+
+    /**上次解析的原始属性值，用于判断是否需要重新解析*/
+    private var lastRaw: Any? = null
+    private var boardInfo: EduBoardInfo? = null
+    private var version = 0
 
-class EduBoardImpl : EduBoard() {
     override fun followMode(enable: Boolean, callback: EduCallback<Unit>) {
         RetrofitManager.instance().getService(API_BASE_URL, BoardService::class.java)
                 .updateBoardRoomState("", Constants.APPID, "", BoardRoomStateReq(if (enable) 1 else 0))
@@ -58,16 +79,87 @@ class EduBoardImpl : EduBoard() {
     }
 
     override fun getBoardInfo(callback: EduCallback<EduBoardInfo>) {
+        getCurrentBoardInfo()?.let {
+            callback.onSuccess(it)
+            return
+        }
         RetrofitManager.instance().getService(API_BASE_URL, BoardService::class.java)
-                .getBoardRoom("", Constants.APPID, "")
+                .getBoardRoom("", Constants.APPID, eduRoom.getRoomInfo().roomUuid)
                 .enqueue(RetrofitManager.Callback(0, object : ThrowableCallback<ResponseBody<BoardRoomRes>> {
                     override fun onSuccess(res: ResponseBody<BoardRoomRes>?) {
-
+                        val data = res?.data
+                        if (data == null) {
+                            callback.onFailure(AgoraError.INTERNAL_ERROR.value, "board info is null")
+                            return
+                        }
+                        callback.onSuccess(EduBoardInfo(data.boardInfo.boardId, data.boardInfo.boardToken,
+                                data.boardState.followMode == 1))
                     }
 
                     override fun onFailure(throwable: Throwable?) {
-
+                        val error = throwable as? BusinessException
+                        callback.onFailure(error?.code ?: AgoraError.INTERNAL_ERROR.value,
+                                error?.message ?: throwable?.message)
                     }
                 }))
     }
+
+    @Synchronized
+    override fun getCurrentBoardInfo(): EduBoardInfo? {
+        val raw = eduRoom.roomProperties[BOARD]
+        if (raw !== lastRaw) {
+            lastRaw = raw
+            boardInfo = parse(raw)
+        }
+        return boardInfo
+    }
+
+    /**房间属性发生变化时调用：白板信息变化时回调监听者*/
+    fun onRoomPropertiesChanged(changeProperties: Map<String, Any>) {
+        if (changeProperties.keys.none { it == BOARD || it.startsWith("$BOARD.") }) {
+            return
+        }
+        val old = synchronized(this) { boardInfo }
+        val new = getCurrentBoardInfo()
+        if (new == null || new === old) {
+            return
+        }
+        AgoraLog.i("$TAG->白板信息变化:version=${new.version}")
+        eventListener?.let { listener ->
+            if (old == null || old.follow != new.follow) {
+                listener.onFollowMode(new.follow)
+            }
+            val oldGrants = old?.grantUsers ?: listOf()
+            val users = eduRoom.getCurUserList()
+            new.grantUsers.filter { !oldGrants.contains(it) }.forEach { uuid ->
+                users.firstOrNull { it.userUuid == uuid }?.let { listener.onPermissionGranted(it) }
+            }
+            oldGrants.filter { !new.grantUsers.contains(it) }.forEach { uuid ->
+                users.firstOrNull { it.userUuid == uuid }?.let { listener.onPermissionRevoked(it) }
+            }
+            listener.onBoardInfoChanged(new)
+        }
+    }
+
+    /**值与上次相同时不会调用；解析失败或缺少info时返回null*/
+    private fun parse(raw: Any?): EduBoardInfo? {
+        if (raw == null) {
+            return null
+        }
+        return try {
+            val gson = Gson()
+            val res = if (raw is String) {
+                gson.fromJson(raw, BoardPropertyRes::class.java)
+            } else {
+                gson.fromJson(gson.toJsonTree(raw), BoardPropertyRes::class.java)
+            }
+            val info = res?.info ?: return null
+            version++
+            EduBoardInfo(info.boardId, info.boardToken, res.state?.follow == 1,
+                    res.state?.grantUsers ?: listOf(), version)
+        } catch (e: Exception) {
+            AgoraLog.e("$TAG->解析白板信息失败:${e.message}")
+            null
+        }
+    }
 }
@@ -13,3 +13,14 @@ internal data class BoardRoomRes(
         val boardInfo: BoardInfoRes,
         val boardState: BoardStatusRes
 )
+
+internal data class BoardPropertyStateRes(
+        val follow: Int,
+        val grantUsers: List<String>?
+)
+
+/**房间属性中board字段的结构*/
+internal data class BoardPropertyRes(
+        val info: BoardInfoRes?,
+        val state: BoardPropertyStateRes?
+)
@@ -140,7 +140,7 @@ internal class CMDDataMergeProcessor : CMDProcessor() {
                                 publisher, it.updateTime)
 //                        if (streamInfoList.contains(streamInfo)) {
                         val index = Convert.streamExistsInList(streamInfo, streamInfoList)
-                        Log.e(TAG, "index的值:$index, 数组长度:${streamInfoList.size}")
+                        Log.d(TAG, "index的值:$index, 数组长度:${streamInfoList.size}")
                         if (index > -1) {
                             /**更新本地缓存为最新数据;因为onlineUserList经过了有效判断，所以此处不再比较updateTime，直接remove*/
                             streamInfoList[index] = streamInfo
@@ -210,7 +210,7 @@ internal class CMDDataMergeProcessor : CMDProcessor() {
                 for (element in streamInfos) {
 //                    if (streamInfoList.contains(element)) {
                     val index = Convert.streamExistsInList(element, streamInfoList)
-                    Log.e(TAG, "index的值:$index, 数组长度:${streamInfoList.size}")
+                    Log.d(TAG, "index的值:$index, 数组长度:${streamInfoList.size}")
                     if (index > -1) {
                         /**更新用户的数据为最新数据*/
                         streamInfoList[index] = element
@@ -277,7 +277,7 @@ internal class CMDDataMergeProcessor : CMDProcessor() {
             synchronized(streamInfoList) {
                 for (element in streamInfos) {
                     val index = Convert.streamExistsInList(element, streamInfoList)
-                    Log.e(TAG, "index的值:$index, 数组长度:${streamInfoList.size}")
+                    Log.d(TAG, "index的值:$index, 数组长度:${streamInfoList.size}")
                     if (index > -1) {
                         /**获取已存在于集合中的用户*/
                         val userInfo2 = streamInfoList[index]
@@ -322,7 +322,7 @@ internal class CMDDataMergeProcessor : CMDProcessor() {
                 for (element in streamInfos) {
 //                    if (streamInfoList.contains(element)) {
                     val index = Convert.streamExistsInList(element, streamInfoList)
-                    Log.e(TAG, "index的值:$index, 数组长度:${streamInfoList.size}")
+                    Log.d(TAG, "index的值:$index, 数组长度:${streamInfoList.size}")
                     if (index > -1) {
                         /**更新用户的数据为最新数据*/
                         streamInfoList.removeAt(index)
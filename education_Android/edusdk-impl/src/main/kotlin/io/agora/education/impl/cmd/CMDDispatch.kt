@@ -13,7 +13,9 @@ import io.agora.education.api.room.data.RoomType
 import io.agora.education.api.user.data.EduChatState
 import io.agora.education.api.user.data.EduUserEvent
 import io.agora.education.api.user.data.EduUserStateChangeType.Chat
+import io.agora.education.impl.board.EduBoardImpl
 import io.agora.education.impl.cmd.bean.*
+import io.agora.education.impl.record.EduRecordImpl
 import io.agora.education.impl.room.EduRoomImpl
 import io.agora.rte.RteEngineImpl
 
@@ -83,6 +85,10 @@ internal class CMDDispatch(private val eduRoom: EduRoom) {
                         text, object : TypeToken<CMDResponseBody<CMDRoomPropertyRes>>() {}.type).data
                 /**把变化(update or delete)的属性更新到本地*/
                 CMDDataMergeProcessor.updateRoomProperties(eduRoom, propertyChangeEvent)
+                /**录制状态变化时刷新录制列表缓存*/
+                (eduRoom.record as? EduRecordImpl)?.onRecordPropertyChanged(propertyChangeEvent.changeProperties)
+                /**白板信息变化时重新解析并通知*/
+                (eduRoom.board as? EduBoardImpl)?.onRoomPropertiesChanged(propertyChangeEvent.changeProperties)
                 /**通知用户房间属性发生改变*/
                 AgoraLog.i("$TAG->把收到的roomProperty回调出去")
                 cmdCallbackManager.onRoomPropertyChanged(eduRoom, propertyChangeEvent.cause)
@@ -133,6 +139,8 @@ internal class CMDDispatch(private val eduRoom: EduRoom) {
                         eduRoom.getCurStreamList(), eduRoom.getCurRoomType())
                 val validRemovedStreams = CMDDataMergeProcessor.removeStreamWithUserOffline(rtmInOutMsg.offlineUsers,
                         eduRoom.getCurStreamList(), eduRoom.getCurRoomType())
+                /**离开的用户不再上报网络质量，移除其流对应的质量记录*/
+                eduRoom.removeNetworkQuality(validRemovedStreams)
 
                 /**从有效的流数据中剥离出本地用户的流数据*/
                 val validAddedLocalStream = CMDProcessor.filterLocalStreamInfo(
@@ -268,6 +276,7 @@ internal class CMDDispatch(private val eduRoom: EduRoom) {
                         Log.e(TAG, "收到移除流的通知：${text}")
                         val validRemoveStreams = CMDDataMergeProcessor.removeStreamWithAction(cmdStreamActionMsg,
                                 (eduRoom as EduRoomImpl).getCurStreamList(), eduRoom.getCurRoomType())
+                        eduRoom.removeNetworkQuality(validRemoveStreams)
 
                         /**判断有效的数据中是否有本地流的数据,有则处理并回调*/
                         val iterable = validRemoveStreams.iterator()
@@ -21,6 +21,7 @@ import io.agora.education.api.room.data.*
 import io.agora.education.api.util.CryptoUtil
 import io.agora.education.impl.ResponseBody
 import io.agora.education.impl.network.RetrofitManager
+import io.agora.education.impl.record.RecordCatalogue
 import io.agora.education.impl.room.EduRoomImpl
 import io.agora.education.impl.room.data.EduRoomInfoImpl
 import io.agora.education.impl.room.data.RtmConnectState
@@ -32,10 +33,12 @@ import io.agora.log.UploadManager
 import io.agora.rte.RteCallback
 import io.agora.rte.RteEngineImpl
 import io.agora.rte.listener.RteEngineEventListener
+import io.agora.rte.trace.RteTrace
 import io.agora.rtm.RtmMessage
 import io.agora.rtm.RtmStatusCode
 import okhttp3.logging.HttpLoggingInterceptor
 import java.io.File
+import java.io.IOException
 
 internal class EduManagerImpl(
         options: EduManagerOptions
@@ -63,15 +66,17 @@ internal class EduManagerImpl(
         options.logFileDir?.let {
             options.logFileDir = options.context.cacheDir.toString().plus(File.separatorChar).plus(LOGS_DIR_NAME)
         }
-        LogManager.init(options.logFileDir!!, "AgoraEducation")
+        LogManager.init(options.logFileDir!!, "AgoraEducation", options.binaryLog)
         AgoraLog = LogManager("SDK")
         logMessage("${TAG}: 初始化LogManager,log路径为${options.logFileDir}", LogLevel.INFO)
         logMessage("${TAG}: 初始化EduManagerImpl", LogLevel.INFO)
+        /**只保存配置，rtm在login时、rtc在加入教室时才在后台创建*/
         logMessage("${TAG}: 初始化RteEngineImpl", LogLevel.INFO)
         RteEngineImpl.init(options.context, options.appId, options.logFileDir!!)
         /**为RteEngine设置eventListener*/
         RteEngineImpl.eventListener = this
         APPID = options.appId
+        RecordCatalogue.init(options.context.cacheDir)
         val auth = Base64.encodeToString("${options.customerId}:${options.customerCertificate}"
                 .toByteArray(Charsets.UTF_8), Base64.DEFAULT).replace("\n", "").trim()
         RetrofitManager.instance()!!.addHeader("Authorization", CryptoUtil.getAuth(auth))
@@ -95,6 +100,8 @@ internal class EduManagerImpl(
 
     fun login(userUuid: String, callback: EduCallback<Unit>) {
         logMessage("${TAG}: 调用login接口", LogLevel.INFO)
+        /**与login请求并行，在后台创建rtmClient*/
+        RteEngineImpl.prepareRtm(null)
         RetrofitManager.instance()!!.getService(API_BASE_URL, RoomService::class.java)
                 .login(APPID, userUuid)
                 .enqueue(RetrofitManager.Callback(0, object : ThrowableCallback<ResponseBody<EduLoginRes>> {
@@ -157,8 +164,17 @@ internal class EduManagerImpl(
         val uploadParam = UploadManager.UploadParam(APPID, BuildConfig.VERSION_NAME, Build.DEVICE,
                 Build.VERSION.SDK, "ZIP", "Android", null)
         logMessage("${TAG}: 调用uploadDebugItem函数上传日志，参数->${Gson().toJson(uploadParam)}", LogLevel.INFO)
+        val logDir = File(options.logFileDir!!)
+        /**在上传线程中把RTE事件缓冲区的内容写入日志目录，随日志一起上传*/
+        val dumpTrace = Runnable {
+            try {
+                RteTrace.dumpTo(logDir)
+            } catch (e: IOException) {
+                logMessage("${TAG}: 写入RteTrace失败->${e.message}", LogLevel.ERROR)
+            }
+        }
         UploadManager.upload(options.context, LOG_APPSECRET, API_BASE_URL, options.logFileDir!!, uploadParam,
-                object : ThrowableCallback<String> {
+                dumpTrace, object : ThrowableCallback<String> {
                     override fun onSuccess(res: String?) {
                         res?.let {
                             logMessage("${TAG}: 日志上传成功->$res", LogLevel.INFO)
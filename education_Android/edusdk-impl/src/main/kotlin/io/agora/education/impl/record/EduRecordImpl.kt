@@ -1,15 +1,76 @@
 package io.agora.education.impl.record
 
+import io.agora.Constants.Companion.APPID
+import io.agora.Constants.Companion.AgoraLog
 import io.agora.education.api.EduCallback
 import io.agora.education.api.record.EduRecord
+import io.agora.education.api.record.data.EduRecordDetail
+import io.agora.education.api.record.data.EduRecordInfo
+import io.agora.education.api.record.data.EduRecordPage
+import io.agora.education.api.record.data.RecordState
+import io.agora.education.api.statistics.AgoraError
 
-class EduRecordImpl : EduRecord() {
+class EduRecordImpl(
+        private val roomUuid: String
+) : EduRecord() {
+    private val TAG = EduRecordImpl::class.java.simpleName
 
-    override fun startRecord(callback: EduCallback<Unit>) {
+    companion object {
+        /**房间属性中录制信息的key*/
+        const val RECORD = "record"
+        private const val STATE_START = 1
+    }
 
+    /**服务端没有开放开始/结束录制的接口，录制由服务端控制*/
+    override fun startRecord(callback: EduCallback<Unit>) {
+        callback.onFailure(AgoraError.UNSUPPORTED_OPERATION.value, "startRecord is not supported")
     }
 
     override fun stopRecord(callback: EduCallback<Unit>) {
+        callback.onFailure(AgoraError.UNSUPPORTED_OPERATION.value, "stopRecord is not supported")
+    }
+
+    override fun getLatestRecord(callback: EduCallback<EduRecordDetail?>) {
+        RecordCatalogue.getLatest(APPID, roomUuid, callback)
+    }
+
+    override fun getLatestFinishedRecord(callback: EduCallback<EduRecordDetail?>) {
+        RecordCatalogue.getAll(APPID, roomUuid, object : EduCallback<List<EduRecordDetail>> {
+            override fun onSuccess(res: List<EduRecordDetail>?) {
+                callback.onSuccess(res?.firstOrNull { it.isFinished() })
+            }
+
+            override fun onFailure(code: Int, reason: String?) {
+                callback.onFailure(code, reason)
+            }
+        })
+    }
+
+    override fun getRecordList(nextId: Int, callback: EduCallback<EduRecordPage>) {
+        RecordCatalogue.getPage(APPID, roomUuid, nextId, callback)
+    }
 
+    /**房间属性中的录制信息发生变化(开始或结束录制)：缓存的录制列表失效，并通知监听者*/
+    fun onRecordPropertyChanged(changeProperties: Map<String, Any>) {
+        if (changeProperties.keys.none { it == RECORD || it.startsWith("$RECORD.") }) {
+            return
+        }
+        val record = changeProperties[RECORD] as? Map<*, *>
+        val recordId = record?.get("recordId")?.toString()
+        RecordCatalogue.invalidate(roomUuid, recordId)
+        if (record == null || recordId == null) {
+            return
+        }
+        val state = (record["state"] as? Number)?.toInt() ?: return
+        val startTime = (record["startTime"] as? Number)?.toLong() ?: 0
+        val info = EduRecordInfo(APPID, roomUuid, recordId,
+                if (state == STATE_START) RecordState.RECORDING else RecordState.FINISHED, startTime)
+        AgoraLog.i("$TAG->录制状态变化:$info")
+        recordInfo = info
+        if (state == STATE_START) {
+            eventListener?.onRecordStarted(info)
+        } else {
+            eventListener?.onRecordEnded(info)
+        }
     }
-}
\ No newline at end of file
+}
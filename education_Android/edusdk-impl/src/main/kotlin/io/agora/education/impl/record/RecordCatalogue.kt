@@ -0,0 +1,261 @@
+package io.agora.education.impl.record
+
+import com.google.gson.Gson
+import io.agora.Constants.Companion.AgoraLog
+import io.agora.base.callback.ThrowableCallback
+import io.agora.base.network.BusinessException
+import io.agora.education.api.BuildConfig.API_BASE_URL
+import io.agora.education.api.EduCallback
+import io.agora.education.api.record.data.EduRecordDetail
+import io.agora.education.api.record.data.EduRecordPage
+import io.agora.education.api.statistics.AgoraError
+import io.agora.education.impl.ResponseBody
+import io.agora.education.impl.network.RetrofitManager
+import io.agora.education.impl.record.data.response.EduRecordListRes
+import io.agora.education.impl.record.network.RecordService
+import io.agora.education.impl.util.Convert
+import java.io.File
+
+/**按房间缓存的录制列表
+ * 内存中按房间保存已拉取的分页(以请求的nextId为键)，同时写入磁盘，再次进入时在有效期内直接使用；
+ * 收到录制状态变化时该房间的缓存失效，并记下最近一次录制的recordId，查询最近的录制时找到它即停止，不再拉取全部分页。
+ * 同一房间同时只进行一次全量拉取，其他请求等待其结果*/
+internal object RecordCatalogue {
+    private const val TAG = "RecordCatalogue"
+    private const val DIR = "records"
+
+    /**磁盘缓存的有效期；进程内的缓存只在收到录制状态变化时失效*/
+    private const val DISK_MAX_AGE = 30 * 60 * 1000L
+
+    private class Catalogue {
+        val pages: MutableMap<Int, EduRecordPage> = mutableMapOf()
+        var updatedAt: Long = 0
+
+        /**全部分页拉取完成后按startTime降序排列的列表，null表示尚未拉取完整*/
+        @Transient
+        var all: List<EduRecordDetail>? = null
+    }
+
+    private var cacheDir: File? = null
+    private val catalogues = mutableMapOf<String, Catalogue>()
+    private val pendingLoads = mutableMapOf<String, MutableList<EduCallback<List<EduRecordDetail>>>>()
+
+    /**房间属性中最近一次录制的recordId*/
+    private val latestRecordIds = mutableMapOf<String, String>()
+
+    /**每次失效加一，失效前发出的请求返回后不再写入缓存*/
+    private val generations = mutableMapOf<String, Int>()
+
+    fun init(dir: File) {
+        cacheDir = File(dir, DIR)
+    }
+
+    /**@param latestRecordId 房间属性中最近一次录制的recordId，未知时为null
+     * 进行中的全量拉取不再被之后的请求复用，其结果只交给失效前的调用方*/
+    @Synchronized
+    fun invalidate(roomUuid: String, latestRecordId: String?) {
+        AgoraLog.i("$TAG->录制列表缓存失效:$roomUuid,latest:$latestRecordId")
+        catalogues.remove(roomUuid)
+        fileOf(roomUuid)?.delete()
+        generations[roomUuid] = generationOf(roomUuid) + 1
+        pendingLoads.remove(roomUuid)
+        latestRecordId?.let { latestRecordIds[roomUuid] = it }
+    }
+
+    /**房间最近(startTime最大)的一次录制
+     * 已知最近的recordId时逐页查找到它即停止(服务端按时间倒序返回时只需要第一页)，否则拉取全部分页*/
+    fun getLatest(appId: String, roomUuid: String, callback: EduCallback<EduRecordDetail?>) {
+        val (all, recordId) = synchronized(this) { catalogueOf(roomUuid).all to latestRecordIds[roomUuid] }
+        if (all != null || recordId == null) {
+            getAll(appId, roomUuid, object : EduCallback<List<EduRecordDetail>> {
+                override fun onSuccess(res: List<EduRecordDetail>?) {
+                    callback.onSuccess(res?.firstOrNull())
+                }
+
+                override fun onFailure(code: Int, reason: String?) {
+                    callback.onFailure(code, reason)
+                }
+            })
+            return
+        }
+        findRecord(appId, roomUuid, recordId, 0, 0, synchronized(this) { generationOf(roomUuid) }, callback)
+    }
+
+    /**逐页查找recordId对应的录制，找不到(服务端列表中还没有)时返回null*/
+    private fun findRecord(appId: String, roomUuid: String, recordId: String, nextId: Int, count: Int,
+                           generation: Int, callback: EduCallback<EduRecordDetail?>) {
+        getPage(appId, roomUuid, nextId, object : EduCallback<EduRecordPage> {
+            override fun onSuccess(res: EduRecordPage?) {
+                val page = res!!
+                val record = page.list.firstOrNull { it.recordId == recordId }
+                val total = count + page.list.size
+                if (record == null && total < page.total && page.list.isNotEmpty()) {
+                    findRecord(appId, roomUuid, recordId, page.nextId, total, generation, callback)
+                    return
+                }
+                if (record == null || !record.isFinished()) {
+                    /**录制尚未完成(或尚未出现在列表中)，状态还会变化，丢弃已缓存的分页，下次重新拉取*/
+                    synchronized(this@RecordCatalogue) {
+                        if (generation == generationOf(roomUuid)) {
+                            catalogues.remove(roomUuid)
+                            fileOf(roomUuid)?.delete()
+                        }
+                    }
+                }
+                callback.onSuccess(record)
+            }
+
+            override fun onFailure(code: Int, reason: String?) {
+                callback.onFailure(code, reason)
+            }
+        })
+    }
+
+    fun getPage(appId: String, roomUuid: String, nextId: Int, callback: EduCallback<EduRecordPage>) {
+        val cached = synchronized(this) { catalogueOf(roomUuid).pages[nextId] }
+        if (cached != null) {
+            callback.onSuccess(cached)
+            return
+        }
+        fetchPage(appId, roomUuid, nextId, callback)
+    }
+
+    /**按startTime降序返回房间的全部录制，已缓存时不发请求*/
+    fun getAll(appId: String, roomUuid: String, callback: EduCallback<List<EduRecordDetail>>) {
+        val callbacks = mutableListOf(callback)
+        val generation = synchronized(this) {
+            catalogueOf(roomUuid).all?.let {
+                callback.onSuccess(it)
+                return
+            }
+            pendingLoads[roomUuid]?.let {
+                it.add(callback)
+                return
+            }
+            pendingLoads[roomUuid] = callbacks
+            generationOf(roomUuid)
+        }
+        load(appId, roomUuid, 0, mutableListOf(), generation, callbacks)
+    }
+
+    /**逐页拉取(已缓存的分页直接使用)，直到条数达到total或返回空页
+     * @param callbacks 等待本次拉取的调用方；失效后不再在pendingLoads中，新的调用方会发起新的拉取*/
+    private fun load(appId: String, roomUuid: String, nextId: Int, collected: MutableList<EduRecordDetail>,
+                     generation: Int, callbacks: MutableList<EduCallback<List<EduRecordDetail>>>) {
+        getPage(appId, roomUuid, nextId, object : EduCallback<EduRecordPage> {
+            override fun onSuccess(res: EduRecordPage?) {
+                val page = res!!
+                collected.addAll(page.list)
+                if (collected.size < page.total && page.list.isNotEmpty()) {
+                    load(appId, roomUuid, page.nextId, collected, generation, callbacks)
+                    return
+                }
+                val all = collected.sortedByDescending { it.startTime }
+                val waiting = synchronized(this@RecordCatalogue) {
+                    if (generation != generationOf(roomUuid)) {
+                        /**拉取期间已失效，结果只交给本次的调用方*/
+                    } else if (all.isNotEmpty() && !all[0].isFinished()) {
+                        /**最近的录制尚未完成时其状态会在服务端继续变化，不保留缓存*/
+                        catalogues.remove(roomUuid)
+                        fileOf(roomUuid)?.delete()
+                    } else {
+                        catalogueOf(roomUuid).all = all
+                    }
+                    finishLoad(roomUuid, callbacks)
+                }
+                waiting.forEach { it.onSuccess(all) }
+            }
+
+            override fun onFailure(code: Int, reason: String?) {
+                val waiting = synchronized(this@RecordCatalogue) { finishLoad(roomUuid, callbacks) }
+                waiting.forEach { it.onFailure(code, reason) }
+            }
+        })
+    }
+
+    private fun fetchPage(appId: String, roomUuid: String, nextId: Int, callback: EduCallback<EduRecordPage>) {
+        val generation = synchronized(this) { generationOf(roomUuid) }
+        RetrofitManager.instance()!!.getService(API_BASE_URL, RecordService::class.java)
+                .getRecordList(appId, roomUuid, nextId)
+                .enqueue(RetrofitManager.Callback(0, object : ThrowableCallback<ResponseBody<EduRecordListRes>> {
+                    override fun onSuccess(res: ResponseBody<EduRecordListRes>?) {
+                        val data = res?.data
+                        if (data == null) {
+                            callback.onFailure(AgoraError.INTERNAL_ERROR.value, "record list is null")
+                            return
+                        }
+                        val page = Convert.convertRecordPage(data)
+                        synchronized(this@RecordCatalogue) {
+                            if (generation != generationOf(roomUuid)) {
+                                return@synchronized
+                            }
+                            val catalogue = catalogueOf(roomUuid)
+                            catalogue.pages[nextId] = page
+                            catalogue.updatedAt = System.currentTimeMillis()
+                            save(roomUuid, catalogue)
+                        }
+                        callback.onSuccess(page)
+                    }
+
+                    override fun onFailure(throwable: Throwable?) {
+                        AgoraLog.e("$TAG->拉取录制列表失败:$roomUuid,${throwable?.message}")
+                        val error = throwable as? BusinessException
+                        callback.onFailure(error?.code ?: AgoraError.INTERNAL_ERROR.value,
+                                error?.message ?: throwable?.message)
+                    }
+                }))
+    }
+
+    /**需要持有锁；返回等待本次拉取的调用方*/
+    private fun finishLoad(roomUuid: String, callbacks: MutableList<EduCallback<List<EduRecordDetail>>>)
+            : List<EduCallback<List<EduRecordDetail>>> {
+        if (pendingLoads[roomUuid] === callbacks) {
+            pendingLoads.remove(roomUuid)
+        }
+        return callbacks.toList()
+    }
+
+    private fun generationOf(roomUuid: String): Int {
+        return generations[roomUuid] ?: 0
+    }
+
+    private fun catalogueOf(roomUuid: String): Catalogue {
+        return catalogues.getOrPut(roomUuid) { restore(roomUuid) ?: Catalogue() }
+    }
+
+    private fun fileOf(roomUuid: String): File? {
+        return cacheDir?.let { File(it, "$roomUuid.json") }
+    }
+
+    private fun restore(roomUuid: String): Catalogue? {
+        val file = fileOf(roomUuid)
+        if (file == null || !file.exists()) {
+            return null
+        }
+        return try {
+            val catalogue = Gson().fromJson(file.readText(), Catalogue::class.java)
+            if (catalogue != null && System.currentTimeMillis() - catalogue.updatedAt < DISK_MAX_AGE) {
+                catalogue
+            } else {
+                file.delete()
+                null
+            }
+        } catch (e: Exception) {
+            AgoraLog.w("$TAG->读取录制列表缓存失败:$roomUuid,${e.message}")
+            file.delete()
+            null
+        }
+    }
+
+    private fun save(roomUuid: String, catalogue: Catalogue) {
+        val file = fileOf(roomUuid) ?: return
+        try {
+            file.parentFile?.mkdirs()
+            val tmp = File(file.path + ".tmp")
+            tmp.writeText(Gson().toJson(catalogue))
+            tmp.renameTo(file)
+        } catch (e: Exception) {
+            AgoraLog.w("$TAG->写入录制列表缓存失败:$roomUuid,${e.message}")
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package io.agora.education.impl.record.data.response
+
+internal class EduRecordDetailRes(
+        val roomUuid: String,
+        val recordId: String,
+        val recordUuid: String?,
+        val boardId: String?,
+        val boardToken: String?,
+        val status: Int,
+        val startTime: Long,
+        val endTime: Long,
+        val url: String?
+)
+
+internal class EduRecordListRes(
+        val count: Int,
+        val nextId: Int,
+        val total: Int,
+        val list: MutableList<EduRecordDetailRes>?
+)
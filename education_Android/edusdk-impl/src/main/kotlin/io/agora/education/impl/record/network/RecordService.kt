@@ -0,0 +1,20 @@
+package io.agora.education.impl.record.network
+
+import io.agora.education.impl.ResponseBody
+import io.agora.education.impl.record.data.response.EduRecordListRes
+import retrofit2.Call
+import retrofit2.http.GET
+import retrofit2.http.Path
+import retrofit2.http.Query
+
+internal interface RecordService {
+    /**
+     * 分页获取房间的录制列表
+     */
+    @GET("/recording/apps/{appId}/v1/rooms/{roomUuid}/records")
+    fun getRecordList(
+            @Path("appId") appId: String,
+            @Path("roomUuid") roomUuid: String,
+            @Query("nextId") nextId: Int
+    ): Call<ResponseBody<EduRecordListRes>>
+}
@@ -18,6 +18,7 @@ import io.agora.education.api.user.data.EduUserInfo
 import io.agora.education.api.user.data.EduUserRole
 import io.agora.education.impl.util.Convert
 import io.agora.education.api.statistics.NetworkQuality
+import io.agora.education.api.statistics.NetworkQualitySummary
 import io.agora.education.api.stream.data.*
 import io.agora.education.api.user.EduUser
 import io.agora.education.api.user.data.EduChatState
@@ -32,6 +33,7 @@ import io.agora.education.impl.role.data.EduUserRoleStr
 import io.agora.education.impl.room.data.EduRoomInfoImpl
 import io.agora.education.impl.room.data.request.EduJoinClassroomReq
 import io.agora.education.impl.room.data.response.*
+import io.agora.education.impl.statistics.NetworkQualityTable
 import io.agora.education.impl.sync.RoomSyncHelper
 import io.agora.education.impl.sync.RoomSyncSession
 import io.agora.education.impl.user.EduStudentImpl
@@ -41,10 +43,10 @@ import io.agora.education.impl.user.network.UserService
 import io.agora.education.impl.util.CommonUtil
 import io.agora.rtc.Constants.*
 import io.agora.rtc.models.ChannelMediaOptions
+import io.agora.rte.RteCallback
 import io.agora.rte.RteEngineImpl
 import io.agora.rte.listener.RteChannelEventListener
 import io.agora.rtm.*
-import kotlin.math.max
 
 internal class EduRoomImpl(
         roomInfo: EduRoomInfo,
@@ -52,15 +54,20 @@ internal class EduRoomImpl(
 ) : EduRoom(roomInfo, roomStatus), RteChannelEventListener {
 
     private val TAG = EduRoomImpl::class.java.simpleName
+
+    companion object {
+        /**join过程中离开房间时joinRte的错误码*/
+        const val JOIN_CANCELED = -2
+    }
+
     internal var syncSession: RoomSyncSession
     internal var cmdDispatch: CMDDispatch
 
     init {
         AgoraLog.i("$TAG->初始化$TAG")
-        RteEngineImpl.createChannel(roomInfo.roomUuid, this)
         syncSession = RoomSyncHelper(this, roomInfo, roomStatus, 3)
-        record = EduRecordImpl()
-        board = EduBoardImpl()
+        record = EduRecordImpl(roomInfo.roomUuid)
+        board = EduBoardImpl(this)
         cmdDispatch = CMDDispatch(this)
         /**管理当前room*/
         EduManagerImpl.addRoom(this)
@@ -90,6 +97,17 @@ internal class EduRoomImpl(
 
     lateinit var defaultUserName: String;
 
+    /**rte频道在joinRte时(rtcEngine就绪后)才创建，和left一起受rteLock保护*/
+    private var rteChannelCreated = false
+
+    /**已调用leave；之后rtcEngine就绪的回调不再创建和加入频道*/
+    @Volatile
+    private var left = false
+    private val rteLock = Any()
+
+    /**房间内所有用户(本地和远端)的网络质量表*/
+    private val networkQualityTable = NetworkQualityTable()
+
     internal fun getCurRoomType(): RoomType {
         return (getRoomInfo() as EduRoomInfoImpl).roomType
     }
@@ -129,6 +147,8 @@ internal class EduRoomImpl(
         this.curClassType = ClassType.Sub
         this.joining = true
         this.studentJoinCallback = callback
+        /**与entry请求并行，在后台创建rtcEngine*/
+        RteEngineImpl.prepareRtc(null)
         /**判断是否指定了用户名*/
         if (options.userName == null) {
             AgoraLog.i("$TAG->没有传userName,使用默认用户名赋值:$defaultUserName")
@@ -224,9 +244,31 @@ internal class EduRoomImpl(
     private fun joinRte(rtcToken: String, rtcUid: Long, channelMediaOptions: ChannelMediaOptions,
                         @NonNull callback: ResultCallback<Void>) {
         AgoraLog.i("$TAG->加入Rtc和Rtm")
-        RteEngineImpl.setClientRole(getRoomInfo().roomUuid, CLIENT_ROLE_BROADCASTER)
-        val rtcOptionalInfo: String = CommonUtil.buildRtcOptionalInfo(this)
-        RteEngineImpl[getRoomInfo().roomUuid]?.join(rtcOptionalInfo, rtcToken, rtcUid, channelMediaOptions, callback)
+        /**等待rtcEngine创建完成后再创建频道并加入*/
+        RteEngineImpl.prepareRtc(object : RteCallback<Unit> {
+            override fun onSuccess(res: Unit?) {
+                synchronized(rteLock) {
+                    /**rtcEngine就绪之前已经离开房间，不再加入频道*/
+                    if (left) {
+                        AgoraLog.w("$TAG->rtcEngine就绪前已离开教室，取消加入Rte频道")
+                        callback.onFailure(ErrorInfo(JOIN_CANCELED, "room left before rtc engine was ready"))
+                        return
+                    }
+                    if (!rteChannelCreated) {
+                        RteEngineImpl.createChannel(getRoomInfo().roomUuid, this@EduRoomImpl)
+                        rteChannelCreated = true
+                    }
+                    RteEngineImpl.setClientRole(getRoomInfo().roomUuid, CLIENT_ROLE_BROADCASTER)
+                    val rtcOptionalInfo: String = CommonUtil.buildRtcOptionalInfo(this@EduRoomImpl)
+                    RteEngineImpl[getRoomInfo().roomUuid]?.join(rtcOptionalInfo, rtcToken, rtcUid,
+                            channelMediaOptions, callback)
+                }
+            }
+
+            override fun onFailure(code: Int, reason: String?) {
+                callback.onFailure(ErrorInfo(code, reason))
+            }
+        })
     }
 
     private fun initOrUpdateLocalStream(classRoomEntryRes: EduEntryRes, roomMediaOptions: RoomMediaOptions,
@@ -333,6 +375,7 @@ internal class EduRoomImpl(
         AgoraLog.w("$TAG->清理本地缓存的人和流数据")
         getCurUserList().clear()
         getCurStreamList().clear()
+        networkQualityTable.clear()
     }
 
     override fun getLocalUser(): EduUser {
@@ -395,12 +438,18 @@ internal class EduRoomImpl(
     override fun leave() {
         AgoraLog.w("$TAG->离开教室")
         clearData()
-        if (!leaveRoom) {
-            AgoraLog.w("$TAG->离开Rte频道:${getRoomInfo().roomUuid}")
-            RteEngineImpl[getRoomInfo().roomUuid]?.leave()
-            leaveRoom = true
+        /**与rtcEngine就绪的回调互斥：频道已创建则在这里释放，否则回调不会再创建*/
+        synchronized(rteLock) {
+            left = true
+            if (rteChannelCreated) {
+                if (!leaveRoom) {
+                    AgoraLog.w("$TAG->离开Rte频道:${getRoomInfo().roomUuid}")
+                    RteEngineImpl[getRoomInfo().roomUuid]?.leave()
+                    leaveRoom = true
+                }
+                RteEngineImpl[getRoomInfo().roomUuid]?.release()
+            }
         }
-        RteEngineImpl[getRoomInfo().roomUuid]?.release()
         eventListener = null
         syncSession.localUser.eventListener = null
         studentJoinCallback = null
@@ -433,10 +482,39 @@ internal class EduRoomImpl(
         }
     }
 
+    override fun getNetworkQualitySummary(): NetworkQualitySummary {
+        return networkQualityTable.summary()
+    }
+
     override fun onNetworkQuality(uid: Int, txQuality: Int, rxQuality: Int) {
-        /*上行和下行取最差的一个;类型转换之后，直接转发*/
-        val value = max(txQuality, rxQuality)
-        val quality: NetworkQuality = Convert.convertNetworkQuality(value)
-        eventListener?.onNetworkQualityChanged(quality, getLocalUser().userInfo, this)
+        /*只有平滑后的质量等级发生变化时才回调*/
+        val quality: NetworkQuality = networkQualityTable.update(uid, txQuality, rxQuality) ?: return
+        if (uid == NetworkQualityTable.LOCAL_UID) {
+            eventListener?.onNetworkQualityChanged(quality, getLocalUser().userInfo, this)
+            return
+        }
+        findUserByRtcUid(uid)?.let {
+            eventListener?.onNetworkQualityChanged(quality, it, this)
+        }
+    }
+
+    /**流被移除或发流用户离开后，其rtc uid的质量记录不再更新，直接移除*/
+    internal fun removeNetworkQuality(streamEvents: List<EduStreamEvent>) {
+        streamEvents.forEach {
+            it.modifiedStream.streamUuid.toLongOrNull()?.let { streamUuid ->
+                networkQualityTable.remove((streamUuid and 0xffffffffL).toInt())
+            }
+        }
+    }
+
+    /**根据rtc uid(即流的streamUuid)找到对应的发流用户*/
+    private fun findUserByRtcUid(uid: Int): EduUserInfo? {
+        val rtcUid = uid.toLong() and 0xffffffffL
+        val stream = synchronized(getCurStreamList()) {
+            getCurStreamList().find { it.streamUuid.toLongOrNull() == rtcUid }
+        } ?: return null
+        return synchronized(getCurUserList()) {
+            getCurUserList().find { it.userUuid == stream.publisher.userUuid }
+        }
     }
 }
@@ -0,0 +1,110 @@
+package io.agora.education.impl.statistics
+
+import android.os.SystemClock
+import io.agora.education.api.statistics.NetworkQuality
+import io.agora.education.api.statistics.NetworkQualitySummary
+import io.agora.education.impl.util.Convert
+import io.agora.rtc.Constants.QUALITY_DOWN
+import io.agora.rtc.Constants.QUALITY_EXCELLENT
+import kotlin.math.max
+import kotlin.math.roundToInt
+
+/**房间级别的网络质量表，以rtc uid为key(本地用户的uid为0)
+ * Rtc大约每2s针对每个uid回调一次网络质量，此处对上报值做平滑处理，只有平滑后的质量等级
+ * 发生变化时才返回需要回调的值，避免大量重复的UI回调*/
+internal class NetworkQualityTable(
+        /**平滑系数，越小越平滑*/
+        private val alpha: Float = 0.5f,
+        /**超过此时长未上报的uid不参与汇总*/
+        private val staleMs: Long = 10_000
+) {
+    companion object {
+        const val LOCAL_UID = 0
+    }
+
+    private class Entry {
+        /**平滑后的原始质量值(Rtc的QUALITY_XXX)*/
+        var smoothed = -1f
+        var quality = NetworkQuality.UNKNOWN
+        var updateTime = 0L
+    }
+
+    private val entries = mutableMapOf<Int, Entry>()
+
+    /**记录一次上报；上行和下行取最差的一个
+     * @return 平滑后的质量等级发生变化时返回新值，否则返回null*/
+    @Synchronized
+    fun update(uid: Int, txQuality: Int, rxQuality: Int): NetworkQuality? {
+        val entry = entries.getOrPut(uid) { Entry() }
+        entry.updateTime = SystemClock.elapsedRealtime()
+        val value = max(valid(txQuality), valid(rxQuality))
+        if (value < 0) {
+            /**无效的值不参与平滑，也不改变已有的质量等级*/
+            return null
+        }
+        entry.smoothed = if (entry.smoothed < 0) value.toFloat() else
+            alpha * value + (1 - alpha) * entry.smoothed
+        val quality = Convert.convertNetworkQuality(entry.smoothed.roundToInt())
+        if (quality == entry.quality) {
+            return null
+        }
+        entry.quality = quality
+        return quality
+    }
+
+    @Synchronized
+    fun get(uid: Int): NetworkQuality {
+        return entries[uid]?.quality ?: NetworkQuality.UNKNOWN
+    }
+
+    @Synchronized
+    fun remove(uid: Int) {
+        entries.remove(uid)
+    }
+
+    @Synchronized
+    fun clear() {
+        entries.clear()
+    }
+
+    /**按质量等级计数后得出最差值和中位数，不需要排序*/
+    @Synchronized
+    fun summary(): NetworkQualitySummary {
+        val now = SystemClock.elapsedRealtime()
+        var good = 0
+        var poor = 0
+        var bad = 0
+        for (entry in entries.values) {
+            if (now - entry.updateTime > staleMs) {
+                continue
+            }
+            when (entry.quality) {
+                NetworkQuality.GOOD -> good++
+                NetworkQuality.POOR -> poor++
+                NetworkQuality.BAD -> bad++
+                else -> {
+                }
+            }
+        }
+        val count = good + poor + bad
+        val worst = when {
+            bad > 0 -> NetworkQuality.BAD
+            poor > 0 -> NetworkQuality.POOR
+            good > 0 -> NetworkQuality.GOOD
+            else -> NetworkQuality.UNKNOWN
+        }
+        val half = count / 2
+        val median = when {
+            count == 0 -> NetworkQuality.UNKNOWN
+            half < good -> NetworkQuality.GOOD
+            half < good + poor -> NetworkQuality.POOR
+            else -> NetworkQuality.BAD
+        }
+        return NetworkQualitySummary(get(LOCAL_UID), worst, median, count)
+    }
+
+    /**只有QUALITY_EXCELLENT..QUALITY_DOWN是有效的质量值；未知、不支持(QUALITY_UNSUPPORTED)、检测中等都返回-1*/
+    private fun valid(quality: Int): Int {
+        return if (quality in QUALITY_EXCELLENT..QUALITY_DOWN) quality else -1
+    }
+}
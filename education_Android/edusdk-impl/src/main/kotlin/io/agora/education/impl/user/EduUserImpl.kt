@@ -1,9 +1,9 @@
 package io.agora.education.impl.user
 
+import android.os.Handler
+import android.os.Looper
 import android.util.Log
-import android.view.SurfaceView
 import android.view.ViewGroup
-import android.widget.LinearLayout
 import com.google.gson.Gson
 import io.agora.Constants.Companion.APPID
 import io.agora.Constants.Companion.AgoraLog
@@ -42,6 +42,7 @@ import io.agora.rtc.Constants.CLIENT_ROLE_BROADCASTER
 import io.agora.rtc.RtcEngine
 import io.agora.rtc.video.VideoCanvas
 import io.agora.rte.RteEngineImpl
+import io.agora.rte.RteCallback
 
 internal open class EduUserImpl(
         override var userInfo: EduLocalUserInfo
@@ -54,10 +55,38 @@ internal open class EduUserImpl(
 
     lateinit var eduRoom: EduRoomImpl
 
-    private val surfaceViewList = mutableListOf<SurfaceView>()
+    /**按streamUuid复用的渲染View；空闲View被丢弃时解除对应流的渲染*/
+    private val rendererPool = RendererPool { renderer ->
+        val uid: Int = (renderer.streamUuid.toLong() and 0xffffffffL).toInt()
+        setupVideo(renderer.local, VideoCanvas(null, renderer.renderMode, uid))
+    }
+
+    private val mainHandler = Handler(Looper.getMainLooper())
+
+    /**rtcEngine已就绪时直接在当前线程执行{@param block}；否则先在后台创建，完成后在主线程执行，
+     * 避免在调用线程(通常是主线程)上创建rtcEngine*/
+    private fun withRtc(callback: EduCallback<*>, block: () -> Unit) {
+        if (RteEngineImpl.isRtcReady()) {
+            block()
+            return
+        }
+        RteEngineImpl.prepareRtc(object : RteCallback<Unit> {
+            override fun onSuccess(res: Unit?) {
+                mainHandler.post(block)
+            }
+
+            override fun onFailure(code: Int, reason: String?) {
+                mainHandler.post { callback.onFailure(code, reason) }
+            }
+        })
+    }
 
     override fun initOrUpdateLocalStream(options: LocalStreamInitOptions, callback: EduCallback<EduStreamInfo>) {
         AgoraLog.i("$TAG->开始初始化和更新本地流:${Gson().toJson(options)}")
+        withRtc(callback) { doInitOrUpdateLocalStream(options, callback) }
+    }
+
+    private fun doInitOrUpdateLocalStream(options: LocalStreamInitOptions, callback: EduCallback<EduStreamInfo>) {
         RteEngineImpl.setVideoEncoderConfiguration(
                 Convert.convertVideoEncoderConfig(videoEncoderConfig))
         RteEngineImpl.enableVideo()
@@ -308,39 +337,36 @@ internal open class EduUserImpl(
     }
 
     /**
-     * @param viewGroup 视频画面的父布局(在UI布局上最好保持独立)*/
+     * @param viewGroup 视频画面的父布局(在UI布局上最好保持独立)；为null时停止渲染此流*/
     override fun setStreamView(stream: EduStreamInfo, channelId: String, viewGroup: ViewGroup?,
                                config: VideoRenderConfig): EduError {
+        val uid: Int = (stream.streamUuid.toLong() and 0xffffffffL).toInt()
+        val local = stream.publisher.userUuid == this.userInfo.userUuid
         val videoCanvas: VideoCanvas
         if (viewGroup == null) {
-            /**remove掉当前流对应的surfaceView*/
-            val uid: Int = (stream.streamUuid.toLong() and 0xffffffffL).toInt()
+            /**渲染View放入空闲队列，再次显示时复用*/
+            rendererPool.detach(stream.streamUuid)
+            rendererPool.unbound(stream.streamUuid)
             videoCanvas = VideoCanvas(null, config.renderMode.value, uid)
-            val iterable = surfaceViewList.iterator()
-            while (iterable.hasNext()) {
-                val surfaceView = iterable.next()
-                if (stream.hashCode() == surfaceView.tag && surfaceView.parent != null) {
-                    (surfaceView.parent as ViewGroup).removeView(surfaceView)
-                }
-                iterable.remove()
-            }
         } else {
-            checkAndRemoveSurfaceView(stream.hashCode())?.let {
-                viewGroup.removeView(it)
-            }
-            val appContext = viewGroup.context.applicationContext
-            val surfaceView = RtcEngine.CreateRendererView(appContext)
-            surfaceView.tag = stream.hashCode()
-            surfaceView.setZOrderMediaOverlay(true)
-            val layoutParams = ViewGroup.LayoutParams(LinearLayout.LayoutParams.MATCH_PARENT, LinearLayout.LayoutParams.MATCH_PARENT)
-            surfaceView.layoutParams = layoutParams
-            val uid: Int = (stream.streamUuid.toLong() and 0xffffffffL).toInt()
-            videoCanvas = VideoCanvas(surfaceView, config.renderMode.value, channelId, uid)
-            viewGroup.addView(surfaceView)
-            surfaceViewList.add(surfaceView)
+            val renderer = rendererPool.attach(stream.streamUuid, local, viewGroup, channelId,
+                    config.renderMode.value)
+                    ?: return EduError(RteEngineImpl.ok(), RteEngineImpl.getError(RteEngineImpl.ok()))
+            videoCanvas = VideoCanvas(renderer.view, config.renderMode.value, channelId, uid)
         }
+        return setupVideo(local, videoCanvas)
+    }
+
+    override fun setStreamView(stream: EduStreamInfo, channelId: String, viewGroup: ViewGroup?): EduError {
+        /*屏幕分享使用fit模式，尽可能的保持画面完整*/
+        val config = if (stream.videoSourceType == VideoSourceType.SCREEN) RenderMode.FIT else
+            RenderMode.HIDDEN
+        return setStreamView(stream, channelId, viewGroup, VideoRenderConfig(config))
+    }
+
+    private fun setupVideo(local: Boolean, videoCanvas: VideoCanvas): EduError {
         var code: Int
-        if (stream.publisher.userUuid == this.userInfo.userUuid) {
+        if (local) {
             code = RteEngineImpl.setupLocalVideo(videoCanvas)
             if (code == 0) {
                 Log.e("EduUserImpl", "setupLocalVideo成功")
@@ -354,33 +380,8 @@ internal open class EduUserImpl(
         return EduError(code, RteEngineImpl.getError(code))
     }
 
-    override fun setStreamView(stream: EduStreamInfo, channelId: String, viewGroup: ViewGroup?): EduError {
-        /*屏幕分享使用fit模式，尽可能的保持画面完整*/
-        val config = if (stream.videoSourceType == VideoSourceType.SCREEN) RenderMode.FIT else
-            RenderMode.HIDDEN
-        return setStreamView(stream, channelId, viewGroup, VideoRenderConfig(config))
-    }
-
     internal fun removeAllSurfaceView() {
-        AgoraLog.w("$TAG->清除所有SurfaceView")
-        if (surfaceViewList.size > 0) {
-            surfaceViewList.forEach {
-                val parent = it.parent;
-                if (parent != null && parent is ViewGroup) {
-                    parent.removeView(it)
-                }
-            }
-        }
-    }
-
-    private fun checkAndRemoveSurfaceView(tag: Int): SurfaceView? {
-        for (surfaceView in surfaceViewList) {
-            if (surfaceView.tag == tag) {
-                surfaceViewList.remove(surfaceView)
-                return surfaceView
-            }
-        }
-        return null
+        rendererPool.clear()
     }
 
     override fun setRoomProperty(property: MutableMap.MutableEntry<String, String>,
@@ -0,0 +1,116 @@
+package io.agora.education.impl.user
+
+import android.content.Context
+import android.view.View
+import android.view.ViewGroup
+import io.agora.Constants.Companion.AgoraLog
+import io.agora.rtc.RtcEngine
+
+/**按streamUuid复用的视频渲染View
+ * 同一个流以相同参数再次设置到同一个父布局时不做任何操作；换到另一个父布局时移动已有的View而不是重新创建；
+ * 不再显示的View放入空闲队列(LRU，最多MAX_IDLE个)，再次显示时直接复用，超出上限时解除渲染并丢弃。
+ * 当前的RTC SDK(2.9.x)只提供SurfaceView，移动到另一个父布局时Surface仍会重建(短暂黑屏)，
+ * 复用只省去了View和VideoCanvas的重新创建；RTC SDK 3.x提供CreateTextureView后可以避免。
+ * 只在主线程使用*/
+internal class RendererPool(
+        /**空闲的View被丢弃时调用，用于解除该流的渲染*/
+        private val onEvicted: (renderer: Renderer) -> Unit
+) {
+    private val TAG = RendererPool::class.java.simpleName
+
+    companion object {
+        private const val MAX_IDLE = 4
+    }
+
+    class Renderer(
+            val streamUuid: String,
+            val view: View,
+            val local: Boolean
+    ) {
+        /**当前VideoCanvas的参数，未设置时为null*/
+        var channelId: String? = null
+        var renderMode: Int = -1
+    }
+
+    private val renderers = mutableMapOf<String, Renderer>()
+    private val idle = object : LinkedHashMap<String, Renderer>(MAX_IDLE * 2, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Renderer>?): Boolean {
+            if (size <= MAX_IDLE || eldest == null) {
+                return false
+            }
+            renderers.remove(eldest.key)
+            discard(eldest.value)
+            return true
+        }
+    }
+
+    /**把流的渲染View放到parent中
+     * @return 需要(重新)设置VideoCanvas的Renderer；已经以相同参数渲染在parent中时返回null*/
+    fun attach(streamUuid: String, local: Boolean, parent: ViewGroup, channelId: String, renderMode: Int): Renderer? {
+        var renderer = renderers[streamUuid]
+        idle.remove(streamUuid)
+        if (renderer == null) {
+            renderer = Renderer(streamUuid, create(parent.context.applicationContext), local)
+            renderer.view.tag = streamUuid
+            renderers[streamUuid] = renderer
+        }
+        /**父布局中其他流的View不再显示*/
+        for (i in parent.childCount - 1 downTo 0) {
+            val child = parent.getChildAt(i)
+            val other = child.tag as? String ?: continue
+            if (other != streamUuid && renderers[other]?.view === child) {
+                detach(other)
+            }
+        }
+        val view = renderer.view
+        if (view.parent === parent) {
+            if (renderer.channelId == channelId && renderer.renderMode == renderMode) {
+                return null
+            }
+        } else {
+            (view.parent as? ViewGroup)?.removeView(view)
+            parent.addView(view)
+        }
+        renderer.channelId = channelId
+        renderer.renderMode = renderMode
+        return renderer
+    }
+
+    /**流不再显示，View从父布局移除后放入空闲队列*/
+    fun detach(streamUuid: String) {
+        val renderer = renderers[streamUuid] ?: return
+        (renderer.view.parent as? ViewGroup)?.removeView(renderer.view)
+        idle[streamUuid] = renderer
+    }
+
+    /**已经解除渲染的流，下次显示时需要重新设置VideoCanvas*/
+    fun unbound(streamUuid: String) {
+        renderers[streamUuid]?.let {
+            it.channelId = null
+            it.renderMode = -1
+        }
+    }
+
+    fun clear() {
+        AgoraLog.w("$TAG->清除所有渲染View:${renderers.size}")
+        renderers.values.forEach {
+            (it.view.parent as? ViewGroup)?.removeView(it.view)
+        }
+        renderers.clear()
+        idle.clear()
+    }
+
+    private fun discard(renderer: Renderer) {
+        (renderer.view.parent as? ViewGroup)?.removeView(renderer.view)
+        if (renderer.channelId != null) {
+            onEvicted(renderer)
+        }
+    }
+
+    private fun create(context: Context): View {
+        val view: View = RtcEngine.CreateRendererView(context).apply { setZOrderMediaOverlay(true) }
+        view.layoutParams = ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.MATCH_PARENT)
+        return view
+    }
+}
@@ -4,6 +4,9 @@ import com.google.gson.Gson
 import com.google.gson.reflect.TypeToken
 import io.agora.education.api.message.EduActionMessage
 import io.agora.education.api.message.EduActionType
+import io.agora.education.api.record.data.EduRecordDetail
+import io.agora.education.api.record.data.EduRecordPage
+import io.agora.education.api.record.data.RecordState
 import io.agora.education.api.room.EduRoom
 import io.agora.education.api.room.data.*
 import io.agora.education.api.statistics.ConnectionState
@@ -15,6 +18,7 @@ import io.agora.education.api.user.data.EduUserInfo
 import io.agora.education.api.user.data.EduUserRole
 import io.agora.education.impl.cmd.bean.*
 import io.agora.education.impl.cmd.bean.CMDActionMsgRes
+import io.agora.education.impl.record.data.response.EduRecordListRes
 import io.agora.education.impl.role.data.EduUserRoleStr
 import io.agora.education.impl.room.data.response.*
 import io.agora.education.impl.stream.EduStreamInfoImpl
@@ -374,5 +378,18 @@ internal class Convert {
                 else -> NetworkQuality.UNKNOWN
             }
         }
+
+        fun convertRecordState(status: Int): RecordState {
+            return RecordState.values().firstOrNull { it.value == status } ?: RecordState.RECORDING
+        }
+
+        fun convertRecordPage(res: EduRecordListRes): EduRecordPage {
+            val list = mutableListOf<EduRecordDetail>()
+            res.list?.forEach {
+                list.add(EduRecordDetail(it.roomUuid, it.recordId, it.recordUuid, it.boardId,
+                        it.boardToken, convertRecordState(it.status), it.startTime, it.endTime, it.url))
+            }
+            return EduRecordPage(list, res.total, res.nextId)
+        }
     }
 }
@@ -0,0 +1,230 @@
+package io.agora.log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IllegalFormatException;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static io.agora.log.BinaryLogFormat.ARG_BOOLEAN;
+import static io.agora.log.BinaryLogFormat.ARG_CHAR;
+import static io.agora.log.BinaryLogFormat.ARG_DOUBLE;
+import static io.agora.log.BinaryLogFormat.ARG_LONG;
+import static io.agora.log.BinaryLogFormat.ARG_STRING;
+import static io.agora.log.BinaryLogFormat.MAGIC;
+import static io.agora.log.BinaryLogFormat.TYPE_FORMAT;
+import static io.agora.log.BinaryLogFormat.TYPE_LOG;
+import static io.agora.log.BinaryLogFormat.TYPE_TAG;
+import static io.agora.log.BinaryLogFormat.TYPE_THREAD;
+import static io.agora.log.BinaryLogFormat.UTF_8;
+import static io.agora.log.BinaryLogFormat.readString;
+import static io.agora.log.BinaryLogFormat.readVarLong;
+import static io.agora.log.BinaryLogFormat.unzigzag;
+
+/**
+ * 把{@link BinaryLogWriter}写入的二进制日志还原为文本日志(与{@link MyFlattener}的格式相同)
+ * 只依赖JDK，可以在PC上运行:
+ * {@code java -cp <classes> io.agora.log.BinaryLogDecoder [--threads] <file.blog|file.blog.gz>...}
+ * 文件末尾不完整的记录(进程退出时未写完)会被忽略
+ */
+public class BinaryLogDecoder {
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss:SSS");
+    private final boolean withThreads;
+    private final Map<Long, String> formats = new HashMap<>();
+    private final Map<Long, String> tags = new HashMap<>();
+    private final Map<Long, String> threads = new HashMap<>();
+    private long wallBaseMillis;
+
+    /**
+     * @param withThreads 是否在tag之后输出线程名
+     */
+    public BinaryLogDecoder(boolean withThreads) {
+        this.withThreads = withThreads;
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean withThreads = false;
+        List<String> files = new ArrayList<>();
+        for (String arg : args) {
+            if ("--threads".equals(arg)) {
+                withThreads = true;
+            } else {
+                files.add(arg);
+            }
+        }
+        if (files.isEmpty()) {
+            System.err.println("usage: BinaryLogDecoder [--threads] <file.blog|file.blog.gz>...");
+            System.exit(1);
+        }
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, UTF_8));
+        for (String file : files) {
+            InputStream is = new BufferedInputStream(new FileInputStream(file));
+            if (file.endsWith(LogRotator.ARCHIVE_EXT)) {
+                is = new GZIPInputStream(is);
+            }
+            try (InputStream in = is) {
+                new BinaryLogDecoder(withThreads).decode(in, out);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * 解码{@param is}中的全部记录并按行写入{@param out}
+     */
+    public void decode(InputStream is, Writer out) throws IOException {
+        try {
+            int type;
+            while ((type = is.read()) != -1) {
+                switch (type) {
+                    case TYPE_FORMAT:
+                        formats.put(readVarLong(is), readString(is));
+                        break;
+                    case TYPE_TAG:
+                        tags.put(readVarLong(is), readString(is));
+                        break;
+                    case TYPE_THREAD:
+                        threads.put(readVarLong(is), readString(is));
+                        break;
+                    case TYPE_LOG:
+                        readLog(is, out);
+                        break;
+                    default:
+                        if (type != MAGIC[0]) {
+                            throw new IOException("unknown record type " + type);
+                        }
+                        readHeader(is);
+                        break;
+                }
+            }
+        } catch (EOFException e) {
+            /*最后一条记录不完整*/
+        }
+    }
+
+    /**
+     * 新的文件头，之前的字典失效
+     */
+    private void readHeader(InputStream is) throws IOException {
+        for (int i = 1; i < MAGIC.length; i++) {
+            if (is.read() != MAGIC[i]) {
+                throw new IOException("bad magic");
+            }
+        }
+        int version = is.read();
+        if (version != BinaryLogFormat.VERSION) {
+            throw new IOException("unsupported version " + version);
+        }
+        wallBaseMillis = readVarLong(is);
+        /*基准单调时钟，记录中的时间已是相对值*/
+        readVarLong(is);
+        formats.clear();
+        tags.clear();
+        threads.clear();
+    }
+
+    private void readLog(InputStream is, Writer out) throws IOException {
+        int level = is.read();
+        long tagId = readVarLong(is);
+        String tag = tagId == 0 ? readString(is) : tags.get(tagId);
+        long micros = readVarLong(is);
+        long threadId = readVarLong(is);
+        long formatId = readVarLong(is);
+        String format = formatId == 0 ? readString(is) : formats.get(formatId);
+        int argc = (int) readVarLong(is);
+        Object[] args = new Object[argc];
+        for (int i = 0; i < argc; i++) {
+            args[i] = readArg(is);
+        }
+        String message = format(format, args);
+        out.write(dateFormat.format(wallBaseMillis + micros / 1000));
+        out.write('|');
+        out.write(levelName(level));
+        out.write('|');
+        out.write(String.valueOf(tag));
+        out.write('|');
+        if (withThreads) {
+            String thread = threads.get(threadId);
+            out.write(thread != null ? thread : String.valueOf(threadId));
+            out.write('|');
+        }
+        out.write(message);
+        out.write('\n');
+    }
+
+    private static Object readArg(InputStream is) throws IOException {
+        int type = is.read();
+        switch (type) {
+            case ARG_LONG:
+                return unzigzag(readVarLong(is));
+            case ARG_DOUBLE:
+                long bits = 0;
+                for (int i = 0; i < 8; i++) {
+                    int b = is.read();
+                    if (b == -1) {
+                        throw new EOFException();
+                    }
+                    bits |= (long) b << (i * 8);
+                }
+                return Double.longBitsToDouble(bits);
+            case ARG_BOOLEAN:
+                return is.read() != 0;
+            case ARG_STRING:
+                return readString(is);
+            case ARG_CHAR:
+                return (char) readVarLong(is);
+            case -1:
+                throw new EOFException();
+            default:
+                return null;
+        }
+    }
+
+    private static String format(String format, Object[] args) {
+        if (format == null) {
+            format = "<unknown format>";
+        }
+        if (args.length == 0) {
+            return format;
+        }
+        try {
+            return String.format(format, args);
+        } catch (IllegalFormatException e) {
+            StringBuilder builder = new StringBuilder(format);
+            for (Object arg : args) {
+                builder.append(' ').append(arg);
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * 与XLog的LogLevel.getLevelName相同
+     */
+    private static String levelName(int level) {
+        switch (level) {
+            case 2:
+                return "VERBOSE";
+            case 3:
+                return "DEBUG";
+            case 4:
+                return "INFO";
+            case 5:
+                return "WARN";
+            case 6:
+                return "ERROR";
+            default:
+                return level < 2 ? "VERBOSE-" + (2 - level) : "ERROR+" + (level - 6);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package io.agora.log;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * 二进制日志格式
+ * 文件头: magic(4字节) + version(1字节) + 基准墙钟时间(ms) + 基准单调时钟(ns)，两个long按varint编码；
+ * 之后是若干记录，每条记录以1字节类型开头：
+ * <ul>
+ * <li>{@link #TYPE_FORMAT}/{@link #TYPE_TAG}/{@link #TYPE_THREAD}: id + 字符串，定义字典项</li>
+ * <li>{@link #TYPE_LOG}: level + tagId + 相对基准的单调时间(us) + threadId + formatId + 参数个数 + 参数；
+ * tagId/formatId为0时(字典已满或消息未进入字典)紧跟内联的字符串</li>
+ * </ul>
+ * 同一文件中可能出现多个文件头(进程重启后追加写入)，之后的记录使用新的字典和基准时间
+ * 整数使用无符号varint，字符串为varint长度 + UTF-8字节
+ */
+final class BinaryLogFormat {
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+    static final byte[] MAGIC = {'A', 'G', 'B', 'L'};
+    static final int VERSION = 1;
+
+    static final int TYPE_FORMAT = 1;
+    static final int TYPE_TAG = 2;
+    static final int TYPE_THREAD = 3;
+    static final int TYPE_LOG = 4;
+
+    static final int ARG_NULL = 0;
+    /**
+     * 整数，zigzag编码后按varint写入
+     */
+    static final int ARG_LONG = 1;
+    static final int ARG_DOUBLE = 2;
+    static final int ARG_BOOLEAN = 3;
+    static final int ARG_STRING = 4;
+    static final int ARG_CHAR = 5;
+
+    private BinaryLogFormat() {
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static long readVarLong(InputStream is) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = is.read();
+            if (b == -1) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+
+    static String readString(InputStream is) throws IOException {
+        int len = (int) readVarLong(is);
+        byte[] bytes = new byte[len];
+        int n = 0;
+        while (n < len) {
+            int count = is.read(bytes, n, len - n);
+            if (count == -1) {
+                throw new EOFException();
+            }
+            n += count;
+        }
+        return new String(bytes, UTF_8);
+    }
+}
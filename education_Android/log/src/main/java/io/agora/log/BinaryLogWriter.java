@@ -0,0 +1,537 @@
+package io.agora.log;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.elvishew.xlog.LogLevel.WARN;
+import static io.agora.log.BinaryLogFormat.ARG_BOOLEAN;
+import static io.agora.log.BinaryLogFormat.ARG_CHAR;
+import static io.agora.log.BinaryLogFormat.ARG_DOUBLE;
+import static io.agora.log.BinaryLogFormat.ARG_LONG;
+import static io.agora.log.BinaryLogFormat.ARG_NULL;
+import static io.agora.log.BinaryLogFormat.ARG_STRING;
+import static io.agora.log.BinaryLogFormat.MAGIC;
+import static io.agora.log.BinaryLogFormat.TYPE_FORMAT;
+import static io.agora.log.BinaryLogFormat.TYPE_LOG;
+import static io.agora.log.BinaryLogFormat.TYPE_TAG;
+import static io.agora.log.BinaryLogFormat.TYPE_THREAD;
+import static io.agora.log.BinaryLogFormat.UTF_8;
+import static io.agora.log.BinaryLogFormat.VERSION;
+import static io.agora.log.BinaryLogFormat.zigzag;
+
+/**
+ * 二进制格式的日志文件写入(格式见{@link BinaryLogFormat})
+ * 格式字符串和tag只在第一次出现时写入字典，之后每条日志只记录id和参数；
+ * 没有参数的消息(通常是拼接好的字符串)第二次出现时才进入字典，避免一次性的消息占满字典。
+ * 调用方只把记录编码进内存缓冲，由后台线程每秒(或缓冲较多时)追加写入文件；
+ * 每个文件开头重新写入完整的字典，滚动后的文件可以单独解码(见{@link BinaryLogDecoder})。
+ * 指定映射文件时，编码后的记录同时拷贝进映射内存，写入日志文件并sync之后才移除；
+ * 进程崩溃后下次创建时先把残留的记录追加到原来的日志文件，与{@link MmapFilePrinter}一样不丢失
+ */
+public class BinaryLogWriter {
+    public static final String EXT = ".blog";
+    private static final long FLUSH_INTERVAL_MS = 1000;
+    private static final int FLUSH_THRESHOLD = 64 * 1024;
+    /**
+     * 缓冲超过此长度时丢弃新的日志
+     */
+    private static final int MAX_PENDING = 1024 * 1024;
+    private static final int MAX_FORMATS = 4096;
+    private static final int MAX_TAGS = 1024;
+    private static final int MAX_THREADS = 1024;
+    private static final int MAX_SEEN_ONCE = 1024;
+    private static final int DEFAULT_MIRROR_SIZE = 512 * 1024;
+    /**
+     * 映射文件的头部: magic(int) + 标志(int) + 未落盘数据的起止位置(long，高32位为起点，低32位为终点)
+     * + 写入这些数据的进程的基准墙钟时间(long)和基准单调时钟(long)；
+     * 起止位置用一次写入更新，崩溃时不会只更新了一半
+     */
+    private static final int MIRROR_MAGIC = 0x41474C42;
+    private static final int FLAGS = 4;
+    private static final int POSITIONS = 8;
+    private static final int WALL_BASE = 16;
+    private static final int MONO_BASE = 24;
+    private static final int MIRROR_HEADER_LEN = 32;
+    /**
+     * 写入数据的进程已经向日志文件写过文件头，之后的数据依赖文件中已有的字典
+     */
+    private static final int FLAG_HEADER_WRITTEN = 1;
+
+    private final LogRotator rotator;
+    private final long wallBaseMillis = System.currentTimeMillis();
+    private final long monoBaseNanos = SystemClock.elapsedRealtimeNanos();
+    private final Object lock = new Object();
+    /**
+     * 未落盘记录的映射内存，没有映射文件时为null
+     */
+    @Nullable
+    private final MappedByteBuffer mirror;
+    private final int mirrorCapacity;
+    private final Thread thread;
+    private volatile boolean closed;
+
+    private final Map<String, Integer> formatIds = new HashMap<>();
+    private final List<String> formats = new ArrayList<>();
+    private final Map<String, Integer> tagIds = new HashMap<>();
+    private final List<String> tags = new ArrayList<>();
+    private final Map<Long, String> threadNames = new HashMap<>();
+    /**
+     * 只出现过一次的无参数消息
+     */
+    private final Set<String> seenOnce = new HashSet<>();
+
+    private Encoder pending = new Encoder(FLUSH_THRESHOLD);
+    private Encoder spare = new Encoder(FLUSH_THRESHOLD);
+    private int dropped;
+    /**
+     * 本进程是否已向当前文件写过文件头；进程重启后追加到已有文件时也需要重新写入
+     */
+    private boolean headerWritten;
+
+    /**
+     * 只缓冲在内存中，进程崩溃时丢失最近一秒左右的日志
+     */
+    public BinaryLogWriter(@NonNull LogRotator rotator) {
+        this.rotator = rotator;
+        this.mirror = null;
+        this.mirrorCapacity = 0;
+        thread = start();
+    }
+
+    /**
+     * @param mmapFile 缓冲未落盘记录的映射文件，应放在日志目录之外
+     */
+    public BinaryLogWriter(@NonNull LogRotator rotator, @NonNull File mmapFile) throws IOException {
+        this(rotator, mmapFile, DEFAULT_MIRROR_SIZE, true);
+    }
+
+    /**
+     * @param background 是否启动后台线程定时落盘，为false时只在调用{@link #flush()}时写入
+     */
+    BinaryLogWriter(@NonNull LogRotator rotator, @NonNull File mmapFile, int mirrorSize, boolean background)
+            throws IOException {
+        this.rotator = rotator;
+        this.mirrorCapacity = mirrorSize;
+        try (RandomAccessFile raf = new RandomAccessFile(mmapFile, "rw")) {
+            raf.setLength(mirrorSize);
+            mirror = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, mirrorSize);
+        }
+        /*上次进程退出(或崩溃)前未落盘的记录*/
+        if (mirror.getInt(0) == MIRROR_MAGIC && validPositions(mirror.getLong(POSITIONS))) {
+            recover();
+        }
+        mirror.putLong(POSITIONS, 0);
+        mirror.putInt(0, MIRROR_MAGIC);
+        mirror.putInt(FLAGS, 0);
+        mirror.putLong(WALL_BASE, wallBaseMillis);
+        mirror.putLong(MONO_BASE, monoBaseNanos);
+        thread = background ? start() : null;
+    }
+
+    private Thread start() {
+        Thread thread = new Thread(this::loop, "BinaryLogWriter");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    public void write(int level, @NonNull String tag, @NonNull String format, @Nullable Object[] args) {
+        long micros = (SystemClock.elapsedRealtimeNanos() - monoBaseNanos) / 1000;
+        Thread thread = Thread.currentThread();
+        int argc = args == null ? 0 : args.length;
+        if (closed) {
+            return;
+        }
+        synchronized (lock) {
+            if (pending.count > MAX_PENDING) {
+                dropped++;
+                return;
+            }
+            int mark = pending.count;
+            int formatCount = formats.size();
+            int tagCount = tags.size();
+            int tagId = intern(tag, tagIds, tags, MAX_TAGS, TYPE_TAG);
+            long threadId = thread.getId();
+            String threadName = thread.getName();
+            String oldThreadName = threadNames.get(threadId);
+            if (!threadName.equals(oldThreadName) && threadNames.size() < MAX_THREADS) {
+                threadNames.put(threadId, threadName);
+                pending.writeByte(TYPE_THREAD);
+                pending.writeVarLong(threadId);
+                pending.writeString(threadName);
+            }
+            int formatId = 0;
+            if (argc > 0 || !seenOnce.add(format)) {
+                formatId = intern(format, formatIds, formats, MAX_FORMATS, TYPE_FORMAT);
+                seenOnce.remove(format);
+            } else if (seenOnce.size() > MAX_SEEN_ONCE) {
+                seenOnce.clear();
+            }
+            pending.writeByte(TYPE_LOG);
+            pending.writeByte(level);
+            pending.writeVarLong(tagId);
+            if (tagId == 0) {
+                pending.writeString(tag);
+            }
+            pending.writeVarLong(micros);
+            pending.writeVarLong(threadId);
+            pending.writeVarLong(formatId);
+            if (formatId == 0) {
+                pending.writeString(format);
+            }
+            pending.writeVarLong(argc);
+            for (int i = 0; i < argc; i++) {
+                writeArg(args[i]);
+            }
+            if (!mirror(mark)) {
+                /*映射内存已满，撤销这条记录(包括其中新增的字典项)，与内存缓冲保持一致*/
+                pending.count = mark;
+                while (formats.size() > formatCount) {
+                    formatIds.remove(formats.remove(formats.size() - 1));
+                }
+                while (tags.size() > tagCount) {
+                    tagIds.remove(tags.remove(tags.size() - 1));
+                }
+                if (oldThreadName == null) {
+                    threadNames.remove(threadId);
+                } else {
+                    threadNames.put(threadId, oldThreadName);
+                }
+                dropped++;
+                lock.notify();
+                return;
+            }
+            if (pending.count > FLUSH_THRESHOLD) {
+                lock.notify();
+            }
+        }
+    }
+
+    /**
+     * 需要持有lock；把pending中{@param mark}之后新编码的字节追加到映射内存
+     *
+     * @return 没有映射内存或追加成功时返回true
+     */
+    private boolean mirror(int mark) {
+        if (mirror == null) {
+            return true;
+        }
+        int len = pending.count - mark;
+        long positions = mirror.getLong(POSITIONS);
+        int start = startOf(positions);
+        int end = endOf(positions);
+        if (MIRROR_HEADER_LEN + end + len > mirrorCapacity) {
+            return false;
+        }
+        mirror.position(MIRROR_HEADER_LEN + end);
+        mirror.put(pending.bytes, mark, len);
+        /*最后更新终点，崩溃时不会读到写了一半的记录*/
+        mirror.putLong(POSITIONS, positionsOf(start, end + len));
+        return true;
+    }
+
+    /**
+     * @return 字典中的id(从1开始)，字典已满时返回0，调用方需内联写入字符串
+     */
+    private int intern(String value, Map<String, Integer> ids, List<String> values, int max, int type) {
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        if (values.size() >= max) {
+            return 0;
+        }
+        values.add(value);
+        id = values.size();
+        ids.put(value, id);
+        pending.writeByte(type);
+        pending.writeVarLong(id);
+        pending.writeString(value);
+        return id;
+    }
+
+    private void writeArg(Object arg) {
+        if (arg == null) {
+            pending.writeByte(ARG_NULL);
+        } else if (arg instanceof Integer || arg instanceof Long || arg instanceof Short || arg instanceof Byte) {
+            pending.writeByte(ARG_LONG);
+            pending.writeVarLong(zigzag(((Number) arg).longValue()));
+        } else if (arg instanceof Double || arg instanceof Float) {
+            pending.writeByte(ARG_DOUBLE);
+            pending.writeFixedLong(Double.doubleToLongBits(((Number) arg).doubleValue()));
+        } else if (arg instanceof Boolean) {
+            pending.writeByte(ARG_BOOLEAN);
+            pending.writeByte((Boolean) arg ? 1 : 0);
+        } else if (arg instanceof Character) {
+            pending.writeByte(ARG_CHAR);
+            pending.writeVarLong((Character) arg);
+        } else {
+            pending.writeByte(ARG_STRING);
+            pending.writeString(String.valueOf(arg));
+        }
+    }
+
+    private void loop() {
+        while (!closed) {
+            synchronized (lock) {
+                try {
+                    lock.wait(FLUSH_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            flush();
+        }
+    }
+
+    /**
+     * 停止后台线程并把剩余的记录写入日志文件，之后的日志被忽略
+     */
+    public void close() {
+        closed = true;
+        if (thread != null) {
+            thread.interrupt();
+        }
+        flush();
+    }
+
+    /**
+     * 交换缓冲后在锁外写文件；本进程首次写入或滚动到新文件时先写文件头和完整的字典。
+     * 有映射内存时写入并sync之后才把这部分记录从映射内存中移除；写入失败时记录保留，下次重试
+     */
+    public synchronized void flush() {
+        Encoder data;
+        int droppedCount;
+        int mirrorEnd = 0;
+        synchronized (lock) {
+            if (pending.count == 0 && dropped == 0) {
+                return;
+            }
+            data = pending;
+            pending = spare;
+            spare = data;
+            droppedCount = dropped;
+            dropped = 0;
+            if (mirror != null) {
+                mirrorEnd = endOf(mirror.getLong(POSITIONS));
+            }
+        }
+        File file = rotator.prepare(data.count);
+        try (FileOutputStream os = new FileOutputStream(file, true)) {
+            if (!headerWritten || file.length() == 0) {
+                Encoder head = header(wallBaseMillis, monoBaseNanos);
+                os.write(head.bytes, 0, head.count);
+                headerWritten = true;
+            }
+            os.write(data.bytes, 0, data.count);
+            if (droppedCount > 0) {
+                Encoder notice = new Encoder(64);
+                notice.writeByte(TYPE_LOG);
+                notice.writeByte(WARN);
+                notice.writeVarLong(0);
+                notice.writeString("BinaryLogWriter");
+                notice.writeVarLong((SystemClock.elapsedRealtimeNanos() - monoBaseNanos) / 1000);
+                notice.writeVarLong(0);
+                notice.writeVarLong(0);
+                notice.writeString("dropped " + droppedCount + " log lines, buffer full");
+                notice.writeVarLong(0);
+                os.write(notice.bytes, 0, notice.count);
+            }
+            if (mirror != null) {
+                os.getFD().sync();
+                synchronized (lock) {
+                    mirror.putInt(FLAGS, FLAG_HEADER_WRITTEN);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            synchronized (lock) {
+                /*与MmapFilePrinter一致：写入失败的记录放回缓冲，排在之后的记录前面，下次重试*/
+                data.write(pending.bytes, 0, pending.count);
+                pending.count = 0;
+                spare = pending;
+                pending = data;
+                dropped += droppedCount;
+            }
+            return;
+        }
+        data.count = 0;
+        if (mirror != null) {
+            commit(mirrorEnd);
+        }
+    }
+
+    /**
+     * 把上次进程残留在映射内存中的记录追加到当前日志文件(不滚动，其中的字典项可能定义在该文件之前的部分)；
+     * 那个进程还没有写过文件头或文件已经不存在时，先用它的基准时间写一个文件头
+     */
+    private void recover() {
+        long positions = mirror.getLong(POSITIONS);
+        int start = startOf(positions);
+        int end = endOf(positions);
+        if (start == end) {
+            return;
+        }
+        byte[] data = new byte[end - start];
+        mirror.position(MIRROR_HEADER_LEN + start);
+        mirror.get(data);
+        File file = rotator.current();
+        boolean needHeader = (mirror.getInt(FLAGS) & FLAG_HEADER_WRITTEN) == 0 || file.length() == 0;
+        try (FileOutputStream os = new FileOutputStream(file, true)) {
+            if (needHeader) {
+                Encoder head = header(mirror.getLong(WALL_BASE), mirror.getLong(MONO_BASE));
+                os.write(head.bytes, 0, head.count);
+            }
+            os.write(data);
+            os.getFD().sync();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 把起点移动到已写入日志文件的位置；剩余的记录不与起点之前的空间重叠时移到映射内存开头。
+     * 每一步只用一次写入更新起止位置，任何时候崩溃映射内存都是完整的
+     */
+    private void commit(int written) {
+        synchronized (lock) {
+            int end = endOf(mirror.getLong(POSITIONS));
+            int remaining = end - written;
+            if (remaining == 0) {
+                mirror.putLong(POSITIONS, 0);
+                return;
+            }
+            mirror.putLong(POSITIONS, positionsOf(written, end));
+            if (remaining <= written) {
+                byte[] rest = new byte[remaining];
+                mirror.position(MIRROR_HEADER_LEN + written);
+                mirror.get(rest);
+                mirror.position(MIRROR_HEADER_LEN);
+                mirror.put(rest);
+                mirror.putLong(POSITIONS, positionsOf(0, remaining));
+            }
+        }
+    }
+
+    /**
+     * 映射文件可能已损坏，起止位置不能超出映射内存
+     */
+    private boolean validPositions(long positions) {
+        int start = startOf(positions);
+        int end = endOf(positions);
+        return start >= 0 && start <= end && MIRROR_HEADER_LEN + end <= mirrorCapacity;
+    }
+
+    private static long positionsOf(int start, int end) {
+        return ((long) start << 32) | (end & 0xffffffffL);
+    }
+
+    private static int startOf(long positions) {
+        return (int) (positions >>> 32);
+    }
+
+    private static int endOf(long positions) {
+        return (int) positions;
+    }
+
+    /**
+     * 文件头和当前的完整字典
+     */
+    private Encoder header(long wallBaseMillis, long monoBaseNanos) {
+        Encoder head = new Encoder(1024);
+        head.write(MAGIC);
+        head.writeByte(VERSION);
+        head.writeVarLong(wallBaseMillis);
+        head.writeVarLong(monoBaseNanos);
+        synchronized (lock) {
+            for (int i = 0; i < tags.size(); i++) {
+                head.writeByte(TYPE_TAG);
+                head.writeVarLong(i + 1);
+                head.writeString(tags.get(i));
+            }
+            for (int i = 0; i < formats.size(); i++) {
+                head.writeByte(TYPE_FORMAT);
+                head.writeVarLong(i + 1);
+                head.writeString(formats.get(i));
+            }
+            for (Map.Entry<Long, String> entry : threadNames.entrySet()) {
+                head.writeByte(TYPE_THREAD);
+                head.writeVarLong(entry.getKey());
+                head.writeString(entry.getValue());
+            }
+        }
+        return head;
+    }
+
+    /**
+     * 可复用的字节缓冲
+     */
+    private static class Encoder {
+        byte[] bytes;
+        int count;
+
+        Encoder(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            bytes[count++] = (byte) b;
+        }
+
+        void write(byte[] b) {
+            write(b, 0, b.length);
+        }
+
+        void write(byte[] b, int off, int len) {
+            ensure(len);
+            System.arraycopy(b, off, bytes, count, len);
+            count += len;
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7fL) != 0) {
+                bytes[count++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            bytes[count++] = (byte) value;
+        }
+
+        void writeFixedLong(long value) {
+            ensure(8);
+            for (int i = 0; i < 8; i++) {
+                bytes[count++] = (byte) (value >>> (i * 8));
+            }
+        }
+
+        void writeString(String value) {
+            byte[] b = value.getBytes(UTF_8);
+            writeVarLong(b.length);
+            write(b);
+        }
+
+        private void ensure(int len) {
+            if (count + len > bytes.length) {
+                byte[] grown = new byte[Math.max(bytes.length * 2, count + len)];
+                System.arraycopy(bytes, 0, grown, 0, count);
+                bytes = grown;
+            }
+        }
+    }
+}
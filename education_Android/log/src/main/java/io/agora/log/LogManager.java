@@ -5,6 +5,7 @@ package io.agora.log;
  */
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.elvishew.xlog.LogConfiguration;
 import com.elvishew.xlog.LogLevel;
@@ -13,10 +14,18 @@ import com.elvishew.xlog.XLog;
 import com.elvishew.xlog.flattener.Flattener;
 import com.elvishew.xlog.flattener.Flattener2;
 import com.elvishew.xlog.printer.AndroidPrinter;
+import com.elvishew.xlog.printer.Printer;
 import com.elvishew.xlog.printer.file.FilePrinter;
+import com.elvishew.xlog.printer.file.backup.FileSizeBackupStrategy;
 import com.elvishew.xlog.printer.file.naming.ChangelessFileNameGenerator;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import static com.elvishew.xlog.LogLevel.DEBUG;
 import static com.elvishew.xlog.LogLevel.ERROR;
@@ -25,26 +34,217 @@ import static com.elvishew.xlog.LogLevel.VERBOSE;
 import static com.elvishew.xlog.LogLevel.WARN;
 
 public class LogManager {
+    /**
+     * 单个日志文件的最大字节数(Rtc和Rtm的日志文件同样使用此限制，见RteEngineImpl.LOG_FILE_SIZE_KB)
+     */
+    public static final int MAX_LOG_FILE_SIZE = 4 * 1024 * 1024;
     private static File sPath;
     private static String sTag;
+    /**
+     * 二进制格式的文件日志，未启用时为null；重新init时先关闭
+     */
+    private static volatile BinaryLogWriter sBinaryWriter;
+    /**
+     * 进程内唯一的mmap Printer，多次init时复用，避免多个实例映射同一个文件
+     */
+    private static MmapFilePrinter sMmapPrinter;
+    private static File sMmapFile;
+    private static File sMmapLogDir;
+    /**
+     * 交给XLog的文件Printer，进程内只有这一个；LogManager实例的Logger在构造时绑定了当时的Printer，
+     * 重新init时只替换它转发的目标，之前创建的实例也写入新的文件日志
+     */
+    private static final DelegatingPrinter sFilePrinter = new DelegatingPrinter();
+    /**
+     * 默认每个调用点允许突发30条，之后每秒5条
+     */
+    private static final int DEFAULT_BURST = 30;
+    private static final double DEFAULT_RATE = 5;
+    /**
+     * 日志限流，关闭时为null
+     */
+    private static volatile LogRateLimiter sRateLimiter = new LogRateLimiter(DEFAULT_BURST, DEFAULT_RATE);
+    /**
+     * 定时输出被限流调用点的汇总，第一次有日志被限流时才启动
+     */
+    private static volatile ScheduledExecutorService sSummaryTimer;
+    private static final ThreadLocal<List<LogRateLimiter.Summary>> sSummaries =
+            new ThreadLocal<List<LogRateLimiter.Summary>>() {
+                @Override
+                protected List<LogRateLimiter.Summary> initialValue() {
+                    return new ArrayList<>();
+                }
+            };
     private Logger logger;
+    private final String tag;
     private final String p0 = "%", p1 = "%%";
 
     public static void init(@NonNull String logPath, @NonNull String tag) {
+        init(logPath, tag, false);
+    }
+
+    /**
+     * @param binary 文件日志是否使用二进制格式(见{@link BinaryLogWriter})，
+     *               体积更小，需要用{@link BinaryLogDecoder}还原为文本；
+     *               与文本格式一样先缓冲在log目录之外的映射文件中，崩溃时不丢失，映射失败时只缓冲在内存中
+     */
+    public static synchronized void init(@NonNull String logPath, @NonNull String tag, boolean binary) {
         sPath = new File(logPath);
         sTag = tag;
-        XLog.init(new LogConfiguration.Builder()
-                        .logLevel(LogLevel.ALL)
-                        .tag(tag).build(),
-                new AndroidPrinter(),
-                new FilePrinter.Builder(getPath().getAbsolutePath())
-                        .fileNameGenerator(new ChangelessFileNameGenerator(tag + ".log"))
-                        .flattener(new MyFlattener())
-                        .build());
+        LogConfiguration configuration = new LogConfiguration.Builder()
+                .logLevel(LogLevel.ALL)
+                .tag(tag).build();
+        /*先切换到新的目标再关闭之前的，切换过程中的日志不会写入已关闭的Printer*/
+        BinaryLogWriter oldWriter = sBinaryWriter;
+        MmapFilePrinter oldPrinter = sMmapPrinter;
+        if (binary) {
+            sBinaryWriter = createBinaryWriter(tag);
+            sFilePrinter.setTarget(null);
+            clearMmapPrinter();
+        } else {
+            sBinaryWriter = null;
+            sFilePrinter.setTarget(createFilePrinter(tag));
+        }
+        if (oldWriter != null) {
+            oldWriter.close();
+        }
+        if (oldPrinter != null && oldPrinter != sMmapPrinter) {
+            oldPrinter.close();
+        }
+        XLog.init(configuration, new AndroidPrinter(), sFilePrinter);
+    }
+
+    private static BinaryLogWriter createBinaryWriter(@NonNull String tag) {
+        File logDir = getPath();
+        File cacheDir = logDir.getParentFile() != null ? logDir.getParentFile() : logDir;
+        LogRotator rotator = new LogRotator(logDir, tag, BinaryLogWriter.EXT);
+        try {
+            return new BinaryLogWriter(rotator, new File(cacheDir, tag + ".blogcache"));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new BinaryLogWriter(rotator);
+        }
+    }
+
+    /**
+     * 之前的Printer由调用方在切换目标之后关闭
+     */
+    private static void clearMmapPrinter() {
+        sMmapPrinter = null;
+        sMmapFile = null;
+        sMmapLogDir = null;
+    }
+
+    /**
+     * 优先使用mmap缓冲的异步Printer(调用方不做文件I/O)，映射失败时退回XLog的FilePrinter;
+     * 映射文件放在log目录之外，避免被打包上传。
+     * 同一个映射文件和日志目录只创建一次Printer，变化时创建新的Printer
+     */
+    private static Printer createFilePrinter(@NonNull String tag) {
+        File logDir = getPath();
+        File cacheDir = logDir.getParentFile() != null ? logDir.getParentFile() : logDir;
+        File mmapFile = new File(cacheDir, tag + ".logcache");
+        if (sMmapPrinter != null) {
+            if (mmapFile.equals(sMmapFile) && logDir.equals(sMmapLogDir)) {
+                return sMmapPrinter;
+            }
+            clearMmapPrinter();
+        }
+        try {
+            sMmapPrinter = new MmapFilePrinter(mmapFile, new LogRotator(logDir, tag), new MyFlattener());
+            sMmapFile = mmapFile;
+            sMmapLogDir = logDir;
+            return sMmapPrinter;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new FilePrinter.Builder(logDir.getAbsolutePath())
+                    .fileNameGenerator(new ChangelessFileNameGenerator(tag + ".log"))
+                    .backupStrategy(new FileSizeBackupStrategy(MAX_LOG_FILE_SIZE))
+                    .flattener(new MyFlattener())
+                    .build();
+        }
+    }
+
+    /**
+     * 设置每个调用点(tag和消息开头相同的日志)的限流参数，{@param perSecond}不大于0时关闭限流；ERROR级别的日志始终不限流
+     *
+     * @param burst     允许的突发条数
+     * @param perSecond 每秒允许的条数
+     */
+    public static void setRateLimit(int burst, double perSecond) {
+        LogRateLimiter old = sRateLimiter;
+        sRateLimiter = perSecond > 0 ? new LogRateLimiter(burst, perSecond) : null;
+        if (old != null) {
+            printSummaries(old, true);
+        }
+    }
+
+    private static void printSummaries(@NonNull LogRateLimiter limiter, boolean all) {
+        List<LogRateLimiter.Summary> summaries = new ArrayList<>();
+        limiter.drain(summaries, all);
+        for (LogRateLimiter.Summary summary : summaries) {
+            summary.owner.print(summary.level, summary.message);
+        }
+    }
+
+    private static void startSummaryTimer() {
+        synchronized (LogManager.class) {
+            if (sSummaryTimer != null) {
+                return;
+            }
+            sSummaryTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "LogRateLimiter");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        sSummaryTimer.scheduleWithFixedDelay(() -> {
+            LogRateLimiter limiter = sRateLimiter;
+            if (limiter != null) {
+                printSummaries(limiter, false);
+            }
+        }, LogRateLimiter.SUMMARY_INTERVAL_MS, LogRateLimiter.SUMMARY_INTERVAL_MS, TimeUnit.MILLISECONDS);
     }
 
     public LogManager(String sTag) {
-        logger = XLog.tag(getTag() + "-" + sTag).build();
+        tag = getTag() + "-" + sTag;
+        logger = XLog.tag(tag).build();
+    }
+
+    /**
+     * 限流检查，放行时先输出该调用点到期的"suppressed N similar messages"汇总；
+     * 其他调用点的汇总由定时任务输出。ERROR级别的日志不限流
+     */
+    private boolean allow(int level, String msg) {
+        LogRateLimiter limiter = sRateLimiter;
+        if (limiter == null || level >= ERROR) {
+            return true;
+        }
+        List<LogRateLimiter.Summary> summaries = sSummaries.get();
+        boolean allowed = limiter.tryAcquire(this, tag, level, msg, summaries);
+        if (!summaries.isEmpty()) {
+            for (LogRateLimiter.Summary summary : summaries) {
+                summary.owner.print(summary.level, summary.message);
+            }
+            summaries.clear();
+        }
+        if (!allowed && sSummaryTimer == null) {
+            startSummaryTimer();
+        }
+        return allowed;
+    }
+
+    private void print(int level, String msg, Object... args) {
+        writeBinary(level, msg, args);
+        msg = check(msg, args);
+        logger.log(level, msg, args);
+    }
+
+    private void writeBinary(int level, String msg, Object... args) {
+        BinaryLogWriter writer = sBinaryWriter;
+        if (writer != null) {
+            writer.write(level, tag, msg, args);
+        }
     }
 
     private String check(String msg, Object... args) {
@@ -73,23 +273,27 @@ public class LogManager {
     }
 
     public void d(String msg, Object... args) {
-        msg = check(msg, args);
-        logger.d(msg, args);
+        if (allow(DEBUG, msg)) {
+            print(DEBUG, msg, args);
+        }
     }
 
     public void i(String msg, Object... args) {
-        msg = check(msg, args);
-        logger.i(msg, args);
+        if (allow(INFO, msg)) {
+            print(INFO, msg, args);
+        }
     }
 
     public void w(String msg, Object... args) {
-        msg = check(msg, args);
-        logger.w(msg, args);
+        if (allow(WARN, msg)) {
+            print(WARN, msg, args);
+        }
     }
 
     public void e(String msg, Object... args) {
-        msg = check(msg, args);
-        logger.e(msg, args);
+        if (allow(ERROR, msg)) {
+            print(ERROR, msg, args);
+        }
     }
 
     public static File getPath() throws IllegalStateException {
@@ -103,4 +307,23 @@ public class LogManager {
             throw new IllegalStateException("LogManager is not initialized. Please call init() before use!");
         return sTag;
     }
+
+    /**
+     * 转发到当前目标的Printer，没有目标(二进制格式)时忽略
+     */
+    private static class DelegatingPrinter implements Printer {
+        private volatile Printer target;
+
+        void setTarget(@Nullable Printer target) {
+            this.target = target;
+        }
+
+        @Override
+        public void println(int logLevel, String tag, String msg) {
+            Printer printer = target;
+            if (printer != null) {
+                printer.println(logLevel, tag, msg);
+            }
+        }
+    }
 }
@@ -0,0 +1,155 @@
+package io.agora.log;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 日志限流
+ * 按tag和消息的"调用点"(消息开头到第一个数字为止的部分，最多{@link #KEY_PREFIX_LEN}个字符)分别使用令牌桶，
+ * 超出速率的日志被丢弃并计数，每个调用点至多每隔{@link #SUMMARY_INTERVAL_MS}输出一条
+ * "suppressed N similar messages"的汇总(在该调用点的日志再次被放行时输出，其余的由{@link LogManager}
+ * 的定时任务通过{@link #drain}输出，不依赖之后是否还有日志调用)；
+ * 每个调用点的首次出现总会被记录
+ */
+class LogRateLimiter {
+    private static final int KEY_PREFIX_LEN = 48;
+    static final long SUMMARY_INTERVAL_MS = 5000;
+    /**
+     * 调用点数量的上限，超出时先清理空闲的令牌桶
+     */
+    private static final int MAX_KEYS = 512;
+
+    static class Summary {
+        final LogManager owner;
+        final int level;
+        final String message;
+
+        Summary(LogManager owner, int level, String message) {
+            this.owner = owner;
+            this.level = level;
+            this.message = message;
+        }
+    }
+
+    private static class Bucket {
+        final LogManager owner;
+        double tokens;
+        long lastRefill;
+        int suppressed;
+        long lastSummary;
+        int level;
+        String sample;
+
+        Bucket(LogManager owner, double tokens, long now) {
+            this.owner = owner;
+            this.tokens = tokens;
+            this.lastRefill = now;
+        }
+    }
+
+    private final double burst;
+    private final double tokensPerMs;
+    private final Map<String, Bucket> buckets = new HashMap<>();
+
+    /**
+     * @param burst     每个调用点允许的突发条数
+     * @param perSecond 每个调用点每秒允许的条数
+     */
+    LogRateLimiter(int burst, double perSecond) {
+        this.burst = burst;
+        this.tokensPerMs = perSecond / 1000;
+    }
+
+    /**
+     * @param summaries 需要输出的汇总，由调用方在放行的日志之前输出
+     * @return 这条日志是否放行
+     */
+    boolean tryAcquire(@NonNull LogManager owner, @NonNull String tag, int level, @NonNull String msg,
+                       @NonNull List<Summary> summaries) {
+        long now = SystemClock.elapsedRealtime();
+        String key = key(tag, msg);
+        synchronized (this) {
+            Bucket bucket = buckets.get(key);
+            if (bucket == null) {
+                if (buckets.size() >= MAX_KEYS && !evictIdle(now)) {
+                    return true;
+                }
+                bucket = new Bucket(owner, burst, now);
+                buckets.put(key, bucket);
+            }
+            bucket.tokens = Math.min(burst, bucket.tokens + (now - bucket.lastRefill) * tokensPerMs);
+            bucket.lastRefill = now;
+            boolean allowed = bucket.tokens >= 1;
+            if (allowed) {
+                bucket.tokens -= 1;
+                if (bucket.suppressed > 0 && now - bucket.lastSummary >= SUMMARY_INTERVAL_MS) {
+                    summaries.add(summarize(bucket, now));
+                }
+            } else {
+                bucket.suppressed++;
+                bucket.level = level;
+                bucket.sample = msg;
+            }
+            return allowed;
+        }
+    }
+
+    /**
+     * 取出所有到期的汇总
+     *
+     * @param all 为true时不论是否到期都取出(限流器被替换时使用)
+     */
+    void drain(@NonNull List<Summary> summaries, boolean all) {
+        long now = SystemClock.elapsedRealtime();
+        synchronized (this) {
+            for (Bucket bucket : buckets.values()) {
+                if (bucket.suppressed > 0 && (all || now - bucket.lastSummary >= SUMMARY_INTERVAL_MS)) {
+                    summaries.add(summarize(bucket, now));
+                }
+            }
+        }
+    }
+
+    private Summary summarize(Bucket bucket, long now) {
+        Summary summary = new Summary(bucket.owner, bucket.level,
+                "suppressed " + bucket.suppressed + " similar messages, last: " + bucket.sample);
+        bucket.suppressed = 0;
+        bucket.sample = null;
+        bucket.lastSummary = now;
+        return summary;
+    }
+
+    /**
+     * 删除没有被限流且令牌已补满的令牌桶
+     *
+     * @return 是否有空位
+     */
+    private boolean evictIdle(long now) {
+        Iterator<Bucket> iterator = buckets.values().iterator();
+        while (iterator.hasNext()) {
+            Bucket bucket = iterator.next();
+            if (bucket.suppressed == 0 &&
+                    bucket.tokens + (now - bucket.lastRefill) * tokensPerMs >= burst) {
+                iterator.remove();
+            }
+        }
+        return buckets.size() < MAX_KEYS;
+    }
+
+    private static String key(String tag, String msg) {
+        int end = Math.min(msg.length(), KEY_PREFIX_LEN);
+        for (int i = 0; i < end; i++) {
+            if (Character.isDigit(msg.charAt(i))) {
+                end = i;
+                break;
+            }
+        }
+        return tag + '|' + msg.substring(0, end);
+    }
+}
@@ -0,0 +1,195 @@
+package io.agora.log;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 日志文件按大小和日期滚动
+ * 当前文件为{@code <name>.log}(扩展名可指定)，滚动后的文件重命名为{@code <name>-yyyyMMdd-HHmmss.log}，
+ * 并在后台线程压缩为.gz；压缩完成后按保留天数和目录配额清理最旧的归档
+ */
+public class LogRotator {
+    public static final String ARCHIVE_EXT = ".gz";
+    private static final String DEFAULT_EXT = ".log";
+    private static final long DEFAULT_MAX_FILE_SIZE = 4 * 1024 * 1024;
+    private static final int DEFAULT_MAX_DAYS = 7;
+    private static final long DEFAULT_DIR_QUOTA = 30 * 1024 * 1024;
+    private static final int BUFFER_LEN = 8192;
+    /**
+     * 压缩和清理归档的后台线程，所有实例共用(重新初始化日志时会创建新的实例)
+     */
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "LogRotator");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final File dir;
+    private final String name;
+    private final String ext;
+    private final long maxFileSize;
+    private final int maxDays;
+    private final long dirQuota;
+    private final File current;
+    /**
+     * 当前文件对应的日期(yyyyMMdd)
+     */
+    private int currentDay;
+
+    public LogRotator(@NonNull File dir, @NonNull String name) {
+        this(dir, name, DEFAULT_EXT);
+    }
+
+    public LogRotator(@NonNull File dir, @NonNull String name, @NonNull String ext) {
+        this(dir, name, ext, DEFAULT_MAX_FILE_SIZE, DEFAULT_MAX_DAYS, DEFAULT_DIR_QUOTA);
+    }
+
+    /**
+     * @param ext         日志文件的扩展名(包括点)
+     * @param maxFileSize 单个日志文件的最大字节数
+     * @param maxDays     归档保留的天数
+     * @param dirQuota    日志目录(包括当前文件、归档和其他模块的日志)的最大字节数
+     */
+    public LogRotator(@NonNull File dir, @NonNull String name, @NonNull String ext, long maxFileSize, int maxDays,
+                      long dirQuota) {
+        this.dir = dir;
+        this.name = name;
+        this.ext = ext;
+        this.maxFileSize = maxFileSize;
+        this.maxDays = maxDays;
+        this.dirQuota = dirQuota;
+        this.current = new File(dir, name + ext);
+        if (!dir.exists()) {
+            //noinspection ResultOfMethodCallIgnored
+            dir.mkdirs();
+        }
+        currentDay = current.exists() ? dayOf(current.lastModified()) : dayOf(System.currentTimeMillis());
+        /*上次进程退出前可能还有未压缩的归档*/
+        executor.execute(this::compressPending);
+    }
+
+    /**
+     * 写入{@param pendingBytes}字节之前调用，需要时先滚动当前文件
+     *
+     * @return 当前应写入的文件
+     */
+    public synchronized File prepare(long pendingBytes) {
+        int today = dayOf(System.currentTimeMillis());
+        if (current.exists() && current.length() > 0 &&
+                (today != currentDay || current.length() + pendingBytes > maxFileSize)) {
+            rotate();
+        }
+        currentDay = today;
+        return current;
+    }
+
+    /**
+     * 当前文件，不滚动
+     */
+    public synchronized File current() {
+        return current;
+    }
+
+    private void rotate() {
+        String time = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+        File segment = new File(dir, name + "-" + time + ext);
+        for (int i = 1; segment.exists() || new File(segment.getPath() + ARCHIVE_EXT).exists(); i++) {
+            segment = new File(dir, name + "-" + time + "-" + i + ext);
+        }
+        File closed = segment;
+        if (current.renameTo(closed)) {
+            executor.execute(() -> {
+                compress(closed);
+                clean();
+            });
+        }
+    }
+
+    private void compressPending() {
+        File[] files = dir.listFiles((d, fileName) -> fileName.startsWith(name + "-") && fileName.endsWith(ext));
+        if (files != null) {
+            for (File file : files) {
+                compress(file);
+            }
+        }
+        clean();
+    }
+
+    private void compress(File segment) {
+        File archive = new File(segment.getPath() + ARCHIVE_EXT);
+        try (InputStream is = new BufferedInputStream(new FileInputStream(segment));
+             OutputStream os = new GZIPOutputStream(new FileOutputStream(archive), BUFFER_LEN)) {
+            byte[] buffer = new byte[BUFFER_LEN];
+            int len;
+            while ((len = is.read(buffer, 0, BUFFER_LEN)) != -1) {
+                os.write(buffer, 0, len);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            //noinspection ResultOfMethodCallIgnored
+            archive.delete();
+            return;
+        }
+        //noinspection ResultOfMethodCallIgnored
+        segment.delete();
+    }
+
+    /**
+     * 先删除超过保留天数的归档，再从最旧的归档开始删除直到目录大小不超过配额
+     */
+    private void clean() {
+        File[] archives = dir.listFiles((d, fileName) -> fileName.startsWith(name + "-") &&
+                fileName.endsWith(ARCHIVE_EXT));
+        if (archives == null) {
+            return;
+        }
+        Arrays.sort(archives, (o1, o2) -> Long.compare(o1.lastModified(), o2.lastModified()));
+        long expire = System.currentTimeMillis() - maxDays * 24L * 60 * 60 * 1000;
+        long total = sizeOf(dir);
+        for (File archive : archives) {
+            if (archive.lastModified() >= expire && total <= dirQuota) {
+                break;
+            }
+            long length = archive.length();
+            if (archive.delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    private static long sizeOf(File file) {
+        if (file.isFile()) {
+            return file.length();
+        }
+        long size = 0;
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                size += sizeOf(child);
+            }
+        }
+        return size;
+    }
+
+    private static int dayOf(long timeMillis) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(timeMillis);
+        return calendar.get(Calendar.YEAR) * 10000 + (calendar.get(Calendar.MONTH) + 1) * 100 +
+                calendar.get(Calendar.DAY_OF_MONTH);
+    }
+}
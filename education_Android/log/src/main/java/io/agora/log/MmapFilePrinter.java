@@ -0,0 +1,247 @@
+package io.agora.log;
+
+import androidx.annotation.NonNull;
+
+import com.elvishew.xlog.flattener.Flattener2;
+import com.elvishew.xlog.printer.Printer;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import static com.elvishew.xlog.LogLevel.INFO;
+
+/**
+ * 基于mmap的异步日志Printer
+ * 调用方只把编码后的记录拷贝进映射内存(不做文件I/O)，由后台线程格式化并追加到日志文件；
+ * 映射内存由系统负责落盘，进程崩溃后下次初始化时会先把残留的记录写入日志文件；
+ * 记录写入日志文件并sync之后才从缓冲区中移除，崩溃时最多重复写入，不会丢失
+ */
+public class MmapFilePrinter implements Printer {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAGIC = 0x41474C48;
+    /**
+     * 头部: magic(int) + 保留(int) + 未落盘数据的起止位置(long，高32位为起点，低32位为终点)；
+     * 起止位置用一次写入更新，崩溃时不会只更新了一半
+     */
+    private static final int HEADER_LEN = 16;
+    private static final int POSITIONS = 8;
+    private static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+    private static final long FLUSH_INTERVAL_MS = 1000;
+
+    private final LogRotator rotator;
+    private final Flattener2 flattener;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    /**
+     * 数据超过此长度时立即唤醒后台线程
+     */
+    private final int flushThreshold;
+    private final Object lock = new Object();
+    /**
+     * 缓冲区写满时丢弃的条数，下次落盘时输出一条提示
+     */
+    private int dropped;
+    private final Thread thread;
+    private volatile boolean closed;
+
+    public MmapFilePrinter(@NonNull File mmapFile, @NonNull LogRotator rotator, @NonNull Flattener2 flattener)
+            throws IOException {
+        this(mmapFile, rotator, flattener, DEFAULT_BUFFER_SIZE);
+    }
+
+    public MmapFilePrinter(@NonNull File mmapFile, @NonNull LogRotator rotator, @NonNull Flattener2 flattener,
+                           int bufferSize) throws IOException {
+        this.rotator = rotator;
+        this.flattener = flattener;
+        this.capacity = bufferSize;
+        this.flushThreshold = bufferSize / 3;
+        try (RandomAccessFile raf = new RandomAccessFile(mmapFile, "rw")) {
+            raf.setLength(bufferSize);
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, bufferSize);
+        }
+        /*上次进程退出(或崩溃)前未落盘的记录*/
+        if (buffer.getInt(0) == MAGIC && validPositions(buffer.getLong(POSITIONS))) {
+            flush();
+        } else {
+            buffer.putInt(0, MAGIC);
+            buffer.putLong(POSITIONS, 0);
+        }
+        thread = new Thread(this::loop, "MmapFilePrinter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 记录格式: 总长度(int) + 时间(long) + level(int) + tag长度(int) + tag + msg
+     */
+    @Override
+    public void println(int logLevel, String tag, String msg) {
+        long timeMillis = System.currentTimeMillis();
+        byte[] tagBytes = tag == null ? new byte[0] : tag.getBytes(UTF_8);
+        byte[] msgBytes = msg == null ? new byte[0] : msg.getBytes(UTF_8);
+        int len = 4 + 8 + 4 + 4 + tagBytes.length + msgBytes.length;
+        if (closed) {
+            return;
+        }
+        synchronized (lock) {
+            long positions = buffer.getLong(POSITIONS);
+            int start = startOf(positions);
+            int end = endOf(positions);
+            if (HEADER_LEN + end + len > capacity) {
+                dropped++;
+                lock.notify();
+                return;
+            }
+            buffer.position(HEADER_LEN + end);
+            buffer.putInt(len).putLong(timeMillis).putInt(logLevel).putInt(tagBytes.length)
+                    .put(tagBytes).put(msgBytes);
+            /*最后更新终点，崩溃时不会读到写了一半的记录*/
+            buffer.putLong(POSITIONS, positionsOf(start, end + len));
+            if (end + len > flushThreshold) {
+                lock.notify();
+            }
+        }
+    }
+
+    private void loop() {
+        while (!closed) {
+            synchronized (lock) {
+                try {
+                    lock.wait(FLUSH_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+            flush();
+        }
+    }
+
+    /**
+     * 停止后台线程并把剩余的记录写入日志文件，之后的日志被忽略
+     */
+    public void close() {
+        closed = true;
+        thread.interrupt();
+        flush();
+    }
+
+    /**
+     * 把缓冲区内的记录拷贝出来，在锁外格式化并追加写入日志文件(需要时先滚动日志文件)，
+     * 写入并sync成功之后才把这部分记录从缓冲区中移除；写入失败时记录保留在缓冲区，下次重试
+     */
+    public synchronized void flush() {
+        byte[] data;
+        int droppedCount;
+        int start;
+        int end;
+        synchronized (lock) {
+            long positions = buffer.getLong(POSITIONS);
+            start = startOf(positions);
+            end = endOf(positions);
+            droppedCount = dropped;
+            dropped = 0;
+            if (start == end && droppedCount == 0) {
+                return;
+            }
+            data = new byte[end - start];
+            buffer.position(HEADER_LEN + start);
+            buffer.get(data);
+        }
+        File logFile = rotator.prepare(data.length);
+        try (FileOutputStream fos = new FileOutputStream(logFile, true)) {
+            OutputStream os = new BufferedOutputStream(fos);
+            writeRecords(data, os);
+            if (droppedCount > 0) {
+                os.write(flattener.flatten(System.currentTimeMillis(), INFO, "MmapFilePrinter",
+                        "dropped " + droppedCount + " log lines, buffer full").toString().getBytes(UTF_8));
+                os.write('\n');
+            }
+            os.flush();
+            fos.getFD().sync();
+        } catch (IOException e) {
+            e.printStackTrace();
+            synchronized (lock) {
+                dropped += droppedCount;
+            }
+            return;
+        }
+        commit(end);
+    }
+
+    /**
+     * 把起点移动到已写入日志文件的位置；剩余的记录不与起点之前的空间重叠时移到缓冲区开头。
+     * 每一步只用一次写入更新起止位置，任何时候崩溃缓冲区都是完整的
+     */
+    private void commit(int written) {
+        synchronized (lock) {
+            int end = endOf(buffer.getLong(POSITIONS));
+            int remaining = end - written;
+            if (remaining == 0) {
+                buffer.putLong(POSITIONS, 0);
+                return;
+            }
+            buffer.putLong(POSITIONS, positionsOf(written, end));
+            if (remaining <= written) {
+                byte[] rest = new byte[remaining];
+                buffer.position(HEADER_LEN + written);
+                buffer.get(rest);
+                buffer.position(HEADER_LEN);
+                buffer.put(rest);
+                buffer.putLong(POSITIONS, positionsOf(0, remaining));
+            }
+        }
+    }
+
+    /**
+     * 映射文件可能已损坏，起止位置不能超出缓冲区
+     */
+    private boolean validPositions(long positions) {
+        int start = startOf(positions);
+        int end = endOf(positions);
+        return start >= 0 && start <= end && HEADER_LEN + end <= capacity;
+    }
+
+    private static long positionsOf(int start, int end) {
+        return ((long) start << 32) | (end & 0xffffffffL);
+    }
+
+    private static int startOf(long positions) {
+        return (int) (positions >>> 32);
+    }
+
+    private static int endOf(long positions) {
+        return (int) positions;
+    }
+
+    private void writeRecords(byte[] data, OutputStream os) throws IOException {
+        ByteBuffer records = ByteBuffer.wrap(data);
+        while (records.remaining() >= 20) {
+            int start = records.position();
+            int len = records.getInt();
+            if (len < 20 || start + len > data.length) {
+                /*数据损坏，丢弃剩余部分*/
+                return;
+            }
+            long timeMillis = records.getLong();
+            int level = records.getInt();
+            int tagLen = records.getInt();
+            int msgLen = len - 20 - tagLen;
+            if (tagLen < 0 || msgLen < 0) {
+                return;
+            }
+            String tag = new String(data, records.position(), tagLen, UTF_8);
+            String msg = new String(data, records.position() + tagLen, msgLen, UTF_8);
+            records.position(start + len);
+            os.write(flattener.flatten(timeMillis, level, tag, msg).toString().getBytes(UTF_8));
+            os.write('\n');
+        }
+    }
+}
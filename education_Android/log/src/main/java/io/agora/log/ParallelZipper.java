@@ -0,0 +1,578 @@
+package io.agora.log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 多线程zip压缩
+ * 每个文件切成固定大小的段，各段在线程池中独立deflate(以前一段末尾的32KB作为字典)，再按提交顺序拼接成条目的数据；
+ * 同时在压缩中的段数受线程数限制，内存占用与文件大小无关；相同的输入和压缩参数得到相同的zip数据。
+ * 已经压缩过的归档(.gz)不再deflate，直接存储。
+ * 每个文件只打开一次，长度也只在打开时读取一次，各段通过同一个FileChannel按位置并发读取
+ */
+public class ParallelZipper {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_LEN = 8192;
+    /**
+     * 每段的输入长度
+     */
+    static final int SEGMENT_LEN = 128 * 1024;
+    /**
+     * deflate的窗口大小，也是每段使用的字典长度
+     */
+    private static final int DICT_LEN = 32 * 1024;
+    private static final int LOCAL_HEADER_SIG = 0x04034b50;
+    private static final int DATA_DESCRIPTOR_SIG = 0x08074b50;
+    private static final int CENTRAL_HEADER_SIG = 0x02014b50;
+    private static final int END_SIG = 0x06054b50;
+    private static final int VERSION = 20;
+    /**
+     * crc和大小在数据之后的data descriptor中
+     */
+    private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+    /**
+     * 文件名使用UTF-8编码
+     */
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+
+    /**
+     * 要压缩的条目；file为null时表示目录条目
+     */
+    public static class Source {
+        final String name;
+        final File file;
+        final long start;
+        final long end;
+        final long time;
+        final String comment;
+
+        public Source(@NonNull String name, @Nullable File file, long start, long end, long time,
+                      @Nullable String comment) {
+            this.name = name;
+            this.file = file;
+            this.start = start;
+            this.end = end;
+            this.time = time;
+            this.comment = comment;
+        }
+    }
+
+    /**
+     * 一次压缩的统计数据
+     */
+    public static class Stats {
+        public long inputBytes;
+        public long outputBytes;
+        public long elapsedMs;
+        public int entryCount;
+
+        /**
+         * 按输入数据计算的吞吐量(MB/s)
+         */
+        public double throughput() {
+            return elapsedMs <= 0 ? 0 : inputBytes / 1024.0 / 1024.0 / (elapsedMs / 1000.0);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("entries:%d, in:%d, out:%d, %dms, %.2fMB/s",
+                    entryCount, inputBytes, outputBytes, elapsedMs, throughput());
+        }
+    }
+
+    /**
+     * 一个条目，数据写出后只保留中央目录需要的信息；只在调用zip的线程中修改
+     */
+    private static class Entry {
+        final Source source;
+        /**
+         * 文件的通道，从第一段提交到最后一段写出期间打开；目录条目为null
+         */
+        FileChannel channel;
+        /**
+         * 打开文件时确定的数据末尾，不超过当时的文件长度
+         */
+        long end;
+        byte[] name;
+        byte[] comment;
+        int method;
+        int flags = FLAG_UTF8;
+        long crc;
+        long size;
+        long compressedSize;
+        int dosTime;
+        long offset;
+
+        Entry(Source source) {
+            this.source = source;
+        }
+    }
+
+    /**
+     * 条目的一段数据，在线程池中生成
+     */
+    private static class Segment {
+        final Entry entry;
+        final long start;
+        final long end;
+        final boolean first;
+        final boolean last;
+        /**
+         * deflate后的数据；存储的条目为null，由写线程从文件拷贝
+         */
+        byte[] data;
+        long crc;
+        long length;
+
+        Segment(Entry entry, long start, long end, boolean first, boolean last) {
+            this.entry = entry;
+            this.start = start;
+            this.end = end;
+            this.first = first;
+            this.last = last;
+        }
+    }
+
+    private final int threads;
+    private final int level;
+    private final int strategy;
+
+    /**
+     * @param threads  线程数
+     * @param level    压缩级别，见{@link Deflater#setLevel(int)}
+     * @param strategy 压缩策略，见{@link Deflater#setStrategy(int)}
+     */
+    public ParallelZipper(int threads, int level, int strategy) {
+        this.threads = Math.max(1, threads);
+        this.level = level;
+        this.strategy = strategy;
+    }
+
+    /**
+     * 把{@param sources}按顺序压缩写入{@param os}(不关闭os)
+     */
+    @NonNull
+    public Stats zip(@NonNull List<Source> sources, @NonNull OutputStream os) throws IOException {
+        long startTime = System.currentTimeMillis();
+        Stats stats = new Stats();
+        CountingOutputStream out = new CountingOutputStream(os);
+        List<Entry> written = new ArrayList<>();
+        Deque<Future<Segment>> inFlight = new ArrayDeque<>();
+        List<Entry> opened = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_LEN);
+        try {
+            for (Source source : sources) {
+                Entry entry = newEntry(source);
+                if (entry.channel != null) {
+                    opened.add(entry);
+                }
+                for (Segment segment : split(entry)) {
+                    if (inFlight.size() >= threads * 2) {
+                        writeSegment(await(inFlight.poll()), out, written, stats, buffer);
+                    }
+                    inFlight.add(executor.submit(() -> compress(segment)));
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                writeSegment(await(inFlight.poll()), out, written, stats, buffer);
+            }
+        } finally {
+            executor.shutdownNow();
+            for (Entry entry : opened) {
+                closeChannel(entry);
+            }
+        }
+        writeCentral(written, out);
+        out.flush();
+        stats.entryCount = written.size();
+        stats.outputBytes = out.count;
+        stats.elapsedMs = System.currentTimeMillis() - startTime;
+        return stats;
+    }
+
+    private static Entry newEntry(Source source) throws IOException {
+        Entry entry = new Entry(source);
+        entry.end = source.end;
+        if (source.file != null) {
+            entry.channel = new RandomAccessFile(source.file, "r").getChannel();
+            try {
+                entry.end = Math.max(source.start, Math.min(source.end, entry.channel.size()));
+            } catch (IOException e) {
+                closeChannel(entry);
+                throw e;
+            }
+        }
+        entry.name = source.name.getBytes(UTF_8);
+        entry.comment = source.comment == null ? new byte[0] : source.comment.getBytes(UTF_8);
+        entry.dosTime = toDosTime(source.time);
+        if (source.file == null || source.name.endsWith(LogRotator.ARCHIVE_EXT)) {
+            entry.method = METHOD_STORED;
+        } else {
+            entry.method = METHOD_DEFLATED;
+            entry.flags |= FLAG_DATA_DESCRIPTOR;
+        }
+        return entry;
+    }
+
+    /**
+     * 目录和存储的条目只有一段；deflate的条目按{@link #SEGMENT_LEN}切分，空文件也有一段
+     */
+    private static List<Segment> split(Entry entry) {
+        List<Segment> segments = new ArrayList<>();
+        Source source = entry.source;
+        if (entry.method == METHOD_STORED) {
+            segments.add(new Segment(entry, source.start, entry.end, true, true));
+            return segments;
+        }
+        long start = source.start;
+        do {
+            long end = Math.min(entry.end, start + SEGMENT_LEN);
+            segments.add(new Segment(entry, start, end, start == source.start, end >= entry.end));
+            start = end;
+        } while (start < entry.end);
+        return segments;
+    }
+
+    private Segment compress(Segment segment) throws IOException {
+        Entry entry = segment.entry;
+        Source source = entry.source;
+        if (entry.channel == null) {
+            return segment;
+        }
+        CRC32 crc32 = new CRC32();
+        if (entry.method == METHOD_STORED) {
+            /*只计算crc，数据由写线程拷贝*/
+            segment.length = copyRange(entry.channel, segment.start, segment.end, null, crc32,
+                    ByteBuffer.allocate(BUFFER_LEN));
+            segment.crc = crc32.getValue();
+            return segment;
+        }
+        byte[] dictionary = new byte[(int) (segment.start - Math.max(source.start, segment.start - DICT_LEN))];
+        byte[] input = new byte[(int) (segment.end - segment.start)];
+        readFully(entry.channel, segment.start - dictionary.length, dictionary);
+        int length = readFully(entry.channel, segment.start, input);
+        crc32.update(input, 0, length);
+        segment.crc = crc32.getValue();
+        segment.length = length;
+
+        Deflater deflater = new Deflater(level, true);
+        deflater.setStrategy(strategy);
+        ByteArrayOutputStream data = new ByteArrayOutputStream(length / 2 + 64);
+        byte[] output = new byte[BUFFER_LEN];
+        try {
+            if (dictionary.length > 0) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(input, 0, length);
+            if (segment.last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    data.write(output, 0, deflater.deflate(output));
+                }
+            } else {
+                /*不是最后一段时以非结束块对齐到字节，各段的数据可以直接拼接*/
+                int len;
+                do {
+                    len = deflater.deflate(output, 0, output.length, Deflater.SYNC_FLUSH);
+                    data.write(output, 0, len);
+                } while (len == output.length);
+            }
+        } finally {
+            deflater.end();
+        }
+        segment.data = data.toByteArray();
+        return segment;
+    }
+
+    private void writeSegment(Segment segment, CountingOutputStream out, List<Entry> written, Stats stats,
+                              ByteBuffer buffer) throws IOException {
+        Entry entry = segment.entry;
+        if (segment.first) {
+            if (out.count > 0xffffffffL) {
+                throw new IOException("zip64 is not supported");
+            }
+            entry.offset = out.count;
+            entry.crc = segment.crc;
+            if (entry.method == METHOD_STORED) {
+                entry.size = segment.length;
+                entry.compressedSize = segment.length;
+            }
+            writeLocal(entry, out);
+        } else {
+            entry.crc = crc32Combine(entry.crc, segment.crc, segment.length);
+        }
+        if (entry.method == METHOD_STORED) {
+            if (entry.channel != null) {
+                long copied = copyRange(entry.channel, segment.start, segment.end, out, null, buffer);
+                if (copied != segment.length) {
+                    throw new IOException(entry.source.name + " changed while zipping");
+                }
+            }
+        } else {
+            out.write(segment.data);
+            entry.size += segment.length;
+            entry.compressedSize += segment.data.length;
+            segment.data = null;
+        }
+        if (segment.last) {
+            if (entry.size > 0xffffffffL || entry.compressedSize > 0xffffffffL) {
+                throw new IOException("zip64 is not supported");
+            }
+            if ((entry.flags & FLAG_DATA_DESCRIPTOR) != 0) {
+                writeInt(out, DATA_DESCRIPTOR_SIG);
+                writeInt(out, (int) entry.crc);
+                writeInt(out, (int) entry.compressedSize);
+                writeInt(out, (int) entry.size);
+            }
+            stats.inputBytes += entry.size;
+            written.add(entry);
+            /*之前的段都已写出，不会再有读取*/
+            closeChannel(entry);
+        }
+    }
+
+    /**
+     * 使用data descriptor时crc和大小写0
+     */
+    private static void writeLocal(Entry entry, CountingOutputStream out) throws IOException {
+        boolean descriptor = (entry.flags & FLAG_DATA_DESCRIPTOR) != 0;
+        writeInt(out, LOCAL_HEADER_SIG);
+        writeShort(out, VERSION);
+        writeShort(out, entry.flags);
+        writeShort(out, entry.method);
+        writeInt(out, entry.dosTime);
+        writeInt(out, descriptor ? 0 : (int) entry.crc);
+        writeInt(out, descriptor ? 0 : (int) entry.compressedSize);
+        writeInt(out, descriptor ? 0 : (int) entry.size);
+        writeShort(out, entry.name.length);
+        writeShort(out, 0);
+        out.write(entry.name);
+    }
+
+    private void writeCentral(List<Entry> written, CountingOutputStream out) throws IOException {
+        long centralOffset = out.count;
+        for (Entry entry : written) {
+            writeInt(out, CENTRAL_HEADER_SIG);
+            writeShort(out, VERSION);
+            writeShort(out, VERSION);
+            writeShort(out, entry.flags);
+            writeShort(out, entry.method);
+            writeInt(out, entry.dosTime);
+            writeInt(out, (int) entry.crc);
+            writeInt(out, (int) entry.compressedSize);
+            writeInt(out, (int) entry.size);
+            writeShort(out, entry.name.length);
+            writeShort(out, 0);
+            writeShort(out, entry.comment.length);
+            writeShort(out, 0);
+            writeShort(out, 0);
+            writeInt(out, 0);
+            writeInt(out, (int) entry.offset);
+            out.write(entry.name);
+            out.write(entry.comment);
+        }
+        long centralSize = out.count - centralOffset;
+        writeInt(out, END_SIG);
+        writeShort(out, 0);
+        writeShort(out, 0);
+        writeShort(out, written.size());
+        writeShort(out, written.size());
+        writeInt(out, (int) centralSize);
+        writeInt(out, (int) centralOffset);
+        writeShort(out, 0);
+    }
+
+    private static Segment await(Future<Segment> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    /**
+     * 从文件中拷贝[start, end)到{@param out}并更新{@param crc32}(都可以为null)，文件变短时只拷贝到文件末尾；
+     * 按位置读取，不改变通道的位置，可以在多个线程中同时使用同一个通道
+     *
+     * @return 拷贝的字节数
+     */
+    private static long copyRange(FileChannel channel, long start, long end, @Nullable OutputStream out,
+                                  @Nullable CRC32 crc32, ByteBuffer buffer) throws IOException {
+        long copied = 0;
+        long position = start;
+        byte[] array = buffer.array();
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int len = channel.read(buffer, position);
+            if (len == -1) {
+                break;
+            }
+            if (out != null) {
+                out.write(array, 0, len);
+            }
+            if (crc32 != null) {
+                crc32.update(array, 0, len);
+            }
+            copied += len;
+            position += len;
+        }
+        return copied;
+    }
+
+    /**
+     * 从{@param position}开始读取到填满{@param buffer}或文件末尾，不改变通道的位置
+     *
+     * @return 读取的字节数
+     */
+    private static int readFully(FileChannel channel, long position, byte[] buffer) throws IOException {
+        ByteBuffer target = ByteBuffer.wrap(buffer);
+        while (target.hasRemaining()) {
+            if (channel.read(target, position + target.position()) <= 0) {
+                break;
+            }
+        }
+        return target.position();
+    }
+
+    private static void closeChannel(Entry entry) {
+        if (entry.channel != null) {
+            try {
+                entry.channel.close();
+            } catch (IOException ignored) {
+            }
+            entry.channel = null;
+        }
+    }
+
+    /**
+     * 由两段数据各自的crc得到拼接后的crc(zlib的crc32_combine)
+     *
+     * @param length2 第二段数据的长度
+     */
+    static long crc32Combine(long crc1, long crc2, long length2) {
+        if (length2 <= 0) {
+            return crc1;
+        }
+        long[] even = new long[32];
+        long[] odd = new long[32];
+        /*一个0比特的算子*/
+        odd[0] = 0xedb88320L;
+        long row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        gf2MatrixSquare(even, odd);
+        gf2MatrixSquare(odd, even);
+        do {
+            gf2MatrixSquare(even, odd);
+            if ((length2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(even, crc1);
+            }
+            length2 >>= 1;
+            if (length2 == 0) {
+                break;
+            }
+            gf2MatrixSquare(odd, even);
+            if ((length2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(odd, crc1);
+            }
+            length2 >>= 1;
+        } while (length2 != 0);
+        return crc1 ^ crc2;
+    }
+
+    private static long gf2MatrixTimes(long[] matrix, long vector) {
+        long sum = 0;
+        int i = 0;
+        while (vector != 0) {
+            if ((vector & 1) != 0) {
+                sum ^= matrix[i];
+            }
+            vector >>>= 1;
+            i++;
+        }
+        return sum;
+    }
+
+    private static void gf2MatrixSquare(long[] square, long[] matrix) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = gf2MatrixTimes(matrix, matrix[n]);
+        }
+    }
+
+    private static int toDosTime(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21 |
+                calendar.get(Calendar.DAY_OF_MONTH) << 16 | calendar.get(Calendar.HOUR_OF_DAY) << 11 |
+                calendar.get(Calendar.MINUTE) << 5 | calendar.get(Calendar.SECOND) >> 1;
+    }
+
+    private static void writeShort(OutputStream out, int value) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >>> 8) & 0xff);
+    }
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        writeShort(out, value & 0xffff);
+        writeShort(out, (value >>> 16) & 0xffff);
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private final OutputStream out;
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
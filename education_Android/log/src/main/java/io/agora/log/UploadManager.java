@@ -5,25 +5,35 @@ import android.content.Context;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import com.alibaba.sdk.android.oss.ClientException;
 import com.alibaba.sdk.android.oss.OSS;
 import com.alibaba.sdk.android.oss.OSSClient;
 import com.alibaba.sdk.android.oss.ServiceException;
-import com.alibaba.sdk.android.oss.callback.OSSCompletedCallback;
 import com.alibaba.sdk.android.oss.common.auth.OSSCredentialProvider;
 import com.alibaba.sdk.android.oss.common.auth.OSSStsTokenCredentialProvider;
-import com.alibaba.sdk.android.oss.model.PutObjectRequest;
-import com.alibaba.sdk.android.oss.model.PutObjectResult;
+import com.alibaba.sdk.android.oss.model.AbortMultipartUploadRequest;
+import com.alibaba.sdk.android.oss.model.CompleteMultipartUploadRequest;
+import com.alibaba.sdk.android.oss.model.CompleteMultipartUploadResult;
+import com.alibaba.sdk.android.oss.model.InitiateMultipartUploadRequest;
+import com.alibaba.sdk.android.oss.model.PartETag;
+import com.alibaba.sdk.android.oss.model.UploadPartRequest;
+import com.alibaba.sdk.android.oss.model.UploadPartResult;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import io.agora.base.callback.Callback;
 import io.agora.base.callback.ThrowableCallback;
@@ -37,6 +47,25 @@ public class UploadManager {
     public static final String ZIP = "zip";
     public static final String LOG = "log";
     private static final String callbackPath = "/monitor/v1/log/oss/callback";
+    /**
+     * 分片大小(OSS要求除最后一个分片外不小于100KB)
+     */
+    private static final int PART_SIZE = 256 * 1024;
+    private static final String MANIFEST_NAME = "logupload.json";
+    private static final int MAX_RETRY = 3;
+    private static final long RETRY_BASE_DELAY_MS = 2000;
+    /**
+     * uploadId不存在(已完成、已取消或被生命周期规则清理)，不能续传
+     */
+    private static final String NO_SUCH_UPLOAD = "NoSuchUpload";
+    /**
+     * 压缩和上传共用的后台线程
+     */
+    private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "LogUpload");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public static class UploadParam {
         public String appId;
@@ -72,6 +101,19 @@ public class UploadManager {
     public static void upload(@NonNull Context context, @NonNull String appSecret,
                               @NonNull String host, @NonNull String uploadPath,
                               @NonNull UploadParam param, @Nullable Callback<String> callback) {
+        upload(context, appSecret, host, uploadPath, param, null, callback);
+    }
+
+    /**
+     * @param prepare 在上传线程中先执行(例如把内存中的记录写入uploadPath)，早于压缩和上传；可以为null
+     */
+    public static void upload(@NonNull Context context, @NonNull String appSecret,
+                              @NonNull String host, @NonNull String uploadPath,
+                              @NonNull UploadParam param, @Nullable Runnable prepare,
+                              @Nullable Callback<String> callback) {
+        if (prepare != null) {
+            executor.execute(prepare);
+        }
         LogService service = RetrofitManager.instance().getService(host, LogService.class);
         long timeStamp = System.currentTimeMillis();
         String sign = sign(appSecret, param, timeStamp);
@@ -81,9 +123,7 @@ public class UploadManager {
                     public void onSuccess(ResponseBody<LogParamsRes> res) {
                         res.data.callbackUrl = service.logStsCallback(host).request().url()
                                 .toString().concat(callbackPath);
-                        new Thread(() -> {
-                            uploadByOss(context, uploadPath, res.data, callback);
-                        }).start();
+                        executor.execute(() -> uploadWithRetry(context, uploadPath, res.data, callback, 0));
                     }
 
                     @Override
@@ -95,53 +135,177 @@ public class UploadManager {
                 }));
     }
 
-    private static void uploadByOss(@NonNull Context context, @NonNull String uploadPath, @NonNull LogParamsRes param, @Nullable Callback<String> callback) {
+    /**
+     * 上传失败时按指数退避重试，重试时复用同一个分片上传(已完成的分片不再上传)；
+     * 重试用完后取消该分片上传并从清单中删除，下次上传重新开始，避免一个无法完成的uploadId被一直续传
+     */
+    private static void uploadWithRetry(@NonNull Context context, @NonNull String uploadPath,
+                                        @NonNull LogParamsRes param, @Nullable Callback<String> callback,
+                                        int attempt) {
         try {
-            File file = new File(new File(uploadPath).getParentFile(), "temp.zip");
-            ZipUtils.zipFile(new File(uploadPath), file);
-
-            // 构造上传请求。
-            PutObjectRequest put = new PutObjectRequest(param.bucketName, param.ossKey, file.getAbsolutePath());
-            put.setCallbackParam(new HashMap<String, String>() {{
-                put("callbackUrl", param.callbackUrl);
-                put("callbackBodyType", param.callbackContentType);
-                put("callbackBody", param.callbackBody);
-            }});
-            // 推荐使用OSSAuthCredentialsProvider。token过期可以及时更新。
-            OSSCredentialProvider credentialProvider = new OSSStsTokenCredentialProvider(param.accessKeyId,
-                    param.accessKeySecret, param.securityToken);
-            OSS oss = new OSSClient(context, param.ossEndpoint, credentialProvider);
-            oss.asyncPutObject(put, new OSSCompletedCallback<PutObjectRequest, PutObjectResult>() {
-                @Override
-                public void onSuccess(PutObjectRequest request, PutObjectResult result) {
-                    //noinspection ResultOfMethodCallIgnored
-                    file.delete();
-                    if (callback != null) {
-                        String body = result.getServerCallbackReturnBody();
-                        JsonObject json = JsonParser.parseString(body).getAsJsonObject();
-                        callback.onSuccess(json.get("data").getAsString());
-                    }
-                }
-
-                @Override
-                public void onFailure(PutObjectRequest request, ClientException clientException, ServiceException serviceException) {
-                    //noinspection ResultOfMethodCallIgnored
-                    file.delete();
-                    if (callback instanceof ThrowableCallback) {
-                        if (clientException != null) {
-                            ((ThrowableCallback<String>) callback).onFailure(clientException);
-                        } else if (serviceException != null) {
-                            ((ThrowableCallback<String>) callback).onFailure(serviceException);
-                        } else {
-                            ((ThrowableCallback<String>) callback).onFailure(null);
-                        }
-                    }
-                }
-            });
+            String serialNumber = uploadByOss(context, uploadPath, param);
+            if (callback != null) {
+                callback.onSuccess(serialNumber);
+            }
         }
         catch (Exception e) {
             e.printStackTrace();
+            if (attempt < MAX_RETRY) {
+                executor.schedule(() -> uploadWithRetry(context, uploadPath, param, callback, attempt + 1),
+                        RETRY_BASE_DELAY_MS << attempt, TimeUnit.MILLISECONDS);
+                return;
+            }
+            UploadManifest manifest = loadManifest(uploadPath);
+            if (manifest.pending != null) {
+                abortQuietly(newOss(context, param), manifest.pending);
+                manifest.pending = null;
+                manifest.save();
+            }
+            if (callback instanceof ThrowableCallback) {
+                ((ThrowableCallback<String>) callback).onFailure(e);
+            }
+        }
+    }
+
+    private static UploadManifest loadManifest(@NonNull String uploadPath) {
+        File dir = new File(uploadPath);
+        File manifestDir = dir.getParentFile() != null ? dir.getParentFile() : dir;
+        return UploadManifest.load(new File(manifestDir, MANIFEST_NAME));
+    }
+
+    private static OSS newOss(@NonNull Context context, @NonNull LogParamsRes param) {
+        // 推荐使用OSSAuthCredentialsProvider。token过期可以及时更新。
+        OSSCredentialProvider credentialProvider = new OSSStsTokenCredentialProvider(param.accessKeyId,
+                param.accessKeySecret, param.securityToken);
+        return new OSSClient(context, param.ossEndpoint, credentialProvider);
+    }
+
+    /**
+     * 异常或其原因是否为OSS返回的NoSuchUpload(分片上传时的异常可能被压缩流包装)
+     */
+    private static boolean isNoSuchUpload(@Nullable Throwable throwable) {
+        for (Throwable t = throwable; t != null; t = t.getCause()) {
+            if (t instanceof ServiceException && NO_SUCH_UPLOAD.equals(((ServiceException) t).getErrorCode())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 只上传清单中记录的位置之后新增的日志；清单中有未完成的分片上传且日志数据未变时，从已完成的分片之后续传
+     *
+     * @return 日志序列号
+     */
+    private static String uploadByOss(@NonNull Context context, @NonNull String uploadPath,
+                                      @NonNull LogParamsRes param) throws Exception {
+        File dir = new File(uploadPath);
+        UploadManifest manifest = loadManifest(uploadPath);
+        OSS oss = newOss(context, param);
+
+        UploadManifest.Pending pending = manifest.pending;
+        if (pending != null && (!pending.matches(param.bucketName, param.ossKey) || !pending.isSourceValid(dir))) {
+            // 不能续传，先取消之前的分片上传，否则已上传的分片会一直留在OSS上
+            abortQuietly(oss, pending);
+            pending = null;
+            manifest.pending = null;
+            manifest.save();
+        }
+        if (pending == null) {
+            Map<String, UploadManifest.Range> ranges = manifest.newRanges(dir);
+            if (ranges.isEmpty() && manifest.lastSerialNumber != null) {
+                // 没有新增的日志
+                return manifest.lastSerialNumber;
+            }
+            pending = new UploadManifest.Pending();
+            pending.bucketName = param.bucketName;
+            pending.ossKey = param.ossKey;
+            pending.entryTime = System.currentTimeMillis();
+            pending.ranges = ranges;
+            pending.uploadId = oss.initMultipartUpload(
+                    new InitiateMultipartUploadRequest(param.bucketName, param.ossKey)).getUploadId();
+            manifest.pending = pending;
+            manifest.save();
+        }
+
+        try {
+            return uploadParts(oss, dir, manifest, pending, param);
+        } catch (Exception e) {
+            if (isNoSuchUpload(e)) {
+                // uploadId已不存在(例如complete成功后进程在写清单前退出)，不能续传，下次重试重新开始
+                manifest.pending = null;
+                manifest.save();
+            }
+            throw e;
+        }
+    }
+
+    private static String uploadParts(@NonNull OSS oss, @NonNull File dir, @NonNull UploadManifest manifest,
+                                      @NonNull UploadManifest.Pending current, @NonNull LogParamsRes param)
+            throws Exception {
+        Map<String, long[]> ranges = new HashMap<>();
+        for (Map.Entry<String, UploadManifest.Range> entry : current.ranges.entrySet()) {
+            ranges.put(entry.getKey(), new long[]{entry.getValue().start, entry.getValue().end});
         }
+        // 分片上传：边压缩边上传，不再生成临时的zip文件
+        new ZipUploadPipeline(PART_SIZE, (partNumber, data) -> {
+            UploadManifest.Part done = current.findPart(partNumber);
+            if (done != null) {
+                // 续传：已上传的分片(ETag为分片内容的MD5)
+                if (done.etag.equalsIgnoreCase(md5Hex(data))) {
+                    return;
+                }
+                abortQuietly(oss, current);
+                manifest.pending = null;
+                manifest.save();
+                throw new IOException("part " + partNumber + " mismatch, restart upload");
+            }
+            UploadPartRequest part = new UploadPartRequest(current.bucketName, current.ossKey,
+                    current.uploadId, partNumber);
+            part.setPartContent(data);
+            UploadPartResult result = oss.uploadPart(part);
+            current.parts.add(new UploadManifest.Part(partNumber, result.getETag()));
+            manifest.save();
+        }).zipAndUpload(os -> {
+            ParallelZipper.Stats stats = ZipUtils.zipRanges(dir, ranges, current.entryTime, os);
+            new LogManager("UploadManager").i("zip logs: " + stats);
+        });
+
+        List<PartETag> partETags = new ArrayList<>();
+        for (UploadManifest.Part part : current.parts) {
+            partETags.add(new PartETag(part.number, part.etag));
+        }
+        CompleteMultipartUploadRequest complete = new CompleteMultipartUploadRequest(current.bucketName,
+                current.ossKey, current.uploadId, partETags);
+        complete.setCallbackParam(new HashMap<String, String>() {{
+            put("callbackUrl", param.callbackUrl);
+            put("callbackBodyType", param.callbackContentType);
+            put("callbackBody", param.callbackBody);
+        }});
+        CompleteMultipartUploadResult result = oss.completeMultipartUpload(complete);
+        String body = result.getServerCallbackReturnBody();
+        JsonObject json = JsonParser.parseString(body).getAsJsonObject();
+        String serialNumber = json.get("data").getAsString();
+        manifest.commit(serialNumber);
+        return serialNumber;
+    }
+
+    /**
+     * 取消分片上传并删除已上传的分片；失败时只记录日志，由OSS的生命周期规则兜底
+     */
+    private static void abortQuietly(@NonNull OSS oss, @NonNull UploadManifest.Pending pending) {
+        try {
+            oss.abortMultipartUpload(new AbortMultipartUploadRequest(pending.bucketName, pending.ossKey,
+                    pending.uploadId));
+        } catch (Exception e) {
+            new LogManager("UploadManager").w("abort multipart upload " + pending.uploadId + " failed: "
+                    + e.getMessage());
+        }
+    }
+
+    private static String md5Hex(byte[] data) throws NoSuchAlgorithmException {
+        byte[] digest = MessageDigest.getInstance("md5").digest(data);
+        return String.format("%032x", new BigInteger(1, digest));
     }
 
 //    private static String sign(String appSecret, UploadParam param, long timeStamp) {
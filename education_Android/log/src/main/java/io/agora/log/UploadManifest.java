@@ -0,0 +1,301 @@
+package io.agora.log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.gson.Gson;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 日志上传的本地清单
+ * 记录每个日志文件已上传到的位置(offset)，以及进行中的分片上传(uploadId和已完成的分片)，
+ * 用于只上传新增的日志以及在失败或进程重启后续传。
+ * 日志文件被{@link LogRotator}滚动改名或压缩后，按内容找到新的文件，记录跟着移过去
+ */
+class UploadManifest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * 计算文件指纹时最多读取的字节数；指纹变化说明文件被替换(滚动或重写)，需要从头上传
+     */
+    private static final int FINGERPRINT_LEN = 1024;
+
+    /**
+     * fingerprint为文件前min(offset, FINGERPRINT_LEN)字节的CRC32
+     */
+    static class FileState {
+        long offset;
+        long fingerprint;
+    }
+
+    /**
+     * fingerprint为文件前min(end, FINGERPRINT_LEN)字节的CRC32
+     */
+    static class Range {
+        long start;
+        long end;
+        long fingerprint;
+    }
+
+    static class Part {
+        int number;
+        String etag;
+
+        Part(int number, String etag) {
+            this.number = number;
+            this.etag = etag;
+        }
+    }
+
+    static class Pending {
+        String bucketName;
+        String ossKey;
+        String uploadId;
+        /**
+         * zip条目的时间，续传时重新生成的zip数据需要与上次完全一致
+         */
+        long entryTime;
+        Map<String, Range> ranges = new HashMap<>();
+        List<Part> parts = new ArrayList<>();
+
+        boolean matches(@NonNull String bucketName, @NonNull String ossKey) {
+            return bucketName.equals(this.bucketName) && ossKey.equals(this.ossKey);
+        }
+
+        /**
+         * 续传时需要的日志数据是否仍然存在且未被替换
+         */
+        boolean isSourceValid(@NonNull File dir) {
+            for (Map.Entry<String, Range> entry : ranges.entrySet()) {
+                File file = new File(dir, entry.getKey());
+                Range range = entry.getValue();
+                if (!file.isFile() || file.length() < range.end ||
+                        fingerprint(file, range.end) != range.fingerprint) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Nullable
+        Part findPart(int number) {
+            for (Part part : parts) {
+                if (part.number == number) {
+                    return part;
+                }
+            }
+            return null;
+        }
+    }
+
+    Map<String, FileState> files = new HashMap<>();
+    Pending pending;
+    String lastSerialNumber;
+
+    private transient File file;
+
+    @NonNull
+    static UploadManifest load(@NonNull File file) {
+        UploadManifest manifest = null;
+        if (file.isFile()) {
+            try (Reader reader = new InputStreamReader(new FileInputStream(file), UTF_8)) {
+                manifest = new Gson().fromJson(reader, UploadManifest.class);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        if (manifest == null) {
+            manifest = new UploadManifest();
+        }
+        if (manifest.files == null) {
+            manifest.files = new HashMap<>();
+        }
+        manifest.file = file;
+        return manifest;
+    }
+
+    /**
+     * 先写临时文件再重命名，避免进程在写入过程中退出导致清单损坏
+     */
+    synchronized void save() {
+        File temp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), UTF_8)) {
+            new Gson().toJson(this, writer);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+        }
+    }
+
+    /**
+     * 计算{@param dir}下每个文件尚未上传的范围
+     */
+    @NonNull
+    Map<String, Range> newRanges(@NonNull File dir) {
+        Map<String, Range> ranges = new HashMap<>();
+        File[] list = dir.listFiles();
+        if (list == null) {
+            return ranges;
+        }
+        /*原文件已被删除、滚动改名或重写的记录，之后在没有记录的文件中按内容查找*/
+        Map<String, FileState> moved = new HashMap<>();
+        for (Iterator<Map.Entry<String, FileState>> iterator = files.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<String, FileState> entry = iterator.next();
+            File child = new File(dir, entry.getKey());
+            FileState state = entry.getValue();
+            if (!child.isFile() || child.length() < state.offset ||
+                    fingerprint(child, state.offset) != state.fingerprint) {
+                moved.put(entry.getKey(), state);
+                iterator.remove();
+            }
+        }
+        for (File child : list) {
+            if (!child.isFile()) {
+                continue;
+            }
+            long length = child.length();
+            FileState state = files.get(child.getName());
+            if (state == null) {
+                state = followRotation(child, moved);
+                if (state != null) {
+                    files.put(child.getName(), state);
+                }
+            }
+            long start = state != null ? state.offset : 0;
+            if (length > start) {
+                Range range = new Range();
+                range.start = start;
+                range.end = length;
+                range.fingerprint = fingerprint(child, length);
+                ranges.put(child.getName(), range);
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * 在原文件已不存在的记录中找出内容是{@param file}开头的那个：滚动后的文件沿用其位置；
+     * 压缩后的归档不能从中间开始上传，只有原文件已全部上传时才把整个归档记为已上传
+     */
+    @Nullable
+    private static FileState followRotation(@NonNull File file, @NonNull Map<String, FileState> moved) {
+        String name = file.getName();
+        boolean archive = name.endsWith(LogRotator.ARCHIVE_EXT);
+        for (Iterator<Map.Entry<String, FileState>> iterator = moved.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<String, FileState> entry = iterator.next();
+            FileState state = entry.getValue();
+            if (state.offset == 0 || !name.startsWith(stemOf(entry.getKey()))) {
+                continue;
+            }
+            if (archive) {
+                if (archivedLength(file) != state.offset ||
+                        archivedFingerprint(file, state.offset) != state.fingerprint) {
+                    continue;
+                }
+                iterator.remove();
+                FileState uploaded = new FileState();
+                uploaded.offset = file.length();
+                uploaded.fingerprint = fingerprint(file, uploaded.offset);
+                return uploaded;
+            }
+            if (file.length() >= state.offset && fingerprint(file, state.offset) == state.fingerprint) {
+                iterator.remove();
+                return state;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 文件名中第一个点之前的部分，滚动后的文件(name-yyyyMMdd-HHmmss.log)和归档(.log.gz)都以它开头
+     */
+    private static String stemOf(String name) {
+        int dot = name.indexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    /**
+     * 分片上传完成后，把本次上传的范围记为已上传
+     */
+    synchronized void commit(@NonNull String serialNumber) {
+        if (pending != null) {
+            for (Map.Entry<String, Range> entry : pending.ranges.entrySet()) {
+                FileState state = new FileState();
+                state.offset = entry.getValue().end;
+                state.fingerprint = entry.getValue().fingerprint;
+                files.put(entry.getKey(), state);
+            }
+            pending = null;
+        }
+        lastSerialNumber = serialNumber;
+        save();
+    }
+
+    static long fingerprint(@NonNull File file, long limit) {
+        try (InputStream is = new FileInputStream(file)) {
+            return fingerprint(is, limit);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 归档解压后的内容的指纹
+     */
+    private static long archivedFingerprint(@NonNull File archive, long limit) {
+        try (InputStream is = new GZIPInputStream(new FileInputStream(archive))) {
+            return fingerprint(is, limit);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long fingerprint(@NonNull InputStream is, long limit) throws IOException {
+        int max = (int) Math.min(limit, FINGERPRINT_LEN);
+        byte[] buffer = new byte[max];
+        int len = 0;
+        int n;
+        while (len < max && (n = is.read(buffer, len, max - len)) != -1) {
+            len += n;
+        }
+        CRC32 crc32 = new CRC32();
+        crc32.update(buffer, 0, len);
+        return crc32.getValue();
+    }
+
+    /**
+     * gzip末尾记录的解压后长度(模2^32，日志文件远小于4GB)
+     */
+    private static long archivedLength(@NonNull File archive) {
+        try (RandomAccessFile raf = new RandomAccessFile(archive, "r")) {
+            if (raf.length() < 4) {
+                return -1;
+            }
+            raf.seek(raf.length() - 4);
+            return (raf.read() | raf.read() << 8 | raf.read() << 16 | (long) raf.read() << 24);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+}
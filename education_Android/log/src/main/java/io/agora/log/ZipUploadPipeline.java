@@ -0,0 +1,174 @@
+package io.agora.log;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 边压缩边上传的流水线
+ * 压缩线程把zip数据写入固定大小的分片缓冲，写满后交给上传线程按分片上传；
+ * 缓冲池大小固定，上传慢时压缩线程会阻塞等待，内存占用不超过(poolSize * partSize)，且不产生临时文件
+ */
+public class ZipUploadPipeline {
+    /**
+     * 分片上传接口，partNumber从1开始，data的有效长度即数组长度
+     */
+    public interface PartUploader {
+        void uploadPart(int partNumber, @NonNull byte[] data) throws Exception;
+    }
+
+    /**
+     * 把zip数据写入{@param os}，写完后关闭os
+     */
+    public interface ZipWriter {
+        void write(@NonNull OutputStream os) throws IOException;
+    }
+
+    private static final byte[] END = new byte[0];
+    private static final int POOL_SIZE = 3;
+
+    private final int partSize;
+    private final PartUploader uploader;
+    private final BlockingQueue<byte[]> freeBuffers;
+    /**
+     * 待上传的分片数受缓冲池限制，额外的空间留给最后一个分片、结束标记和出错时补充的缓冲，put不会阻塞
+     */
+    private final BlockingQueue<byte[]> pendingParts = new ArrayBlockingQueue<>(POOL_SIZE + 3);
+    private volatile Exception uploadError;
+
+    public ZipUploadPipeline(int partSize, @NonNull PartUploader uploader) {
+        this.partSize = partSize;
+        this.uploader = uploader;
+        this.freeBuffers = new ArrayBlockingQueue<>(POOL_SIZE);
+        for (int i = 0; i < POOL_SIZE; i++) {
+            freeBuffers.add(new byte[partSize]);
+        }
+    }
+
+    /**
+     * 压缩{@param srcFile}并上传，阻塞到所有分片上传完成
+     *
+     * @return 上传的分片数
+     */
+    public int zipAndUpload(@NonNull File srcFile) throws Exception {
+        return zipAndUpload(os -> ZipUtils.zipFile(srcFile, os));
+    }
+
+    /**
+     * 由{@param writer}生成zip数据并上传，阻塞到所有分片上传完成
+     *
+     * @return 上传的分片数
+     */
+    public int zipAndUpload(@NonNull ZipWriter writer) throws Exception {
+        int[] partCount = new int[1];
+        Thread uploadThread = new Thread(() -> {
+            try {
+                byte[] part;
+                while ((part = pendingParts.take()) != END) {
+                    int partNumber = ++partCount[0];
+                    if (part.length == partSize) {
+                        uploader.uploadPart(partNumber, part);
+                        freeBuffers.put(part);
+                    } else {
+                        /*最后一个分片(已按实际长度拷贝)*/
+                        uploader.uploadPart(partNumber, part);
+                    }
+                }
+            } catch (Exception e) {
+                uploadError = e;
+                /*唤醒可能在等待空闲缓冲的压缩线程*/
+                freeBuffers.offer(new byte[partSize]);
+            }
+        }, "ZipUploadPipeline");
+        uploadThread.start();
+        try (PartOutputStream os = new PartOutputStream()) {
+            writer.write(os);
+        } catch (Exception e) {
+            /*上传失败导致的压缩异常，以上传的错误为准*/
+            if (uploadError == null) {
+                throw e;
+            }
+        } finally {
+            if (uploadError == null) {
+                pendingParts.put(END);
+            }
+            uploadThread.join();
+        }
+        if (uploadError != null) {
+            throw uploadError;
+        }
+        return partCount[0];
+    }
+
+    private class PartOutputStream extends OutputStream {
+        private byte[] buffer;
+        private int count;
+
+        @Override
+        public void write(int b) throws IOException {
+            ensureBuffer();
+            buffer[count++] = (byte) b;
+            if (count == partSize) {
+                submit(buffer);
+            }
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                ensureBuffer();
+                int n = Math.min(len, partSize - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+                if (count == partSize) {
+                    submit(buffer);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            checkError();
+            if (buffer != null && count > 0) {
+                submit(Arrays.copyOf(buffer, count));
+            }
+        }
+
+        private void ensureBuffer() throws IOException {
+            checkError();
+            if (buffer == null) {
+                try {
+                    buffer = freeBuffers.take();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                checkError();
+                count = 0;
+            }
+        }
+
+        private void submit(byte[] part) throws IOException {
+            try {
+                pendingParts.put(part);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            buffer = null;
+            count = 0;
+        }
+
+        private void checkError() throws IOException {
+            if (uploadError != null) {
+                throw new IOException("upload failed", uploadError);
+            }
+        }
+    }
+}
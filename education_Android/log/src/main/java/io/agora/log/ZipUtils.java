@@ -1,16 +1,40 @@
 package io.agora.log;
 
-import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
 
 public class ZipUtils {
-    private static final int BUFFER_LEN = 8192;
+    private static volatile int sThreads = Math.min(4, Runtime.getRuntime().availableProcessors());
+    private static volatile int sLevel = Deflater.DEFAULT_COMPRESSION;
+    private static volatile int sStrategy = Deflater.DEFAULT_STRATEGY;
+
+    /**
+     * Set the compression level and strategy used by the methods of this class.
+     *
+     * @param level    The compression level, see {@link Deflater#setLevel(int)}.
+     * @param strategy The compression strategy, see {@link Deflater#setStrategy(int)}.
+     */
+    public static void setCompression(final int level, final int strategy) {
+        sLevel = level;
+        sStrategy = strategy;
+    }
+
+    /**
+     * Set the number of threads compressing the entries in parallel.
+     *
+     * @param threads The number of threads.
+     */
+    public static void setThreads(final int threads) {
+        sThreads = Math.max(1, threads);
+    }
 
     /**
      * Zip the file.
@@ -40,46 +64,89 @@ public class ZipUtils {
                                   final String comment)
             throws IOException {
         if (srcFile == null || zipFile == null) return false;
-        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zipFile))) {
-            return zipFile(srcFile, "", zos, comment);
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(zipFile))) {
+            return zipFile(srcFile, os, comment) != null;
+        }
+    }
+
+    /**
+     * Zip the file into the output stream, the stream is closed when done.
+     *
+     * @param srcFile The source of file.
+     * @param os      The output stream of the ZIP data.
+     * @return {@code true}: success<br>{@code false}: fail
+     * @throws IOException if an I/O error has occurred
+     */
+    public static boolean zipFile(final File srcFile,
+                                  final OutputStream os)
+            throws IOException {
+        if (srcFile == null || os == null) return false;
+        try (OutputStream out = os) {
+            return zipFile(srcFile, out, null) != null;
         }
     }
 
-    private static boolean zipFile(final File srcFile,
-                                   String rootPath,
-                                   final ZipOutputStream zos,
-                                   final String comment)
+    /**
+     * Zip the given byte ranges of the files in the directory into the output stream,
+     * the stream is closed when done. The same input always produces the same ZIP data.
+     *
+     * @param srcDir    The source directory.
+     * @param ranges    File name to {start, end} byte range.
+     * @param entryTime The modification time of every entry.
+     * @param os        The output stream of the ZIP data.
+     * @return The statistics of the compression.
+     * @throws IOException if an I/O error has occurred
+     */
+    public static ParallelZipper.Stats zipRanges(final File srcDir,
+                                                 final Map<String, long[]> ranges,
+                                                 final long entryTime,
+                                                 final OutputStream os)
             throws IOException {
+        List<String> names = new ArrayList<>(ranges.keySet());
+        Collections.sort(names);
+        List<ParallelZipper.Source> sources = new ArrayList<>();
+        for (String name : names) {
+            long[] range = ranges.get(name);
+            sources.add(new ParallelZipper.Source(srcDir.getName() + '/' + name, new File(srcDir, name),
+                    range[0], range[1], entryTime, "range:" + range[0] + "-" + range[1]));
+        }
+        try (OutputStream out = os) {
+            return newZipper().zip(sources, out);
+        }
+    }
+
+    private static ParallelZipper.Stats zipFile(final File srcFile,
+                                                final OutputStream os,
+                                                final String comment)
+            throws IOException {
+        List<ParallelZipper.Source> sources = new ArrayList<>();
+        collect(srcFile, "", comment, sources);
+        return newZipper().zip(sources, os);
+    }
+
+    private static void collect(final File srcFile,
+                                String rootPath,
+                                final String comment,
+                                final List<ParallelZipper.Source> sources) {
         rootPath = rootPath + (isSpace(rootPath) ? "" : File.separator) + srcFile.getName();
         if (srcFile.isDirectory()) {
             File[] fileList = srcFile.listFiles();
             if (fileList == null || fileList.length <= 0) {
-                ZipEntry entry = new ZipEntry(rootPath + '/');
-                entry.setComment(comment);
-                zos.putNextEntry(entry);
-                zos.closeEntry();
+                sources.add(new ParallelZipper.Source(rootPath + '/', null, 0, 0,
+                        srcFile.lastModified(), comment));
             } else {
                 for (File file : fileList) {
-                    if (!zipFile(file, rootPath, zos, comment)) return false;
-                }
-            }
-        } else {
-            try (InputStream is = new BufferedInputStream(new FileInputStream(srcFile))) {
-                ZipEntry entry = new ZipEntry(rootPath);
-                entry.setComment(comment);
-                zos.putNextEntry(entry);
-                byte[] buffer = new byte[BUFFER_LEN];
-                int len;
-                while ((len = is.read(buffer, 0, BUFFER_LEN)) != -1) {
-                    zos.write(buffer, 0, len);
+                    collect(file, rootPath, comment, sources);
                 }
-                zos.closeEntry();
-            }
-            catch (Exception e) {
-                e.printStackTrace();
             }
+        } else if (srcFile.canRead()) {
+            sources.add(new ParallelZipper.Source(rootPath, srcFile, 0, srcFile.length(),
+                    srcFile.lastModified(), comment));
         }
-        return true;
+    }
+
+    private static ParallelZipper newZipper() {
+        return new ParallelZipper(sThreads, sLevel, sStrategy);
     }
 
     /**
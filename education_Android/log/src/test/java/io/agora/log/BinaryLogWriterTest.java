@@ -0,0 +1,101 @@
+package io.agora.log;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+
+import static com.elvishew.xlog.LogLevel.INFO;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryLogWriterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * 进程崩溃时(从未调用flush)，记录留在映射文件中，下次创建时写入日志文件
+     */
+    @Test
+    public void recoversRecordsOfCrashedProcess() throws IOException {
+        File dir = folder.newFolder("log");
+        File mmapFile = new File(folder.getRoot(), "test.blogcache");
+        BinaryLogWriter crashed = new BinaryLogWriter(new LogRotator(dir, "test", BinaryLogWriter.EXT),
+                mmapFile, 64 * 1024, false);
+        for (int i = 0; i < 10; i++) {
+            crashed.write(INFO, "tag", "before crash %d", new Object[]{i});
+        }
+
+        LogRotator rotator = new LogRotator(dir, "test", BinaryLogWriter.EXT);
+        BinaryLogWriter restarted = new BinaryLogWriter(rotator, mmapFile, 64 * 1024, false);
+        restarted.write(INFO, "tag", "after restart", null);
+        restarted.flush();
+
+        String text = decode(rotator.current());
+        for (int i = 0; i < 10; i++) {
+            assertTrue(text, text.contains("|tag|before crash " + i + "\n"));
+        }
+        assertTrue(text, text.contains("|tag|after restart\n"));
+        assertEquals(11, text.split("\n").length);
+    }
+
+    /**
+     * 崩溃前已经落盘过一次，残留的记录引用文件中已有的字典项
+     */
+    @Test
+    public void recoveredRecordsUseFlushedDictionary() throws IOException {
+        File dir = folder.newFolder("log");
+        File mmapFile = new File(folder.getRoot(), "test.blogcache");
+        BinaryLogWriter crashed = new BinaryLogWriter(new LogRotator(dir, "test", BinaryLogWriter.EXT),
+                mmapFile, 64 * 1024, false);
+        crashed.write(INFO, "tag", "value %d", new Object[]{1});
+        crashed.flush();
+        crashed.write(INFO, "tag", "value %d", new Object[]{2});
+        crashed.write(INFO, "other", "value %d", new Object[]{3});
+
+        LogRotator rotator = new LogRotator(dir, "test", BinaryLogWriter.EXT);
+        new BinaryLogWriter(rotator, mmapFile, 64 * 1024, false).flush();
+
+        String text = decode(rotator.current());
+        assertTrue(text, text.contains("|tag|value 1\n"));
+        assertTrue(text, text.contains("|tag|value 2\n"));
+        assertTrue(text, text.contains("|other|value 3\n"));
+        assertEquals(3, text.split("\n").length);
+    }
+
+    /**
+     * 映射内存写满时丢弃新的记录，已写入的记录和之后的提示仍能解码
+     */
+    @Test
+    public void dropsRecordsWhenMirrorIsFull() throws IOException {
+        File dir = folder.newFolder("log");
+        File mmapFile = new File(folder.getRoot(), "test.blogcache");
+        LogRotator rotator = new LogRotator(dir, "test", BinaryLogWriter.EXT);
+        BinaryLogWriter writer = new BinaryLogWriter(rotator, mmapFile, 1024, false);
+        for (int i = 0; i < 100; i++) {
+            writer.write(INFO, "tag" + i, "message %d", new Object[]{i});
+        }
+        writer.flush();
+        writer.write(INFO, "tag", "after flush", null);
+        writer.close();
+
+        String text = decode(rotator.current());
+        assertTrue(text, text.contains("|tag0|message 0\n"));
+        assertTrue(text, text.contains("log lines, buffer full"));
+        assertTrue(text, text.contains("|tag|after flush\n"));
+        assertTrue(text, !text.contains("<unknown format>"));
+    }
+
+    private static String decode(File file) throws IOException {
+        StringWriter out = new StringWriter();
+        try (InputStream is = new FileInputStream(file)) {
+            new BinaryLogDecoder(false).decode(is, out);
+        }
+        return out.toString();
+    }
+}
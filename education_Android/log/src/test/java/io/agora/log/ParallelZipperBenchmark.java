@@ -0,0 +1,66 @@
+package io.agora.log;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 单线程与多线程压缩的吞吐量对比，默认不运行：
+ * ./gradlew :log:testDebugUnitTest -PzipBenchmark=128 --tests io.agora.log.ParallelZipperBenchmark
+ * 参数为日志总大小(MB)，分成32个4MB的文件(与日志滚动的文件大小相同)
+ */
+public class ParallelZipperBenchmark {
+    private static final int FILE_SIZE = 4 * 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void compareThreads() throws IOException {
+        String size = System.getProperty("zipBenchmark");
+        Assume.assumeTrue("run with -PzipBenchmark=<MB>", size != null);
+        int fileCount = Math.max(1, Integer.parseInt(size) * 1024 * 1024 / FILE_SIZE);
+        List<ParallelZipper.Source> sources = new ArrayList<>();
+        for (int i = 0; i < fileCount; i++) {
+            File file = folder.newFile("AgoraEducation-" + i + ".log");
+            try (FileOutputStream os = new FileOutputStream(file)) {
+                os.write(ParallelZipperTest.logData(FILE_SIZE - i));
+            }
+            sources.add(new ParallelZipper.Source("logs/" + file.getName(), file, 0, file.length(),
+                    file.lastModified(), null));
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        /*预热*/
+        zip(cores, sources.subList(0, 1));
+        ParallelZipper.Stats single = zip(1, sources);
+        ParallelZipper.Stats parallel = zip(cores, sources);
+        System.out.println("1 thread: " + single);
+        System.out.println(cores + " threads: " + parallel);
+        System.out.println(String.format("speedup: %.2fx", (double) single.elapsedMs / Math.max(1, parallel.elapsedMs)));
+        assertEquals(single.outputBytes, parallel.outputBytes);
+    }
+
+    private static ParallelZipper.Stats zip(int threads, List<ParallelZipper.Source> sources) throws IOException {
+        return new ParallelZipper(threads, Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY)
+                .zip(sources, new OutputStream() {
+                    @Override
+                    public void write(int b) {
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) {
+                    }
+                });
+    }
+}
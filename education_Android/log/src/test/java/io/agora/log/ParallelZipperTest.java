@@ -0,0 +1,128 @@
+package io.agora.log;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ParallelZipperTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void crc32Combine_matchesConcatenation() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100; i++) {
+            byte[] first = new byte[random.nextInt(5000)];
+            byte[] second = new byte[random.nextInt(5000)];
+            random.nextBytes(first);
+            random.nextBytes(second);
+            CRC32 whole = new CRC32();
+            whole.update(first);
+            whole.update(second);
+            assertEquals(whole.getValue(), ParallelZipper.crc32Combine(crc(first), crc(second), second.length));
+        }
+    }
+
+    @Test
+    public void zip_roundTripsSegmentsRangesAndArchives() throws IOException {
+        byte[] log = logData(3 * ParallelZipper.SEGMENT_LEN + 123);
+        File logFile = write("AgoraEducation.log", log);
+        byte[] gz = gzip(log);
+        File gzFile = write("AgoraEducation-20200101-000000.log.gz", gz);
+        File emptyFile = write("empty.log", new byte[0]);
+        List<ParallelZipper.Source> sources = new ArrayList<>();
+        sources.add(new ParallelZipper.Source("logs/" + logFile.getName(), logFile, 0, log.length, 0, null));
+        sources.add(new ParallelZipper.Source("logs/" + gzFile.getName(), gzFile, 0, gz.length, 0, "archive"));
+        sources.add(new ParallelZipper.Source("logs/empty.log", emptyFile, 0, 0, 0, null));
+        sources.add(new ParallelZipper.Source("logs/range.log", logFile, 1000, 300000, 0, "range:1000-300000"));
+        sources.add(new ParallelZipper.Source("logs/dir/", null, 0, 0, 0, null));
+
+        byte[] single = zip(1, sources);
+        byte[] parallel = zip(4, sources);
+        /*续传依赖于相同输入得到相同的zip数据*/
+        assertArrayEquals(single, parallel);
+
+        try (ZipFile zip = new ZipFile(write("out.zip", parallel))) {
+            assertEquals(5, zip.size());
+            assertArrayEquals(log, read(zip, "logs/" + logFile.getName()));
+            assertArrayEquals(gz, read(zip, "logs/" + gzFile.getName()));
+            assertEquals(ZipEntry.STORED, zip.getEntry("logs/" + gzFile.getName()).getMethod());
+            assertArrayEquals(new byte[0], read(zip, "logs/empty.log"));
+            assertArrayEquals(Arrays.copyOfRange(log, 1000, 300000), read(zip, "logs/range.log"));
+        }
+    }
+
+    private byte[] zip(int threads, List<ParallelZipper.Source> sources) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        new ParallelZipper(threads, Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY).zip(sources, os);
+        return os.toByteArray();
+    }
+
+    private File write(String name, byte[] data) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        try (FileOutputStream os = new FileOutputStream(file)) {
+            os.write(data);
+        }
+        return file;
+    }
+
+    private static byte[] read(ZipFile zip, String name) throws IOException {
+        try (InputStream is = zip.getInputStream(zip.getEntry(name))) {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = is.read(buffer)) != -1) {
+                os.write(buffer, 0, len);
+            }
+            return os.toByteArray();
+        }
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(os)) {
+            gzip.write(data);
+        }
+        return os.toByteArray();
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(data);
+        return crc32.getValue();
+    }
+
+    /**
+     * 类似SDK日志的文本，压缩率接近真实日志
+     */
+    static byte[] logData(int length) {
+        Random random = new Random(length);
+        StringBuilder builder = new StringBuilder(length + 128);
+        int line = 0;
+        while (builder.length() < length) {
+            builder.append("2020-01-01 12:00:00.").append(random.nextInt(1000))
+                    .append(" I/AgoraEducation-EduRoomImpl: line ").append(line++)
+                    .append(" uid=").append(random.nextInt(100000))
+                    .append(" quality=").append(random.nextInt(8)).append('\n');
+        }
+        return Arrays.copyOf(builder.toString().getBytes(), length);
+    }
+}
@@ -0,0 +1,121 @@
+package io.agora.log;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UploadManifestTest {
+    private static final String CURRENT = "AgoraEducation.log";
+    private static final String ROTATED = "AgoraEducation-20261019-101010.log";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * 全部上传后被滚动的文件不再上传，压缩后的归档也不再上传
+     */
+    @Test
+    public void skipsRotatedSegmentAndArchiveWhenFullyUploaded() throws IOException {
+        File dir = folder.newFolder("log");
+        UploadManifest manifest = manifestAfterUpload(dir, 2000, 2000);
+
+        rotate(dir);
+        Map<String, UploadManifest.Range> ranges = manifest.newRanges(dir);
+        assertFalse(ranges.containsKey(ROTATED));
+        assertRange(ranges.get(CURRENT), 0, 500);
+
+        compress(new File(dir, ROTATED));
+        ranges = manifest.newRanges(dir);
+        assertFalse(ranges.containsKey(ROTATED + LogRotator.ARCHIVE_EXT));
+        assertRange(ranges.get(CURRENT), 0, 500);
+    }
+
+    /**
+     * 部分上传后被滚动的文件从记录的位置继续上传
+     */
+    @Test
+    public void resumesRotatedSegmentFromRecordedOffset() throws IOException {
+        File dir = folder.newFolder("log");
+        UploadManifest manifest = manifestAfterUpload(dir, 2000, 1200);
+
+        rotate(dir);
+        Map<String, UploadManifest.Range> ranges = manifest.newRanges(dir);
+        assertRange(ranges.get(ROTATED), 1200, 2000);
+        assertRange(ranges.get(CURRENT), 0, 500);
+    }
+
+    /**
+     * 没有全部上传的文件被压缩后，归档只能整个上传
+     */
+    @Test
+    public void uploadsArchiveOfPartiallyUploadedSegment() throws IOException {
+        File dir = folder.newFolder("log");
+        UploadManifest manifest = manifestAfterUpload(dir, 2000, 1200);
+
+        rotate(dir);
+        compress(new File(dir, ROTATED));
+        Map<String, UploadManifest.Range> ranges = manifest.newRanges(dir);
+        File archive = new File(dir, ROTATED + LogRotator.ARCHIVE_EXT);
+        assertRange(ranges.get(archive.getName()), 0, archive.length());
+    }
+
+    /**
+     * 写入{@param length}字节的当前文件，并记为已上传到{@param offset}
+     */
+    private UploadManifest manifestAfterUpload(File dir, int length, long offset) throws IOException {
+        write(new File(dir, CURRENT), length, 1);
+        UploadManifest manifest = UploadManifest.load(new File(folder.getRoot(), "logupload.json"));
+        UploadManifest.FileState state = new UploadManifest.FileState();
+        state.offset = offset;
+        state.fingerprint = UploadManifest.fingerprint(new File(dir, CURRENT), offset);
+        manifest.files.put(CURRENT, state);
+        return manifest;
+    }
+
+    /**
+     * 与LogRotator相同：当前文件改名，之后写入新的当前文件
+     */
+    private static void rotate(File dir) throws IOException {
+        assertTrue(new File(dir, CURRENT).renameTo(new File(dir, ROTATED)));
+        write(new File(dir, CURRENT), 500, 2);
+    }
+
+    private static void compress(File segment) throws IOException {
+        try (InputStream is = new FileInputStream(segment);
+             OutputStream os = new GZIPOutputStream(new FileOutputStream(segment.getPath() + LogRotator.ARCHIVE_EXT))) {
+            byte[] buffer = new byte[4096];
+            int len;
+            while ((len = is.read(buffer)) != -1) {
+                os.write(buffer, 0, len);
+            }
+        }
+        assertTrue(segment.delete());
+    }
+
+    private static void write(File file, int length, long seed) throws IOException {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        try (OutputStream os = new FileOutputStream(file)) {
+            os.write(data);
+        }
+    }
+
+    private static void assertRange(UploadManifest.Range range, long start, long end) {
+        assertEquals(start, range.start);
+        assertEquals(end, range.end);
+    }
+}
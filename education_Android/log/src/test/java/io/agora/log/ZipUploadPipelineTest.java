@@ -0,0 +1,141 @@
+package io.agora.log;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ZipUploadPipelineTest {
+    private static final int PART_SIZE = 100 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * 本地的分片上传服务：按分片号保存数据，记录上传顺序，合并时按分片号拼接
+     */
+    private static class FakeMultipartStore implements ZipUploadPipeline.PartUploader {
+        final Map<Integer, byte[]> parts = new TreeMap<>();
+        final List<Integer> order = new ArrayList<>();
+        final long delayMs;
+        int failAtPart = -1;
+
+        FakeMultipartStore(long delayMs) {
+            this.delayMs = delayMs;
+        }
+
+        @Override
+        public synchronized void uploadPart(int partNumber, @NonNull byte[] data) throws Exception {
+            if (partNumber == failAtPart) {
+                throw new IOException("part " + partNumber + " rejected");
+            }
+            /*模拟慢速网络，压缩线程需要等待空闲缓冲*/
+            Thread.sleep(delayMs);
+            order.add(partNumber);
+            parts.put(partNumber, data.clone());
+        }
+
+        synchronized byte[] complete() {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            for (byte[] part : parts.values()) {
+                os.write(part, 0, part.length);
+            }
+            return os.toByteArray();
+        }
+    }
+
+    @Test
+    public void zipAndUpload_uploadsOrderedFixedSizeParts() throws Exception {
+        File dir = folder.newFolder("logs");
+        byte[] log = ParallelZipperTest.logData(2 * 1024 * 1024);
+        byte[] noise = new byte[600 * 1024];
+        new Random(2).nextBytes(noise);
+        write(new File(dir, "AgoraEducation.log"), log);
+        write(new File(dir, "noise.bin"), noise);
+
+        FakeMultipartStore store = new FakeMultipartStore(5);
+        int partCount = new ZipUploadPipeline(PART_SIZE, store).zipAndUpload(dir);
+
+        assertTrue(partCount > 3);
+        assertEquals(partCount, store.parts.size());
+        for (int i = 0; i < partCount; i++) {
+            assertEquals(i + 1, (int) store.order.get(i));
+            byte[] part = store.parts.get(i + 1);
+            if (i < partCount - 1) {
+                assertEquals(PART_SIZE, part.length);
+            } else {
+                assertTrue(part.length > 0 && part.length <= PART_SIZE);
+            }
+        }
+
+        Map<String, byte[]> entries = unzip(store.complete());
+        assertEquals(2, entries.size());
+        assertArrayEquals(log, entries.get("logs/AgoraEducation.log"));
+        assertArrayEquals(noise, entries.get("logs/noise.bin"));
+    }
+
+    @Test
+    public void zipAndUpload_reportsUploadFailure() throws Exception {
+        File dir = folder.newFolder("logs");
+        byte[] noise = new byte[1024 * 1024];
+        new Random(3).nextBytes(noise);
+        write(new File(dir, "noise.bin"), noise);
+
+        FakeMultipartStore store = new FakeMultipartStore(0);
+        store.failAtPart = 3;
+        try {
+            new ZipUploadPipeline(PART_SIZE, store).zipAndUpload(dir);
+            fail();
+        } catch (IOException e) {
+            assertEquals("part 3 rejected", e.getMessage());
+        }
+        assertEquals(2, store.parts.size());
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        try (FileOutputStream os = new FileOutputStream(file)) {
+            os.write(data);
+        }
+    }
+
+    private static Map<String, byte[]> unzip(byte[] zip) throws IOException {
+        Map<String, byte[]> entries = new TreeMap<>();
+        try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                entries.put(entry.getName(), readAll(zis));
+            }
+        }
+        return entries;
+    }
+
+    private static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int len;
+        while ((len = is.read(buffer)) != -1) {
+            os.write(buffer, 0, len);
+        }
+        return os.toByteArray();
+    }
+}
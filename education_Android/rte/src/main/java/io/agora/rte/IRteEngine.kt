@@ -10,8 +10,17 @@ import io.agora.rte.data.RteAudioVoiceChanger
 import io.agora.rte.listener.RteStatisticsReportListener
 
 interface IRteEngine {
+    /**只保存配置，rtm和rtc在首次使用时(或prepareRtm/prepareRtc时)才创建*/
     fun init(context: Context, appId: String, logFileDir: String)
 
+    fun isRtmReady(): Boolean
+
+    fun isRtcReady(): Boolean
+
+    fun prepareRtm(callback: RteCallback<Unit>?)
+
+    fun prepareRtc(callback: RteCallback<Unit>?)
+
     fun loginRtm(rtmUid: String, rtmToken: String, @NonNull callback: RteCallback<Unit>)
 
     fun logoutRtm()
@@ -9,11 +9,13 @@ import io.agora.rtc.RtcChannel
 import io.agora.rtc.models.ChannelMediaOptions
 import io.agora.rte.listener.RteChannelEventListener
 import io.agora.rte.listener.RteStatisticsReportListener
+import io.agora.rte.trace.RteTrace
+import io.agora.rte.trace.RteTraceEvent
 import io.agora.rtm.*
 import io.agora.rtm.RtmStatusCode.JoinChannelError.JOIN_CHANNEL_ERR_ALREADY_JOINED
 
 internal class RteChannelImpl(
-        channelId: String,
+        private val channelId: String,
         private var eventListener: RteChannelEventListener?
 ) : IRteChannel {
 
@@ -26,7 +28,7 @@ internal class RteChannelImpl(
 
         /**收到频道内消息(包括频道内的群聊消息和各种房间配置、人员信息、流信息等)*/
         override fun onMessageReceived(p0: RtmMessage?, p1: RtmChannelMember?) {
-            Log.e(TAG, "接收到频道${p1?.channelId}内的消息->${p0?.text}")
+            RteTrace.record(RteTraceEvent.RTM_CHANNEL_MSG, channelId, 0, 0, p0?.text)
             eventListener?.onChannelMsgReceived(p0, p1)
         }
 
@@ -52,12 +54,13 @@ internal class RteChannelImpl(
     private val rtcChannelEventHandler = object : IRtcChannelEventHandler() {
         override fun onChannelError(rtcChannel: RtcChannel?, err: Int) {
             super.onChannelError(rtcChannel, err)
-            Log.e("RteChannelImpl", "onChannelError->" + rtcChannel?.channelId() + ",err->" + err)
+            RteTrace.record(RteTraceEvent.RTC_ERROR, channelId, 0, err)
+            Log.e(TAG, "onChannelError->$channelId,err->$err")
         }
 
         override fun onChannelWarning(rtcChannel: RtcChannel?, warn: Int) {
             super.onChannelWarning(rtcChannel, warn)
-            Log.e("RteChannelImpl", "onChannelWarning->" + rtcChannel?.channelId() + ",warn->" + warn)
+            RteTrace.record(RteTraceEvent.RTC_WARNING, channelId, 0, warn)
         }
 
         override fun onNetworkQuality(rtcChannel: RtcChannel?, uid: Int, txQuality: Int, rxQuality: Int) {
@@ -67,22 +70,23 @@ internal class RteChannelImpl(
 
         override fun onClientRoleChanged(rtcChannel: RtcChannel?, oldRole: Int, newRole: Int) {
             super.onClientRoleChanged(rtcChannel, oldRole, newRole)
-            Log.e("RteChannelImpl", rtcChannel?.channelId() + "," + oldRole + "," + newRole)
+            RteTrace.record(RteTraceEvent.RTC_CLIENT_ROLE, channelId, 0, newRole)
         }
 
         override fun onJoinChannelSuccess(rtcChannel: RtcChannel?, uid: Int, elapsed: Int) {
             super.onJoinChannelSuccess(rtcChannel, uid, elapsed)
-            Log.e("RteChannelImpl", String.format("onJoinChannelSuccess channel $rtcChannel uid $uid"))
+            RteTrace.record(RteTraceEvent.RTC_JOIN_SUCCESS, channelId, uid, elapsed)
         }
 
         override fun onUserJoined(rtcChannel: RtcChannel?, uid: Int, elapsed: Int) {
             super.onUserJoined(rtcChannel, uid, elapsed)
-            Log.e("RteChannelImpl", "onUserJoined->$uid")
+            RteTrace.record(RteTraceEvent.RTC_USER_JOINED, channelId, uid, elapsed)
         }
 
         override fun onRemoteVideoStateChanged(rtcChannel: RtcChannel?, uid: Int, state: Int, reason: Int, elapsed: Int) {
             super.onRemoteVideoStateChanged(rtcChannel, uid, state, reason, elapsed)
-            Log.e("RteChannelImpl", "onRemoteVideoStateChanged->$uid, state->$state, reason->$reason")
+            /**arg的高16位为state，低16位为reason*/
+            RteTrace.record(RteTraceEvent.RTC_REMOTE_VIDEO_STATE, channelId, uid, (state shl 16) or reason)
         }
 
         override fun onRemoteVideoStats(rtcChannel: RtcChannel?, stats: IRtcEngineEventHandler.RemoteVideoStats?) {
@@ -145,11 +149,12 @@ internal class RteChannelImpl(
     override fun leave() {
         rtmChannel.leave(object : ResultCallback<Void> {
             override fun onSuccess(p0: Void?) {
-                Log.e("RteChannelImpl", "成功离开RTM频道")
+                RteTrace.record(RteTraceEvent.RTM_CHANNEL_LEAVE, channelId)
             }
 
             override fun onFailure(p0: ErrorInfo?) {
-                Log.e("RteChannelImpl", "离开RTM频道失败:${p0?.errorDescription}")
+                RteTrace.record(RteTraceEvent.RTM_CHANNEL_LEAVE, channelId, 0, p0?.errorCode ?: -1)
+                Log.e(TAG, "离开RTM频道失败:${p0?.errorDescription}")
             }
         })
         rtcChannel.leaveChannel()
@@ -1,6 +1,7 @@
 package io.agora.rte
 
 import android.content.Context
+import android.os.Looper
 import android.util.Log
 import io.agora.rtc.Constants
 import io.agora.rtc.Constants.CHANNEL_PROFILE_LIVE_BROADCASTING
@@ -12,15 +13,47 @@ import io.agora.rtc.video.VideoEncoderConfiguration
 import io.agora.rte.data.RteAudioReverbPreset
 import io.agora.rte.data.RteAudioVoiceChanger
 import io.agora.rte.listener.*
+import io.agora.rte.trace.RteTrace
+import io.agora.rte.trace.RteTraceEvent
 import io.agora.rtm.*
 import io.agora.rtm.RtmStatusCode.LoginError.LOGIN_ERR_ALREADY_LOGIN
 import java.io.File
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
 
 object RteEngineImpl : IRteEngine {
-    internal lateinit var rtmClient: RtmClient
-    internal lateinit var rtcEngine: RtcEngine
+    private lateinit var context: Context
+    private lateinit var appId: String
+    private lateinit var logFileDir: String
+
+    /**rtmClient和rtcEngine都是懒加载的(native库加载较慢)，只在initExecutor线程中创建；
+     * 应先通过prepareRtm/prepareRtc创建，未创建时访问会等待initExecutor创建完成*/
+    @Volatile
+    private var rtmClientInstance: RtmClient? = null
+
+    @Volatile
+    private var rtcEngineInstance: RtcEngine? = null
+
+    internal val rtmClient: RtmClient
+        get() = rtmClientInstance ?: await(this::createRtmClient)
+    internal val rtcEngine: RtcEngine
+        get() = rtcEngineInstance ?: await(this::createRtcEngine)
+
+    /**创建引擎使用的后台线程；单线程，创建过程不需要再加锁*/
+    @Volatile
+    private var initThread: Thread? = null
+    private val initExecutor: ExecutorService by lazy {
+        Executors.newSingleThreadExecutor { Thread(it, "RteEngineInit").also { thread -> initThread = thread } }
+    }
+
     private val channelMap = mutableMapOf<String, IRteChannel>()
 
+    /**rtm和rtc日志文件的大小上限(KB)，由SDK自行滚动，避免日志目录无限增长；
+     * 与应用日志的上限(LogManager.MAX_LOG_FILE_SIZE)相同*/
+    private const val LOG_FILE_SIZE_KB = 4096
+
     var eventListener: RteEngineEventListener? = null
     var mediaDeviceListener: RteMediaDeviceListener? = null
     var audioMixingListener: RteAudioMixingListener? = null
@@ -38,11 +71,13 @@ object RteEngineImpl : IRteEngine {
 
         /**RTE连接质量发生改变*/
         override fun onConnectionStateChanged(p0: Int, p1: Int) {
+            RteTrace.record(RteTraceEvent.RTM_CONNECTION_STATE, null, 0, (p0 shl 16) or p1)
             eventListener?.onConnectionStateChanged(p0, p1)
         }
 
         /**收到私聊消息 peerMsg*/
         override fun onMessageReceived(p0: RtmMessage?, p1: String?) {
+            RteTrace.record(RteTraceEvent.RTM_PEER_MSG, null, 0, 0, p0?.text)
             eventListener?.onPeerMsgReceived(p0, p1)
         }
 
@@ -62,27 +97,28 @@ object RteEngineImpl : IRteEngine {
     private val rtcEngineEventHandler = object : IRtcEngineEventHandler() {
 
         override fun onError(err: Int) {
+            RteTrace.record(RteTraceEvent.RTC_ERROR, null, 0, err)
             Log.e("RteEngineImpl", String.format("onError code %d message %s", err, RtcEngine.getErrorDescription(err)))
         }
 
         override fun onWarning(warn: Int) {
             super.onWarning(warn)
-            Log.e("RteEngineImpl", String.format("onWarning code %d message %s", warn, RtcEngine.getErrorDescription(warn)));
+            RteTrace.record(RteTraceEvent.RTC_WARNING, null, 0, warn)
         }
 
         override fun onClientRoleChanged(oldRole: Int, newRole: Int) {
             super.onClientRoleChanged(oldRole, newRole)
-            Log.e("RteEngineImpl", "onClientRoleChanged, $oldRole, $newRole")
+            RteTrace.record(RteTraceEvent.RTC_CLIENT_ROLE, null, 0, newRole)
         }
 
         override fun onJoinChannelSuccess(channel: String?, uid: Int, elapsed: Int) {
             super.onJoinChannelSuccess(channel, uid, elapsed)
-            Log.e("RteEngineImpl", String.format("onJoinChannelSuccess channel %s uid %d", channel, uid))
+            RteTrace.record(RteTraceEvent.RTC_JOIN_SUCCESS, channel, uid, elapsed)
         }
 
         override fun onUserJoined(uid: Int, elapsed: Int) {
             super.onUserJoined(uid, elapsed)
-            Log.e("RteEngineImpl", "onUserJoined->$uid")
+            RteTrace.record(RteTraceEvent.RTC_USER_JOINED, null, uid, elapsed)
         }
 
 //        override fun onSubscribeVideoStateChanged(channel: String?, uid: Int, oldState: Int, newState: Int, elapseSinceLastState: Int) {
@@ -92,7 +128,8 @@ object RteEngineImpl : IRteEngine {
 
         override fun onRemoteVideoStateChanged(uid: Int, state: Int, reason: Int, elapsed: Int) {
             super.onRemoteVideoStateChanged(uid, state, reason, elapsed)
-            Log.e("RteEngineImpl", "onRemoteVideoStateChanged->$uid, state->$state, reason->$reason")
+            /**arg的高16位为state，低16位为reason*/
+            RteTrace.record(RteTraceEvent.RTC_REMOTE_VIDEO_STATE, null, uid, (state shl 16) or reason)
         }
 
         override fun onAudioRouteChanged(routing: Int) {
@@ -123,30 +160,120 @@ object RteEngineImpl : IRteEngine {
         }
     }
 
+    /**只保存配置，不创建rtmClient和rtcEngine；重复调用时以第一次的配置为准*/
+    @Synchronized
     override fun init(context: Context, appId: String, logFileDir: String) {
-        var path = logFileDir.plus(File.separatorChar).plus("agorartm.log")
-        rtmClient = RtmClient.createInstance(context, appId, rtmClientListener)
-        var code = rtmClient.setLogFile(path)
-        path = logFileDir.plus(File.separatorChar).plus("agorasdk.log")
-        rtcEngine = RtcEngine.create(context, appId, rtcEngineEventHandler)
-        rtcEngine.setChannelProfile(CHANNEL_PROFILE_LIVE_BROADCASTING)
-        code = rtcEngine.setLogFile(path)
-        Log.e("RteEngineImpl", "init")
-//        rtcEngine.setParameters("{\"rtc.log_filter\": 65535}")
-        rtcEngine.setParameters("{\"che.video.h264ProfileNegotiated\": 66}")
-        rtcEngine.setParameters("{\"che.video.web_h264_interop_enable\": true}")
+        if (this::appId.isInitialized) {
+            return
+        }
+        this.context = context.applicationContext
+        this.appId = appId
+        this.logFileDir = logFileDir
+    }
+
+    /**在initExecutor中创建并等待完成；已经在initExecutor中(例如prepare的回调里)时直接创建*/
+    private fun <T> await(create: () -> T): T {
+        if (Thread.currentThread() === initThread) {
+            return create()
+        }
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            Log.w("RteEngineImpl", "engine is first used on the main thread, call prepareRtm/prepareRtc in advance")
+        }
+        try {
+            return initExecutor.submit(Callable { create() }).get()
+        } catch (e: ExecutionException) {
+            throw e.cause ?: e
+        }
+    }
+
+    /**只在initExecutor线程中调用*/
+    private fun createRtmClient(): RtmClient {
+        rtmClientInstance?.let { return it }
+        check(this::appId.isInitialized) { "RteEngineImpl is not initialized. Please call init() before use!" }
+        val client = RtmClient.createInstance(context, appId, rtmClientListener)
+        client.setLogFile(logFileDir.plus(File.separatorChar).plus("agorartm.log"))
+        client.setLogFileSize(LOG_FILE_SIZE_KB)
+        Log.i("RteEngineImpl", "rtmClient created")
+        rtmClientInstance = client
+        return client
+    }
+
+    /**只在initExecutor线程中调用*/
+    private fun createRtcEngine(): RtcEngine {
+        rtcEngineInstance?.let { return it }
+        check(this::appId.isInitialized) { "RteEngineImpl is not initialized. Please call init() before use!" }
+        val engine = RtcEngine.create(context, appId, rtcEngineEventHandler)
+        engine.setChannelProfile(CHANNEL_PROFILE_LIVE_BROADCASTING)
+        engine.setLogFile(logFileDir.plus(File.separatorChar).plus("agorasdk.log"))
+        engine.setLogFileSize(LOG_FILE_SIZE_KB)
+//        engine.setParameters("{\"rtc.log_filter\": 65535}")
+        engine.setParameters("{\"che.video.h264ProfileNegotiated\": 66}")
+        engine.setParameters("{\"che.video.web_h264_interop_enable\": true}")
+        Log.i("RteEngineImpl", "rtcEngine created")
+        rtcEngineInstance = engine
+        return engine
+    }
+
+    override fun isRtmReady(): Boolean {
+        return rtmClientInstance != null
+    }
+
+    override fun isRtcReady(): Boolean {
+        return rtcEngineInstance != null
+    }
+
+    /**在后台线程创建rtmClient，创建完成后回调(已创建则直接在当前线程回调)*/
+    override fun prepareRtm(callback: RteCallback<Unit>?) {
+        prepare(this::isRtmReady, this::createRtmClient, callback)
+    }
+
+    /**在后台线程创建rtcEngine，创建完成后回调(已创建则直接在当前线程回调)*/
+    override fun prepareRtc(callback: RteCallback<Unit>?) {
+        prepare(this::isRtcReady, this::createRtcEngine, callback)
+    }
+
+    private fun prepare(ready: () -> Boolean, create: () -> Any, callback: RteCallback<Unit>?) {
+        if (ready()) {
+            callback?.onSuccess(Unit)
+            return
+        }
+        initExecutor.execute {
+            try {
+                create()
+            } catch (e: Exception) {
+                Log.e("RteEngineImpl", "create engine failed:${e.message}")
+                callback?.onFailure(-1, e.message)
+                return@execute
+            }
+            callback?.onSuccess(Unit)
+        }
     }
 
     override fun loginRtm(rtmUid: String, rtmToken: String, callback: RteCallback<Unit>) {
+        /**rtmClient在后台创建完成后再登录*/
+        prepareRtm(object : RteCallback<Unit> {
+            override fun onSuccess(res: Unit?) {
+                doLoginRtm(rtmUid, rtmToken, callback)
+            }
+
+            override fun onFailure(code: Int, reason: String?) {
+                callback.onFailure(code, reason)
+            }
+        })
+    }
+
+    private fun doLoginRtm(rtmUid: String, rtmToken: String, callback: RteCallback<Unit>) {
         /**rtm不能重复登录*/
 //        if (!rtmLoginSuccess) {
         rtmClient.login(rtmToken, rtmUid, object : ResultCallback<Void> {
             override fun onSuccess(p0: Void?) {
+                RteTrace.record(RteTraceEvent.RTM_LOGIN, null)
                 rtmLoginSuccess = true
                 callback.onSuccess(Unit)
             }
 
             override fun onFailure(p0: ErrorInfo?) {
+                RteTrace.record(RteTraceEvent.RTM_LOGIN, null, 0, p0?.errorCode ?: -1)
                 rtmLoginSuccess = false
                 p0?.let {
                     if (p0.errorCode == LOGIN_ERR_ALREADY_LOGIN) {
@@ -163,15 +290,18 @@ object RteEngineImpl : IRteEngine {
     }
 
     override fun logoutRtm() {
+        /**rtmClient未创建说明从未登录过*/
+        val rtmClient = rtmClientInstance ?: return
         rtmClient.logout(object : ResultCallback<Void> {
             override fun onSuccess(p0: Void?) {
                 rtmLoginSuccess = false
 //                rtmClient.release()
 //                RtcEngine.destroy()
-                Log.e("RteEngineImpl", "成功退出RTM")
+                RteTrace.record(RteTraceEvent.RTM_LOGOUT, null)
             }
 
             override fun onFailure(p0: ErrorInfo?) {
+                RteTrace.record(RteTraceEvent.RTM_LOGOUT, null, 0, p0?.errorCode ?: -1)
                 Log.e("RteEngineImpl", "退出RTM失败:${p0?.errorDescription}")
                 if (p0?.errorCode == RtmStatusCode.LeaveChannelError.LEAVE_CHANNEL_ERR_USER_NOT_LOGGED_IN) {
                     rtmLoginSuccess = false
@@ -0,0 +1,118 @@
+package io.agora.rte.trace
+
+import android.os.SystemClock
+import java.io.File
+import java.io.FileWriter
+import java.io.IOException
+import java.io.Writer
+import java.text.SimpleDateFormat
+import java.util.*
+
+/**固定容量的RTE事件环形缓冲区，替代逐条打印logcat；
+ * 每条记录只保存事件类型、channel、uid、时间戳、payload的长度和hash，写满后覆盖最旧的记录。
+ * 需要时(例如上传日志前)通过dump把内容写入日志目录*/
+object RteTrace {
+    const val DEFAULT_CAPACITY = 2048
+    const val FILE_NAME = "rtetrace.log"
+
+    private var capacity = DEFAULT_CAPACITY
+    private var types = IntArray(capacity)
+    private var channels = arrayOfNulls<String>(capacity)
+    private var uids = IntArray(capacity)
+    private var args = IntArray(capacity)
+    private var payloadLens = IntArray(capacity)
+    private var payloadHashes = IntArray(capacity)
+    private var elapsedTimes = LongArray(capacity)
+
+    /**下一条记录的写入位置(单调递增，对capacity取模得到下标)*/
+    private var cursor = 0L
+
+    /**每种事件的采样间隔(1表示全部记录)和计数*/
+    private val sampleIntervals = IntArray(RteTraceEvent.values().size) { 1 }
+    private val sampleCounters = IntArray(RteTraceEvent.values().size)
+
+    var enabled = true
+
+    @Synchronized
+    fun setCapacity(capacity: Int) {
+        require(capacity > 0) { "capacity must be positive" }
+        this.capacity = capacity
+        types = IntArray(capacity)
+        channels = arrayOfNulls(capacity)
+        uids = IntArray(capacity)
+        args = IntArray(capacity)
+        payloadLens = IntArray(capacity)
+        payloadHashes = IntArray(capacity)
+        elapsedTimes = LongArray(capacity)
+        cursor = 0
+    }
+
+    /**设置某种事件的采样间隔，interval为n时每n条记录1条*/
+    @Synchronized
+    fun setSampling(event: RteTraceEvent, interval: Int) {
+        sampleIntervals[event.ordinal] = if (interval < 1) 1 else interval
+        sampleCounters[event.ordinal] = 0
+    }
+
+    @JvmOverloads
+    fun record(event: RteTraceEvent, channelId: String?, uid: Int = 0, arg: Int = 0, payload: String? = null) {
+        if (!enabled) {
+            return
+        }
+        synchronized(this) {
+            val ordinal = event.ordinal
+            val interval = sampleIntervals[ordinal]
+            if (interval > 1 && sampleCounters[ordinal]++ % interval != 0) {
+                return
+            }
+            val index = (cursor % capacity).toInt()
+            types[index] = ordinal
+            channels[index] = channelId
+            uids[index] = uid
+            args[index] = arg
+            payloadLens[index] = payload?.length ?: -1
+            payloadHashes[index] = payload?.hashCode() ?: 0
+            elapsedTimes[index] = SystemClock.elapsedRealtime()
+            cursor++
+        }
+    }
+
+    @Synchronized
+    fun clear() {
+        cursor = 0
+        Arrays.fill(channels, null)
+    }
+
+    /**按时间先后顺序输出缓冲区内的所有记录*/
+    @Synchronized
+    @Throws(IOException::class)
+    fun dump(writer: Writer) {
+        val events = RteTraceEvent.values()
+        val format = SimpleDateFormat("yyyy-MM-dd HH:mm:ss:SSS", Locale.getDefault())
+        /**把elapsedRealtime换算成墙上时间*/
+        val offset = System.currentTimeMillis() - SystemClock.elapsedRealtime()
+        val count = if (cursor < capacity) cursor.toInt() else capacity
+        val date = Date()
+        writer.write("RteTrace: ${count}/${cursor} records\n")
+        for (i in 0 until count) {
+            val index = ((cursor - count + i) % capacity).toInt()
+            date.time = elapsedTimes[index] + offset
+            writer.write("${format.format(date)}|${events[types[index]]}|channel:${channels[index]}" +
+                    "|uid:${uids[index].toLong() and 0xffffffffL}|arg:${args[index]}" +
+                    "|len:${payloadLens[index]}|hash:${Integer.toHexString(payloadHashes[index])}\n")
+        }
+        writer.flush()
+    }
+
+    /**把缓冲区内容写入{@param dir}下的rtetrace.log(覆盖写)；有文件读写，不要在主线程调用。
+     * 失败时抛出IOException，由调用方记录*/
+    @Throws(IOException::class)
+    fun dumpTo(dir: File): File {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw IOException("can not create directory $dir")
+        }
+        val file = File(dir, FILE_NAME)
+        FileWriter(file, false).use { dump(it) }
+        return file
+    }
+}
@@ -0,0 +1,20 @@
+package io.agora.rte.trace
+
+/**RteTrace中记录的事件类型*/
+enum class RteTraceEvent {
+    /*RTM*/
+    RTM_CHANNEL_MSG,
+    RTM_PEER_MSG,
+    RTM_CONNECTION_STATE,
+    RTM_LOGIN,
+    RTM_LOGOUT,
+    RTM_CHANNEL_LEAVE,
+
+    /*RTC*/
+    RTC_ERROR,
+    RTC_WARNING,
+    RTC_JOIN_SUCCESS,
+    RTC_USER_JOINED,
+    RTC_CLIENT_ROLE,
+    RTC_REMOTE_VIDEO_STATE
+}
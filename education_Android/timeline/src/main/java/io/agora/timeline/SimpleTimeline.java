@@ -1,40 +1,107 @@
 package io.agora.timeline;
 
-import java.util.Date;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.atomic.AtomicLong;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
 
-public class SimpleTimeline implements Timeline {
-    public static final int PERIOD = 1000 / 15;
+/**
+ * 以单调时钟驱动的时间轴
+ * 播放位置由最近一次状态变化时的锚点(位置, elapsedRealtimeNanos)计算得出，不累加每次tick的间隔，误差不随调度抖动增长；
+ * tick在共用的后台线程上按固定节奏调度，只负责回调进度，不在每次tick时分配对象；
+ * 状态切换都在锁内完成，可以在任意线程调用
+ */
+public class SimpleTimeline implements SyncableTimeline {
+    public static final int DEFAULT_TICKS_PER_SECOND = 15;
+
+    private static Handler sHandler;
 
     @TimelineState
     private int state = TimelineState.STATE_IDLE;
 
-    private long startTime, endTime;
-    private AtomicLong playedTime = new AtomicLong();
-    private long previewTime;
-
-    private Timer timer;
-    private TimelineListener listener;
+    private final long startTime, endTime;
+    private long anchorPosition;
+    /**
+     * 锚点: 播放到{@link #anchorPosition}时的单调时钟
+     */
+    private long anchorNanos;
+    private float rate = 1f;
+    private long periodMs = 1000 / DEFAULT_TICKS_PER_SECOND;
+    private long nextTickUptime;
+
+    private final Object lock = new Object();
+    private final Handler handler = handler();
+    private final Runnable tick = this::tick;
+    private volatile TimelineListener listener;
 
     public SimpleTimeline(long startTime, long endTime) {
         this.startTime = startTime;
         this.endTime = endTime;
     }
 
+    private static synchronized Handler handler() {
+        if (sHandler == null) {
+            HandlerThread thread = new HandlerThread("SimpleTimeline");
+            thread.start();
+            sHandler = new Handler(thread.getLooper());
+        }
+        return sHandler;
+    }
+
     public long getDuration() {
         return endTime - startTime;
     }
 
+    /**
+     * @param ticksPerSecond 每秒回调{@link TimelineListener#onTimelineChanged(long, long)}的次数
+     */
+    public void setTickRate(int ticksPerSecond) {
+        synchronized (lock) {
+            periodMs = Math.max(1, 1000 / Math.max(1, ticksPerSecond));
+        }
+    }
+
     @Override
-    public void start() {
-        previewTime = new Date().getTime();
+    public long getPosition() {
+        synchronized (lock) {
+            return positionLocked(SystemClock.elapsedRealtimeNanos());
+        }
+    }
 
-        timer = new Timer();
-        timer.schedule(task(), PERIOD, PERIOD);
+    private long positionLocked(long nowNanos) {
+        long position = anchorPosition;
+        if (state == TimelineState.STATE_START) {
+            position += (long) ((nowNanos - anchorNanos) / 1000000 * rate);
+        }
+        return Math.min(position, getDuration());
+    }
 
-        state = TimelineState.STATE_START;
+    /**
+     * 调整速率时先以当前位置重新设置锚点
+     */
+    @Override
+    public boolean setRate(float rate) {
+        synchronized (lock) {
+            long nowNanos = SystemClock.elapsedRealtimeNanos();
+            anchorPosition = positionLocked(nowNanos);
+            anchorNanos = nowNanos;
+            this.rate = rate;
+        }
+        return true;
+    }
+
+    @Override
+    public void start() {
+        synchronized (lock) {
+            if (state == TimelineState.STATE_START) {
+                return;
+            }
+            anchorNanos = SystemClock.elapsedRealtimeNanos();
+            state = TimelineState.STATE_START;
+            nextTickUptime = SystemClock.uptimeMillis() + periodMs;
+            handler.removeCallbacks(tick);
+            handler.postAtTime(tick, nextTickUptime);
+        }
+        TimelineListener listener = this.listener;
         if (listener != null) {
             listener.onStart();
         }
@@ -42,15 +109,23 @@ public class SimpleTimeline implements Timeline {
 
     @Override
     public void seekTo(long positionMs) {
-        playedTime.set(positionMs);
+        synchronized (lock) {
+            anchorPosition = Math.max(0, Math.min(positionMs, getDuration()));
+            anchorNanos = SystemClock.elapsedRealtimeNanos();
+        }
     }
 
     @Override
     public void pause() {
-        timer.cancel();
-        timer = null;
-
-        state = TimelineState.STATE_PAUSE;
+        synchronized (lock) {
+            if (state != TimelineState.STATE_START) {
+                return;
+            }
+            anchorPosition = positionLocked(SystemClock.elapsedRealtimeNanos());
+            state = TimelineState.STATE_PAUSE;
+            handler.removeCallbacks(tick);
+        }
+        TimelineListener listener = this.listener;
         if (listener != null) {
             listener.onPause();
         }
@@ -58,10 +133,15 @@ public class SimpleTimeline implements Timeline {
 
     @Override
     public void stop() {
-        timer.cancel();
-        timer = null;
-
-        state = TimelineState.STATE_STOP;
+        synchronized (lock) {
+            if (state == TimelineState.STATE_STOP) {
+                return;
+            }
+            anchorPosition = positionLocked(SystemClock.elapsedRealtimeNanos());
+            state = TimelineState.STATE_STOP;
+            handler.removeCallbacks(tick);
+        }
+        TimelineListener listener = this.listener;
         if (listener != null) {
             listener.onStop();
         }
@@ -69,25 +149,42 @@ public class SimpleTimeline implements Timeline {
 
     @Override
     public int getState() {
-        return state;
+        synchronized (lock) {
+            return state;
+        }
     }
 
-    private TimerTask task() {
-        return new TimerTask() {
-            @Override
-            public void run() {
-                long nowTime = new Date().getTime();
-                playedTime.set(playedTime.get() + (nowTime - previewTime));
-                if (startTime + playedTime.get() > endTime) {
-                    stop();
-                    return;
-                }
-                if (listener != null) {
-                    listener.onTimelineChanged(playedTime.get(), endTime - startTime);
+    private void tick() {
+        long position;
+        boolean ended;
+        synchronized (lock) {
+            if (state != TimelineState.STATE_START) {
+                return;
+            }
+            position = positionLocked(SystemClock.elapsedRealtimeNanos());
+            ended = position >= getDuration();
+            if (ended) {
+                anchorPosition = position;
+                state = TimelineState.STATE_STOP;
+            } else {
+                /*按固定节奏调度，落后时跳过错过的tick*/
+                long now = SystemClock.uptimeMillis();
+                nextTickUptime += periodMs;
+                if (nextTickUptime <= now) {
+                    nextTickUptime = now + periodMs;
                 }
-                previewTime = nowTime;
+                handler.postAtTime(tick, nextTickUptime);
             }
-        };
+        }
+        TimelineListener listener = this.listener;
+        if (listener == null) {
+            return;
+        }
+        if (ended) {
+            listener.onStop();
+        } else {
+            listener.onTimelineChanged(position, getDuration());
+        }
     }
 
     public void setTimelineListener(TimelineListener listener) {
@@ -1,55 +1,86 @@
 package io.agora.timeline;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * 统一控制主时间轴和各子时间轴(视频、白板回放等)
+ * 任一子时间轴缓冲时，其他时间轴自动暂停，全部就绪后一起恢复；
+ * 缓冲期间收到的命令不会丢弃，只保留最后的播放状态和seek位置，在恢复时应用；
+ * 同时记录卡顿次数和时长。需要在主线程调用
+ */
 public class SimpleTimelineManager extends TimelineDecorator {
-    private List<Timeline> timelineList;
+    private static final long POLL_INTERVAL_MS = 200;
+
+    private final SimpleTimeline clock;
+    private final List<Timeline> timelineList;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable poll = this::poll;
+
+    /**
+     * 调用方期望的状态，缓冲结束后据此恢复
+     */
+    @TimelineState
+    private int targetState = TimelineState.STATE_IDLE;
+    /**
+     * 缓冲期间收到的seek位置，没有时为-1
+     */
+    private long pendingSeek = -1;
+    private boolean stalled;
+    private long stallStartTime;
+
+    private int stallCount;
+    private long totalStallMs;
+    private long longestStallMs;
 
     public SimpleTimelineManager(SimpleTimeline timeline) {
         super(timeline);
+        clock = timeline;
         timelineList = new ArrayList<>();
     }
 
     public void addTimeline(Timeline timeline) {
-        timelineList.add(new TimelineDecorator(timeline) {
-        });
+        timelineList.add(timeline);
+        if (targetState == TimelineState.STATE_START) {
+            poll();
+        }
     }
 
     @Override
     public void start() {
-        for (Timeline timeline : timelineList) {
-            if (timeline.getState() == TimelineState.STATE_BUFFERING) {
-                return;
+        targetState = TimelineState.STATE_START;
+        if (!stalled && !anyBuffering()) {
+            clock.start();
+            for (Timeline timeline : timelineList) {
+                if (timeline.getState() != TimelineState.STATE_START) {
+                    timeline.start();
+                }
             }
         }
-        super.start();
-        for (Timeline timeline : timelineList) {
-            timeline.start();
-        }
+        schedulePoll();
     }
 
     @Override
     public void pause() {
-        for (Timeline timeline : timelineList) {
-            if (timeline.getState() == TimelineState.STATE_BUFFERING) {
-                return;
-            }
-        }
-        super.pause();
-        for (Timeline timeline : timelineList) {
-            timeline.pause();
+        targetState = TimelineState.STATE_PAUSE;
+        if (!stalled) {
+            pauseAll();
         }
     }
 
     @Override
     public void seekTo(long positionMs) {
-        for (Timeline timeline : timelineList) {
-            if (timeline.getState() == TimelineState.STATE_BUFFERING) {
-                return;
-            }
+        if (stalled || anyBuffering()) {
+            /*无论是否在播放，缓冲结束后都要应用*/
+            pendingSeek = positionMs;
+            schedulePoll();
+            return;
         }
-        super.seekTo(positionMs);
+        clock.seekTo(positionMs);
         for (Timeline timeline : timelineList) {
             timeline.seekTo(positionMs);
         }
@@ -57,20 +88,147 @@ public class SimpleTimelineManager extends TimelineDecorator {
 
     @Override
     public void stop() {
+        targetState = TimelineState.STATE_STOP;
+        if (!stalled) {
+            stopAll();
+        }
+    }
+
+    /**
+     * 卡顿期间返回{@link TimelineState#STATE_BUFFERING}
+     */
+    @TimelineState
+    @Override
+    public int getState() {
+        return stalled ? TimelineState.STATE_BUFFERING : super.getState();
+    }
+
+    /**
+     * 调用方最后一次请求的状态(卡顿期间可能与{@link #getState()}不同)
+     */
+    @TimelineState
+    public int getTargetState() {
+        return targetState;
+    }
+
+    public int getStallCount() {
+        return stallCount;
+    }
+
+    /**
+     * 累计卡顿时长(ms)，包括正在进行的卡顿
+     */
+    public long getTotalStallMs() {
+        return totalStallMs + currentStallMs();
+    }
+
+    public long getLongestStallMs() {
+        return Math.max(longestStallMs, currentStallMs());
+    }
+
+    private long currentStallMs() {
+        return stalled ? SystemClock.elapsedRealtime() - stallStartTime : 0;
+    }
+
+    private boolean anyBuffering() {
         for (Timeline timeline : timelineList) {
             if (timeline.getState() == TimelineState.STATE_BUFFERING) {
-                return;
+                return true;
             }
         }
-        super.stop();
+        return false;
+    }
+
+    private void pauseAll() {
+        clock.pause();
         for (Timeline timeline : timelineList) {
-            timeline.stop();
+            int state = timeline.getState();
+            if (state == TimelineState.STATE_START || state == TimelineState.STATE_BUFFERING) {
+                timeline.pause();
+            }
         }
     }
 
-    @TimelineState
-    @Override
-    public int getState() {
-        return super.getState();
+    private void stopAll() {
+        handler.removeCallbacks(poll);
+        clock.stop();
+        for (Timeline timeline : timelineList) {
+            int state = timeline.getState();
+            if (state == TimelineState.STATE_START || state == TimelineState.STATE_PAUSE
+                    || state == TimelineState.STATE_BUFFERING) {
+                timeline.stop();
+            }
+        }
+    }
+
+    private void schedulePoll() {
+        handler.removeCallbacks(poll);
+        handler.postDelayed(poll, POLL_INTERVAL_MS);
+    }
+
+    /**
+     * 播放期间或有待应用的seek时定期检查缓冲状态
+     */
+    private void poll() {
+        handler.removeCallbacks(poll);
+        boolean buffering = anyBuffering();
+        if (!stalled) {
+            if (pendingSeek >= 0 && !buffering) {
+                /*暂停时拖动进度，缓冲结束后直接应用*/
+                long position = pendingSeek;
+                pendingSeek = -1;
+                seekTo(position);
+            }
+            if (targetState != TimelineState.STATE_START) {
+                if (pendingSeek >= 0) {
+                    schedulePoll();
+                }
+                return;
+            }
+            if (clock.getState() == TimelineState.STATE_STOP) {
+                /*主时间轴已播放到结尾*/
+                targetState = TimelineState.STATE_STOP;
+                return;
+            }
+            if (buffering) {
+                stalled = true;
+                stallStartTime = SystemClock.elapsedRealtime();
+                stallCount++;
+                pauseAll();
+            }
+        } else if (!buffering) {
+            long stallMs = currentStallMs();
+            stalled = false;
+            totalStallMs += stallMs;
+            longestStallMs = Math.max(longestStallMs, stallMs);
+            resume();
+        }
+        if (stalled || targetState == TimelineState.STATE_START || pendingSeek >= 0) {
+            schedulePoll();
+        }
+    }
+
+    /**
+     * 全部就绪后应用缓冲期间最后的命令
+     */
+    private void resume() {
+        if (pendingSeek >= 0) {
+            long position = pendingSeek;
+            pendingSeek = -1;
+            seekTo(position);
+        }
+        switch (targetState) {
+            case TimelineState.STATE_START:
+                start();
+                break;
+            case TimelineState.STATE_PAUSE:
+                pauseAll();
+                break;
+            case TimelineState.STATE_STOP:
+                stopAll();
+                break;
+            default:
+                break;
+        }
     }
 }
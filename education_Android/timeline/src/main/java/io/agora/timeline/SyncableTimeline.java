@@ -0,0 +1,18 @@
+package io.agora.timeline;
+
+/**
+ * 可以被{@link TimelineSynchronizer}对齐的时间轴
+ */
+public interface SyncableTimeline extends Timeline {
+    /**
+     * 当前播放位置(ms)
+     */
+    long getPosition();
+
+    /**
+     * 设置播放速率
+     *
+     * @return 不支持调整速率时返回false，此时只能通过seek纠正偏差
+     */
+    boolean setRate(float rate);
+}
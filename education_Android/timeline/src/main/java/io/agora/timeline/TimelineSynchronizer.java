@@ -0,0 +1,211 @@
+package io.agora.timeline;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 以一条时间轴为主时钟，定期测量其他时间轴与主时钟的偏差(drift = 跟随者位置 - 主时钟位置)并纠正：
+ * 小偏差通过调整速率(不支持时用小幅seek)逐渐追上，大偏差直接seek到主时钟的位置；
+ * 只在主时钟和跟随者都处于播放状态时纠正。各播放器只能在主线程访问，测量和纠正都在主线程进行
+ */
+public class TimelineSynchronizer {
+    private static final long DEFAULT_INTERVAL_MS = 500;
+    /**
+     * 小于此偏差视为已同步
+     */
+    private static final long IN_SYNC_MS = 40;
+    /**
+     * 不支持调整速率时，超过此偏差才做小幅seek，避免频繁seek导致卡顿
+     */
+    private static final long MICRO_SEEK_MS = 200;
+    /**
+     * 超过此偏差直接seek
+     */
+    private static final long HARD_SEEK_MS = 1000;
+    /**
+     * 按偏差调整速率时，期望在此时间内追上
+     */
+    private static final long CATCH_UP_MS = 2000;
+    private static final float MAX_RATE_DELTA = 0.05f;
+    /**
+     * seek之后等待播放器稳定，期间不再测量
+     */
+    private static final long SEEK_COOLDOWN_MS = 1000;
+
+    /**
+     * 单条跟随时间轴的偏差统计
+     */
+    public static class DriftStats {
+        private long lastDriftMs;
+        private long maxAbsDriftMs;
+        private double avgAbsDriftMs;
+        private int rateCorrections;
+        private int microSeeks;
+        private int hardSeeks;
+
+        public long getLastDriftMs() {
+            return lastDriftMs;
+        }
+
+        public long getMaxAbsDriftMs() {
+            return maxAbsDriftMs;
+        }
+
+        /**
+         * 偏差绝对值的指数移动平均
+         */
+        public double getAvgAbsDriftMs() {
+            return avgAbsDriftMs;
+        }
+
+        public int getRateCorrections() {
+            return rateCorrections;
+        }
+
+        public int getMicroSeeks() {
+            return microSeeks;
+        }
+
+        public int getHardSeeks() {
+            return hardSeeks;
+        }
+
+        @Override
+        public String toString() {
+            return "drift:" + lastDriftMs + "ms, max:" + maxAbsDriftMs + "ms, avg:" + (long) avgAbsDriftMs +
+                    "ms, rate:" + rateCorrections + ", microSeek:" + microSeeks + ", hardSeek:" + hardSeeks;
+        }
+    }
+
+    public interface DriftListener {
+        void onDriftMeasured(SyncableTimeline timeline, long driftMs);
+    }
+
+    private static class Follower {
+        final SyncableTimeline timeline;
+        final DriftStats stats = new DriftStats();
+        float rate = 1f;
+        long cooldownUntil;
+
+        Follower(SyncableTimeline timeline) {
+            this.timeline = timeline;
+        }
+    }
+
+    private final SyncableTimeline master;
+    private final List<Follower> followers = new ArrayList<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable measure = this::measure;
+    private long intervalMs = DEFAULT_INTERVAL_MS;
+    private DriftListener listener;
+    private boolean running;
+
+    public TimelineSynchronizer(SyncableTimeline master) {
+        this.master = master;
+    }
+
+    public void addFollower(SyncableTimeline timeline) {
+        followers.add(new Follower(timeline));
+    }
+
+    public void setInterval(long intervalMs) {
+        this.intervalMs = intervalMs;
+    }
+
+    public void setDriftListener(DriftListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return {@param timeline}的偏差统计，不是跟随者时返回null
+     */
+    public DriftStats getStats(SyncableTimeline timeline) {
+        for (Follower follower : followers) {
+            if (follower.timeline == timeline) {
+                return follower.stats;
+            }
+        }
+        return null;
+    }
+
+    public void start() {
+        if (!running) {
+            running = true;
+            handler.postDelayed(measure, intervalMs);
+        }
+    }
+
+    public void stop() {
+        running = false;
+        handler.removeCallbacks(measure);
+        for (Follower follower : followers) {
+            resetRate(follower);
+        }
+    }
+
+    private void measure() {
+        if (!running) {
+            return;
+        }
+        handler.postDelayed(measure, intervalMs);
+        if (master.getState() != TimelineState.STATE_START) {
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        long masterPosition = master.getPosition();
+        for (Follower follower : followers) {
+            if (follower.timeline.getState() != TimelineState.STATE_START || now < follower.cooldownUntil) {
+                continue;
+            }
+            long drift = follower.timeline.getPosition() - masterPosition;
+            record(follower.stats, drift);
+            if (listener != null) {
+                listener.onDriftMeasured(follower.timeline, drift);
+            }
+            correct(follower, drift, masterPosition, now);
+        }
+    }
+
+    private void correct(Follower follower, long drift, long masterPosition, long now) {
+        long absDrift = Math.abs(drift);
+        if (absDrift < IN_SYNC_MS) {
+            resetRate(follower);
+            return;
+        }
+        if (absDrift >= HARD_SEEK_MS) {
+            resetRate(follower);
+            follower.timeline.seekTo(masterPosition);
+            follower.cooldownUntil = now + SEEK_COOLDOWN_MS;
+            follower.stats.hardSeeks++;
+            return;
+        }
+        /*跟随者超前时放慢，落后时加快*/
+        float delta = Math.max(-MAX_RATE_DELTA, Math.min(MAX_RATE_DELTA, (float) drift / CATCH_UP_MS));
+        if (follower.timeline.setRate(1f - delta)) {
+            follower.rate = 1f - delta;
+            follower.stats.rateCorrections++;
+        } else if (absDrift >= MICRO_SEEK_MS) {
+            follower.timeline.seekTo(masterPosition);
+            follower.cooldownUntil = now + SEEK_COOLDOWN_MS;
+            follower.stats.microSeeks++;
+        }
+    }
+
+    private static void resetRate(Follower follower) {
+        if (follower.rate != 1f) {
+            follower.rate = 1f;
+            follower.timeline.setRate(1f);
+        }
+    }
+
+    private static void record(DriftStats stats, long drift) {
+        long absDrift = Math.abs(drift);
+        stats.lastDriftMs = drift;
+        stats.maxAbsDriftMs = Math.max(stats.maxAbsDriftMs, absDrift);
+        stats.avgAbsDriftMs = stats.avgAbsDriftMs == 0 ? absDrift : stats.avgAbsDriftMs * 0.9 + absDrift * 0.1;
+    }
+}
@@ -0,0 +1,21 @@
+package io.agora.whiteboard.netless.annotation;
+
+import androidx.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * 白板状态中发生变化的字段，可以按位组合
+ */
+@IntDef(flag = true, value = {
+        BoardStateField.GLOBAL,
+        BoardStateField.MEMBER,
+        BoardStateField.SCENE
+})
+@Retention(RetentionPolicy.SOURCE)
+public @interface BoardStateField {
+    int GLOBAL = 1;
+    int MEMBER = 1 << 1;
+    int SCENE = 1 << 2;
+}
@@ -0,0 +1,342 @@
+package io.agora.whiteboard.netless.cache;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.herewhite.sdk.WhiteboardView;
+import com.herewhite.sdk.domain.PptPage;
+import com.herewhite.sdk.domain.Scene;
+import com.herewhite.sdk.domain.SceneState;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import io.agora.log.LogManager;
+import okhttp3.Cache;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * PPT场景资源的预取和磁盘缓存
+ * 场景切换时在后台预取前后{@link #radius}个场景的转换图片，存入按URL索引、有大小上限的磁盘缓存；
+ * 白板WebView请求这些图片时直接从缓存返回(未命中时下载后返回并写入缓存)。
+ * 同时统计翻页的首帧时间：从发起翻页(或收到远端翻页)到当前场景图片交给WebView后的第一帧。
+ * OkHttp不允许同一个目录上有多个Cache，所有实例共用进程内的一个Cache，最后一个实例{@link #release()}时关闭
+ */
+public class ScenePrefetcher {
+    private static final String CACHE_DIR = "board_scenes";
+    private static final long MAX_CACHE_SIZE = 50 * 1024 * 1024;
+    private static final int DEFAULT_RADIUS = 2;
+    /**
+     * 本地翻页命令之后这么久内收到的场景变化，从命令发出时开始计时
+     */
+    private static final long COMMAND_WINDOW_MS = 1000;
+    /**
+     * PPT转换后的图片不会再变化，缓存时忽略服务端的缓存头
+     */
+    private static final String CACHE_CONTROL = "public, max-age=604800";
+
+    public interface Listener {
+        /**
+         * 翻页首帧回调，在主线程调用
+         *
+         * @param cached 当前场景的图片是否来自缓存
+         */
+        void onSceneFirstFrame(int index, long costMs, boolean cached);
+    }
+
+    /**
+     * 进程内共用的缓存和client，受ScenePrefetcher.class保护
+     */
+    private static Cache sCache;
+    private static OkHttpClient sClient;
+    private static int sRefCount;
+
+    private final LogManager log = new LogManager(this.getClass().getSimpleName());
+    private final Cache cache;
+    private final OkHttpClient client;
+    private final ExecutorService executor = Executors.newFixedThreadPool(2, r -> {
+        Thread thread = new Thread(r, "ScenePrefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final int radius;
+
+    /**
+     * 已知场景的图片地址，只拦截这些请求
+     */
+    private final Set<String> sceneUrls = Collections.synchronizedSet(new HashSet<>());
+    /**
+     * 已经预取过(或正在预取)的地址
+     */
+    private final Set<String> prefetched = Collections.synchronizedSet(new HashSet<>());
+    private volatile Listener listener;
+    private volatile boolean released;
+
+    /**
+     * 首帧计时，均受this保护
+     */
+    private int sceneIndex = -1;
+    private String scenePath;
+    private long commandTime;
+    private long changeTime;
+    private String pendingUrl;
+    private int pendingIndex;
+
+    private int firstFrameCount;
+    private long totalFirstFrameMs;
+    private long maxFirstFrameMs;
+
+    public ScenePrefetcher(@NonNull Context context) {
+        this(context, DEFAULT_RADIUS);
+    }
+
+    /**
+     * @param radius 预取当前场景前后各多少个场景
+     */
+    public ScenePrefetcher(@NonNull Context context, int radius) {
+        this.radius = radius;
+        synchronized (ScenePrefetcher.class) {
+            if (sRefCount++ == 0) {
+                sCache = new Cache(new File(context.getApplicationContext().getCacheDir(), CACHE_DIR),
+                        MAX_CACHE_SIZE);
+                sClient = new OkHttpClient.Builder()
+                        .cache(sCache)
+                        .addNetworkInterceptor(chain -> chain.proceed(chain.request()).newBuilder()
+                                .header("Cache-Control", CACHE_CONTROL)
+                                .removeHeader("Pragma")
+                                .build())
+                        .build();
+            }
+            cache = sCache;
+            client = sClient;
+        }
+    }
+
+    /**
+     * 停止预取并释放线程；最后一个实例释放时关闭共用的缓存。可以重复调用
+     */
+    public void release() {
+        synchronized (this) {
+            if (released) {
+                return;
+            }
+            released = true;
+            pendingUrl = null;
+        }
+        listener = null;
+        executor.shutdownNow();
+        handler.removeCallbacksAndMessages(null);
+        synchronized (ScenePrefetcher.class) {
+            if (--sRefCount == 0) {
+                try {
+                    sCache.close();
+                } catch (IOException e) {
+                    log.w("close cache failed %s", e.getMessage());
+                }
+                sCache = null;
+                sClient = null;
+            }
+        }
+    }
+
+    public void setListener(@Nullable Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 由白板接管图片请求，需在加入白板房间之前调用
+     */
+    public void attach(@NonNull WhiteboardView view) {
+        view.setWebViewClient(new WebViewClient() {
+            @Override
+            public WebResourceResponse shouldInterceptRequest(WebView view, String url) {
+                return intercept(url);
+            }
+
+            @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+            @Override
+            public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+                if (!"GET".equals(request.getMethod())) {
+                    return null;
+                }
+                return intercept(request.getUrl().toString());
+            }
+        });
+    }
+
+    /**
+     * 本地发起翻页(跳转、上一步、下一步)时调用，从此刻开始计算首帧时间
+     */
+    public synchronized void onSceneChangeRequested() {
+        commandTime = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * 场景状态变化时调用，可以在任意线程调用
+     */
+    public void onSceneStateChanged(@NonNull SceneState state) {
+        Scene[] scenes = state.getScenes();
+        int index = state.getIndex();
+        if (scenes == null || index < 0 || index >= scenes.length) {
+            return;
+        }
+        for (Scene scene : scenes) {
+            String url = urlOf(scene);
+            if (url != null) {
+                sceneUrls.add(url);
+            }
+        }
+        synchronized (this) {
+            if (index != sceneIndex || !Objects.equals(state.getScenePath(), scenePath)) {
+                sceneIndex = index;
+                scenePath = state.getScenePath();
+                long now = SystemClock.elapsedRealtime();
+                changeTime = now - commandTime <= COMMAND_WINDOW_MS ? commandTime : now;
+                pendingUrl = urlOf(scenes[index]);
+                pendingIndex = index;
+            }
+        }
+        /*当前场景优先，然后由近到远*/
+        prefetch(urlOf(scenes[index]));
+        for (int i = 1; i <= radius; i++) {
+            if (index + i < scenes.length) {
+                prefetch(urlOf(scenes[index + i]));
+            }
+            if (index - i >= 0) {
+                prefetch(urlOf(scenes[index - i]));
+            }
+        }
+    }
+
+    private void prefetch(@Nullable String url) {
+        if (url == null || released || !prefetched.add(url)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                Request request = new Request.Builder().url(url).build();
+                try (Response response = client.newCall(request).execute()) {
+                    ResponseBody body = response.body();
+                    if (!response.isSuccessful() || body == null) {
+                        throw new IOException("HTTP " + response.code());
+                    }
+                    /*读完响应体才会写入缓存*/
+                    body.bytes();
+                } catch (IOException e) {
+                    log.w("prefetch failed %s %s", url, e.getMessage());
+                    prefetched.remove(url);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            /*已经release*/
+            prefetched.remove(url);
+        }
+    }
+
+    /**
+     * 在WebView的网络线程调用
+     */
+    @Nullable
+    private WebResourceResponse intercept(String url) {
+        if (released || !sceneUrls.contains(url)) {
+            return null;
+        }
+        Request request = new Request.Builder().url(url).build();
+        try {
+            Response response = client.newCall(request).execute();
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null) {
+                response.close();
+                return null;
+            }
+            onSceneResourceReady(url, response.cacheResponse() != null && response.networkResponse() == null);
+            String mimeType = body.contentType() != null
+                    ? body.contentType().type() + "/" + body.contentType().subtype() : "image/png";
+            WebResourceResponse resource = new WebResourceResponse(mimeType, null, body.byteStream());
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                Map<String, String> headers = new HashMap<>();
+                headers.put("Access-Control-Allow-Origin", "*");
+                resource.setResponseHeaders(headers);
+            }
+            return resource;
+        } catch (IOException e) {
+            log.w("intercept failed %s %s", url, e.getMessage());
+            return null;
+        }
+    }
+
+    private void onSceneResourceReady(String url, boolean cached) {
+        int index;
+        long start;
+        synchronized (this) {
+            if (!url.equals(pendingUrl)) {
+                return;
+            }
+            pendingUrl = null;
+            index = pendingIndex;
+            start = changeTime;
+        }
+        handler.post(() -> Choreographer.getInstance().postFrameCallback(frameTimeNanos -> {
+            long cost = SystemClock.elapsedRealtime() - start;
+            synchronized (ScenePrefetcher.this) {
+                firstFrameCount++;
+                totalFirstFrameMs += cost;
+                maxFirstFrameMs = Math.max(maxFirstFrameMs, cost);
+            }
+            log.i("scene %d first frame %dms, cached:%b, %s", index, cost, cached, ScenePrefetcher.this);
+            Listener listener = this.listener;
+            if (listener != null) {
+                listener.onSceneFirstFrame(index, cost, cached);
+            }
+        }));
+    }
+
+    @Nullable
+    private static String urlOf(Scene scene) {
+        PptPage ppt = scene.getPpt();
+        if (ppt == null || ppt.getSrc() == null) {
+            return null;
+        }
+        String src = ppt.getSrc();
+        return src.startsWith("http://") || src.startsWith("https://") ? src : null;
+    }
+
+    public synchronized long getAvgFirstFrameMs() {
+        return firstFrameCount == 0 ? 0 : totalFirstFrameMs / firstFrameCount;
+    }
+
+    public synchronized long getMaxFirstFrameMs() {
+        return maxFirstFrameMs;
+    }
+
+    @Override
+    public String toString() {
+        return "firstFrame avg:" + getAvgFirstFrameMs() + "ms, max:" + getMaxFirstFrameMs() +
+                "ms, cache hit:" + cache.hitCount() + ", network:" + cache.networkCount();
+    }
+}
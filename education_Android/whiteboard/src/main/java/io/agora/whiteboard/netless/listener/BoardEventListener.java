@@ -5,16 +5,23 @@ import com.herewhite.sdk.domain.MemberState;
 import com.herewhite.sdk.domain.RoomPhase;
 import com.herewhite.sdk.domain.SceneState;
 
+import io.agora.whiteboard.netless.annotation.BoardStateField;
+
 public interface BoardEventListener {
     void onJoinSuccess(GlobalState state);
 
     void onRoomPhaseChanged(RoomPhase phase);
 
-    void onGlobalStateChanged(GlobalState state);
-
-    void onSceneStateChanged(SceneState state);
-
-    void onMemberStateChanged(MemberState state);
+    /**
+     * 白板状态变化，同一帧内的多次变化合并为一次回调，在主线程调用
+     *
+     * @param changed     发生变化的字段，{@link BoardStateField}的组合
+     * @param globalState 最新的全局状态，未收到过时为null
+     * @param memberState 最新的成员状态，未收到过时为null
+     * @param sceneState  最新的场景状态，未收到过时为null
+     */
+    void onRoomStateChanged(@BoardStateField int changed, GlobalState globalState,
+                            MemberState memberState, SceneState sceneState);
 
     void onDisconnectWithError(Exception e);
 }
@@ -3,8 +3,8 @@ package io.agora.whiteboard.netless.manager;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
+import android.view.Choreographer;
 
-import com.google.gson.Gson;
 import com.herewhite.sdk.Room;
 import com.herewhite.sdk.RoomCallbacks;
 import com.herewhite.sdk.RoomParams;
@@ -19,6 +19,8 @@ import com.herewhite.sdk.domain.SceneState;
 
 import io.agora.log.LogManager;
 import io.agora.whiteboard.netless.annotation.Appliance;
+import io.agora.whiteboard.netless.annotation.BoardStateField;
+import io.agora.whiteboard.netless.cache.ScenePrefetcher;
 import io.agora.whiteboard.netless.listener.BoardEventListener;
 
 public class BoardManager extends NetlessManager<Room> implements RoomCallbacks {
@@ -34,12 +36,33 @@ public class BoardManager extends NetlessManager<Room> implements RoomCallbacks
 
     private Handler handler = new Handler(Looper.getMainLooper());
     private BoardEventListener listener;
+    private ScenePrefetcher prefetcher;
     private boolean joinSuccess = false;
 
+    /**
+     * 等待下一帧回调的白板状态，只保留最新值；{@link #pendingChanged}记录期间变化过的字段
+     */
+    private final Object stateLock = new Object();
+    @BoardStateField
+    private int pendingChanged;
+    private GlobalState globalState;
+    private MemberState memberState;
+    private SceneState sceneState;
+    private boolean frameScheduled;
+    private final Choreographer.FrameCallback deliverState = frameTimeNanos -> deliverState();
+    private final Runnable scheduleFrame = () -> Choreographer.getInstance().postFrameCallback(deliverState);
+
     public void setListener(BoardEventListener listener) {
         this.listener = listener;
     }
 
+    /**
+     * 场景变化时预取相邻场景的PPT资源
+     */
+    public void setScenePrefetcher(ScenePrefetcher prefetcher) {
+        this.prefetcher = prefetcher;
+    }
+
     public void init(WhiteSdk sdk, RoomParams params) {
         log.e("init");
         sdk.joinRoom(params, this, promise);
@@ -81,6 +104,7 @@ public class BoardManager extends NetlessManager<Room> implements RoomCallbacks
 
     public void setSceneIndex(int index) {
         if (t != null && !isDisableDeviceInputs()) {
+            onSceneChangeRequested();
             t.setSceneIndex(index, new Promise<Boolean>() {
                 @Override
                 public void then(Boolean aBoolean) {
@@ -109,16 +133,24 @@ public class BoardManager extends NetlessManager<Room> implements RoomCallbacks
 
     public void pptPreviousStep() {
         if (t != null && !isDisableDeviceInputs()) {
+            onSceneChangeRequested();
             t.pptPreviousStep();
         }
     }
 
     public void pptNextStep() {
         if (t != null && !isDisableDeviceInputs()) {
+            onSceneChangeRequested();
             t.pptNextStep();
         }
     }
 
+    private void onSceneChangeRequested() {
+        if (prefetcher != null) {
+            prefetcher.onSceneChangeRequested();
+        }
+    }
+
     public void getRoomPhase(Promise<RoomPhase> promise) {
         if (t != null) {
             t.getRoomPhase(promise);
@@ -182,6 +214,10 @@ public class BoardManager extends NetlessManager<Room> implements RoomCallbacks
         if (t != null) {
             t.disconnect();
         }
+        if (prefetcher != null) {
+            prefetcher.release();
+            prefetcher = null;
+        }
     }
 
     @Override
@@ -210,25 +246,67 @@ public class BoardManager extends NetlessManager<Room> implements RoomCallbacks
 
     }
 
+    /**
+     * 绘制或PPT动画期间回调非常频繁，这里只合并状态，每帧最多向外回调一次
+     */
     @Override
     public void onRoomStateChanged(RoomState modifyState) {
-        Log.e(TAG, "onRoomStateChanged->" + new Gson().toJson(modifyState));
-        if (listener != null) {
-            GlobalState state = modifyState.getGlobalState();
-            if (state != null) {
-                handler.post(() -> listener.onGlobalStateChanged(state));
+        mergeState(modifyState.getGlobalState(), modifyState.getMemberState(), modifyState.getSceneState());
+    }
+
+    private void mergeState(GlobalState global, MemberState member, SceneState scene) {
+        boolean schedule;
+        synchronized (stateLock) {
+            if (global != null) {
+                globalState = global;
+                pendingChanged |= BoardStateField.GLOBAL;
+            }
+            if (member != null) {
+                memberState = member;
+                pendingChanged |= BoardStateField.MEMBER;
+            }
+            if (scene != null) {
+                sceneState = scene;
+                pendingChanged |= BoardStateField.SCENE;
             }
-            MemberState memberState = modifyState.getMemberState();
-            if (memberState != null) {
-                handler.post(() -> listener.onMemberStateChanged(memberState));
+            if (scene != null && prefetcher != null) {
+                /*预取不需要等到下一帧*/
+                prefetcher.onSceneStateChanged(scene);
             }
-            SceneState sceneState = modifyState.getSceneState();
-            if (sceneState != null) {
-                handler.post(() -> listener.onSceneStateChanged(sceneState));
+            schedule = pendingChanged != 0 && !frameScheduled;
+            if (schedule) {
+                frameScheduled = true;
+            }
+        }
+        if (schedule) {
+            /*Choreographer只能在主线程使用*/
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                scheduleFrame.run();
+            } else {
+                handler.post(scheduleFrame);
             }
         }
     }
 
+    private void deliverState() {
+        int changed;
+        GlobalState global;
+        MemberState member;
+        SceneState scene;
+        synchronized (stateLock) {
+            changed = pendingChanged;
+            pendingChanged = 0;
+            frameScheduled = false;
+            global = globalState;
+            member = memberState;
+            scene = sceneState;
+        }
+        if (changed != 0 && listener != null) {
+            log.d("onRoomStateChanged->%d", changed);
+            listener.onRoomStateChanged(changed, global, member, scene);
+        }
+    }
+
     @Override
     public void onCatchErrorWhenAppendFrame(long userId, Exception error) {
 
@@ -257,7 +335,7 @@ public class BoardManager extends NetlessManager<Room> implements RoomCallbacks
                 joinSuccess = true;
                 listener.onJoinSuccess(getBoardState().getGlobalState());
             }
-            listener.onSceneStateChanged(room.getSceneState());
+            mergeState(null, null, room.getSceneState());
         }
     }
 